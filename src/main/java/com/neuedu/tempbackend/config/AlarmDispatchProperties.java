@@ -0,0 +1,62 @@
+package com.neuedu.tempbackend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 映射 application.yml 中 alarm.dispatch.* 配置。
+ * 每个报警通知渠道 (webhook、modbusCoil、logFile) 拥有独立的队列容量、重试策略和限流参数；
+ * 渠道自身的目标地址等参数由各渠道读取 (例如 alarm.dispatch.sinks.webhook.url)。
+ */
+@Component
+@ConfigurationProperties(prefix = "alarm.dispatch")
+public class AlarmDispatchProperties {
+
+    private Map<String, SinkProperties> sinks = new LinkedHashMap<>();
+
+    public Map<String, SinkProperties> getSinks() { return sinks; }
+    public void setSinks(Map<String, SinkProperties> sinks) { this.sinks = sinks; }
+
+    /**
+     * 获取某个渠道的配置，未配置时使用默认值 (默认不启用)
+     */
+    public SinkProperties getSink(String name) {
+        return sinks.getOrDefault(name, new SinkProperties());
+    }
+
+    /**
+     * 单个渠道的队列、重试和限流配置
+     */
+    public static class SinkProperties {
+        private boolean enabled = false;
+        private int queueCapacity = 256;       // 待投递队列容量，满时丢弃新事件并计数
+        private int maxAttempts = 5;           // 单个事件最多投递次数 (含首次)
+        private long initialBackoffMs = 500;   // 首次重试等待，之后按 2 倍递增
+        private long maxBackoffMs = 30000;     // 重试等待上限
+        private double ratePerSecond = 5;      // 每秒最多投递的事件数 (令牌桶)，0 表示不限
+        private int burst = 10;                // 令牌桶容量，允许的突发投递数
+        private List<String> types = new ArrayList<>(); // 只投递这些报警类型，空表示全部
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        public int getMaxAttempts() { return maxAttempts; }
+        public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+        public long getInitialBackoffMs() { return initialBackoffMs; }
+        public void setInitialBackoffMs(long initialBackoffMs) { this.initialBackoffMs = initialBackoffMs; }
+        public long getMaxBackoffMs() { return maxBackoffMs; }
+        public void setMaxBackoffMs(long maxBackoffMs) { this.maxBackoffMs = maxBackoffMs; }
+        public double getRatePerSecond() { return ratePerSecond; }
+        public void setRatePerSecond(double ratePerSecond) { this.ratePerSecond = ratePerSecond; }
+        public int getBurst() { return burst; }
+        public void setBurst(int burst) { this.burst = burst; }
+        public List<String> getTypes() { return types; }
+        public void setTypes(List<String> types) { this.types = types; }
+    }
+}
@@ -1,6 +1,7 @@
 // 新增一个配置类，例如 AsyncConfig.java
 package com.neuedu.tempbackend.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -11,16 +12,6 @@ import java.util.concurrent.Executor;
 @EnableAsync // 再次启用异步，确保在自定义Executor之后
 public class AsyncConfig {
 
-    @Bean(name = "cloudUploadExecutor")
-    public Executor cloudUploadExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5); // 核心线程数
-        executor.setMaxPoolSize(10); // 最大线程数
-        executor.setQueueCapacity(25); // 队列容量
-        executor.setThreadNamePrefix("CloudUpload-");
-        executor.initialize();
-        return executor;
-    }
     @Bean(name = "cloudConfigSyncExecutor")
     public Executor cloudConfigSyncExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -31,4 +22,92 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    @Bean(name = "configWatchExecutor")
+    public Executor configWatchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1); // 配置变更订阅 (长轮询) 独占一个线程，不占用定时拉取的线程
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("ConfigWatch-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "uploadLaneExecutor")
+    public Executor uploadLaneExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1); // 上传通道只有一个分发线程，按优先级串行组批
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("UploadLane-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "uploadCatchUpExecutor")
+    public Executor uploadCatchUpExecutor(@Value("${cloud.upload.catchUp.parallelism:3}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, parallelism)); // 追赶模式并行发送批次，与分发线程隔离
+        executor.setMaxPoolSize(Math.max(1, parallelism));
+        executor.setQueueCapacity(parallelism * 2);
+        executor.setThreadNamePrefix("UploadCatchUp-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "predictionBatchExecutor")
+    public Executor predictionBatchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1); // 外部预测批量合并线程，按时间窗收集各传感器的请求
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("PredictionBatch-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "latePredictionExecutor")
+    public Executor latePredictionExecutor(@Value("${prediction.late.queueCapacity:1024}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1); // 迟到预测的补写 (数据库更新) 不占用预测批量合并线程
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(Math.max(1, queueCapacity));
+        executor.setThreadNamePrefix("LatePrediction-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "trendPredictionExecutor")
+    public ThreadPoolTaskExecutor trendPredictionExecutor(@Value("${prediction.trend.parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, parallelism)); // 各传感器的趋势预测并行执行，并发数受限
+        executor.setMaxPoolSize(Math.max(1, parallelism));
+        executor.setQueueCapacity(256); // 队列满时本轮剩余传感器记为未完成
+        executor.setThreadNamePrefix("TrendPredict-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "historyStreamExecutor")
+    public ThreadPoolTaskExecutor historyStreamExecutor(@Value("${history.stream.maxConcurrent:4}") int maxConcurrent) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, maxConcurrent)); // 流式历史查询各占一个数据库连接，限制并发数
+        executor.setMaxPoolSize(Math.max(1, maxConcurrent));
+        executor.setQueueCapacity(maxConcurrent * 4);
+        executor.setThreadNamePrefix("HistoryStream-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "alarmDispatchExecutor")
+    public Executor alarmDispatchExecutor(@Value("${alarm.dispatch.maxSinks:4}") int maxSinks) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, maxSinks)); // 每个报警通知渠道独占一个投递线程，某个渠道卡住不影响其他渠道
+        executor.setMaxPoolSize(Math.max(1, maxSinks));
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("AlarmDispatch-");
+        executor.initialize();
+        return executor;
+    }
 }
@@ -0,0 +1,173 @@
+package com.neuedu.tempbackend.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 为某个逻辑端点的请求加上并发舱壁和指标统计的 ClientHttpRequestFactory 装饰器。
+ * <p>
+ * 没有用 ClientHttpRequestInterceptor，因为拦截器会让 RestTemplate 缓冲整个请求体，
+ * 而批量上传依赖流式请求体；这里请求体 (getBody / setBody) 直接透传给底层请求。
+ * 许可在响应关闭 (响应体读完，连接归还连接池) 时才释放，耗时也统计到这一刻，
+ * 因此舱壁限制的是真正占用的连接数，延迟包含响应体传输。
+ */
+public class BulkheadClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final String endpoint;
+    private final ClientHttpRequestFactory delegate;
+    private final Semaphore permits;
+    private final long waitMs;
+    private final HttpEndpointMetrics.EndpointStats stats;
+
+    public BulkheadClientHttpRequestFactory(String endpoint, ClientHttpRequestFactory delegate,
+                                            int maxConcurrent, long waitMs, HttpEndpointMetrics.EndpointStats stats) {
+        this.endpoint = endpoint;
+        this.delegate = delegate;
+        this.permits = new Semaphore(Math.max(1, maxConcurrent));
+        this.waitMs = waitMs;
+        this.stats = stats;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new BulkheadRequest(delegate.createRequest(uri, httpMethod));
+    }
+
+    private final class BulkheadRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+        private final ClientHttpRequest target;
+
+        private BulkheadRequest(ClientHttpRequest target) {
+            this.target = target;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            boolean acquired;
+            try {
+                acquired = waitMs > 0 ? permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS) : permits.tryAcquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for HTTP bulkhead '" + endpoint + "'", e);
+            }
+            if (!acquired) {
+                stats.onRejected();
+                throw new IOException("HTTP bulkhead '" + endpoint + "' is full (" + permits.availablePermits() + " permits available)");
+            }
+            stats.onStart();
+            long start = System.nanoTime();
+            ClientHttpResponse response = null;
+            try {
+                response = target.execute();
+                return new BulkheadResponse(response, start, response.getRawStatusCode() >= 500);
+            } catch (IOException | RuntimeException e) {
+                if (response != null) {
+                    response.close();
+                }
+                stats.onFinish(System.nanoTime() - start, true);
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return target.getBody();
+        }
+
+        @Override
+        public void setBody(Body body) {
+            if (target instanceof StreamingHttpOutputMessage) {
+                ((StreamingHttpOutputMessage) target).setBody(body);
+            } else {
+                try {
+                    body.writeTo(target.getBody());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return target.getHeaders();
+        }
+
+        @Override
+        public String getMethodValue() {
+            return target.getMethodValue();
+        }
+
+        @Override
+        public URI getURI() {
+            return target.getURI();
+        }
+    }
+
+    /**
+     * 关闭时释放许可并记录耗时，只生效一次 (RestTemplate 和调用方都可能关闭响应)。
+     */
+    private final class BulkheadResponse implements ClientHttpResponse {
+        private final ClientHttpResponse target;
+        private final long startNanos;
+        private final boolean error;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private BulkheadResponse(ClientHttpResponse target, long startNanos, boolean error) {
+            this.target = target;
+            this.startNanos = startNanos;
+            this.error = error;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return target.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return target.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return target.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return target.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return target.getBody();
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                target.close();
+            } finally {
+                stats.onFinish(System.nanoTime() - startNanos, error);
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.neuedu.tempbackend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 映射 application.yml 中 http.client.* 配置。
+ * 每个逻辑端点 (prediction、trend、upload、config、configWatch、alarmWebhook、modelArtifact) 拥有独立的连接池、超时和并发上限 (舱壁)，
+ * 某个依赖变慢时只会耗尽它自己的连接和许可，不会占用其他端点需要的资源。
+ */
+@Component
+@ConfigurationProperties(prefix = "http.client")
+public class HttpClientProperties {
+
+    public static final String PREDICTION = "prediction";
+    public static final String TREND = "trend";
+    public static final String UPLOAD = "upload";
+    public static final String CONFIG = "config";
+    public static final String CONFIG_WATCH = "configWatch";
+    public static final String ALARM_WEBHOOK = "alarmWebhook";
+    public static final String MODEL_ARTIFACT = "modelArtifact";
+
+    private Map<String, EndpointProperties> endpoints = new LinkedHashMap<>();
+
+    public Map<String, EndpointProperties> getEndpoints() { return endpoints; }
+    public void setEndpoints(Map<String, EndpointProperties> endpoints) { this.endpoints = endpoints; }
+
+    /**
+     * 获取某个端点的配置，未配置时使用默认值
+     */
+    public EndpointProperties getEndpoint(String name) {
+        return endpoints.getOrDefault(name, new EndpointProperties());
+    }
+
+    /**
+     * 单个逻辑端点的连接池、超时和舱壁配置
+     */
+    public static class EndpointProperties {
+        private int maxConnections = 4;          // 连接池大小
+        private int connectTimeoutMs = 2000;     // 建立 TCP 连接超时
+        private int readTimeoutMs = 10000;       // 读超时 (socket timeout)
+        private int poolAcquireTimeoutMs = 500;  // 从连接池获取连接的超时
+        private int maxConcurrent = 4;           // 同时在途的请求数上限 (舱壁)
+        private int bulkheadWaitMs = 0;          // 舱壁满时最多等待多久，0 表示立即拒绝
+        private long keepAliveMs = 30000;        // 服务端未声明 Keep-Alive 时的连接复用时长
+
+        public int getMaxConnections() { return maxConnections; }
+        public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+        public int getConnectTimeoutMs() { return connectTimeoutMs; }
+        public void setConnectTimeoutMs(int connectTimeoutMs) { this.connectTimeoutMs = connectTimeoutMs; }
+        public int getReadTimeoutMs() { return readTimeoutMs; }
+        public void setReadTimeoutMs(int readTimeoutMs) { this.readTimeoutMs = readTimeoutMs; }
+        public int getPoolAcquireTimeoutMs() { return poolAcquireTimeoutMs; }
+        public void setPoolAcquireTimeoutMs(int poolAcquireTimeoutMs) { this.poolAcquireTimeoutMs = poolAcquireTimeoutMs; }
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+        public int getBulkheadWaitMs() { return bulkheadWaitMs; }
+        public void setBulkheadWaitMs(int bulkheadWaitMs) { this.bulkheadWaitMs = bulkheadWaitMs; }
+        public long getKeepAliveMs() { return keepAliveMs; }
+        public void setKeepAliveMs(long keepAliveMs) { this.keepAliveMs = keepAliveMs; }
+    }
+}
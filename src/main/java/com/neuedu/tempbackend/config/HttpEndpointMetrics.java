@@ -0,0 +1,104 @@
+package com.neuedu.tempbackend.config;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按逻辑端点统计 HTTP 调用的次数、错误、舱壁拒绝、在途数和延迟分布。
+ * 延迟使用固定分桶直方图计数，记录为 O(1)，分位数为桶上界的近似值。
+ */
+@Component
+public class HttpEndpointMetrics {
+
+    // 延迟分桶上界 (毫秒)，最后一个桶为无穷大
+    private static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, Long.MAX_VALUE};
+
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    public EndpointStats forEndpoint(String name) {
+        return stats.computeIfAbsent(name, k -> new EndpointStats());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        stats.forEach((name, s) -> result.put(name, s.snapshot()));
+        return result;
+    }
+
+    /**
+     * 单个端点的计数器
+     */
+    public static class EndpointStats {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length);
+
+        public void onStart() {
+            inFlight.incrementAndGet();
+        }
+
+        public void onFinish(long nanos, boolean error) {
+            inFlight.decrementAndGet();
+            calls.incrementAndGet();
+            if (error) {
+                errors.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long millis = nanos / 1_000_000;
+            int i = 0;
+            while (millis > BUCKET_BOUNDS_MS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+        }
+
+        public void onRejected() {
+            rejected.incrementAndGet();
+        }
+
+        private Long percentileMs(double p) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) {
+                return null;
+            }
+            long target = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return BUCKET_BOUNDS_MS[i] == Long.MAX_VALUE ? maxNanos.get() / 1_000_000 : BUCKET_BOUNDS_MS[i];
+                }
+            }
+            return null;
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            long n = calls.get();
+            m.put("calls", n);
+            m.put("errors", errors.get());
+            m.put("rejected", rejected.get());
+            m.put("inFlight", inFlight.get());
+            m.put("avgMs", n > 0 ? Math.round(totalNanos.get() / 1_000.0 / n) / 1000.0 : null);
+            m.put("maxMs", maxNanos.get() / 1_000_000);
+            m.put("p50Ms", percentileMs(0.50));
+            m.put("p95Ms", percentileMs(0.95));
+            m.put("p99Ms", percentileMs(0.99));
+            return m;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Objects;
 
 /**
  * 映射 application.yml 中 modbus.* 配置的POJO类。
@@ -14,6 +15,7 @@ import java.util.List;
 public class ModbusProperties {
 
     private Serial serial = new Serial(); // 包含了 connections 和 sensors
+    private List<SensorGroupProperties> groups; // 传感器分组 (多传感器联合规则)
     private long pollIntervalMs = 100; // 全局默认轮询间隔，可被单个传感器覆盖
 
     // 新增：Modbus Master 的全局超时和重试设置
@@ -23,6 +25,9 @@ public class ModbusProperties {
     public Serial getSerial() { return serial; }
     public void setSerial(Serial serial) { this.serial = serial; }
 
+    public List<SensorGroupProperties> getGroups() { return groups; }
+    public void setGroups(List<SensorGroupProperties> groups) { this.groups = groups; }
+
     public long getPollIntervalMs() { return pollIntervalMs; }
     public void setPollIntervalMs(long pollIntervalMs) { this.pollIntervalMs = pollIntervalMs; }
 
@@ -92,6 +97,23 @@ public class ModbusProperties {
         public void setParity(Integer parity) { this.parity = parity; }
         public String getEncoding() { return encoding; }
         public void setEncoding(String encoding) { this.encoding = encoding; }
+
+        // 按字段比较，运行时对账据此判断连接是否需要重建
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ConnectionProperties)) return false;
+            ConnectionProperties that = (ConnectionProperties) o;
+            return Objects.equals(name, that.name) && Objects.equals(port, that.port)
+                    && Objects.equals(baudRate, that.baudRate) && Objects.equals(dataBits, that.dataBits)
+                    && Objects.equals(stopBits, that.stopBits) && Objects.equals(parity, that.parity)
+                    && Objects.equals(encoding, that.encoding);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, port, baudRate, dataBits, stopBits, parity, encoding);
+        }
     }
 
     /**
@@ -124,6 +146,61 @@ public class ModbusProperties {
         public void setHumidity(RegisterConfig humidity) { this.humidity = humidity; }
         public RegisterConfig getPressure() { return pressure; }
         public void setPressure(RegisterConfig pressure) { this.pressure = pressure; }
+
+        // 按字段比较，运行时对账据此判断传感器的轮询计划是否需要重建
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SensorProperties)) return false;
+            SensorProperties that = (SensorProperties) o;
+            return slaveId == that.slaveId && Objects.equals(sensorId, that.sensorId)
+                    && Objects.equals(sensorName, that.sensorName) && Objects.equals(connection, that.connection)
+                    && Objects.equals(pollIntervalMs, that.pollIntervalMs) && Objects.equals(temperature, that.temperature)
+                    && Objects.equals(humidity, that.humidity) && Objects.equals(pressure, that.pressure);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sensorId, sensorName, connection, slaveId, pollIntervalMs, temperature, humidity, pressure);
+        }
+    }
+
+    /**
+     * 映射 modbus.groups 下的单个传感器分组，例如同一房间的几个探头。
+     * 规则阈值为 null 或 0 时不检查该规则。
+     */
+    public static class SensorGroupProperties {
+        private String name;              // 分组名称，如 "cold-room"
+        private List<String> sensorIds;   // 组内传感器，引用 sensors 中的 sensorId
+        private int windowSeconds = 60;   // 滑动窗口：组内各传感器取窗口内均值，变化率取窗口首尾
+        private long evaluateIntervalMs = 1000; // 同一分组两次评估的最小间隔
+        private float hysteresis = 0.3f;  // 恢复回差 (°C)
+        private Float maxAverage;         // 组平均温度上限 (°C)
+        private Float maxSpread;          // 组内最高与最低均值之差上限 (°C)
+        private Float maxDivergence;      // 单个传感器偏离其余传感器中位数的上限 (°C)，疑似探头故障；至少 3 个传感器
+        private Float riseRatePerMinute;  // 同时升温：变化率超过该值 (°C/分钟) 的传感器数 >= minRisingSensors
+        private int minRisingSensors = 2;
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public List<String> getSensorIds() { return sensorIds; }
+        public void setSensorIds(List<String> sensorIds) { this.sensorIds = sensorIds; }
+        public int getWindowSeconds() { return windowSeconds; }
+        public void setWindowSeconds(int windowSeconds) { this.windowSeconds = windowSeconds; }
+        public long getEvaluateIntervalMs() { return evaluateIntervalMs; }
+        public void setEvaluateIntervalMs(long evaluateIntervalMs) { this.evaluateIntervalMs = evaluateIntervalMs; }
+        public float getHysteresis() { return hysteresis; }
+        public void setHysteresis(float hysteresis) { this.hysteresis = hysteresis; }
+        public Float getMaxAverage() { return maxAverage; }
+        public void setMaxAverage(Float maxAverage) { this.maxAverage = maxAverage; }
+        public Float getMaxSpread() { return maxSpread; }
+        public void setMaxSpread(Float maxSpread) { this.maxSpread = maxSpread; }
+        public Float getMaxDivergence() { return maxDivergence; }
+        public void setMaxDivergence(Float maxDivergence) { this.maxDivergence = maxDivergence; }
+        public Float getRiseRatePerMinute() { return riseRatePerMinute; }
+        public void setRiseRatePerMinute(Float riseRatePerMinute) { this.riseRatePerMinute = riseRatePerMinute; }
+        public int getMinRisingSensors() { return minRisingSensors; }
+        public void setMinRisingSensors(int minRisingSensors) { this.minRisingSensors = minRisingSensors; }
     }
 
     /**
@@ -146,5 +223,19 @@ public class ModbusProperties {
         public void setScale(double scale) { this.scale = scale; }
         public String getByteOrder() { return byteOrder; }
         public void setByteOrder(String byteOrder) { this.byteOrder = byteOrder; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RegisterConfig)) return false;
+            RegisterConfig that = (RegisterConfig) o;
+            return address == that.address && dataType == that.dataType && Double.compare(scale, that.scale) == 0
+                    && Objects.equals(registerType, that.registerType) && Objects.equals(byteOrder, that.byteOrder);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(registerType, address, dataType, scale, byteOrder);
+        }
     }
 }
@@ -4,6 +4,7 @@ import com.neuedu.tempbackend.util.JSerialCommWrapper;
 import com.serotonin.modbus4j.ModbusFactory;
 import com.serotonin.modbus4j.ModbusMaster;
 import com.serotonin.modbus4j.locator.BaseLocator;
+import com.serotonin.modbus4j.exception.ErrorResponseException;
 import com.serotonin.modbus4j.exception.ModbusInitException;
 import com.serotonin.modbus4j.exception.ModbusTransportException;
 import org.springframework.beans.factory.DisposableBean;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
@@ -41,18 +43,9 @@ public class ModbusRtuManager implements DisposableBean {
 
         for (ModbusProperties.ConnectionProperties connProp : modbusProperties.getSerial().getConnections()) {
             try {
-                // 合并全局默认值和连接特定值
-                String port = connProp.getPort();
-                int baudRate = Optional.ofNullable(connProp.getBaudRate()).orElse(modbusProperties.getSerial().getBaudRate() != null ? modbusProperties.getSerial().getBaudRate() : 9600);
-                int dataBits = Optional.ofNullable(connProp.getDataBits()).orElse(modbusProperties.getSerial().getDataBits() != null ? modbusProperties.getSerial().getDataBits() : 8);
-                int stopBits = Optional.ofNullable(connProp.getStopBits()).orElse(modbusProperties.getSerial().getStopBits() != null ? modbusProperties.getSerial().getStopBits() : 1);
-                int parity = Optional.ofNullable(connProp.getParity()).orElse(modbusProperties.getSerial().getParity() != null ? modbusProperties.getSerial().getParity() : 0);
-                String encoding = Optional.ofNullable(connProp.getEncoding()).orElse(modbusProperties.getSerial().getEncoding() != null ? modbusProperties.getSerial().getEncoding() : "RTU");
-
-                ModbusMaster master = createAndInitMaster(port, baudRate, dataBits, stopBits, parity, encoding);
+                ModbusMaster master = createMaster(connProp);
                 masters.put(connProp.getName(), master);
                 masterLocks.put(connProp.getName(), new ReentrantLock());
-                System.out.println("[ModbusRtuManager] Modbus Master '" + connProp.getName() + "' initialized for port: " + port + ", baud: " + baudRate + ", encoding: " + encoding);
             } catch (Exception e) {
                 System.err.println("[ModbusRtuManager] Failed to initialize Modbus Master for connection '" + connProp.getName() + "' on port " + connProp.getPort() + ": " + e.getMessage());
                 e.printStackTrace(); // 打印完整堆栈，以便调试
@@ -60,6 +53,76 @@ public class ModbusRtuManager implements DisposableBean {
         }
     }
 
+    /**
+     * 按连接配置创建并初始化 ModbusMaster (合并 modbus.serial 的全局默认值)，不注册到管理器。
+     * 运行时新增/修改连接时先创建，成功后再用 {@link #swapMaster} 替换。
+     */
+    public ModbusMaster createMaster(ModbusProperties.ConnectionProperties connProp) throws ModbusInitException {
+        ModbusProperties.Serial serial = modbusProperties.getSerial() != null ? modbusProperties.getSerial() : new ModbusProperties.Serial();
+        // 合并全局默认值和连接特定值
+        String port = connProp.getPort();
+        int baudRate = Optional.ofNullable(connProp.getBaudRate()).orElse(serial.getBaudRate() != null ? serial.getBaudRate() : 9600);
+        int dataBits = Optional.ofNullable(connProp.getDataBits()).orElse(serial.getDataBits() != null ? serial.getDataBits() : 8);
+        int stopBits = Optional.ofNullable(connProp.getStopBits()).orElse(serial.getStopBits() != null ? serial.getStopBits() : 1);
+        int parity = Optional.ofNullable(connProp.getParity()).orElse(serial.getParity() != null ? serial.getParity() : 0);
+        String encoding = Optional.ofNullable(connProp.getEncoding()).orElse(serial.getEncoding() != null ? serial.getEncoding() : "RTU");
+
+        ModbusMaster master = createAndInitMaster(port, baudRate, dataBits, stopBits, parity, encoding);
+        System.out.println("[ModbusRtuManager] Modbus Master '" + connProp.getName() + "' initialized for port: " + port + ", baud: " + baudRate + ", encoding: " + encoding);
+        return master;
+    }
+
+    /**
+     * 替换 (或移除，master 为 null 时) 某个连接的 ModbusMaster，返回原来的 master (可能为 null)，不销毁它。
+     * 在该连接的锁内替换，正在进行的读写完成后才生效；读写在锁内取 master，替换后不会再拿到原来的 master，
+     * 因此调用方可以在返回后安全地销毁它。其他连接不受影响。
+     */
+    public ModbusMaster swapMaster(String connectionName, ModbusMaster master) {
+        ReentrantLock lock = masterLocks.computeIfAbsent(connectionName, name -> new ReentrantLock());
+        lock.lock();
+        try {
+            return master != null ? masters.put(connectionName, master) : masters.remove(connectionName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按新参数重建某个连接的 master。整个过程持有该连接的锁：正在进行的读写完成后才开始，
+     * 等待中的读写拿到的是新 master，不会用到已销毁的 master，也不会遇到 "master 不存在"。
+     * 串口不变时只能先销毁旧 master 再打开 (同一串口不能同时打开两次)；串口改变时先打开新 master，成功后再替换并销毁旧的。
+     * 打开失败时抛出异常，由调用方回滚 (串口不变时该连接此时没有 master)。
+     */
+    public void reopenMaster(String connectionName, ModbusProperties.ConnectionProperties previous,
+                             ModbusProperties.ConnectionProperties next) throws ModbusInitException {
+        ReentrantLock lock = masterLocks.computeIfAbsent(connectionName, name -> new ReentrantLock());
+        lock.lock();
+        try {
+            if (previous != null && Objects.equals(previous.getPort(), next.getPort())) {
+                destroyMaster(connectionName, masters.remove(connectionName));
+                masters.put(connectionName, createMaster(next));
+            } else {
+                ModbusMaster master = createMaster(next);
+                destroyMaster(connectionName, masters.put(connectionName, master));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 销毁一个已从管理器中摘下的 master。 */
+    public void destroyMaster(String connectionName, ModbusMaster master) {
+        if (master == null) {
+            return;
+        }
+        try {
+            master.destroy();
+            System.out.println("[ModbusRtuManager] Modbus Master '" + connectionName + "' destroyed.");
+        } catch (Exception e) {
+            System.err.println("[ModbusRtuManager] Error destroying Modbus Master '" + connectionName + "': " + e.getMessage());
+        }
+    }
+
     private ModbusMaster createAndInitMaster(String port, int baudRate, int dataBits, int stopBits, int parity, String encoding) throws ModbusInitException {
         JSerialCommWrapper wrapper = new JSerialCommWrapper(port, baudRate, dataBits, stopBits, parity);
         ModbusMaster master;
@@ -93,12 +156,6 @@ public class ModbusRtuManager implements DisposableBean {
             System.err.println("[ModbusRtuManager] Register config is invalid or address is -1 for connection: " + connectionName);
             return Optional.empty();
         }
-        ModbusMaster m = masters.get(connectionName);
-        if (m == null) {
-            System.err.println("[ModbusRtuManager] Modbus Master not found for connection: " + connectionName);
-            return Optional.empty();
-        }
-
         ReentrantLock lock = masterLocks.get(connectionName);
         if (lock == null) {
             System.err.println("[ModbusRtuManager] No lock found for connection: " + connectionName + ". This indicates an initialization issue.");
@@ -110,6 +167,12 @@ public class ModbusRtuManager implements DisposableBean {
 
         lock.lock();
         try {
+            // 在锁内取 master：连接被重建或移除时，拿到的总是当前注册的 master
+            ModbusMaster m = masters.get(connectionName);
+            if (m == null) {
+                System.err.println("[ModbusRtuManager] Modbus Master not found for connection: " + connectionName);
+                return Optional.empty();
+            }
             BaseLocator<Number> locator;
             if ("holding".equalsIgnoreCase(registerConfig.getRegisterType())) {
                 locator = BaseLocator.holdingRegister(slaveId, registerConfig.getAddress(), registerConfig.getDataType());
@@ -145,6 +208,27 @@ public class ModbusRtuManager implements DisposableBean {
         }
     }
 
+    /**
+     * 写单个线圈 (功能码 05)，用于驱动声光报警器或通知 PLC。
+     * 与读寄存器共用连接锁，写失败时抛出异常，由调用方决定是否重试。
+     */
+    public void writeCoil(String connectionName, int slaveId, int address, boolean value)
+            throws ModbusTransportException, ErrorResponseException {
+        ReentrantLock lock = masterLocks.get(connectionName);
+        if (lock == null) {
+            throw new IllegalStateException("No lock found for connection '" + connectionName + "'.");
+        }
+        lock.lock();
+        try {
+            ModbusMaster m = getMaster(connectionName);
+            m.setValue(BaseLocator.coilStatus(slaveId, address), value);
+            System.out.println(String.format("[ModbusRtuManager] Wrote coil [conn=%s, slave=%d, addr=%d] = %s",
+                    connectionName, slaveId, address, value));
+        } finally {
+            lock.unlock();
+        }
+    }
+
 
     @Override
     public void destroy() {
@@ -1,15 +1,138 @@
 package com.neuedu.tempbackend.config; // 放在 config 包下，或者任何你觉得合适的地方
 
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按逻辑端点创建相互隔离的 RestTemplate：每个端点有自己的连接池、超时和并发舱壁，
+ * 预测服务挂起时不会占用上传或配置同步需要的连接和线程。
+ */
 @Configuration // 标记这是一个配置类
 public class RestTemplateConfig {
 
-    @Bean // 标记这个方法会生成一个 Spring Bean，并将其注册到 Spring 容器中
-    public RestTemplate restTemplate() {
-        // 可以根据需要配置 RestTemplate，例如设置超时、拦截器等
-        return new RestTemplate();
+    private final HttpClientProperties httpClientProperties;
+    private final HttpEndpointMetrics httpEndpointMetrics;
+    private final List<CloseableHttpClient> clients = new CopyOnWriteArrayList<>();
+
+    public RestTemplateConfig(HttpClientProperties httpClientProperties, HttpEndpointMetrics httpEndpointMetrics) {
+        this.httpClientProperties = httpClientProperties;
+        this.httpEndpointMetrics = httpEndpointMetrics;
+    }
+
+    @Bean // 单点预测 (轮询线程上调用，超时要短)
+    public RestTemplate predictionRestTemplate() {
+        return createRestTemplate(HttpClientProperties.PREDICTION);
+    }
+
+    @Bean // 趋势预测
+    public RestTemplate trendRestTemplate() {
+        return createRestTemplate(HttpClientProperties.TREND);
+    }
+
+    @Bean // 云端数据上传
+    public RestTemplate uploadRestTemplate() {
+        return createRestTemplate(HttpClientProperties.UPLOAD);
+    }
+
+    @Bean // 云端配置同步
+    public RestTemplate configRestTemplate() {
+        return createRestTemplate(HttpClientProperties.CONFIG);
+    }
+
+    @Bean // 云端配置变更订阅 (长轮询，读超时须大于云端挂起时长)
+    public RestTemplate configWatchRestTemplate() {
+        return createRestTemplate(HttpClientProperties.CONFIG_WATCH);
+    }
+
+    @Bean // 报警通知 Webhook (报警分发线程上调用)
+    public RestTemplate alarmWebhookRestTemplate() {
+        return createRestTemplate(HttpClientProperties.ALARM_WEBHOOK);
+    }
+
+    @Bean // 预测模型制品下载 (文件较大、读超时较长，不占用配置同步的连接和许可)
+    public RestTemplate modelArtifactRestTemplate() {
+        return createRestTemplate(HttpClientProperties.MODEL_ARTIFACT);
+    }
+
+    private RestTemplate createRestTemplate(String endpoint) {
+        HttpClientProperties.EndpointProperties props = httpClientProperties.getEndpoint(endpoint);
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                props.getKeepAliveMs(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(props.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(props.getMaxConnections());
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(props.getConnectTimeoutMs())
+                .setSocketTimeout(props.getReadTimeoutMs())
+                .setConnectionRequestTimeout(props.getPoolAcquireTimeoutMs())
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(props.getKeepAliveMs()))
+                .evictExpiredConnections()
+                .evictIdleConnections(props.getKeepAliveMs(), TimeUnit.MILLISECONDS)
+                .setUserAgent("temp-backend/" + endpoint)
+                .build();
+        clients.add(httpClient);
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        // 关闭请求体缓冲：批量上传的紧凑编码直接流式写入连接；响应体同样按流读取
+        requestFactory.setBufferRequestBody(false);
+
+        System.out.println("[RestTemplateConfig] HTTP endpoint '" + endpoint + "': pool=" + props.getMaxConnections()
+                + ", connect=" + props.getConnectTimeoutMs() + "ms, read=" + props.getReadTimeoutMs()
+                + "ms, maxConcurrent=" + props.getMaxConcurrent());
+        return new RestTemplate(new BulkheadClientHttpRequestFactory(endpoint, requestFactory,
+                props.getMaxConcurrent(), props.getBulkheadWaitMs(), httpEndpointMetrics.forEndpoint(endpoint)));
+    }
+
+    // 优先使用服务端 Keep-Alive: timeout=N，否则使用配置的默认复用时长
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAliveMs) {
+        return (response, context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(defaultKeepAliveMs, Long.parseLong(element.getValue()) * 1000);
+                    } catch (NumberFormatException ignored) {
+                        // 使用默认值
+                    }
+                }
+            }
+            return defaultKeepAliveMs;
+        };
+    }
+
+    @PreDestroy
+    public void closeClients() {
+        for (CloseableHttpClient client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                System.err.println("[RestTemplateConfig] Error closing HTTP client: " + e.getMessage());
+            }
+        }
     }
 }
@@ -1,20 +1,42 @@
 package com.neuedu.tempbackend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fazecast.jSerialComm.SerialPort;
+import com.neuedu.tempbackend.config.HttpEndpointMetrics;
 import com.neuedu.tempbackend.config.ModbusProperties;
 import com.neuedu.tempbackend.config.ModbusRtuManager;
 import com.neuedu.tempbackend.model.SensorData;
+import com.neuedu.tempbackend.service.AggregationService;
+import com.neuedu.tempbackend.service.AlarmDispatchBus;
+import com.neuedu.tempbackend.service.AlarmEventService;
+import com.neuedu.tempbackend.service.ConfigSyncService;
+import com.neuedu.tempbackend.service.DownsamplingService;
+import com.neuedu.tempbackend.service.HistoryStreamService;
+import com.neuedu.tempbackend.service.ForecastAccuracyTracker;
+import com.neuedu.tempbackend.service.PredictionService;
+import com.neuedu.tempbackend.service.QueryCache;
+import com.neuedu.tempbackend.service.SensorGroupEventProcessor;
+import com.neuedu.tempbackend.service.SensorTopologyReconciler;
 import com.neuedu.tempbackend.service.TemperaturePollingService;
-import com.neuedu.tempbackend.repository.SensorDataRepository;
-import org.springframework.data.domain.PageRequest;
+import com.neuedu.tempbackend.service.ThresholdAlarmTracker;
+import com.neuedu.tempbackend.service.TrendPredictionService;
+import com.neuedu.tempbackend.service.UploadLaneScheduler;
+import com.neuedu.tempbackend.util.KeysetCursor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -27,18 +49,68 @@ public class TemperatureController {
 
     private final TemperaturePollingService pollingService;
     private final ModbusRtuManager manager;
-    private final SensorDataRepository sensorDataRepository;
+    private final UploadLaneScheduler uploadLaneScheduler;
+    private final HttpEndpointMetrics httpEndpointMetrics;
+    private final HistoryStreamService historyStreamService;
+    private final DownsamplingService downsamplingService;
+    private final AggregationService aggregationService;
+    private final QueryCache queryCache;
+    private final AlarmEventService alarmEventService;
+    private final PredictionService predictionService;
+    private final TrendPredictionService trendPredictionService;
+    private final ForecastAccuracyTracker forecastAccuracyTracker;
+    private final ThresholdAlarmTracker thresholdAlarmTracker;
+    private final SensorGroupEventProcessor sensorGroupEventProcessor;
+    private final AlarmDispatchBus alarmDispatchBus;
+    private final ConfigSyncService configSyncService;
+    private final SensorTopologyReconciler sensorTopologyReconciler;
+    private final AsyncTaskExecutor historyStreamExecutor;
+    private final ObjectMapper objectMapper;
 
+    @Value("${history.stream.timeoutMs:600000}")
+    private long historyStreamTimeoutMs; // 一周范围的流式导出可能持续数分钟，不受容器默认 30 秒异步超时限制
     private final Map<String, ConcurrentHashMap<SseEmitter, ScheduledExecutorService>> sseEmitters = new ConcurrentHashMap<>();
 
 
     public TemperatureController(
             TemperaturePollingService pollingService,
             ModbusRtuManager manager,
-            SensorDataRepository sensorDataRepository) {
+            UploadLaneScheduler uploadLaneScheduler,
+            HttpEndpointMetrics httpEndpointMetrics,
+            HistoryStreamService historyStreamService,
+            DownsamplingService downsamplingService,
+            AggregationService aggregationService,
+            QueryCache queryCache,
+            AlarmEventService alarmEventService,
+            PredictionService predictionService,
+            TrendPredictionService trendPredictionService,
+            ForecastAccuracyTracker forecastAccuracyTracker,
+            ThresholdAlarmTracker thresholdAlarmTracker,
+            SensorGroupEventProcessor sensorGroupEventProcessor,
+            AlarmDispatchBus alarmDispatchBus,
+            ConfigSyncService configSyncService,
+            SensorTopologyReconciler sensorTopologyReconciler,
+            @Qualifier("historyStreamExecutor") AsyncTaskExecutor historyStreamExecutor,
+            ObjectMapper objectMapper) {
         this.pollingService = pollingService;
         this.manager = manager;
-        this.sensorDataRepository = sensorDataRepository;
+        this.uploadLaneScheduler = uploadLaneScheduler;
+        this.httpEndpointMetrics = httpEndpointMetrics;
+        this.historyStreamService = historyStreamService;
+        this.downsamplingService = downsamplingService;
+        this.aggregationService = aggregationService;
+        this.queryCache = queryCache;
+        this.alarmEventService = alarmEventService;
+        this.predictionService = predictionService;
+        this.trendPredictionService = trendPredictionService;
+        this.forecastAccuracyTracker = forecastAccuracyTracker;
+        this.thresholdAlarmTracker = thresholdAlarmTracker;
+        this.sensorGroupEventProcessor = sensorGroupEventProcessor;
+        this.alarmDispatchBus = alarmDispatchBus;
+        this.configSyncService = configSyncService;
+        this.sensorTopologyReconciler = sensorTopologyReconciler;
+        this.historyStreamExecutor = historyStreamExecutor;
+        this.objectMapper = objectMapper;
     }
 
     // 1. 获取所有已配置的传感器列表
@@ -136,39 +208,231 @@ public class TemperatureController {
     }
 
 
-    // 6. 获取某个传感器的最近N条历史数据
+    // 6. 获取某个传感器的最近N条历史数据 (第一页经 QueryCache 缓存，该传感器有新数据写入时失效)
+    // 响应头 X-Next-Cursor 为下一页 (更旧数据) 的游标，带 ?cursor= 再次请求即可继续向前翻页
     @GetMapping("/sensors/{sensorId}/history/{count}")
-    public List<SensorData> getHistoryDataBySensorId(@PathVariable String sensorId, @PathVariable int count) {
-        return pollingService.getRecentSensorDataBySensorId(sensorId, count);
+    public ResponseEntity<?> getHistoryDataBySensorId(@PathVariable String sensorId, @PathVariable int count,
+                                                      @RequestParam(required = false) String cursor) {
+        try {
+            KeysetCursor before = KeysetCursor.decode(cursor);
+            return jsonPage(queryCache.getOrLoadPage(before == null ? "history:" + sensorId + ":" + count : null,
+                    QueryCache.Scope.live(sensorId, QueryCache.ALL_TIERS), count,
+                    () -> pollingService.getRecentSensorDataBySensorId(sensorId, count, before),
+                    d -> new KeysetCursor(d.getTimestamp(), d.getId())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     // 7. 获取所有传感器的最近N条历史数据 (可选)
     @GetMapping("/data/history/{count}")
-    public List<SensorData> getHistoryDataForAllSensors(@PathVariable int count) {
-        return pollingService.getRecentSensorDataForAll(count);
+    public ResponseEntity<?> getHistoryDataForAllSensors(@PathVariable int count,
+                                                         @RequestParam(required = false) String cursor) {
+        try {
+            KeysetCursor before = KeysetCursor.decode(cursor);
+            return jsonPage(queryCache.getOrLoadPage(before == null ? "history:*:" + count : null,
+                    QueryCache.Scope.live(null, QueryCache.ALL_TIERS), count,
+                    () -> pollingService.getRecentSensorDataForAll(count, before),
+                    d -> new KeysetCursor(d.getTimestamp(), d.getId())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
 
-    // 8. 获取某个传感器的报警数据 (例如，最近N条报警)
+    // 8. 获取某个传感器的报警事件 (例如，最近N条报警，来自 alarm_event 日志)，同样支持 cursor 翻页
     @GetMapping("/sensors/{sensorId}/alarms/{count}")
-    public List<SensorData> getAlarmDataBySensorId(@PathVariable String sensorId, @PathVariable int count) {
-        // 使用 PageRequest.of(0, count) 创建 Pageable 对象，页码从0开始
-        return sensorDataRepository.findBySensorIdAndAlarmTriggeredTrueOrderByTimestampDesc(sensorId, PageRequest.of(0, count));
+    public ResponseEntity<?> getAlarmDataBySensorId(@PathVariable String sensorId, @PathVariable int count,
+                                                    @RequestParam(required = false) String cursor) {
+        try {
+            KeysetCursor before = KeysetCursor.decode(cursor);
+            return jsonPage(queryCache.getOrLoadPage(before == null ? "alarms:" + sensorId + ":" + count : null,
+                    QueryCache.Scope.live(sensorId, Set.of(QueryCache.ALARM_TIER)), count,
+                    () -> alarmEventService.findRecent(sensorId, count, before),
+                    a -> new KeysetCursor(a.getTimestamp(), a.getId())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
-    // 9. 获取所有传感器的报警数据 (例如，最近N条报警)
+    // 9. 获取所有传感器的报警事件 (例如，最近N条报警)
     @GetMapping("/data/alarms/{count}")
-    public List<SensorData> getAlarmDataForAllSensors(@PathVariable int count) {
-        // 使用 PageRequest.of(0, count) 创建 Pageable 对象
-        return sensorDataRepository.findByAlarmTriggeredTrueOrderByTimestampDesc(PageRequest.of(0, count));
+    public ResponseEntity<?> getAlarmDataForAllSensors(@PathVariable int count,
+                                                       @RequestParam(required = false) String cursor) {
+        try {
+            KeysetCursor before = KeysetCursor.decode(cursor);
+            return jsonPage(queryCache.getOrLoadPage(before == null ? "alarms:*:" + count : null,
+                    QueryCache.Scope.live(null, Set.of(QueryCache.ALARM_TIER)), count,
+                    () -> alarmEventService.findRecentForAll(count, before),
+                    a -> new KeysetCursor(a.getTimestamp(), a.getId())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private static ResponseEntity<byte[]> jsonPage(QueryCache.JsonPage page) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (page.nextCursor() != null) {
+            builder.header(KeysetCursor.NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return builder.body(page.body());
     }
 
     // 10. 获取某个传感器指定时间范围内的历史数据 (用于图表或更精细分析)
+    // 结果从数据库游标直接流式写出；默认仍是 JSON 数组，Accept: application/x-ndjson 时每行一个对象
+    // 带 limit (或 cursor) 时按页返回，X-Next-Cursor 为下一页 (更新数据) 的游标
+    // 写出在 historyStreamExecutor 上执行 (限制并发的数据库游标数)，超时 history.stream.timeoutMs 只作用于本接口
     @GetMapping("/sensors/{sensorId}/history/range")
-    public List<SensorData> getHistoryDataBySensorIdAndRange(
+    public WebAsyncTask<Void> getHistoryDataBySensorIdAndRange(
+            @PathVariable String sensorId,
+            @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse response) throws IOException {
+        boolean ndjson = accept != null && accept.contains(HistoryStreamService.NDJSON_MEDIA_TYPE);
+        String contentType = ndjson ? HistoryStreamService.NDJSON_MEDIA_TYPE : MediaType.APPLICATION_JSON_VALUE;
+        if (limit == null && cursor == null) {
+            return historyStreamTask(() -> {
+                response.setContentType(contentType);
+                historyStreamService.streamRange(sensorId, start, end, response.getOutputStream(), ndjson);
+                return null;
+            });
+        }
+        KeysetCursor after;
+        try {
+            after = KeysetCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), Map.of("error", e.getMessage()));
+            return null;
+        }
+        int pageSize = Math.max(1, Math.min(limit != null ? limit : 1000, 10000));
+        return historyStreamTask(() -> {
+            List<SensorData> page = historyStreamService.findRangePage(sensorId, start, end, after, pageSize);
+            response.setContentType(contentType);
+            if (page.size() == pageSize) {
+                SensorData last = page.get(page.size() - 1);
+                response.setHeader(KeysetCursor.NEXT_CURSOR_HEADER, new KeysetCursor(last.getTimestamp(), last.getId()).encode());
+            }
+            historyStreamService.writePage(page, response.getOutputStream(), ndjson);
+            return null;
+        });
+    }
+
+    private WebAsyncTask<Void> historyStreamTask(Callable<Void> write) {
+        return new WebAsyncTask<>(historyStreamTimeoutMs, historyStreamExecutor, write);
+    }
+
+    // 11. 上传通道状态 (各优先级通道积压、批大小、RTT、带宽预算)
+    @GetMapping("/upload/status")
+    public Map<String, Object> getUploadStatus() {
+        return uploadLaneScheduler.getStatus();
+    }
+
+    // 12. 各 HTTP 端点 (prediction/trend/upload/config) 的调用次数、错误、舱壁拒绝和延迟分布
+    @GetMapping("/http/metrics")
+    public Map<String, Object> getHttpMetrics() {
+        return httpEndpointMetrics.snapshot();
+    }
+
+    // 13. 图表用的降采样范围查询：服务端按 LTTB 或每桶 min/max 压缩到 maxPoints 个点
+    @GetMapping("/sensors/{sensorId}/history/downsample")
+    public ResponseEntity<?> getDownsampledHistory(
             @PathVariable String sensorId,
             @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
-            @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
-        return sensorDataRepository.findBySensorIdAndTimestampBetweenOrderByTimestampAsc(sensorId, start, end);
+            @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "800") int maxPoints,
+            @RequestParam(defaultValue = DownsamplingService.MODE_LTTB) String mode,
+            @RequestParam(defaultValue = "temperature") String metric) {
+        try {
+            int points = Math.max(3, Math.min(maxPoints, 10000));
+            return ResponseEntity.ok(downsamplingService.downsample(sensorId, start, end, points, mode.toLowerCase(), metric));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // 14. 任意桶宽聚合：bucket 如 15m / 1h / 1d / PT15M，metrics 为 avg,min,max,count,p95 的子集；
+    //     sensorIds 为逗号分隔，不传则为全部已配置传感器
+    @GetMapping("/data/aggregate")
+    public ResponseEntity<?> getAggregatedData(
+            @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam String bucket,
+            @RequestParam(defaultValue = "avg") List<String> metrics,
+            @RequestParam(required = false) List<String> sensorIds,
+            @RequestParam(defaultValue = "temperature") String field) {
+        try {
+            List<String> ids = sensorIds != null && !sensorIds.isEmpty() ? sensorIds
+                    : pollingService.getAllConfiguredSensors().stream()
+                    .map(ModbusProperties.SensorProperties::getSensorId)
+                    .collect(Collectors.toList());
+            List<String> metricNames = metrics.stream().map(m -> m.trim().toLowerCase()).collect(Collectors.toList());
+            return ResponseEntity.ok(aggregationService.aggregate(ids, start, end,
+                    AggregationService.parseBucket(bucket), metricNames, field));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // 15. 查询结果缓存的命中率、淘汰和失效统计
+    @GetMapping("/cache/stats")
+    public Map<String, Object> getQueryCacheStats() {
+        return queryCache.getStats();
+    }
+
+    // 16. 预测后端状态：当前后端、批量合并统计、超出延迟预算后补写/放弃补写的预测数、趋势检查的运行统计
+    @GetMapping("/prediction/status")
+    public Map<String, Object> getPredictionStatus() {
+        Map<String, Object> status = predictionService.getStatus();
+        status.put("latePredictions", pollingService.getLatePredictionCount());
+        status.put("latePredictionsDropped", pollingService.getDroppedLatePredictionCount());
+        status.put("trend", trendPredictionService.getStats());
+        return status;
+    }
+
+    // 17. 预测精度：所有传感器当前预测的滚动 MAE/RMSE/偏差，以及偏差阈值是否被放宽
+    @GetMapping("/prediction/accuracy")
+    public Map<String, Object> getPredictionAccuracy() {
+        return forecastAccuracyTracker.summary();
+    }
+
+    // 18. 单个传感器的预测精度：各模型 (当前预测和候选模型)、各窗口的统计和残差直方图
+    @GetMapping("/sensors/{sensorId}/prediction/accuracy")
+    public Map<String, Object> getSensorPredictionAccuracy(@PathVariable String sensorId) {
+        return forecastAccuracyTracker.snapshot(sensorId);
+    }
+
+    // 19. 实时报警规则状态：各传感器进行中的报警事件，以及累计报警/恢复次数
+    @GetMapping("/alarms/status")
+    public Map<String, Object> getAlarmStatus() {
+        return thresholdAlarmTracker.getStats();
+    }
+
+    // 20. 传感器分组联合规则状态：各分组在线传感器数、平均温度、温差、升温传感器数和进行中的事件
+    @GetMapping("/groups/status")
+    public Map<String, Object> getGroupStatus() {
+        return sensorGroupEventProcessor.getStats();
+    }
+
+    // 21. 报警通知分发状态：各渠道队列积压、投递/失败/丢弃/重试次数、限流等待和投递延迟
+    @GetMapping("/alarms/dispatch/status")
+    public Map<String, Object> getAlarmDispatchStatus() {
+        return alarmDispatchBus.getStats();
+    }
+
+    // 22. 云端配置同步状态：当前配置版本/ETag、304 与未变化次数、实际应用次数、重新调度的轮询任务数和最近一次变化
+    @GetMapping("/config/sync/status")
+    public Map<String, Object> getConfigSyncStatus() {
+        return configSyncService.getStats();
+    }
+
+    // 23. 采集拓扑：当前生效的连接和传感器 (yml + 云端声明)、对账次数、回滚次数和最近一次对账的耗时与变化
+    @GetMapping("/topology/status")
+    public Map<String, Object> getTopologyStatus() {
+        return sensorTopologyReconciler.getStats();
     }
 }
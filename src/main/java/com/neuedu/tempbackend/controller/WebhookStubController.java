@@ -0,0 +1,76 @@
+package com.neuedu.tempbackend.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地 Webhook 桩，只用于联调报警通知渠道：alarm.dispatch.sinks.webhook.url 指向 /api/alarms/webhook-stub 即可。
+ * 默认不注册，设置 alarm.dispatch.webhookStub.enabled=true 后才启用。
+ * status / delayMs 参数用于模拟对端报错和响应慢，延迟由定时线程完成响应，不占用请求线程。
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnProperty(name = "alarm.dispatch.webhookStub.enabled", havingValue = "true")
+public class WebhookStubController {
+
+    private static final int RECEIVED_LIMIT = 100; // 最多保留的通知条数
+    private static final long MAX_DELAY_MS = 30000;
+
+    private final Deque<Map<String, Object>> received = new ArrayDeque<>();
+    private final ScheduledExecutorService delayScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "WebhookStub-");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 1. 接收报警通知，例如 ?status=503&delayMs=2000
+    @PostMapping("/alarms/webhook-stub")
+    public DeferredResult<ResponseEntity<Void>> receive(@RequestBody Map<String, Object> payload,
+                                                        @RequestParam(defaultValue = "200") int status,
+                                                        @RequestParam(defaultValue = "0") long delayMs) {
+        synchronized (received) {
+            received.addFirst(payload);
+            while (received.size() > RECEIVED_LIMIT) {
+                received.removeLast();
+            }
+        }
+        DeferredResult<ResponseEntity<Void>> result = new DeferredResult<>(MAX_DELAY_MS + 5000);
+        ResponseEntity<Void> response = ResponseEntity.status(status).build();
+        if (delayMs <= 0) {
+            result.setResult(response);
+        } else {
+            delayScheduler.schedule(() -> result.setResult(response), Math.min(delayMs, MAX_DELAY_MS), TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    // 2. 最近收到的报警通知，最新在前
+    @GetMapping("/alarms/webhook-stub")
+    public List<Map<String, Object>> getReceived() {
+        synchronized (received) {
+            return new ArrayList<>(received);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        delayScheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,150 @@
+package com.neuedu.tempbackend.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * 报警事件日志 (只追加)。
+ * 与原始样本分开存放：报警查询和报警上传只扫描这张表，样本被稀疏化聚合后报警记录也不会丢失。
+ */
+@Entity
+@Table(name = "alarm_event",
+        indexes = {
+                // 按传感器查看最近报警
+                @Index(name = "idx_alarm_sensor_ts", columnList = "sensorId, timestamp"),
+                // 所有传感器的最近报警 / 翻页
+                @Index(name = "idx_alarm_ts", columnList = "timestamp"),
+                // 上传补货 (未上传、最新优先) 和按时间清理
+                @Index(name = "idx_alarm_uploaded_ts", columnList = "isUploaded, timestamp")
+        })
+public class AlarmEvent {
+
+    // 报警类型
+    public static final String TYPE_HIGH_TEMPERATURE = "HIGH_TEMPERATURE"; // 实际温度高于上限
+    public static final String TYPE_LOW_TEMPERATURE = "LOW_TEMPERATURE"; // 实际温度低于下限
+    public static final String TYPE_DEVIATION = "DEVIATION"; // 实际值与预测值偏差过大
+    public static final String TYPE_PREDICTED = "PREDICTED"; // 趋势预测未来将超阈值
+    public static final String TYPE_RATE_OF_CHANGE = "RATE_OF_CHANGE"; // 温度变化率超限
+    public static final String TYPE_GROUP_AVERAGE = "GROUP_AVERAGE"; // 分组平均温度超限
+    public static final String TYPE_GROUP_SPREAD = "GROUP_SPREAD"; // 分组内温差过大
+    public static final String TYPE_SENSOR_DIVERGENCE = "SENSOR_DIVERGENCE"; // 单个传感器偏离同组其他传感器 (疑似探头故障)
+    public static final String TYPE_GROUP_RISE = "GROUP_RISE"; // 分组内多个传感器同时升温 (例如门未关)
+
+    // 预测性报警的事件阶段 (只有状态变化才记录)
+    public static final String EPISODE_OPENED = "OPENED";
+    public static final String EPISODE_UPDATED = "UPDATED";
+    public static final String EPISODE_RESOLVED = "RESOLVED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    private String deviceId;
+
+    @Column(nullable = false, length = 50)
+    private String sensorId;
+
+    @Column(length = 100)
+    private String sensorName;
+
+    @Column(nullable = false)
+    private LocalDateTime timestamp; // 报警发生时间 (预测性报警为预测的超阈值时间)
+
+    @Column(nullable = false, length = 30)
+    private String type;
+
+    @Column(name = "alarm_value") // VALUE 是 H2 保留字
+    private Float value; // 触发报警的温度值 (预测性报警为预测值)
+    private Float threshold; // 被越过的阈值 (偏差报警为偏差阈值)
+    private Float predictedValue; // 当时的预测温度
+
+    @Column(length = 500)
+    private String message;
+
+    @Column(length = 80)
+    private String episodeId; // 预测性报警所属的事件 (同一次越限过程的 OPENED/UPDATED/RESOLVED 共用)
+
+    @Column(length = 20)
+    private String episodeState; // OPENED / UPDATED / RESOLVED，实时报警为空
+
+    private Boolean isUploaded;
+
+    public AlarmEvent() {
+        this.timestamp = LocalDateTime.now();
+        this.isUploaded = false;
+    }
+
+    public AlarmEvent(String deviceId, String sensorId, String sensorName, LocalDateTime timestamp, String type,
+                      Float value, Float threshold, Float predictedValue, String message) {
+        this.deviceId = deviceId;
+        this.sensorId = sensorId;
+        this.sensorName = sensorName;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.value = value;
+        this.threshold = threshold;
+        this.predictedValue = predictedValue;
+        this.message = message;
+        this.isUploaded = false;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getDeviceId() { return deviceId; }
+    public void setDeviceId(String deviceId) { this.deviceId = deviceId; }
+
+    public String getSensorId() { return sensorId; }
+    public void setSensorId(String sensorId) { this.sensorId = sensorId; }
+
+    public String getSensorName() { return sensorName; }
+    public void setSensorName(String sensorName) { this.sensorName = sensorName; }
+
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public Float getValue() { return value; }
+    public void setValue(Float value) { this.value = value; }
+
+    public Float getThreshold() { return threshold; }
+    public void setThreshold(Float threshold) { this.threshold = threshold; }
+
+    public Float getPredictedValue() { return predictedValue; }
+    public void setPredictedValue(Float predictedValue) { this.predictedValue = predictedValue; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    public String getEpisodeId() { return episodeId; }
+    public void setEpisodeId(String episodeId) { this.episodeId = episodeId; }
+
+    public String getEpisodeState() { return episodeState; }
+    public void setEpisodeState(String episodeState) { this.episodeState = episodeState; }
+
+    public Boolean getUploaded() { return isUploaded; }
+    public void setUploaded(Boolean uploaded) { isUploaded = uploaded; }
+
+    @Override
+    public String toString() {
+        return "AlarmEvent{" +
+                "id=" + id +
+                ", sensorId='" + sensorId + '\'' +
+                ", timestamp=" + timestamp +
+                ", type='" + type + '\'' +
+                ", value=" + value +
+                ", threshold=" + threshold +
+                ", predictedValue=" + predictedValue +
+                ", episodeState='" + episodeState + '\'' +
+                ", isUploaded=" + isUploaded +
+                '}';
+    }
+}
@@ -1,8 +1,11 @@
 package com.neuedu.tempbackend.model;
 
+import com.neuedu.tempbackend.config.ModbusProperties;
+
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * 映射云端 /api/device/{deviceId}/config 接口返回的整个配置结构
@@ -14,6 +17,10 @@ public class EdgeConfig {
     private AlarmThresholdsConfig alarmThresholds; // 全局默认报警阈值
     private UploadScheduleConfig uploadSchedule;
     private List<SensorRuntimeConfig> sensorConfigs; // 每个传感器的运行时配置
+    // 云端声明的串口连接和传感器 (结构与 application.yml 的 modbus.serial.connections/sensors 相同)，
+    // 与 yml 中的定义合并 (同名/同ID以云端为准，yml 中的定义不能被云端移除)，运行时热增删；为 null 表示云端不管理采集拓扑
+    private List<ModbusProperties.ConnectionProperties> connections;
+    private List<ModbusProperties.SensorProperties> sensors;
 
     // Getters and Setters...
     public String getDeviceId() { return deviceId; }
@@ -28,6 +35,10 @@ public class EdgeConfig {
     public void setUploadSchedule(UploadScheduleConfig uploadSchedule) { this.uploadSchedule = uploadSchedule; }
     public List<SensorRuntimeConfig> getSensorConfigs() { return sensorConfigs; }
     public void setSensorConfigs(List<SensorRuntimeConfig> sensorConfigs) { this.sensorConfigs = sensorConfigs; }
+    public List<ModbusProperties.ConnectionProperties> getConnections() { return connections; }
+    public void setConnections(List<ModbusProperties.ConnectionProperties> connections) { this.connections = connections; }
+    public List<ModbusProperties.SensorProperties> getSensors() { return sensors; }
+    public void setSensors(List<ModbusProperties.SensorProperties> sensors) { this.sensors = sensors; }
 
     /**
      * 预测模型配置
@@ -44,6 +55,19 @@ public class EdgeConfig {
         public void setUrl(String url) { this.url = url; }
         public String getChecksum() { return checksum; }
         public void setChecksum(String checksum) { this.checksum = checksum; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PredictionModelConfig)) return false;
+            PredictionModelConfig that = (PredictionModelConfig) o;
+            return Objects.equals(version, that.version) && Objects.equals(url, that.url) && Objects.equals(checksum, that.checksum);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, url, checksum);
+        }
     }
 
     /**
@@ -53,6 +77,11 @@ public class EdgeConfig {
         private Float upper;
         private Float lower;
         private Float deviation;
+        // 有状态规则 (可选，未指定时沿用上一级配置)
+        private Float hysteresis; // 恢复回差 (°C)：超上限后需降到 upper - hysteresis 以下才恢复
+        private Long minDurationMs; // 条件持续多久才报警，例如 "高于 8°C 持续 5 分钟"
+        private Float maxRatePerMinute; // 温度变化率上限 (°C/分钟)，0 表示不检查
+        private Integer rateWindowSeconds; // 变化率的滑动窗口
 
         // Getters and Setters...
         public Float getUpper() { return upper; }
@@ -61,6 +90,31 @@ public class EdgeConfig {
         public void setLower(Float lower) { this.lower = lower; }
         public Float getDeviation() { return deviation; }
         public void setDeviation(Float deviation) { this.deviation = deviation; }
+        public Float getHysteresis() { return hysteresis; }
+        public void setHysteresis(Float hysteresis) { this.hysteresis = hysteresis; }
+        public Long getMinDurationMs() { return minDurationMs; }
+        public void setMinDurationMs(Long minDurationMs) { this.minDurationMs = minDurationMs; }
+        public Float getMaxRatePerMinute() { return maxRatePerMinute; }
+        public void setMaxRatePerMinute(Float maxRatePerMinute) { this.maxRatePerMinute = maxRatePerMinute; }
+        public Integer getRateWindowSeconds() { return rateWindowSeconds; }
+        public void setRateWindowSeconds(Integer rateWindowSeconds) { this.rateWindowSeconds = rateWindowSeconds; }
+
+        // 按字段比较，配置同步据此判断阈值是否变化
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof AlarmThresholdsConfig)) return false;
+            AlarmThresholdsConfig that = (AlarmThresholdsConfig) o;
+            return Objects.equals(upper, that.upper) && Objects.equals(lower, that.lower)
+                    && Objects.equals(deviation, that.deviation) && Objects.equals(hysteresis, that.hysteresis)
+                    && Objects.equals(minDurationMs, that.minDurationMs) && Objects.equals(maxRatePerMinute, that.maxRatePerMinute)
+                    && Objects.equals(rateWindowSeconds, that.rateWindowSeconds);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(upper, lower, deviation, hysteresis, minDurationMs, maxRatePerMinute, rateWindowSeconds);
+        }
     }
 
     /**
@@ -5,11 +5,18 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 import java.time.LocalDateTime;
 
 @Entity // JPA实体注解
-@Table(name = "sensor_data") // 明确指定数据库表名
+@Table(name = "sensor_data", // 明确指定数据库表名
+        indexes = {
+                // 分层历史查询按 (传感器, 存储级别) 定位后按时间 keyset 分页
+                @Index(name = "idx_sensor_level_ts", columnList = "sensorId, storageLevel, timestamp"),
+                // 范围查询 (不区分存储级别) 按 (传感器, 时间) 定位，翻页游标在此索引上 seek
+                @Index(name = "idx_sensor_ts", columnList = "sensorId, timestamp")
+        })
 public class SensorData {
 
     @Id
@@ -0,0 +1,64 @@
+package com.neuedu.tempbackend.repository;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface AlarmEventRepository extends JpaRepository<AlarmEvent, Long> {
+
+    // 某传感器最近的报警 (走 idx_alarm_sensor_ts)；同一时间戳按 id 倒序，与翻页游标顺序一致
+    List<AlarmEvent> findBySensorIdOrderByTimestampDescIdDesc(String sensorId, Pageable pageable);
+
+    // 所有传感器最近的报警 (走 idx_alarm_ts)
+    List<AlarmEvent> findAllByOrderByTimestampDescIdDesc(Pageable pageable);
+
+    /**
+     * 报警翻页：(timestamp, id) 严格早于游标位置的下一页，配合 Pageable 下推 LIMIT。
+     */
+    @Query("SELECT ae FROM AlarmEvent ae WHERE ae.sensorId = :sensorId " +
+            "AND (ae.timestamp < :beforeTs OR (ae.timestamp = :beforeTs AND ae.id < :beforeId)) " +
+            "ORDER BY ae.timestamp DESC, ae.id DESC")
+    List<AlarmEvent> findSensorPageBefore(@Param("sensorId") String sensorId,
+                                          @Param("beforeTs") LocalDateTime beforeTs,
+                                          @Param("beforeId") Long beforeId,
+                                          Pageable pageable);
+
+    @Query("SELECT ae FROM AlarmEvent ae " +
+            "WHERE ae.timestamp < :beforeTs OR (ae.timestamp = :beforeTs AND ae.id < :beforeId) " +
+            "ORDER BY ae.timestamp DESC, ae.id DESC")
+    List<AlarmEvent> findPageBefore(@Param("beforeTs") LocalDateTime beforeTs,
+                                    @Param("beforeId") Long beforeId,
+                                    Pageable pageable);
+
+    // 上传通道补货：未上传的报警，最新优先
+    List<AlarmEvent> findByIsUploadedFalseOrderByTimestampDesc(Pageable pageable);
+
+    long countByIsUploadedFalse();
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AlarmEvent ae SET ae.isUploaded = true WHERE ae.id IN :ids")
+    int markUploadedByIds(@Param("ids") List<Long> ids);
+
+    // 报警日志保留策略：只删除已上传的旧事件
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM AlarmEvent ae WHERE ae.timestamp < :threshold AND ae.isUploaded = true")
+    int deleteUploadedBefore(@Param("threshold") LocalDateTime threshold);
+
+    long countByTimestampBeforeAndIsUploadedFalse(LocalDateTime threshold);
+
+    // 尚未恢复的报警事件：有 OPENED 记录而没有 RESOLVED 记录的 episodeId
+    @Query("SELECT DISTINCT ae.episodeId FROM AlarmEvent ae WHERE ae.episodeId IS NOT NULL AND ae.episodeState = 'OPENED' " +
+            "AND NOT EXISTS (SELECT r.id FROM AlarmEvent r WHERE r.episodeId = ae.episodeId AND r.episodeState = 'RESOLVED')")
+    List<String> findOpenEpisodeIds();
+}
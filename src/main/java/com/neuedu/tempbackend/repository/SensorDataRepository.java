@@ -6,32 +6,59 @@ import org.springframework.stereotype.Repository;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 @Repository
 public interface SensorDataRepository extends JpaRepository<SensorData, Long> {
+
+    // 流式查询每次从数据库取回的行数 (org.hibernate.fetchSize)
+    String STREAM_FETCH_SIZE = "500";
+
     // 获取所有传感器的最新N条数据 (通常是 REALTIME)
     List<SensorData> findAllByOrderByTimestampDesc(Pageable pageable);
 
     // 根据 sensorId 获取某个传感器的最新N条数据 (通常是 REALTIME)
     List<SensorData> findBySensorIdOrderByTimestampDesc(String sensorId, Pageable pageable);
 
-    // 获取某个传感器的报警数据 (无论 storageLevel 是什么，只要报警都查出来)
-    List<SensorData> findBySensorIdAndAlarmTriggeredTrueOrderByTimestampDesc(String sensorId, Pageable pageable);
-
-    // 获取所有传感器的报警数据
-    List<SensorData> findByAlarmTriggeredTrueOrderByTimestampDesc(Pageable pageable);
-
     // 获取未上传的数据 (按 storageLevel 区分)
     List<SensorData> findByIsUploadedFalseAndStorageLevel(String storageLevel);
 
-    // 获取所有未上传的报警数据 (作为兜底)
-    List<SensorData> findByAlarmTriggeredTrueAndIsUploadedFalse();
+    // 上传优先级通道补货用：按时间倒序分页获取某存储级别的未上传数据 (报警事件见 AlarmEventRepository)
+    List<SensorData> findByIsUploadedFalseAndStorageLevelOrderByTimestampDesc(String storageLevel, Pageable pageable);
+
+    // 追赶模式补货：只取指定时间之后的未上传数据
+    List<SensorData> findByIsUploadedFalseAndStorageLevelAndTimestampAfterOrderByTimestampDesc(
+            String storageLevel, LocalDateTime after, Pageable pageable);
+
+    // 未上传数据总量，用于判断是否进入追赶模式
+    long countByIsUploadedFalse();
+
+    /**
+     * 补写迟到的预测值 (预测超出轮询的延迟预算时，样本先不带预测落库)。
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SensorData sd SET sd.predictedTemperature = :predicted WHERE sd.id = :id")
+    int updatePredictedTemperature(@Param("id") Long id, @Param("predicted") Float predicted);
+
+    /**
+     * 批量将指定ID的数据标记为已上传 (替代逐条 saveAll 合并实体)。
+     * @param ids 数据ID列表
+     * @return 更新的行数
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SensorData sd SET sd.isUploaded = true WHERE sd.id IN :ids")
+    int markUploadedByIds(@Param("ids") List<Long> ids);
 
     /**
      * 获取指定时间段、指定存储级别的数据，按时间升序。
@@ -44,6 +71,10 @@ public interface SensorDataRepository extends JpaRepository<SensorData, Long> {
     List<SensorData> findBySensorIdAndTimestampBetweenAndStorageLevelOrderByTimestampAsc(
             String sensorId, LocalDateTime start, LocalDateTime end, String storageLevel);
 
+    // 某传感器在时间段内是否有指定存储级别的数据 (降采样选层时使用，走复合索引)
+    boolean existsBySensorIdAndStorageLevelAndTimestampBetween(
+            String sensorId, String storageLevel, LocalDateTime start, LocalDateTime end);
+
     /**
      * 获取指定时间点之前、指定存储级别的数据。
      * 用于批量删除（例如在压缩后删除旧的实时数据）。
@@ -86,4 +117,48 @@ public interface SensorDataRepository extends JpaRepository<SensorData, Long> {
      */
     List<SensorData> findByTimestampBetweenAndStorageLevelOrderByTimestampAsc(
             LocalDateTime start, LocalDateTime end, String storageLevel);
+
+    /**
+     * 分层历史查询的 keyset 分页：在某个存储级别内，取 (timestamp, id) 严格小于游标位置、
+     * 且不早于 lowerBound 的数据，按 (timestamp, id) 倒序，配合 Pageable 下推 LIMIT。
+     * 依赖 (sensor_id, storage_level, timestamp) 复合索引。
+     */
+    @Query("SELECT sd FROM SensorData sd WHERE sd.sensorId = :sensorId AND sd.storageLevel = :storageLevel " +
+            "AND sd.timestamp >= :lowerBound " +
+            "AND (sd.timestamp < :beforeTs OR (sd.timestamp = :beforeTs AND sd.id < :beforeId)) " +
+            "ORDER BY sd.timestamp DESC, sd.id DESC")
+    List<SensorData> findTierPageBefore(@Param("sensorId") String sensorId,
+                                        @Param("storageLevel") String storageLevel,
+                                        @Param("lowerBound") LocalDateTime lowerBound,
+                                        @Param("beforeTs") LocalDateTime beforeTs,
+                                        @Param("beforeId") Long beforeId,
+                                        Pageable pageable);
+
+    /**
+     * 范围查询的流式版本：Hibernate 以 FORWARD_ONLY 游标逐批 (STREAM_FETCH_SIZE) 取数，
+     * 实体只读、不进二级缓存。必须在事务内消费并在用完后关闭 Stream。
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT sd FROM SensorData sd WHERE sd.sensorId = :sensorId AND sd.timestamp BETWEEN :start AND :end " +
+            "ORDER BY sd.timestamp ASC, sd.id ASC")
+    Stream<SensorData> streamBySensorIdAndTimestampBetween(@Param("sensorId") String sensorId,
+                                                          @Param("start") LocalDateTime start,
+                                                          @Param("end") LocalDateTime end);
+
+    /**
+     * 范围查询的分页版本：(timestamp, id) 严格晚于游标位置且不晚于 end 的下一页，按时间升序。
+     * 第一页传 afterTs = start、afterId = Long.MIN_VALUE (包含 start 时刻的数据)。依赖 (sensor_id, timestamp) 索引。
+     */
+    @Query("SELECT sd FROM SensorData sd WHERE sd.sensorId = :sensorId AND sd.timestamp <= :end " +
+            "AND (sd.timestamp > :afterTs OR (sd.timestamp = :afterTs AND sd.id > :afterId)) " +
+            "ORDER BY sd.timestamp ASC, sd.id ASC")
+    List<SensorData> findRangePageAfter(@Param("sensorId") String sensorId,
+                                        @Param("afterTs") LocalDateTime afterTs,
+                                        @Param("afterId") Long afterId,
+                                        @Param("end") LocalDateTime end,
+                                        Pageable pageable);
 }
@@ -0,0 +1,275 @@
+package com.neuedu.tempbackend.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.neuedu.tempbackend.repository.SensorDataRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 任意桶宽的分组聚合 (avg / min / max / count / p95)。
+ * <p>
+ * 每个传感器按分层窗口逐段读取 (timestamp, 指标值) 投影，按时间顺序单遍累加：
+ * 时间进入下一个桶时输出上一个桶，内存只与一个桶的数据量有关。
+ * 每段选择"单桶读取行数不超过预算"的最细存储级别，例如 1 天的桶不会去扫秒级数据。
+ * 桶按 epoch 对齐 (与查询起点无关)，同一桶在不同查询中结果一致。
+ * 结果放入 {@link QueryCache}：覆盖现在的窗口在对应传感器写入时失效，完全落在过去的窗口缓存到数据可能被压缩或清理为止。
+ */
+@Service
+public class AggregationService {
+
+    public static final Set<String> SUPPORTED_METRICS = Set.of("avg", "min", "max", "count", "p95");
+
+    private static final long BUCKET_WEIGHT_BYTES = 96; // 单个 Bucket 对象的大致内存占用
+
+    private final TieredHistoryQueryPlanner historyQueryPlanner;
+    private final SensorDataRepository sensorDataRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${aggregation.maxRowsPerBucket:600}")
+    private long maxRowsPerBucket; // 选层预算：单个桶最多读取的行数
+
+    @Value("${aggregation.maxBuckets:10000}")
+    private int maxBuckets; // 单次查询 (每个传感器) 最多的桶数
+
+    private final QueryCache queryCache;
+
+    public AggregationService(TieredHistoryQueryPlanner historyQueryPlanner,
+                              SensorDataRepository sensorDataRepository,
+                              PlatformTransactionManager transactionManager,
+                              QueryCache queryCache) {
+        this.historyQueryPlanner = historyQueryPlanner;
+        this.sensorDataRepository = sensorDataRepository;
+        this.queryCache = queryCache;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Bucket(LocalDateTime start, Long count, Double avg, Double min, Double max, Double p95) {}
+
+    public record Segment(String storageLevel, LocalDateTime from, LocalDateTime to) {}
+
+    public record Series(String sensorId, long sourceRows, List<Segment> segments, List<Bucket> buckets) {}
+
+    public record AggregateResult(LocalDateTime start, LocalDateTime end, long bucketSeconds, String field,
+                                  List<String> metrics, boolean cached, long queryMs, List<Series> series) {}
+
+    /**
+     * @throws IllegalArgumentException 参数不合法
+     */
+    public AggregateResult aggregate(Collection<String> sensorIds, LocalDateTime start, LocalDateTime end,
+                                     Duration bucket, Collection<String> metrics, String field) {
+        if (!TieredHistoryQueryPlanner.NUMERIC_FIELDS.contains(field)) {
+            throw new IllegalArgumentException("Unsupported field: " + field);
+        }
+        if (sensorIds == null || sensorIds.isEmpty()) {
+            throw new IllegalArgumentException("sensorIds must not be empty");
+        }
+        List<String> metricList = new ArrayList<>(new LinkedHashSet<>(metrics));
+        if (metricList.isEmpty() || !SUPPORTED_METRICS.containsAll(metricList)) {
+            throw new IllegalArgumentException("metrics must be a subset of " + SUPPORTED_METRICS);
+        }
+        if (!end.isAfter(start)) {
+            throw new IllegalArgumentException("end must be after start");
+        }
+        long bucketMs = bucket.toMillis();
+        if (bucketMs < 1000) {
+            throw new IllegalArgumentException("bucket must be at least 1s");
+        }
+        long startMs = TieredHistoryQueryPlanner.toEpochMs(start);
+        long endMs = TieredHistoryQueryPlanner.toEpochMs(end);
+        if ((endMs - startMs) / bucketMs + 1 > maxBuckets) {
+            throw new IllegalArgumentException("Too many buckets (max " + maxBuckets + ")");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        String cacheKey = "aggregate:" + String.join(",", sensorIds) + "|" + start + "|" + end + "|" + bucketMs + "|" + field + "|" + metricList;
+        AggregateResult hit = queryCache.get(cacheKey);
+        if (hit != null) {
+            return new AggregateResult(hit.start(), hit.end(), hit.bucketSeconds(), hit.field(), hit.metrics(), true, 0L, hit.series());
+        }
+
+        String scopeSensor = sensorIds.size() == 1 ? sensorIds.iterator().next() : null;
+        long version = queryCache.versionOf(scopeSensor);
+        long startNanos = System.nanoTime();
+        boolean wantP95 = metricList.contains("p95");
+        List<Series> series = new ArrayList<>();
+        Set<String> tiers = new HashSet<>();
+        long bucketCount = 0;
+        LocalDateTime validUntil = null;
+        for (String sensorId : new LinkedHashSet<>(sensorIds)) {
+            List<Segment> segments = planSegments(sensorId, start, end, bucketMs, now);
+            BucketAccumulator acc = new BucketAccumulator(bucketMs, metricList, wantP95);
+            Long rows = readOnlyTransaction.execute(status -> {
+                long count = 0;
+                for (Segment segment : segments) {
+                    count += historyQueryPlanner.scanField(sensorId, field, segment.storageLevel(), segment.from(), segment.to(),
+                            segment.to().equals(end), acc::add);
+                }
+                return count;
+            });
+            acc.finish();
+            series.add(new Series(sensorId, rows != null ? rows : 0L, segments, acc.buckets));
+            bucketCount += acc.buckets.size();
+            for (Segment segment : segments) {
+                tiers.add(segment.storageLevel());
+                LocalDateTime until = historyQueryPlanner.stableUntil(segment.storageLevel(), segment.to());
+                validUntil = validUntil == null || until.isBefore(validUntil) ? until : validUntil;
+            }
+        }
+        AggregateResult result = new AggregateResult(start, end, bucketMs / 1000, field, metricList, false,
+                (System.nanoTime() - startNanos) / 1_000_000, series);
+
+        // 覆盖现在的窗口随写入失效；完全过去的窗口缓存到涉及的数据可能被压缩/清理为止
+        long weight = bucketCount * BUCKET_WEIGHT_BYTES + series.size() * 256L;
+        if (end.isAfter(now)) {
+            queryCache.put(cacheKey, result, weight, QueryCache.Scope.live(scopeSensor, tiers), version);
+        } else if (validUntil != null && validUntil.isAfter(now)) {
+            queryCache.put(cacheKey, result, weight, QueryCache.Scope.sealed(scopeSensor, tiers, validUntil), version);
+        }
+        return result;
+    }
+
+    /**
+     * 每段从该窗口自身的存储级别开始，逐级向更粗的级别寻找"单桶行数不超过预算"且有数据的级别；
+     * 都不满足时使用最粗的有数据级别，否则使用窗口自身的级别。
+     */
+    private List<Segment> planSegments(String sensorId, LocalDateTime start, LocalDateTime end, long bucketMs, LocalDateTime now) {
+        List<Segment> segments = new ArrayList<>();
+        for (TieredHistoryQueryPlanner.Tier part : historyQueryPlanner.splitRange(start, end, now)) {
+            long spanMs = Math.min(bucketMs, TieredHistoryQueryPlanner.toEpochMs(part.upperBound()) - TieredHistoryQueryPlanner.toEpochMs(part.lowerBound()));
+            String level = part.storageLevel();
+            if (spanMs / historyQueryPlanner.nominalSpacingMs(level) > maxRowsPerBucket) {
+                for (String coarser : historyQueryPlanner.coarserLevels(level)) {
+                    if (!sensorDataRepository.existsBySensorIdAndStorageLevelAndTimestampBetween(
+                            sensorId, coarser, part.lowerBound(), part.upperBound())) {
+                        continue;
+                    }
+                    level = coarser;
+                    if (spanMs / historyQueryPlanner.nominalSpacingMs(coarser) <= maxRowsPerBucket) {
+                        break;
+                    }
+                }
+            }
+            segments.add(new Segment(level, part.lowerBound(), part.upperBound()));
+        }
+        return segments;
+    }
+
+    /**
+     * 单遍桶累加器：输入按时间升序，桶切换时输出上一个桶。
+     * p95 需要桶内全部值，使用可复用的 double 数组，输出时排序取最近秩。
+     */
+    static final class BucketAccumulator {
+        private final long bucketMs;
+        private final boolean wantAvg;
+        private final boolean wantMin;
+        private final boolean wantMax;
+        private final boolean wantCount;
+        private final boolean wantP95;
+        final List<Bucket> buckets = new ArrayList<>();
+
+        private long index = Long.MIN_VALUE;
+        private long count;
+        private double sum;
+        private double min;
+        private double max;
+        private double[] values;
+
+        BucketAccumulator(long bucketMs, List<String> metrics, boolean wantP95) {
+            this.bucketMs = bucketMs;
+            this.wantAvg = metrics.contains("avg");
+            this.wantMin = metrics.contains("min");
+            this.wantMax = metrics.contains("max");
+            this.wantCount = metrics.contains("count");
+            this.wantP95 = wantP95;
+            this.values = wantP95 ? new double[256] : null;
+        }
+
+        void add(long timeMs, double value) {
+            long bucket = Math.floorDiv(timeMs, bucketMs);
+            if (bucket != index) {
+                flush();
+                index = bucket;
+                count = 0;
+                sum = 0;
+                min = Double.POSITIVE_INFINITY;
+                max = Double.NEGATIVE_INFINITY;
+            }
+            if (wantP95) {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[(int) count] = value;
+            }
+            count++;
+            sum += value;
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+
+        private void flush() {
+            if (index == Long.MIN_VALUE || count == 0) {
+                return;
+            }
+            Double p95 = null;
+            if (wantP95) {
+                Arrays.sort(values, 0, (int) count);
+                p95 = values[(int) Math.max(0, Math.ceil(0.95 * count) - 1)];
+            }
+            buckets.add(new Bucket(TieredHistoryQueryPlanner.fromEpochMs(index * bucketMs),
+                    wantCount ? count : null,
+                    wantAvg ? sum / count : null,
+                    wantMin ? min : null,
+                    wantMax ? max : null,
+                    p95));
+        }
+
+        void finish() {
+            flush();
+            index = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 解析桶宽：支持 ISO-8601 (PT15M) 或简写 30s / 15m / 1h / 1d。
+     */
+    public static Duration parseBucket(String text) {
+        String value = text.trim().toLowerCase();
+        if (value.startsWith("p")) {
+            try {
+                return Duration.parse(value.toUpperCase());
+            } catch (java.time.format.DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid bucket: " + text);
+            }
+        }
+        if (value.length() < 2) {
+            throw new IllegalArgumentException("Invalid bucket: " + text);
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(value.substring(0, value.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid bucket: " + text);
+        }
+        switch (value.charAt(value.length() - 1)) {
+            case 's': return Duration.ofSeconds(amount);
+            case 'm': return Duration.ofMinutes(amount);
+            case 'h': return Duration.ofHours(amount);
+            case 'd': return Duration.ofDays(amount);
+            default: throw new IllegalArgumentException("Invalid bucket: " + text);
+        }
+    }
+}
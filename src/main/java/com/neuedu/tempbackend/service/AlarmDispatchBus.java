@@ -0,0 +1,247 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.AlarmDispatchProperties;
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 报警通知分发总线：把已保存的报警事件异步扇出到各个通知渠道 ({@link AlarmSink})。
+ * <p>
+ * 每个启用的渠道有自己的有界队列、投递线程、重试策略和令牌桶限流 (见 alarm.dispatch.sinks.*)：
+ * <ul>
+ *     <li>publish() 只做非阻塞入队，队列满时丢弃并计数，轮询线程和报警事件落库不会被任何渠道拖慢；</li>
+ *     <li>投递失败按指数退避重试，重试期间该渠道的后续事件排队等待 (保证同一渠道内 OPENED/RESOLVED 的顺序)，
+ *         其他渠道不受影响；</li>
+ *     <li>延迟按渠道统计：从入队到投递成功的端到端延迟，以及单次 deliver() 调用耗时。</li>
+ * </ul>
+ * 云端上传仍走 {@link UploadLaneScheduler} 的 ALARM 通道，不经过本总线。
+ */
+@Service
+public class AlarmDispatchBus {
+
+    private static final long POLL_MS = 500;
+
+    private record Pending(AlarmEvent event, long enqueuedNanos) {}
+
+    /** 单个渠道的队列、限流状态和投递统计。令牌桶只在该渠道的投递线程上修改。 */
+    private static final class Channel {
+        final AlarmSink sink;
+        final AlarmDispatchProperties.SinkProperties config;
+        final Set<String> types;
+        final BlockingQueue<Pending> queue;
+
+        double tokens;
+        long lastRefillNanos;
+
+        final AtomicLong enqueued = new AtomicLong();
+        final AtomicLong delivered = new AtomicLong();
+        final AtomicLong failed = new AtomicLong(); // 重试耗尽后放弃的事件
+        final AtomicLong dropped = new AtomicLong(); // 队列满被丢弃的事件
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong rateLimitedMs = new AtomicLong(); // 因限流等待的累计时长
+        final AtomicLong latencyNanosTotal = new AtomicLong();
+        final AtomicLong latencyNanosMax = new AtomicLong();
+        final AtomicLong callNanosTotal = new AtomicLong();
+        final AtomicLong calls = new AtomicLong();
+        volatile String lastError;
+
+        Channel(AlarmSink sink, AlarmDispatchProperties.SinkProperties config) {
+            this.sink = sink;
+            this.config = config;
+            this.types = Set.copyOf(config.getTypes());
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+            this.tokens = Math.max(1, config.getBurst());
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        boolean accepts(AlarmEvent event) {
+            return types.isEmpty() || types.contains(event.getType());
+        }
+    }
+
+    private final List<AlarmSink> sinks;
+    private final AlarmDispatchProperties properties;
+    private final Executor alarmDispatchExecutor;
+    private final List<Channel> channels = new ArrayList<>();
+    private volatile boolean running;
+
+    @Value("${alarm.dispatch.maxSinks:4}")
+    private int maxSinks; // 与 alarmDispatchExecutor 的线程数一致
+
+    public AlarmDispatchBus(List<AlarmSink> sinks, AlarmDispatchProperties properties,
+                            @Qualifier("alarmDispatchExecutor") Executor alarmDispatchExecutor) {
+        this.sinks = sinks;
+        this.properties = properties;
+        this.alarmDispatchExecutor = alarmDispatchExecutor;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (AlarmSink sink : sinks) {
+            AlarmDispatchProperties.SinkProperties config = properties.getSink(sink.name());
+            if (!config.isEnabled()) {
+                continue;
+            }
+            if (channels.size() >= maxSinks) {
+                System.err.println("报警通知渠道 " + sink.name() + " 未启动：已启用的渠道数超过 alarm.dispatch.maxSinks=" + maxSinks);
+                continue;
+            }
+            Channel channel = new Channel(sink, config);
+            channels.add(channel);
+            alarmDispatchExecutor.execute(() -> deliverLoop(channel));
+        }
+        if (!channels.isEmpty()) {
+            System.out.println("AlarmDispatchBus started. sinks=" + channels.stream().map(c -> c.sink.name()).toList());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 把已保存的报警事件提交给所有启用的渠道，不阻塞调用线程。
+     */
+    public void publish(AlarmEvent event) {
+        if (event == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Channel channel : channels) {
+            if (!channel.accepts(event)) {
+                continue;
+            }
+            if (channel.queue.offer(new Pending(event, now))) {
+                channel.enqueued.incrementAndGet();
+            } else if (channel.dropped.incrementAndGet() % 100 == 1) {
+                System.err.println("报警通知渠道 " + channel.sink.name() + " 队列已满，丢弃报警事件 (累计丢弃 " + channel.dropped.get() + ")");
+            }
+        }
+    }
+
+    private void deliverLoop(Channel channel) {
+        while (running) {
+            Pending pending;
+            try {
+                pending = channel.queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (pending == null) {
+                continue;
+            }
+            try {
+                awaitToken(channel);
+                deliverWithRetry(channel, pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void deliverWithRetry(Channel channel, Pending pending) throws InterruptedException {
+        AlarmDispatchProperties.SinkProperties config = channel.config;
+        int maxAttempts = Math.max(1, config.getMaxAttempts());
+        long backoffMs = Math.max(0, config.getInitialBackoffMs());
+        for (int attempt = 1; running; attempt++) {
+            long callStart = System.nanoTime();
+            try {
+                channel.sink.deliver(pending.event());
+                long end = System.nanoTime();
+                recordCall(channel, end - callStart);
+                long latency = end - pending.enqueuedNanos();
+                channel.latencyNanosTotal.addAndGet(latency);
+                channel.latencyNanosMax.accumulateAndGet(latency, Math::max);
+                channel.delivered.incrementAndGet();
+                return;
+            } catch (Exception e) {
+                recordCall(channel, System.nanoTime() - callStart);
+                channel.lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                if (attempt >= maxAttempts) {
+                    channel.failed.incrementAndGet();
+                    System.err.println("报警通知渠道 " + channel.sink.name() + " 投递失败，已重试 " + (attempt - 1) +
+                            " 次，放弃事件 " + pending.event().getEpisodeId() + ": " + channel.lastError);
+                    return;
+                }
+                channel.retries.incrementAndGet();
+                sleepWhileRunning(backoffMs);
+                backoffMs = Math.min(Math.max(1, backoffMs * 2), Math.max(config.getInitialBackoffMs(), config.getMaxBackoffMs()));
+            }
+        }
+    }
+
+    private static void recordCall(Channel channel, long nanos) {
+        channel.callNanosTotal.addAndGet(nanos);
+        channel.calls.incrementAndGet();
+    }
+
+    /** 令牌桶限流：令牌不足时等待回补，ratePerSecond &lt;= 0 表示不限。 */
+    private void awaitToken(Channel channel) throws InterruptedException {
+        double rate = channel.config.getRatePerSecond();
+        if (rate <= 0) {
+            return;
+        }
+        double capacity = Math.max(1, channel.config.getBurst());
+        long nowNanos = System.nanoTime();
+        channel.tokens = Math.min(capacity, channel.tokens + (nowNanos - channel.lastRefillNanos) / 1_000_000_000.0 * rate);
+        channel.lastRefillNanos = nowNanos;
+        if (channel.tokens < 1) {
+            long waitMs = (long) Math.ceil((1 - channel.tokens) * 1000.0 / rate);
+            channel.rateLimitedMs.addAndGet(waitMs);
+            sleepWhileRunning(waitMs);
+            channel.tokens = 1;
+            channel.lastRefillNanos = System.nanoTime();
+        }
+        channel.tokens -= 1;
+    }
+
+    private void sleepWhileRunning(long ms) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + ms;
+        long remaining;
+        while (running && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            Thread.sleep(Math.min(remaining, POLL_MS));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Channel channel : channels) {
+            Map<String, Object> sink = new LinkedHashMap<>();
+            long delivered = channel.delivered.get();
+            long calls = channel.calls.get();
+            sink.put("queued", channel.queue.size());
+            sink.put("queueCapacity", channel.queue.size() + channel.queue.remainingCapacity());
+            sink.put("enqueued", channel.enqueued.get());
+            sink.put("delivered", delivered);
+            sink.put("failed", channel.failed.get());
+            sink.put("dropped", channel.dropped.get());
+            sink.put("retries", channel.retries.get());
+            sink.put("rateLimitedMs", channel.rateLimitedMs.get());
+            sink.put("latencyAvgMs", delivered > 0 ? channel.latencyNanosTotal.get() / delivered / 1_000_000.0 : null);
+            sink.put("latencyMaxMs", delivered > 0 ? channel.latencyNanosMax.get() / 1_000_000.0 : null);
+            sink.put("callAvgMs", calls > 0 ? channel.callNanosTotal.get() / calls / 1_000_000.0 : null);
+            sink.put("lastError", channel.lastError);
+            stats.put(channel.sink.name(), sink);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,107 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.repository.AlarmEventRepository;
+import com.neuedu.tempbackend.util.KeysetCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 报警事件日志：写入、查询和按独立的保留期清理。
+ * <p>
+ * 实时报警和预测性报警都写成 {@link AlarmEvent}，不再依赖原始样本上的 alarmTriggered 标记；
+ * 写入后立即提交到上传 ALARM 通道和本地通知分发总线 ({@link AlarmDispatchBus})，并失效报警查询缓存。
+ */
+@Service
+public class AlarmEventService {
+
+    private final AlarmEventRepository alarmEventRepository;
+    private final UploadLaneScheduler uploadLaneScheduler;
+    private final QueryCache queryCache;
+    private final AlarmDispatchBus alarmDispatchBus;
+
+    @Value("${alarm.events.retentionDays:30}")
+    private int retentionDays; // 已上传的报警事件保留天数
+
+    public AlarmEventService(AlarmEventRepository alarmEventRepository,
+                             UploadLaneScheduler uploadLaneScheduler,
+                             QueryCache queryCache,
+                             AlarmDispatchBus alarmDispatchBus) {
+        this.alarmEventRepository = alarmEventRepository;
+        this.uploadLaneScheduler = uploadLaneScheduler;
+        this.queryCache = queryCache;
+        this.alarmDispatchBus = alarmDispatchBus;
+    }
+
+    /**
+     * 追加一条报警事件并提交上传和通知。
+     * @return 已保存 (带ID) 的事件；event 为 null 时返回 null
+     */
+    public AlarmEvent record(AlarmEvent event) {
+        if (event == null) {
+            return null;
+        }
+        AlarmEvent saved = alarmEventRepository.save(event);
+        queryCache.onWrite(saved.getSensorId(), QueryCache.ALARM_TIER);
+        uploadLaneScheduler.submit(saved); // 进入 ALARM 通道，优先于积压的实时/历史数据上传
+        alarmDispatchBus.publish(saved); // 只入队，不等待各通知渠道
+        return saved;
+    }
+
+    /**
+     * 批量追加报警事件 (一次 saveAll)，再逐条提交上传和通知。
+     * @return 已保存 (带ID) 的事件
+     */
+    public List<AlarmEvent> recordAll(List<AlarmEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return List.of();
+        }
+        List<AlarmEvent> saved = alarmEventRepository.saveAll(events);
+        for (AlarmEvent event : saved) {
+            queryCache.onWrite(event.getSensorId(), QueryCache.ALARM_TIER);
+            uploadLaneScheduler.submit(event);
+            alarmDispatchBus.publish(event);
+        }
+        return saved;
+    }
+
+    /**
+     * 某传感器最近的报警，按 (timestamp, id) 倒序。
+     * @param before 翻页游标 (上一页最后一条)，null 表示从最新开始
+     */
+    public List<AlarmEvent> findRecent(String sensorId, int count, KeysetCursor before) {
+        if (before == null) {
+            return alarmEventRepository.findBySensorIdOrderByTimestampDescIdDesc(sensorId, PageRequest.of(0, count));
+        }
+        return alarmEventRepository.findSensorPageBefore(sensorId, before.timestamp(), before.id(), PageRequest.of(0, count));
+    }
+
+    public List<AlarmEvent> findRecentForAll(int count, KeysetCursor before) {
+        if (before == null) {
+            return alarmEventRepository.findAllByOrderByTimestampDescIdDesc(PageRequest.of(0, count));
+        }
+        return alarmEventRepository.findPageBefore(before.timestamp(), before.id(), PageRequest.of(0, count));
+    }
+
+    /**
+     * 清理超过保留期且已上传的报警事件；未上传的保留，等待上传重试。
+     */
+    @Scheduled(fixedDelayString = "${alarm.events.purgeIntervalMs:3600000}")
+    public void purgeExpired() {
+        LocalDateTime threshold = LocalDateTime.now().minusDays(retentionDays);
+        int deleted = alarmEventRepository.deleteUploadedBefore(threshold);
+        if (deleted > 0) {
+            queryCache.invalidateTier(QueryCache.ALARM_TIER);
+            System.out.println("已清理 " + deleted + " 条早于 " + threshold + " 的已上传报警事件。");
+        }
+        long pending = alarmEventRepository.countByTimestampBeforeAndIsUploadedFalse(threshold);
+        if (pending > 0) {
+            System.err.println("警告：存在 " + pending + " 条早于 " + threshold + " 且未上传的报警事件。请检查上传服务！");
+        }
+    }
+}
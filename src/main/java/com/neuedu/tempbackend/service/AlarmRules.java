@@ -0,0 +1,101 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.EdgeConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 编译后的报警规则快照 (不可变)：每个传感器的阈值、回差、持续时间和变化率限制已按
+ * 传感器特定阈值（云端） > 全局阈值（云端） > application.yml默认值 解析成基本类型。
+ * <p>
+ * 配置变化时由 {@link AlarmService} 整体重新编译并替换引用，轮询线程只读取当前快照，
+ * 判断过程只有一次 Map 查找和几次 float 比较，不分配对象。
+ */
+public final class AlarmRules {
+
+    /** 报警判定结果，按优先级：超上限 > 超下限 > 预测偏差 > 变化率。 */
+    public enum Kind { NONE, HIGH_TEMPERATURE, LOW_TEMPERATURE, DEVIATION, RATE_OF_CHANGE }
+
+    /** 单个传感器的生效规则。 */
+    public static final class SensorRule {
+        final float upper;
+        final float lower;
+        final float deviation;
+        final float hysteresis;
+        final long minDurationMs;
+        final float maxRatePerMinute; // 0 表示不检查变化率
+        final long rateWindowMs;
+
+        SensorRule(float upper, float lower, float deviation, float hysteresis, long minDurationMs,
+                   float maxRatePerMinute, long rateWindowMs) {
+            this.upper = upper;
+            this.lower = lower;
+            this.deviation = deviation;
+            this.hysteresis = hysteresis;
+            this.minDurationMs = minDurationMs;
+            this.maxRatePerMinute = maxRatePerMinute;
+            this.rateWindowMs = rateWindowMs;
+        }
+
+        /** 用 config 中非 null 的字段覆盖本规则。 */
+        SensorRule overlay(EdgeConfig.AlarmThresholdsConfig config) {
+            if (config == null) {
+                return this;
+            }
+            return new SensorRule(
+                    config.getUpper() != null ? config.getUpper() : upper,
+                    config.getLower() != null ? config.getLower() : lower,
+                    config.getDeviation() != null ? config.getDeviation() : deviation,
+                    config.getHysteresis() != null ? config.getHysteresis() : hysteresis,
+                    config.getMinDurationMs() != null ? config.getMinDurationMs() : minDurationMs,
+                    config.getMaxRatePerMinute() != null ? config.getMaxRatePerMinute() : maxRatePerMinute,
+                    config.getRateWindowSeconds() != null ? config.getRateWindowSeconds() * 1000L : rateWindowMs);
+        }
+
+        public float getUpper() { return upper; }
+        public float getLower() { return lower; }
+        public float getDeviation() { return deviation; }
+        public float getHysteresis() { return hysteresis; }
+        public long getMinDurationMs() { return minDurationMs; }
+        public float getMaxRatePerMinute() { return maxRatePerMinute; }
+        public long getRateWindowMs() { return rateWindowMs; }
+    }
+
+    private final SensorRule defaults; // 没有特定阈值的传感器使用全局阈值
+    private final Map<String, SensorRule> bySensor;
+    private final long version;
+
+    private AlarmRules(SensorRule defaults, Map<String, SensorRule> bySensor, long version) {
+        this.defaults = defaults;
+        this.bySensor = bySensor;
+        this.version = version;
+    }
+
+    /**
+     * @param ymlDefaults application.yml 中的默认规则
+     * @param global      云端全局阈值，null 或字段为 null 时使用 yml 默认值
+     * @param specific    传感器特定阈值，字段为 null 时使用全局值
+     */
+    static AlarmRules compile(SensorRule ymlDefaults, EdgeConfig.AlarmThresholdsConfig global,
+                              Map<String, EdgeConfig.AlarmThresholdsConfig> specific, long version) {
+        SensorRule defaults = ymlDefaults.overlay(global);
+        Map<String, SensorRule> bySensor = new HashMap<>();
+        specific.forEach((sensorId, thresholds) -> bySensor.put(sensorId, defaults.overlay(thresholds)));
+        return new AlarmRules(defaults, bySensor, version);
+    }
+
+    public SensorRule ruleFor(String sensorId) {
+        SensorRule rule = bySensor.get(sensorId);
+        return rule != null ? rule : defaults;
+    }
+
+    /** 没有特定阈值的传感器使用的规则 (全局阈值)。 */
+    public SensorRule defaults() {
+        return defaults;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
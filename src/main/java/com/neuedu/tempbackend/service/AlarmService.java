@@ -1,20 +1,28 @@
 package com.neuedu.tempbackend.service;
 
+import com.neuedu.tempbackend.model.AlarmEvent;
 import com.neuedu.tempbackend.model.EdgeConfig;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * 报警服务，现在可以从云端动态获取阈值。
  * 优先级：传感器特定阈值（云端） > 全局阈值（云端） > application.yml默认值
+ * <p>
+ * 阈值更新时编译成不可变的 {@link AlarmRules} 快照并整体替换，轮询线程用 {@link #evaluate} 做基本类型比较，
+ * 报警信息只在真正报警时才格式化。
  */
 @Service
 public class AlarmService {
 
+    public static final String NO_ALARM = "No Alarm";
+
     // application.yml中的默认阈值，作为云端配置未拉取到或未指定时的最终兜底
     @Value("${alarm.threshold.upper:30.0}")
     private Float appDefaultUpperThreshold;
@@ -25,63 +33,86 @@ public class AlarmService {
     @Value("${alarm.threshold.deviation:2.0}")
     private Float appDefaultDeviationThreshold;
 
-    // 当前生效的全局报警阈值（由云端下发）
-    private volatile Float currentGlobalUpperThreshold;
-    private volatile Float currentGlobalLowerThreshold;
-    private volatile Float currentGlobalDeviationThreshold;
+    @Value("${alarm.rules.hysteresis:0.5}")
+    private float appDefaultHysteresis;
+
+    @Value("${alarm.rules.minDurationMs:0}")
+    private long appDefaultMinDurationMs;
+
+    @Value("${alarm.rules.rateOfChange.maxPerMinute:0}")
+    private float appDefaultMaxRatePerMinute;
+
+    @Value("${alarm.rules.rateOfChange.windowSeconds:60}")
+    private int appDefaultRateWindowSeconds;
+
+    // 当前生效的全局报警阈值（由云端下发），null 表示使用 application.yml 默认值
+    private volatile EdgeConfig.AlarmThresholdsConfig currentGlobalThresholds;
 
     // 持有传感器特定报警阈值的映射，这个Map由ConfigSyncService通过Setter方法更新
     private final ConcurrentMap<String, EdgeConfig.AlarmThresholdsConfig> sensorSpecificThresholds = new ConcurrentHashMap<>();
 
+    // 编译后的规则快照，配置变化时整体替换
+    private volatile AlarmRules rules;
+    private long rulesVersion; // 仅在 synchronized 的 recompile() 中修改
+
+    private final ForecastAccuracyTracker forecastAccuracyTracker;
+
     // 构造函数，不再注入 ConfigSyncService
-    public AlarmService() {
+    public AlarmService(ForecastAccuracyTracker forecastAccuracyTracker) {
+        this.forecastAccuracyTracker = forecastAccuracyTracker;
     }
 
-    // Bean初始化后，设置初始的全局阈值
+    // Bean初始化后，用 application.yml 默认值编译初始规则
     @PostConstruct
     public void init() {
-        this.currentGlobalUpperThreshold = appDefaultUpperThreshold;
-        this.currentGlobalLowerThreshold = appDefaultLowerThreshold;
-        this.currentGlobalDeviationThreshold = appDefaultDeviationThreshold;
+        recompile();
     }
 
     /**
-     * 由 ConfigSyncService 调用，更新全局报警阈值。
+     * 由 ConfigSyncService 调用，一次性应用全局阈值和所有传感器的特定阈值，只编译并替换一次规则快照。
+     * @param globalThresholds 全局阈值 (null 表示回退到 application.yml 默认值)
+     * @param specificThresholds 传感器特定阈值，不在其中的传感器清除特定阈值 (null 表示清除全部特定阈值)
+     */
+    public synchronized void applyThresholds(EdgeConfig.AlarmThresholdsConfig globalThresholds,
+                                             Map<String, EdgeConfig.AlarmThresholdsConfig> specificThresholds) {
+        this.currentGlobalThresholds = globalThresholds;
+        sensorSpecificThresholds.clear();
+        if (specificThresholds != null) {
+            specificThresholds.forEach((sensorId, thresholds) -> {
+                if (sensorId != null && thresholds != null) {
+                    sensorSpecificThresholds.put(sensorId, thresholds);
+                }
+            });
+        }
+        recompile();
+        AlarmRules.SensorRule global = rules.defaults();
+        System.out.println("AlarmService: Applied alarm thresholds (rules v" + rules.getVersion() + "). Global upper: " + global.upper +
+                ", lower: " + global.lower + ", deviation: " + global.deviation + ", hysteresis: " + global.hysteresis +
+                ", minDurationMs: " + global.minDurationMs + ", maxRatePerMinute: " + global.maxRatePerMinute +
+                "; sensor-specific: " + sensorSpecificThresholds.keySet());
+    }
+
+    /**
+     * 更新全局报警阈值。
      * @param newThresholds 从云端获取的全局阈值配置
      */
-    public void updateGlobalThresholds(EdgeConfig.AlarmThresholdsConfig newThresholds) {
+    public synchronized void updateGlobalThresholds(EdgeConfig.AlarmThresholdsConfig newThresholds) {
+        this.currentGlobalThresholds = newThresholds; // 云端全局未指定的字段回退到yml默认
+        recompile();
         if (newThresholds == null) { // 如果云端全局配置为null，回退到yml默认
-            this.currentGlobalUpperThreshold = appDefaultUpperThreshold;
-            this.currentGlobalLowerThreshold = appDefaultLowerThreshold;
-            this.currentGlobalDeviationThreshold = appDefaultDeviationThreshold;
             System.out.println("AlarmService: Global alarm thresholds set to application.yml defaults (cloud config was null).");
             return;
         }
-
-        if (newThresholds.getUpper() != null) {
-            this.currentGlobalUpperThreshold = newThresholds.getUpper();
-        } else {
-            this.currentGlobalUpperThreshold = appDefaultUpperThreshold; // 如果云端全局未指定，则回退到yml默认
-        }
-        if (newThresholds.getLower() != null) {
-            this.currentGlobalLowerThreshold = newThresholds.getLower();
-        } else {
-            this.currentGlobalLowerThreshold = appDefaultLowerThreshold;
-        }
-        if (newThresholds.getDeviation() != null) {
-            this.currentGlobalDeviationThreshold = newThresholds.getDeviation();
-        } else {
-            this.currentGlobalDeviationThreshold = appDefaultDeviationThreshold;
-        }
-        System.out.println("AlarmService: Updated global alarm thresholds. Upper: " + currentGlobalUpperThreshold + ", Lower: " + currentGlobalLowerThreshold + ", Deviation: " + currentGlobalDeviationThreshold);
+        AlarmRules.SensorRule global = rules.defaults();
+        System.out.println("AlarmService: Updated global alarm thresholds. Upper: " + global.upper + ", Lower: " + global.lower + ", Deviation: " + global.deviation);
     }
 
     /**
-     * 由 ConfigSyncService 调用，更新传感器特定的报警阈值。
+     * 更新单个传感器的特定报警阈值。
      * @param sensorId 传感器ID
      * @param thresholds 该传感器的特定阈值 (如果为null，表示清除特定阈值)
      */
-    public void updateSensorSpecificThresholds(String sensorId, EdgeConfig.AlarmThresholdsConfig thresholds) {
+    public synchronized void updateSensorSpecificThresholds(String sensorId, EdgeConfig.AlarmThresholdsConfig thresholds) {
         if (sensorId != null) {
             if (thresholds != null) {
                 sensorSpecificThresholds.put(sensorId, thresholds);
@@ -90,40 +121,81 @@ public class AlarmService {
                 sensorSpecificThresholds.remove(sensorId);
                 System.out.println("AlarmService: Cleared specific alarm thresholds for sensor " + sensorId + ".");
             }
+            recompile();
         }
     }
 
+    private synchronized void recompile() {
+        AlarmRules.SensorRule ymlDefaults = new AlarmRules.SensorRule(appDefaultUpperThreshold, appDefaultLowerThreshold,
+                appDefaultDeviationThreshold, appDefaultHysteresis, appDefaultMinDurationMs,
+                appDefaultMaxRatePerMinute, appDefaultRateWindowSeconds * 1000L);
+        rules = AlarmRules.compile(ymlDefaults, currentGlobalThresholds, sensorSpecificThresholds, ++rulesVersion);
+    }
+
+    /** 当前规则快照中给定传感器的规则 (有状态规则引擎使用)。 */
+    public AlarmRules.SensorRule ruleFor(String sensorId) {
+        return rules.ruleFor(sensorId);
+    }
+
+    /** 按预测精度放宽后的偏差阈值。 */
+    public float effectiveDeviation(String sensorId, float configuredDeviation) {
+        return forecastAccuracyTracker.effectiveDeviation(sensorId, configuredDeviation);
+    }
+
     /**
      * 获取给定传感器的实际生效阈值。
-     * 优先级：传感器特定阈值（云端） > 全局阈值（云端） > application.yml默认值
+     * 偏差阈值在配置值基础上按该传感器当前的预测精度放宽 (见 {@link ForecastAccuracyTracker#effectiveDeviation})。
      * @param sensorId 传感器ID
      * @return 实际生效的阈值配置
      */
     public EdgeConfig.AlarmThresholdsConfig getEffectiveThresholds(String sensorId) {
-        // 尝试获取传感器特定的阈值
-        EdgeConfig.AlarmThresholdsConfig specificThresholds = sensorSpecificThresholds.get(sensorId);
-
-        // 创建一个用于返回的有效阈值对象
-        EdgeConfig.AlarmThresholdsConfig effective = new EdgeConfig.AlarmThresholdsConfig();
-
-        // 为 upper 阈值确定最终值
-        effective.setUpper(
-                specificThresholds != null && specificThresholds.getUpper() != null ? specificThresholds.getUpper() :
-                        (currentGlobalUpperThreshold != null ? currentGlobalUpperThreshold : appDefaultUpperThreshold)
-        );
-        // 为 lower 阈值确定最终值
-        effective.setLower(
-                specificThresholds != null && specificThresholds.getLower() != null ? specificThresholds.getLower() :
-                        (currentGlobalLowerThreshold != null ? currentGlobalLowerThreshold : appDefaultLowerThreshold)
-        );
-        // 为 deviation 阈值确定最终值
-        effective.setDeviation(
-                specificThresholds != null && specificThresholds.getDeviation() != null ? specificThresholds.getDeviation() :
-                        (currentGlobalDeviationThreshold != null ? currentGlobalDeviationThreshold : appDefaultDeviationThreshold)
-        );
+        EdgeConfig.AlarmThresholdsConfig effective = getConfiguredThresholds(sensorId);
+        effective.setDeviation(forecastAccuracyTracker.effectiveDeviation(sensorId, effective.getDeviation()));
         return effective;
     }
 
+    /**
+     * 获取给定传感器的配置阈值 (不含按预测精度的放宽)。
+     * @param sensorId 传感器ID
+     * @return 配置的阈值
+     */
+    public EdgeConfig.AlarmThresholdsConfig getConfiguredThresholds(String sensorId) {
+        AlarmRules.SensorRule rule = rules.ruleFor(sensorId);
+        EdgeConfig.AlarmThresholdsConfig thresholds = new EdgeConfig.AlarmThresholdsConfig();
+        thresholds.setUpper(rule.upper);
+        thresholds.setLower(rule.lower);
+        thresholds.setDeviation(rule.deviation);
+        return thresholds;
+    }
+
+    /** 传感器的配置偏差阈值 (不含放宽)，不分配对象。 */
+    public float getConfiguredDeviation(String sensorId) {
+        return rules.ruleFor(sensorId).deviation;
+    }
+
+    /**
+     * 按当前规则快照判定一个样本：超上限 > 超下限 > 预测偏差。
+     * 偏差先与配置阈值比较，超出时才查询按预测精度放宽后的阈值 (放宽只会提高阈值)。
+     * @param predictedTemperature 预测温度，null 表示不做偏差判断
+     */
+    public AlarmRules.Kind evaluate(String sensorId, float actualTemperature, Float predictedTemperature) {
+        AlarmRules.SensorRule rule = rules.ruleFor(sensorId);
+        if (actualTemperature > rule.upper) {
+            return AlarmRules.Kind.HIGH_TEMPERATURE;
+        }
+        if (actualTemperature < rule.lower) {
+            return AlarmRules.Kind.LOW_TEMPERATURE;
+        }
+        if (predictedTemperature != null) {
+            float actualDeviation = Math.abs(actualTemperature - predictedTemperature);
+            if (actualDeviation > rule.deviation
+                    && actualDeviation > forecastAccuracyTracker.effectiveDeviation(sensorId, rule.deviation)) {
+                return AlarmRules.Kind.DEVIATION;
+            }
+        }
+        return AlarmRules.Kind.NONE;
+    }
+
     /**
      * 检查是否触发报警
      * @param sensorId 传感器ID
@@ -132,28 +204,48 @@ public class AlarmService {
      * @return 如果触发报警则返回true
      */
     public boolean checkAlarm(String sensorId, Float actualTemperature, Float predictedTemperature) {
-        if (actualTemperature == null) {
-            return false;
-        }
-
-        EdgeConfig.AlarmThresholdsConfig thresholds = getEffectiveThresholds(sensorId);
-        Float upper = thresholds.getUpper();
-        Float lower = thresholds.getLower();
-        Float deviation = thresholds.getDeviation();
+        return actualTemperature != null && evaluate(sensorId, actualTemperature, predictedTemperature) != AlarmRules.Kind.NONE;
+    }
 
-        // 1. 绝对值阈值报警
-        if (actualTemperature > upper || actualTemperature < lower) {
-            return true;
+    /**
+     * 按与 {@link #checkAlarm} 相同的规则生成报警事件 (类型、触发值、被越过的阈值)。
+     * @return 未触发报警时返回 null
+     */
+    public AlarmEvent buildAlarmEvent(String deviceId, String sensorId, String sensorName, LocalDateTime timestamp,
+                                      Float actualTemperature, Float predictedTemperature) {
+        if (actualTemperature == null) {
+            return null;
         }
+        return buildAlarmEvent(evaluate(sensorId, actualTemperature, predictedTemperature), deviceId, sensorId, sensorName,
+                timestamp, actualTemperature, predictedTemperature);
+    }
 
-        // 2. 预测偏差报警 (如果有预测值)
-        if (predictedTemperature != null) {
-            float actualDeviation = Math.abs(actualTemperature - predictedTemperature);
-            if (actualDeviation > deviation) {
-                return true;
-            }
+    /**
+     * 用已判定的结果生成报警事件，不再重复判定。
+     * @return kind 为 NONE 时返回 null
+     */
+    public AlarmEvent buildAlarmEvent(AlarmRules.Kind kind, String deviceId, String sensorId, String sensorName,
+                                      LocalDateTime timestamp, float actualTemperature, Float predictedTemperature) {
+        String type;
+        switch (kind) {
+            case HIGH_TEMPERATURE:
+                type = AlarmEvent.TYPE_HIGH_TEMPERATURE;
+                break;
+            case LOW_TEMPERATURE:
+                type = AlarmEvent.TYPE_LOW_TEMPERATURE;
+                break;
+            case DEVIATION:
+                type = AlarmEvent.TYPE_DEVIATION;
+                break;
+            case RATE_OF_CHANGE:
+                type = AlarmEvent.TYPE_RATE_OF_CHANGE;
+                break;
+            default:
+                return null;
         }
-        return false;
+        return new AlarmEvent(deviceId, sensorId, sensorName, timestamp, type, actualTemperature,
+                thresholdOf(kind, sensorId), predictedTemperature,
+                formatMessage(kind, sensorId, sensorName, actualTemperature, predictedTemperature));
     }
 
     /**
@@ -165,24 +257,48 @@ public class AlarmService {
      * @return 报警信息字符串，如果没有报警则返回"No Alarm"
      */
     public String getAlarmMessage(String sensorId, String sensorName, Float actualTemperature, Float predictedTemperature) {
-        String prefix = "传感器 [" + sensorName + " (" + sensorId + ")] ";
-
-        if (actualTemperature == null) return prefix + "未知温度";
-
-        EdgeConfig.AlarmThresholdsConfig thresholds = getEffectiveThresholds(sensorId);
-        Float upper = thresholds.getUpper();
-        Float lower = thresholds.getLower();
-        Float deviation = thresholds.getDeviation();
+        if (actualTemperature == null) {
+            return "传感器 [" + sensorName + " (" + sensorId + ")] 未知温度";
+        }
+        return formatMessage(evaluate(sensorId, actualTemperature, predictedTemperature), sensorId, sensorName,
+                actualTemperature, predictedTemperature);
+    }
 
-        if (actualTemperature > upper) return prefix + "温度过高: " + String.format("%.2f", actualTemperature) + "°C (阈值: " + String.format("%.2f", upper) + "°C)";
-        if (actualTemperature < lower) return prefix + "温度过低: " + String.format("%.2f", actualTemperature) + "°C (阈值: " + String.format("%.2f", lower) + "°C)";
+    /**
+     * 格式化已判定结果的报警信息；kind 为 NONE 时直接返回常量 "No Alarm"，不做任何字符串拼接。
+     */
+    public String formatMessage(AlarmRules.Kind kind, String sensorId, String sensorName,
+                                float actualTemperature, Float predictedTemperature) {
+        if (kind == AlarmRules.Kind.NONE) {
+            return NO_ALARM;
+        }
+        String prefix = "传感器 [" + sensorName + " (" + sensorId + ")] ";
+        float threshold = thresholdOf(kind, sensorId);
+        switch (kind) {
+            case HIGH_TEMPERATURE:
+                return prefix + "温度过高: " + String.format("%.2f", actualTemperature) + "°C (阈值: " + String.format("%.2f", threshold) + "°C)";
+            case LOW_TEMPERATURE:
+                return prefix + "温度过低: " + String.format("%.2f", actualTemperature) + "°C (阈值: " + String.format("%.2f", threshold) + "°C)";
+            case DEVIATION:
+                float actualDeviation = Math.abs(actualTemperature - predictedTemperature);
+                return prefix + "温度异常波动: 实际 " + String.format("%.2f", actualTemperature) + "°C, 预测 " + String.format("%.2f", predictedTemperature) + "°C (偏差: " + String.format("%.2f", actualDeviation) + "°C, 阈值: " + String.format("%.2f", threshold) + "°C)";
+            default:
+                return prefix + "温度变化过快: " + String.format("%.2f", actualTemperature) + "°C (变化率阈值: " + String.format("%.2f", threshold) + "°C/分钟)";
+        }
+    }
 
-        if (predictedTemperature != null) {
-            float actualDeviation = Math.abs(actualTemperature - predictedTemperature);
-            if (actualDeviation > deviation) {
-                return prefix + "温度异常波动: 实际 " + String.format("%.2f", actualTemperature) + "°C, 预测 " + String.format("%.2f", predictedTemperature) + "°C (偏差: " + String.format("%.2f", actualDeviation) + "°C, 阈值: " + String.format("%.2f", deviation) + "°C)";
-            }
+    /** 判定结果对应的被越过的阈值 (偏差为放宽后的值)。 */
+    private float thresholdOf(AlarmRules.Kind kind, String sensorId) {
+        AlarmRules.SensorRule rule = rules.ruleFor(sensorId);
+        switch (kind) {
+            case HIGH_TEMPERATURE:
+                return rule.upper;
+            case LOW_TEMPERATURE:
+                return rule.lower;
+            case RATE_OF_CHANGE:
+                return rule.maxRatePerMinute;
+            default:
+                return forecastAccuracyTracker.effectiveDeviation(sensorId, rule.deviation);
         }
-        return "No Alarm";
     }
 }
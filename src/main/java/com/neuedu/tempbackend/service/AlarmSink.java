@@ -0,0 +1,18 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+
+/**
+ * 报警通知渠道 (Webhook、Modbus 线圈、本地日志文件等)，由 {@link AlarmDispatchBus} 在该渠道独占的线程上调用。
+ * <p>
+ * 新增渠道只需实现本接口并注册为 Spring Bean，再在 alarm.dispatch.sinks.&lt;name&gt; 下启用。
+ * deliver() 抛出异常表示本次投递失败，分发总线按该渠道的重试策略重试；实现不需要自己处理重试和限流。
+ */
+public interface AlarmSink {
+
+    /** 渠道名，对应 alarm.dispatch.sinks 下的配置键。 */
+    String name();
+
+    /** 投递一条已保存的报警事件，失败时抛出异常。 */
+    void deliver(AlarmEvent event) throws Exception;
+}
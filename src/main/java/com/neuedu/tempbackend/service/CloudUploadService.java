@@ -1,138 +1,257 @@
 package com.neuedu.tempbackend.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.neuedu.tempbackend.model.AlarmEvent;
 import com.neuedu.tempbackend.model.SensorData;
+import com.neuedu.tempbackend.repository.AlarmEventRepository;
 import com.neuedu.tempbackend.repository.SensorDataRepository;
+import com.neuedu.tempbackend.util.CompactSensorBatchCodec;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.http.StreamingHttpOutputMessage;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class CloudUploadService {
 
     private final RestTemplate restTemplate;
     private final SensorDataRepository sensorDataRepository;
+    private final AlarmEventRepository alarmEventRepository;
     private final ObjectMapper objectMapper;
+    private final ObjectWriter jsonBatchWriter; // 写入请求体流后不关闭底层连接流，由 RestTemplate 负责
     @Value("${cloud.upload.url:http://your-cloud-backend.com/api/sensor-data}")
     private String cloudUploadUrl;
 
-    public CloudUploadService(RestTemplate restTemplate, SensorDataRepository sensorDataRepository, ObjectMapper objectMapper) {
-        this.restTemplate = restTemplate;
-        this.sensorDataRepository = sensorDataRepository;
-        this.objectMapper = objectMapper;
-    }
-
-    /**
-     * 上传单条SensorData到云端
-     * @param data 要上传的SensorData对象
-     * @return 是否上传成功
-     */
-    @Async("cloudUploadExecutor")
-    @Transactional
-    public void uploadData(SensorData data) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    // 报警事件上传地址，未配置时使用 cloud.upload.url + "/alarms"
+    @Value("${cloud.upload.alarmUrl:}")
+    private String alarmUploadUrl;
 
-        String jsonPayload = null;
-        try {
-            jsonPayload = objectMapper.writeValueAsString(data);
-            System.out.println("====== 发送单条数据到云端 ======");
-            System.out.println("目标URL: " + cloudUploadUrl);
-            System.out.println("请求Body (JSON):\n" + jsonPayload);
-            System.out.println("================================");
+    // 批量上传编码：auto (先尝试紧凑编码，云端不支持时回退 JSON) | compact | json
+    @Value("${cloud.upload.encoding:auto}")
+    private String uploadEncoding;
 
-            HttpEntity<SensorData> request = new HttpEntity<>(data, headers);
-            String response = restTemplate.postForObject(cloudUploadUrl, request, String.class);
-            System.out.println("单条数据上传成功响应: " + response);
+    // auto 模式下云端拒绝紧凑编码后，多久再重新尝试 (分钟)
+    @Value("${cloud.upload.compactRetryMinutes:60}")
+    private long compactRetryMinutes;
 
-            data.setUploaded(true);
-            sensorDataRepository.save(data);
-            System.out.println("传感器 [" + data.getSensorName() + " (" + data.getSensorId() + ")] 最新数据通过 A 通道上传成功，并更新本地状态。");
+    // 紧凑编码被云端拒绝后的禁用截止时间 (epoch 毫秒)，0 表示可用
+    private final AtomicLong compactDisabledUntil = new AtomicLong(0);
 
-        } catch (Exception e) {
-            System.err.println("Failed to upload single data for sensor " + (data != null ? data.getSensorId() : "N/A") + " to cloud: " + e.getMessage());
-            if (jsonPayload != null) {
-                System.err.println("失败的请求Body (JSON):\n" + jsonPayload);
-            }
-        }
+    public CloudUploadService(@Qualifier("uploadRestTemplate") RestTemplate restTemplate, SensorDataRepository sensorDataRepository,
+                              AlarmEventRepository alarmEventRepository, ObjectMapper objectMapper) {
+        this.restTemplate = restTemplate;
+        this.sensorDataRepository = sensorDataRepository;
+        this.alarmEventRepository = alarmEventRepository;
+        this.objectMapper = objectMapper;
+        this.jsonBatchWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
+
     /**
-     * 批量上传SensorData到云端
+     * 同步上传一个批次，成功后用一条 UPDATE 把这些行标记为已上传。
+     * 供 UploadLaneScheduler 的分发线程调用，返回的字节数和耗时用于带宽预算和批大小自适应。
      * @param dataList 要上传的SensorData列表
-     * @return 是否上传成功
+     * @return 本次上传结果
      */
-    @Async("cloudUploadExecutor") // 使用自定义的异步执行器
-    @Transactional
-    public void uploadBatchData(List<SensorData> dataList) { // 返回值改为 void
+    public BatchResult sendBatch(List<SensorData> dataList) {
         if (dataList == null || dataList.isEmpty()) {
-            return;
+            return new BatchResult(true, 0, 0);
         }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<List<SensorData>> request = new HttpEntity<>(dataList, headers);
+        long start = System.currentTimeMillis();
         try {
             String batchUploadUrl = cloudUploadUrl + "/batch";
             // 注意：cloudUploadUrl 应该包含完整的协议和端口
-            String response = restTemplate.postForObject(batchUploadUrl, request, String.class);
-            System.out.println("Data uploaded to cloud (batch): " + response + " records: " + dataList.size());
+            PostResult result = postBatch(batchUploadUrl, dataList);
+            long rttMs = System.currentTimeMillis() - start;
+            System.out.println("Data uploaded to cloud (batch): " + result.response() + " records: " + dataList.size()
+                    + ", bytes: " + result.requestBytes() + ", rtt: " + rttMs + "ms");
 
             // 批量上传成功后，更新本地数据库中所有被上传数据的 isUploaded 状态
-            dataList.forEach(data -> data.setUploaded(true));
-            sensorDataRepository.saveAll(dataList); // 批量更新已上传的数据状态
+            List<Long> ids = new ArrayList<>(dataList.size());
+            for (SensorData data : dataList) {
+                data.setUploaded(true);
+                if (data.getId() != null) {
+                    ids.add(data.getId());
+                }
+            }
+            if (!ids.isEmpty()) {
+                sensorDataRepository.markUploadedByIds(ids);
+            }
             System.out.println("成功上传并更新 " + dataList.size() + " 条数据为已上传状态。");
+            return new BatchResult(true, result.requestBytes(), rttMs);
 
         } catch (Exception e) {
             System.err.println("Failed to upload batch data to cloud: " + e.getMessage());
             // 如果失败，数据仍标记为 isUploaded = false。
+            return new BatchResult(false, 0, System.currentTimeMillis() - start);
         }
     }
 
-    public void uploadPendingDataToCloudTask(int uploadBatchSize) {
-        System.out.println("开始检查并上传未上传数据到云端...");
+    /**
+     * 同步上传一批报警事件 (JSON 数组)，成功后标记为已上传。报警批次很小，不走紧凑编码。
+     * @param events 要上传的报警事件
+     * @return 本次上传结果
+     */
+    public BatchResult sendAlarmBatch(List<AlarmEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return new BatchResult(true, 0, 0);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            String url = alarmUploadUrl == null || alarmUploadUrl.isBlank() ? cloudUploadUrl + "/alarms" : alarmUploadUrl;
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            byte[] payload = objectMapper.writeValueAsBytes(events);
+            String response = restTemplate.postForObject(url, new HttpEntity<>(payload, headers), String.class);
+            long rttMs = System.currentTimeMillis() - start;
+            System.out.println("Alarm events uploaded to cloud: " + response + " events: " + events.size() + ", rtt: " + rttMs + "ms");
+
+            List<Long> ids = new ArrayList<>(events.size());
+            for (AlarmEvent event : events) {
+                event.setUploaded(true);
+                if (event.getId() != null) {
+                    ids.add(event.getId());
+                }
+            }
+            if (!ids.isEmpty()) {
+                alarmEventRepository.markUploadedByIds(ids);
+            }
+            return new BatchResult(true, payload.length, rttMs);
+        } catch (Exception e) {
+            System.err.println("Failed to upload alarm events to cloud: " + e.getMessage());
+            return new BatchResult(false, 0, System.currentTimeMillis() - start);
+        }
+    }
 
-        List<SensorData> allPendingData = new ArrayList<>();
+    /**
+     * 单个批次的上传结果
+     * @param success 是否成功
+     * @param bytes 实际发送的请求体字节数
+     * @param rttMs 请求往返耗时
+     */
+    public record BatchResult(boolean success, long bytes, long rttMs) {}
 
-        // 1. 查找 REALTIME 存储级别且未上传的数据
-        allPendingData.addAll(sensorDataRepository.findByIsUploadedFalseAndStorageLevel("REALTIME"));
+    private record PostResult(String response, long requestBytes, HttpHeaders responseHeaders) {}
 
-        // 2. 查找 MINUTELY_COMPACTED 存储级别且未上传的数据
-        allPendingData.addAll(sensorDataRepository.findByIsUploadedFalseAndStorageLevel("MINUTELY_COMPACTED"));
+    /**
+     * 按协商结果选择编码发送一个批次。auto 模式下紧凑编码被云端拒绝 (400/406/415) 时，
+     * 本批次立即改用 JSON 重发，并在 compactRetryMinutes 内不再尝试紧凑编码。
+     */
+    private PostResult postBatch(String batchUploadUrl, List<SensorData> dataList) {
+        if (!shouldUseCompactEncoding()) {
+            return postJsonBatch(batchUploadUrl, dataList);
+        }
+        try {
+            return postCompactBatch(batchUploadUrl, dataList);
+        } catch (HttpClientErrorException e) {
+            if ("compact".equalsIgnoreCase(uploadEncoding) || !isEncodingRejected(e.getStatusCode())) {
+                throw e;
+            }
+            compactDisabledUntil.set(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(compactRetryMinutes));
+            System.err.println("云端不支持紧凑编码 (" + e.getRawStatusCode() + ")，回退为 JSON，" + compactRetryMinutes + " 分钟后重试协商。");
+            return postJsonBatch(batchUploadUrl, dataList);
+        }
+    }
 
-        // 3. 查找 HOURLY_COMPACTED 存储级别且未上传的数据
-        allPendingData.addAll(sensorDataRepository.findByIsUploadedFalseAndStorageLevel("HOURLY_COMPACTED"));
+    private boolean shouldUseCompactEncoding() {
+        if ("json".equalsIgnoreCase(uploadEncoding)) {
+            return false;
+        }
+        if ("compact".equalsIgnoreCase(uploadEncoding)) {
+            return true;
+        }
+        return System.currentTimeMillis() >= compactDisabledUntil.get();
+    }
 
-        // 4. 查找所有未上传的报警数据 (作为兜底，防止通过 A 通道上传失败)
-        allPendingData.addAll(sensorDataRepository.findByAlarmTriggeredTrueAndIsUploadedFalse());
+    private static boolean isEncodingRejected(HttpStatus status) {
+        return status == HttpStatus.UNSUPPORTED_MEDIA_TYPE
+                || status == HttpStatus.BAD_REQUEST
+                || status == HttpStatus.NOT_ACCEPTABLE;
+    }
 
-        // 去重并限制上传数量
-        List<SensorData> dataToUpload = allPendingData.stream()
-                .distinct() // 根据 equals/hashCode 去重
-                .limit(uploadBatchSize)
-                .collect(Collectors.toList());
+    /**
+     * 紧凑编码：编码器直接写入请求体输出流 (流式请求体)，不在内存中构造 payload。
+     */
+    private PostResult postCompactBatch(String batchUploadUrl, List<SensorData> dataList) {
+        return postStreaming(batchUploadUrl, MediaType.parseMediaType(CompactSensorBatchCodec.MEDIA_TYPE),
+                CompactSensorBatchCodec.CONTENT_ENCODING, out -> CompactSensorBatchCodec.encode(dataList, out));
+    }
 
-        if (dataToUpload.isEmpty()) {
-            System.out.println("没有待上传数据。");
-            return;
+    /**
+     * JSON 编码：同样由 Jackson 直接写入请求体输出流，大批次 (追赶模式) 不会在内存中整体序列化。
+     */
+    private PostResult postJsonBatch(String batchUploadUrl, List<SensorData> dataList) {
+        PostResult result = postStreaming(batchUploadUrl, MediaType.APPLICATION_JSON, null,
+                out -> jsonBatchWriter.writeValue(out, dataList));
+        // 云端可通过 Accept-Post 响应头声明支持紧凑编码，此时提前结束回退期
+        List<String> acceptPost = result.responseHeaders().get("Accept-Post");
+        if (acceptPost != null && acceptPost.stream().anyMatch(v -> v.contains(CompactSensorBatchCodec.MEDIA_TYPE))) {
+            compactDisabledUntil.set(0);
         }
+        return result;
+    }
+
+    private PostResult postStreaming(String url, MediaType contentType, String contentEncoding, StreamingHttpOutputMessage.Body payload) {
+        long[] written = new long[1];
+        return restTemplate.execute(url, HttpMethod.POST, request -> {
+            HttpHeaders headers = request.getHeaders();
+            headers.setContentType(contentType);
+            if (contentEncoding != null) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+            }
+            headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+            StreamingHttpOutputMessage.Body body = out -> {
+                CountingOutputStream counting = new CountingOutputStream(out);
+                payload.writeTo(counting);
+                counting.flush();
+                written[0] = counting.count;
+            };
+            if (request instanceof StreamingHttpOutputMessage) {
+                ((StreamingHttpOutputMessage) request).setBody(body);
+            } else {
+                body.writeTo(request.getBody());
+            }
+        }, r -> new PostResult(StreamUtils.copyToString(r.getBody(), StandardCharsets.UTF_8), written[0], r.getHeaders()));
+    }
 
-        System.out.println("发现 " + dataToUpload.size() + " 条待上传数据，提交给异步批量上传。");
+    /**
+     * 统计实际写入请求体的字节数
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
 
-        // 直接调用异步方法，它会立即返回。
-        // isUploaded 状态的更新和保存逻辑已移至 uploadBatchData 的异步方法中。
-        this.uploadBatchData(dataToUpload); // 注意：这里调用的是 this.uploadBatchData，而不是直接调用
-        // 这样才能确保 Spring AOP 代理生效，实现异步调用。
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
 
-        // 此方法不再需要等待批量上传的结果，因为结果会在异步线程中处理并更新数据库。
-        System.out.println("批量上传任务已提交。");
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
     }
 }
@@ -3,18 +3,33 @@ package com.neuedu.tempbackend.service;
 import com.neuedu.tempbackend.config.ModbusProperties;
 import com.neuedu.tempbackend.model.EdgeConfig;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 负责从云端拉取配置并动态更新
+ * 负责从云端拉取配置并动态更新：长轮询订阅配置变化 (秒级生效)，订阅不可用时按间隔条件拉取。
  */
 @Service
 public class ConfigSyncService {
@@ -22,6 +37,10 @@ public class ConfigSyncService {
     private final RestTemplate restTemplate;
     private final AlarmService alarmService; // <-- 保持注入
     private final TemperaturePollingService temperaturePollingService; // <-- 保持注入
+    private final PredictionModelRuntime predictionModelRuntime;
+    private final SensorTopologyReconciler sensorTopologyReconciler;
+    private final RestTemplate configWatchRestTemplate;
+    private final Executor configWatchExecutor;
 
     @Value("${edge.deviceId:jetson-001}")
     private String deviceId;
@@ -31,82 +50,366 @@ public class ConfigSyncService {
 
     // 存储当前生效的配置 (可选，如果其他地方需要访问完整配置)
     private volatile EdgeConfig currentConfig;
+    private volatile String configEtag; // 当前配置对应的 ETag，下次请求作为 If-None-Match
+
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong(); // 云端返回 304
+    private final AtomicLong unchangedCount = new AtomicLong(); // 返回了配置但内容未变化
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong rescheduledCount = new AtomicLong(); // 因轮询间隔变化重新调度的任务数
+    private final AtomicLong failureCount = new AtomicLong();
+    private volatile LocalDateTime lastSyncAt;
+    private volatile String lastDiff;
+
+    // ---- 配置变更订阅 (长轮询) ----
+    @Value("${cloud.config.watch.enabled:true}")
+    private boolean watchEnabled;
+
+    @Value("${cloud.config.watch.url:}")
+    private String watchUrl; // 为空时使用 cloud.config.url + "/watch"
+
+    @Value("${cloud.config.watch.waitSeconds:30}")
+    private int watchWaitSeconds; // 云端最多挂起请求多久 (须小于 http.client.endpoints.configWatch.readTimeoutMs)
+
+    @Value("${cloud.config.watch.reconnectBaseMs:1000}")
+    private long watchReconnectBaseMs;
+
+    @Value("${cloud.config.watch.reconnectMaxMs:60000}")
+    private long watchReconnectMaxMs;
+
+    @Value("${cloud.config.watch.unsupportedRetryMs:600000}")
+    private long watchUnsupportedRetryMs; // 云端没有订阅接口时，多久重新尝试
+
+    @Value("${cloud.config.watch.safetyPullMs:600000}")
+    private long watchSafetyPullMs; // 订阅正常时兜底拉取的间隔
+
+    private volatile boolean watchRunning;
+    private volatile boolean watchConnected;
+    private volatile boolean watchSupported = true;
+    private volatile LocalDateTime lastWatchEventAt;
+    private volatile String lastWatchError;
+    private final AtomicLong watchEvents = new AtomicLong(); // 订阅推送的配置变化
+    private final AtomicLong watchTimeouts = new AtomicLong(); // 挂起到期无变化 (304)
+    private final AtomicLong watchFailures = new AtomicLong();
+    private final AtomicLong watchReconnects = new AtomicLong();
+    private final AtomicLong watchThrottled = new AtomicLong(); // 响应过快 (云端未挂起请求) 时推迟下一次请求
+    private final AtomicLong pullsSkipped = new AtomicLong(); // 订阅正常时跳过的定时拉取
 
     @Autowired
-    public ConfigSyncService(RestTemplate restTemplate, AlarmService alarmService, TemperaturePollingService temperaturePollingService) {
+    public ConfigSyncService(@Qualifier("configRestTemplate") RestTemplate restTemplate, AlarmService alarmService,
+                             TemperaturePollingService temperaturePollingService, PredictionModelRuntime predictionModelRuntime,
+                             @Qualifier("configWatchRestTemplate") RestTemplate configWatchRestTemplate,
+                             @Qualifier("configWatchExecutor") Executor configWatchExecutor,
+                             SensorTopologyReconciler sensorTopologyReconciler) {
         this.restTemplate = restTemplate;
         this.alarmService = alarmService;
         this.temperaturePollingService = temperaturePollingService;
+        this.predictionModelRuntime = predictionModelRuntime;
+        this.configWatchRestTemplate = configWatchRestTemplate;
+        this.configWatchExecutor = configWatchExecutor;
+        this.sensorTopologyReconciler = sensorTopologyReconciler;
     }
 
-    // 应用启动后立即尝试同步一次配置
+    // 应用启动后立即尝试同步一次配置，然后建立配置变更订阅
     @PostConstruct
     public void init() {
         syncConfigFromCloud();
+        if (watchEnabled) {
+            watchRunning = true;
+            configWatchExecutor.execute(this::watchLoop);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        watchRunning = false;
     }
 
     /**
-     * 定时从云端拉取配置。例如每5分钟拉取一次。
-     * 可以配置在 application.yml 中：cloud.config.syncIntervalMs=300000
+     * 定时从云端拉取配置。
+     * 使用条件请求：带上次响应的 ETag 发送 If-None-Match，云端返回 304 时不做任何事；
+     * 云端不支持 ETag 时，lastUpdated 与当前配置相同也视为未变化。
+     * 配置有变化时先与当前配置做结构化比较 ({@link EdgeConfigDiff})，只应用变化的部分，
+     * 轮询间隔未变的传感器不会被取消/重新调度。因此同步间隔可以配置得较短 (cloud.config.syncIntervalMs)。
+     * <p>
+     * 长轮询订阅 (见 {@link #watchLoop()}) 正常时定时拉取只是兜底，每 watch.safetyPullMs 才真正执行一次；
+     * 订阅断开后立即恢复按 syncIntervalMs 拉取。
      */
-    @Scheduled(fixedDelayString = "${cloud.config.syncIntervalMs:300000}") // 默认每5分钟
+    @Scheduled(fixedDelayString = "${cloud.config.syncIntervalMs:30000}") // 条件请求，默认每30秒
     @Async("cloudConfigSyncExecutor")
     public void syncConfigFromCloud() {
-        System.out.println("开始从云端同步配置...");
+        if (watchConnected && lastSyncAt != null
+                && lastSyncAt.isAfter(LocalDateTime.now().minusNanos(watchSafetyPullMs * 1_000_000))) {
+            pullsSkipped.incrementAndGet(); // 推送通道正常，跳过本次拉取
+            return;
+        }
+        syncCount.incrementAndGet();
         try {
             String url = cloudConfigUrl.replace("{deviceId}", deviceId);
-            EdgeConfig fetchedConfig = restTemplate.getForObject(url, EdgeConfig.class);
-
-            if (fetchedConfig != null) {
-                this.currentConfig = fetchedConfig; // 存储完整配置
-                System.out.println("成功从云端同步配置，更新时间: " + fetchedConfig.getLastUpdated());
-
-                // 1. 更新全局报警阈值 (直接调用 AlarmService 方法)
-                alarmService.updateGlobalThresholds(fetchedConfig.getAlarmThresholds());
-
-                // 2. 遍历并更新每个传感器的特定报警阈值和轮询间隔
-                // 关键点：ConfigSyncService 在这里管理要给AlarmService哪些传感器特定阈值，
-                // 而不是让AlarmService反过来从ConfigSyncService中获取
-                // 确保对所有配置的传感器都进行处理，即使云端没有指定其 runtimeConfig
-                for (ModbusProperties.SensorProperties sensorProp : temperaturePollingService.getAllConfiguredSensors()) {
-                    String sensorId = sensorProp.getSensorId();
-                    EdgeConfig.SensorRuntimeConfig runtimeConfig = null;
-                    if (fetchedConfig.getSensorConfigs() != null) {
-                        runtimeConfig = fetchedConfig.getSensorConfigs().stream()
-                                .filter(sc -> sensorId.equals(sc.getSensorId()))
-                                .findFirst()
-                                .orElse(null);
-                    }
+            ResponseEntity<EdgeConfig> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(conditionalHeaders()), EdgeConfig.class);
+            lastSyncAt = LocalDateTime.now();
+
+            if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                notModifiedCount.incrementAndGet();
+                retryPendingModel(); // 配置未变化，但上次模型下载可能失败
+                return;
+            }
+            handleConfig(response.getBody(), response.getHeaders().getETag());
+        } catch (Exception e) {
+            failureCount.incrementAndGet();
+            System.err.println("从云端同步配置失败: " + e.getMessage());
+            // e.printStackTrace(); // 调试时可以打开
+        }
+    }
 
-                    if (runtimeConfig != null) {
-                        // 更新传感器特定报警阈值
-                        alarmService.updateSensorSpecificThresholds(sensorId, runtimeConfig.getAlarmThresholds());
+    private HttpHeaders conditionalHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        if (configEtag != null) {
+            headers.setIfNoneMatch(configEtag);
+        }
+        return headers;
+    }
+
+    /**
+     * 处理一次带内容的配置响应 (拉取和长轮询共用)。加锁保证两条路径不会同时应用配置。
+     */
+    private synchronized void handleConfig(EdgeConfig fetchedConfig, String etag) {
+        EdgeConfig previous = this.currentConfig;
 
-                        // 更新传感器的轮询间隔
-                        if (runtimeConfig.getPollIntervalMs() != null) {
-                            temperaturePollingService.updateSensorPollingInterval(sensorId, runtimeConfig.getPollIntervalMs());
+        if (fetchedConfig == null) {
+            if (previous != null) {
+                System.out.println("从云端获取的配置为空，回退到 application.yml 默认配置。");
+                if (previous.getConnections() != null || previous.getSensors() != null) {
+                    sensorTopologyReconciler.reconcile(null, null); // 移除云端声明的连接和传感器
+                }
+                // 重置全局阈值并清除所有传感器的特定阈值，云端指定过的轮询间隔恢复为 yml 默认值
+                alarmService.applyThresholds(null, Map.of());
+                if (previous.getSensorConfigs() != null) {
+                    for (EdgeConfig.SensorRuntimeConfig sensorConfig : previous.getSensorConfigs()) {
+                        if (sensorConfig.getSensorId() != null && sensorConfig.getPollIntervalMs() != null) {
+                            temperaturePollingService.resetSensorPollingInterval(sensorConfig.getSensorId());
                         }
-                    } else {
-                        // 如果云端配置中没有某个传感器的runtimeConfig，清除其特定阈值
-                        // 或者回退到 application.yml 默认值 (AlarmService 的 getEffectiveThresholds 会处理)
-                        alarmService.updateSensorSpecificThresholds(sensorId, null);
-                        // 对于轮询间隔，如果云端不指定，则保持 application.yml 或其全局默认值，无需额外设置
-                        // temperaturePollingService.resetSensorPollingInterval(sensorId); // 如果需要重置到yml默认值
                     }
                 }
-                // (可选) 可以在这里更新其他配置，如 predictionModel、uploadSchedule 等
-            } else {
-                System.out.println("从云端获取的配置为空，保持现有配置不变。");
-                // 如果云端返回空配置，可以考虑清空所有动态设置，回退到 application.yml 默认值
-                alarmService.updateGlobalThresholds(null); // 通知 AlarmService 重置全局阈值
-                for (ModbusProperties.SensorProperties sensorProp : temperaturePollingService.getAllConfiguredSensors()) {
-                    alarmService.updateSensorSpecificThresholds(sensorProp.getSensorId(), null); // 清除所有传感器的特定阈值
+                this.currentConfig = null;
+            }
+            this.configEtag = etag;
+            return;
+        }
+
+        if (etag == null && previous != null && fetchedConfig.getLastUpdated() != null
+                && fetchedConfig.getLastUpdated().equals(previous.getLastUpdated())) {
+            unchangedCount.incrementAndGet(); // 云端不支持 ETag，按 lastUpdated 判断未变化
+            retryPendingModel();
+            return;
+        }
+
+        EdgeConfigDiff diff = EdgeConfigDiff.between(previous, fetchedConfig);
+        if (diff.isEmpty()) {
+            unchangedCount.incrementAndGet();
+            retryPendingModel();
+        } else {
+            apply(fetchedConfig, diff);
+            appliedCount.incrementAndGet();
+            lastDiff = diff.summary();
+            System.out.println("成功从云端同步配置，更新时间: " + fetchedConfig.getLastUpdated() + "，变化: " + lastDiff);
+        }
+        // 应用成功后才记录 ETag，应用失败时下次同步会重新下载完整配置。
+        // 预测模型例外：模型下载失败不影响其他配置生效，由 retryPendingModel() 按运行时实际加载的版本重试
+        this.currentConfig = fetchedConfig;
+        this.configEtag = etag;
+    }
+
+    /**
+     * 当前配置指定的模型版本与 {@link PredictionModelRuntime#current()} 实际加载的版本不一致时重新应用
+     * (上次下载或读取失败)。制品已确认不可用 (校验和不符等) 时 runtime 不会重复下载。
+     */
+    private synchronized void retryPendingModel() {
+        EdgeConfig config = this.currentConfig;
+        EdgeConfig.PredictionModelConfig model = config != null ? config.getPredictionModel() : null;
+        if (model == null || model.getVersion() == null) {
+            return;
+        }
+        PredictionModelRuntime.LoadedModel loaded = predictionModelRuntime.current();
+        if (loaded == null || !model.getVersion().equals(loaded.version())) {
+            predictionModelRuntime.apply(model);
+        }
+    }
+
+    /**
+     * 配置变更订阅 (长轮询)：请求 watch.url 并带上当前 ETag，云端在配置变化时立即返回新配置，
+     * 等待 waitSeconds 仍无变化时返回 304，客户端随即发起下一次请求。
+     * 连接失败时按指数退避加随机抖动重连 (避免整个设备群在云端恢复时同时重连)，期间由定时拉取兜底；
+     * 云端不支持订阅接口 (404/405/501) 时每 watch.unsupportedRetryMs 重试一次。
+     * 相邻两次请求至少间隔 watch.reconnectBaseMs：云端忽略 waitSeconds 立即返回、或返回 200 却不带 ETag
+     * (下次请求没有 If-None-Match，又会立即拿到完整配置) 时，不会变成紧密的请求循环。
+     */
+    private void watchLoop() {
+        int failures = 0;
+        while (watchRunning) {
+            long sleepMs = 0;
+            boolean reconnect = true;
+            long requestStart = System.currentTimeMillis();
+            try {
+                String url = watchUrl() + (watchUrl().contains("?") ? "&" : "?") + "waitSeconds=" + watchWaitSeconds;
+                ResponseEntity<EdgeConfig> response = configWatchRestTemplate.exchange(url, HttpMethod.GET,
+                        new HttpEntity<>(conditionalHeaders()), EdgeConfig.class);
+                if (!watchConnected) {
+                    System.out.println("云端配置订阅已连接: " + watchUrl());
+                }
+                watchConnected = true;
+                failures = 0;
+                if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                    watchTimeouts.incrementAndGet();
+                } else {
+                    watchEvents.incrementAndGet();
+                    lastWatchEventAt = LocalDateTime.now();
+                    handleConfig(response.getBody(), response.getHeaders().getETag());
+                }
+                long elapsedMs = System.currentTimeMillis() - requestStart;
+                if (watchRunning && elapsedMs < watchReconnectBaseMs) {
+                    sleepMs = watchReconnectBaseMs - elapsedMs;
+                    reconnect = false;
+                    watchThrottled.incrementAndGet();
+                }
+            } catch (HttpStatusCodeException e) {
+                int status = e.getRawStatusCode();
+                if (status == 404 || status == 405 || status == 501) {
+                    watchSupported = false;
+                    sleepMs = watchUnsupportedRetryMs;
+                    if (watchConnected || failures == 0) {
+                        System.out.println("云端不支持配置订阅 (HTTP " + status + ")，使用定时拉取。");
+                    }
+                    failures = 1;
+                } else {
+                    sleepMs = reconnectDelayMs(++failures);
+                }
+                onWatchFailure(e);
+            } catch (Exception e) {
+                sleepMs = reconnectDelayMs(++failures);
+                onWatchFailure(e);
+            }
+            if (sleepMs > 0) {
+                sleepWhileWatching(sleepMs);
+                if (watchRunning && reconnect) {
+                    watchReconnects.incrementAndGet();
                 }
             }
-        } catch (Exception e) {
-            System.err.println("从云端同步配置失败: " + e.getMessage());
-            // e.printStackTrace(); // 调试时可以打开
         }
+        watchConnected = false;
+    }
+
+    private void onWatchFailure(Exception e) {
+        if (watchConnected) {
+            System.err.println("云端配置订阅断开，改为定时拉取并稍后重连: " + e.getMessage());
+        }
+        watchConnected = false;
+        watchFailures.incrementAndGet();
+        lastWatchError = e.getMessage();
+    }
+
+    /** 第 n 次连续失败后的重连等待：min(max, base * 2^(n-1))，再乘以 [0.5, 1.5) 的随机抖动。 */
+    private long reconnectDelayMs(int failures) {
+        long delay = watchReconnectBaseMs << Math.min(failures - 1, 16);
+        delay = Math.min(Math.max(1, delay), watchReconnectMaxMs);
+        return (long) (delay * (0.5 + ThreadLocalRandom.current().nextDouble()));
+    }
+
+    private void sleepWhileWatching(long ms) {
+        long deadline = System.currentTimeMillis() + ms;
+        long remaining;
+        try {
+            while (watchRunning && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                Thread.sleep(Math.min(remaining, 500));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            watchRunning = false;
+        }
+    }
+
+    private String watchUrl() {
+        String url = watchUrl != null && !watchUrl.isBlank() ? watchUrl : cloudConfigUrl + "/watch";
+        return url.replace("{deviceId}", deviceId);
+    }
+
+    private void apply(EdgeConfig fetchedConfig, EdgeConfigDiff diff) {
+        // 0. 采集拓扑：先增删连接和传感器，后面的阈值和轮询间隔才能作用到新传感器上；失败时整体回滚并中止本次应用
+        if (diff.topologyChanged()) {
+            SensorTopologyReconciler.Result result = sensorTopologyReconciler.reconcile(fetchedConfig.getConnections(), fetchedConfig.getSensors());
+            if (!result.success()) {
+                throw new IllegalStateException("采集拓扑对账失败: " + result.error());
+            }
+        }
+
+        Map<String, EdgeConfig.SensorRuntimeConfig> runtimeConfigs = new HashMap<>();
+        if (fetchedConfig.getSensorConfigs() != null) {
+            for (EdgeConfig.SensorRuntimeConfig sensorConfig : fetchedConfig.getSensorConfigs()) {
+                if (sensorConfig != null && sensorConfig.getSensorId() != null) {
+                    runtimeConfigs.putIfAbsent(sensorConfig.getSensorId(), sensorConfig);
+                }
+            }
+        }
+
+        // 1. 报警阈值：任一阈值或传感器集合变化时，全局阈值和所有已配置传感器的特定阈值一起编译成新的规则快照，整体替换
+        // 关键点：ConfigSyncService 在这里管理要给AlarmService哪些传感器特定阈值，
+        // 而不是让AlarmService反过来从ConfigSyncService中获取
+        if (diff.thresholdsChanged() || diff.topologyChanged()) {
+            Map<String, EdgeConfig.AlarmThresholdsConfig> specificThresholds = new HashMap<>();
+            for (ModbusProperties.SensorProperties sensorProp : temperaturePollingService.getAllConfiguredSensors()) {
+                EdgeConfig.SensorRuntimeConfig runtimeConfig = runtimeConfigs.get(sensorProp.getSensorId());
+                // 云端没有该传感器的特定阈值时不放入 specificThresholds，即清除其特定阈值
+                if (runtimeConfig != null && runtimeConfig.getAlarmThresholds() != null) {
+                    specificThresholds.put(sensorProp.getSensorId(), runtimeConfig.getAlarmThresholds());
+                }
+            }
+            alarmService.applyThresholds(fetchedConfig.getAlarmThresholds(), specificThresholds);
+        }
+
+        // 2. 轮询间隔：只重新调度间隔变化的传感器；云端不再指定时恢复 application.yml 的间隔
+        for (Map.Entry<String, Long> entry : diff.pollIntervals().entrySet()) {
+            boolean rescheduled = entry.getValue() != null
+                    ? temperaturePollingService.updateSensorPollingInterval(entry.getKey(), entry.getValue())
+                    : temperaturePollingService.resetSensorPollingInterval(entry.getKey());
+            if (rescheduled) {
+                rescheduledCount.incrementAndGet();
+            }
+        }
+
+        // 3. 预测模型制品：版本变化时下载/校验后热替换，失败时保持当前模型 (之后的同步由 retryPendingModel() 重试)
+        if (diff.predictionModelChanged()) {
+            predictionModelRuntime.apply(fetchedConfig.getPredictionModel());
+        }
+        // (可选) 可以在这里更新其他配置，如 uploadSchedule 等
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        EdgeConfig config = currentConfig;
+        stats.put("lastUpdated", config != null && config.getLastUpdated() != null ? config.getLastUpdated().toString() : null);
+        stats.put("etag", configEtag);
+        stats.put("lastSyncAt", lastSyncAt != null ? lastSyncAt.toString() : null);
+        stats.put("syncs", syncCount.get());
+        stats.put("notModified", notModifiedCount.get());
+        stats.put("unchanged", unchangedCount.get());
+        stats.put("applied", appliedCount.get());
+        stats.put("pollingRescheduled", rescheduledCount.get());
+        stats.put("failures", failureCount.get());
+        stats.put("lastDiff", lastDiff);
+        Map<String, Object> watch = new LinkedHashMap<>();
+        watch.put("enabled", watchEnabled);
+        watch.put("supported", watchSupported);
+        watch.put("connected", watchConnected);
+        watch.put("events", watchEvents.get());
+        watch.put("timeouts", watchTimeouts.get());
+        watch.put("failures", watchFailures.get());
+        watch.put("reconnects", watchReconnects.get());
+        watch.put("throttled", watchThrottled.get());
+        watch.put("pullsSkipped", pullsSkipped.get());
+        watch.put("lastEventAt", lastWatchEventAt != null ? lastWatchEventAt.toString() : null);
+        watch.put("lastError", lastWatchError);
+        stats.put("watch", watch);
+        return stats;
     }
 
     public EdgeConfig getCurrentConfig() {
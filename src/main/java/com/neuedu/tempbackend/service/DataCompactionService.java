@@ -27,6 +27,9 @@ public class DataCompactionService {
     @Autowired
     private SensorDataRepository sensorDataRepository;
 
+    @Autowired
+    private QueryCache queryCache; // 压缩/清理改变了历史数据，提交后失效相关的查询缓存
+
     // 配置数据保留策略
     @Value("${data.retention.realtimeMinutes:10}")
     private int realtimeRetentionMinutes; // 秒级数据保留时长
@@ -146,7 +149,7 @@ public class DataCompactionService {
                     aggregatedData.setHumidity(Double.isNaN(avgHumidity) ? null : (float) avgHumidity);
                     aggregatedData.setPressure(Double.isNaN(avgPressure) ? null : (float) avgPressure);
                     aggregatedData.setStorageLevel(targetStorageLevel);
-                    aggregatedData.setAlarmTriggered(false); // 聚合数据默认不触发报警
+                    aggregatedData.setAlarmTriggered(false); // 聚合数据默认不触发报警 (报警已记录在 alarm_event 中)
                     aggregatedData.setAlarmMessage(null); // 清除报警信息
                     aggregatedData.setUploaded(false); // 聚合数据视为新数据，待上传
 
@@ -166,6 +169,11 @@ public class DataCompactionService {
             sensorDataRepository.deleteAll(toDeleteFromSource);
             System.out.println("批量删除 " + toDeleteFromSource.size() + " 条旧的 " + sourceStorageLevel + " 数据。");
         }
+
+        for (String sensorId : groupedBySensorAndInterval.keySet()) {
+            queryCache.onWrite(sensorId, sourceStorageLevel);
+            queryCache.onWrite(sensorId, targetStorageLevel);
+        }
     }
 
     /**
@@ -179,6 +187,7 @@ public class DataCompactionService {
         int deletedCount = sensorDataRepository.deleteUploadedDataByTimestampBeforeAndStorageLevel(threshold, storageLevel);
         if (deletedCount > 0) {
             System.out.println("已清理 " + deletedCount + " 条早于 " + threshold + " 的已上传 " + storageLevel + " 级别数据。");
+            queryCache.invalidateTier(storageLevel);
         }
 
         // 检查是否还有未上传的旧数据，如果有则记录警告
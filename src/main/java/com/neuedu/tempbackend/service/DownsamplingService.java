@@ -0,0 +1,111 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.repository.SensorDataRepository;
+import com.neuedu.tempbackend.util.Downsampler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 服务端降采样：图表只需要几百个点，不再把整段原始数据发给浏览器。
+ * <p>
+ * 查询按分层窗口拆成若干段 (见 {@link TieredHistoryQueryPlanner})，每段读取能满足目标分辨率的最粗存储级别；
+ * 只投影 (timestamp, 指标值) 两列，用前向游标 (TieredHistoryQueryPlanner.scanField) 逐行喂给 {@link Downsampler}，内存只与输出点数有关。
+ */
+@Service
+public class DownsamplingService {
+
+    public static final String MODE_LTTB = "lttb";
+    public static final String MODE_MIN_MAX = "minmax";
+
+    private final TieredHistoryQueryPlanner historyQueryPlanner;
+    private final SensorDataRepository sensorDataRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public DownsamplingService(TieredHistoryQueryPlanner historyQueryPlanner,
+                               SensorDataRepository sensorDataRepository,
+                               PlatformTransactionManager transactionManager) {
+        this.historyQueryPlanner = historyQueryPlanner;
+        this.sensorDataRepository = sensorDataRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public record Point(LocalDateTime timestamp, double value) {}
+
+    /** 某一段实际读取的存储级别和时间范围。 */
+    public record Segment(String storageLevel, LocalDateTime from, LocalDateTime to) {}
+
+    public record DownsampleResult(String sensorId, String metric, String mode, int maxPoints,
+                                   long sourceRows, long queryMs, List<Segment> segments, List<Point> points) {}
+
+    /**
+     * @param metric temperature / humidity / pressure
+     * @param mode   lttb 或 minmax
+     * @throws IllegalArgumentException 参数不合法
+     */
+    public DownsampleResult downsample(String sensorId, LocalDateTime start, LocalDateTime end,
+                                       int maxPoints, String mode, String metric) {
+        if (!TieredHistoryQueryPlanner.NUMERIC_FIELDS.contains(metric)) {
+            throw new IllegalArgumentException("Unsupported metric: " + metric);
+        }
+        if (!MODE_LTTB.equals(mode) && !MODE_MIN_MAX.equals(mode)) {
+            throw new IllegalArgumentException("Unsupported mode: " + mode);
+        }
+        if (!end.isAfter(start)) {
+            throw new IllegalArgumentException("end must be after start");
+        }
+
+        long startNanos = System.nanoTime();
+        long startMs = TieredHistoryQueryPlanner.toEpochMs(start);
+        long endMs = TieredHistoryQueryPlanner.toEpochMs(end);
+        List<Point> points = new ArrayList<>(maxPoints);
+        Downsampler.PointSink sink = (t, v) -> points.add(new Point(TieredHistoryQueryPlanner.fromEpochMs(t), v));
+        Downsampler.Accumulator accumulator = MODE_LTTB.equals(mode)
+                ? Downsampler.lttb(startMs, endMs, maxPoints, sink)
+                : Downsampler.minMax(startMs, endMs, maxPoints, sink);
+        // 每个输出点 (minmax 为每两个点) 对应的时间宽度
+        long bucketMs = (endMs - startMs) / Math.max(1, MODE_LTTB.equals(mode) ? maxPoints : maxPoints / 2);
+
+        List<Segment> segments = planSegments(sensorId, start, end, bucketMs);
+        Long rows = readOnlyTransaction.execute(status -> {
+            long count = 0;
+            for (Segment segment : segments) {
+                count += historyQueryPlanner.scanField(sensorId, metric, segment.storageLevel(), segment.from(), segment.to(),
+                        segment.to().equals(end), accumulator::add);
+            }
+            return count;
+        });
+        accumulator.finish();
+
+        return new DownsampleResult(sensorId, metric, mode, maxPoints, rows != null ? rows : 0L,
+                (System.nanoTime() - startNanos) / 1_000_000, segments, points);
+    }
+
+    /**
+     * 按分层窗口 (从旧到新) 切分 [start, end]；每段优先选择标称间隔不超过 bucketMs 的最粗存储级别，
+     * 该级别在这一段没有数据时逐级退回更细的级别，最终退回该窗口自身的级别。
+     */
+    List<Segment> planSegments(String sensorId, LocalDateTime start, LocalDateTime end, long bucketMs) {
+        List<Segment> segments = new ArrayList<>();
+        for (TieredHistoryQueryPlanner.Tier part : historyQueryPlanner.splitRange(start, end, LocalDateTime.now())) {
+            String level = part.storageLevel();
+            List<String> coarser = historyQueryPlanner.coarserLevels(level);
+            for (int j = coarser.size() - 1; j >= 0; j--) {
+                String candidate = coarser.get(j);
+                if (historyQueryPlanner.nominalSpacingMs(candidate) <= bucketMs
+                        && sensorDataRepository.existsBySensorIdAndStorageLevelAndTimestampBetween(
+                        sensorId, candidate, part.lowerBound(), part.upperBound())) {
+                    level = candidate;
+                    break;
+                }
+            }
+            segments.add(new Segment(level, part.lowerBound(), part.upperBound()));
+        }
+        return segments;
+    }
+}
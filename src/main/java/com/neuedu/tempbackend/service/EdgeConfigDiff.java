@@ -0,0 +1,104 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.EdgeConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 两份云端配置之间的结构化差异，配置同步只应用发生变化的部分。
+ * <ul>
+ *   <li>globalThresholdsChanged：全局报警阈值变化；</li>
+ *   <li>thresholdSensors：特定阈值新增、修改或被移除的传感器；</li>
+ *   <li>pollIntervals：轮询间隔变化的传感器及新间隔，值为 null 表示云端不再指定 (恢复 application.yml 的间隔)；</li>
+ *   <li>predictionModelChanged：预测模型制品配置变化；</li>
+ *   <li>topologyChanged：云端声明的串口连接或传感器变化 (由 {@link SensorTopologyReconciler} 对账)。</li>
+ * </ul>
+ */
+public record EdgeConfigDiff(boolean globalThresholdsChanged, Set<String> thresholdSensors,
+                             Map<String, Long> pollIntervals, boolean predictionModelChanged, boolean topologyChanged) {
+
+    /**
+     * @param previous 当前生效的配置，null 表示尚未应用过云端配置 (此时 next 中的所有内容都视为变化)
+     */
+    public static EdgeConfigDiff between(EdgeConfig previous, EdgeConfig next) {
+        Map<String, EdgeConfig.SensorRuntimeConfig> before = bySensor(previous);
+        Map<String, EdgeConfig.SensorRuntimeConfig> after = bySensor(next);
+
+        Set<String> sensorIds = new LinkedHashSet<>(before.keySet());
+        sensorIds.addAll(after.keySet());
+        Set<String> thresholdSensors = new LinkedHashSet<>();
+        Map<String, Long> pollIntervals = new LinkedHashMap<>();
+        for (String sensorId : sensorIds) {
+            EdgeConfig.SensorRuntimeConfig old = before.get(sensorId);
+            EdgeConfig.SensorRuntimeConfig now = after.get(sensorId);
+            if (!Objects.equals(old != null ? old.getAlarmThresholds() : null, now != null ? now.getAlarmThresholds() : null)) {
+                thresholdSensors.add(sensorId);
+            }
+            Long oldInterval = old != null ? old.getPollIntervalMs() : null;
+            Long newInterval = now != null ? now.getPollIntervalMs() : null;
+            if (!Objects.equals(oldInterval, newInterval)) {
+                pollIntervals.put(sensorId, newInterval);
+            }
+        }
+
+        boolean globalChanged = previous == null
+                ? next.getAlarmThresholds() != null
+                : !Objects.equals(previous.getAlarmThresholds(), next.getAlarmThresholds());
+        boolean modelChanged = !Objects.equals(previous != null ? previous.getPredictionModel() : null, next.getPredictionModel());
+        boolean topologyChanged = !Objects.equals(previous != null ? previous.getConnections() : null, next.getConnections())
+                || !Objects.equals(previous != null ? previous.getSensors() : null, next.getSensors());
+        return new EdgeConfigDiff(globalChanged, Collections.unmodifiableSet(thresholdSensors),
+                Collections.unmodifiableMap(pollIntervals), modelChanged, topologyChanged);
+    }
+
+    public boolean thresholdsChanged() {
+        return globalThresholdsChanged || !thresholdSensors.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return !thresholdsChanged() && pollIntervals.isEmpty() && !predictionModelChanged && !topologyChanged;
+    }
+
+    /** 日志用的简短描述，例如 "全局阈值, 传感器阈值[s1], 轮询间隔[s2=5000]"。 */
+    public String summary() {
+        if (isEmpty()) {
+            return "无变化";
+        }
+        List<String> parts = new ArrayList<>();
+        if (topologyChanged) {
+            parts.add("采集拓扑");
+        }
+        if (globalThresholdsChanged) {
+            parts.add("全局阈值");
+        }
+        if (!thresholdSensors.isEmpty()) {
+            parts.add("传感器阈值" + thresholdSensors);
+        }
+        if (!pollIntervals.isEmpty()) {
+            parts.add("轮询间隔" + pollIntervals);
+        }
+        if (predictionModelChanged) {
+            parts.add("预测模型");
+        }
+        return String.join(", ", parts);
+    }
+
+    private static Map<String, EdgeConfig.SensorRuntimeConfig> bySensor(EdgeConfig config) {
+        Map<String, EdgeConfig.SensorRuntimeConfig> map = new LinkedHashMap<>();
+        if (config != null && config.getSensorConfigs() != null) {
+            for (EdgeConfig.SensorRuntimeConfig sensorConfig : config.getSensorConfigs()) {
+                if (sensorConfig != null && sensorConfig.getSensorId() != null) {
+                    map.put(sensorConfig.getSensorId(), sensorConfig);
+                }
+            }
+        }
+        return map;
+    }
+}
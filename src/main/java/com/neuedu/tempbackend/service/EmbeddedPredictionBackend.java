@@ -0,0 +1,346 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.util.BucketRing;
+import com.neuedu.tempbackend.util.ForecastModels;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 嵌入式预测引擎：在进程内按传感器维护模型状态，不再为每个采样点发起 HTTP 调用。
+ * <p>
+ * 单点预测：先用模型给出对本次采样的一步预测，再把本次采样计入模型，每点 O(1)。
+ * 趋势预测：用同类型的新模型回放 5 秒桶的历史窗口后外推，不影响单点模型的状态。模型参数 (Holt-Winters 的季节长度、
+ * 制品中的 ARIMA 系数) 都是按轮询节拍训练的，所以回放前先把桶均值线性插值回该传感器的采样节拍，
+ * 外推同样按采样节拍进行，再每 5 秒取一个点。
+ * 湿度、压力目前不参与预测 (单变量模型)。
+ * <p>
+ * 模型参数来自 {@link PredictionModelRuntime} 加载的制品，没有制品时用 prediction.embedded 的参数。
+ * 制品版本切换后，各传感器先并行喂给新模型 (影子预热)，新模型就绪前仍用旧模型预测，就绪后原地替换。
+ * <p>
+ * 开启 prediction.accuracy.autoSwitch 时，每个传感器还并行运行三种内置模型作为候选，残差计入
+ * {@link ForecastAccuracyTracker}；当前预测精度退化而某个候选明显更好时，该传感器改用这个候选 (趋势预测同样改用该类型)。
+ * 制品发布新版本后仍以新版本为准。
+ */
+@Service
+public class EmbeddedPredictionBackend implements PredictionBackend {
+
+    private static final String BUILTIN_VERSION = "builtin";
+
+    private static final String[] CHALLENGER_TYPES = {ForecastModels.EWMA, ForecastModels.HOLT_WINTERS, ForecastModels.ARIMA};
+
+    /**
+     * 单个传感器的模型状态；candidate 为预热中的新版本模型，challengers 为按类型并行运行的候选模型，
+     * switchedType 非 null 表示已按精度自动切换到该类型的候选 (model 即 challengers 中的同一实例)。访问时以自身加锁。
+     */
+    private static final class SensorModel {
+        ForecastModels.Model model;
+        String version;
+        ForecastModels.Model candidate;
+        String candidateVersion;
+        Map<String, ForecastModels.Model> challengers;
+        volatile String switchedType;
+        long samples;
+        long lastSampleNanos;
+        volatile double sampleIntervalMs; // 实测的采样间隔 (指数平滑)，0 表示尚未测得
+    }
+
+    private static final int MAX_RESAMPLE_FACTOR = 200; // 每个 5 秒桶最多插值出的采样点数，限制趋势预测的计算量
+
+    private final PredictionModelRuntime modelRuntime;
+    private final ForecastAccuracyTracker accuracyTracker;
+    private final AlarmService alarmService;
+    private final ModbusProperties modbusProperties;
+    private final Map<String, SensorModel> modelsBySensor = new ConcurrentHashMap<>();
+
+    // 推理延迟统计 (纳秒)
+    private final AtomicLong predictCount = new AtomicLong();
+    private final AtomicLong predictNanos = new AtomicLong();
+    private final LongAccumulator predictMaxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong trendCount = new AtomicLong();
+    private final AtomicLong trendNanos = new AtomicLong();
+    private final LongAccumulator trendMaxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong swaps = new AtomicLong();
+    private final AtomicLong autoSwitches = new AtomicLong();
+
+    @Value("${prediction.embedded.model:HOLT_WINTERS}") // EWMA | HOLT_WINTERS | ARIMA
+    private String modelType;
+
+    @Value("${prediction.embedded.ewma.alpha:0.3}")
+    private double ewmaAlpha;
+
+    @Value("${prediction.embedded.holtWinters.alpha:0.5}")
+    private double hwAlpha;
+    @Value("${prediction.embedded.holtWinters.beta:0.1}")
+    private double hwBeta;
+    @Value("${prediction.embedded.holtWinters.gamma:0.1}")
+    private double hwGamma;
+    @Value("${prediction.embedded.holtWinters.seasonLength:0}") // 季节长度 (采样点数)，0 表示不建季节项
+    private int hwSeasonLength;
+
+    @Value("${prediction.embedded.arima.p:2}")
+    private int arimaP;
+    @Value("${prediction.embedded.arima.d:1}")
+    private int arimaD;
+    @Value("${prediction.embedded.arima.q:1}")
+    private int arimaQ;
+    @Value("${prediction.embedded.arima.forgetting:0.995}") // RLS 遗忘因子
+    private double arimaForgetting;
+
+    @Value("${prediction.accuracy.autoSwitch:true}")
+    private boolean autoSwitch;
+
+    @Value("${prediction.accuracy.switchCheckEvery:100}")
+    private int switchCheckEvery; // 每多少个样本检查一次是否切换模型
+
+    public EmbeddedPredictionBackend(PredictionModelRuntime modelRuntime, ForecastAccuracyTracker accuracyTracker,
+                                     AlarmService alarmService, ModbusProperties modbusProperties) {
+        this.modelRuntime = modelRuntime;
+        this.accuracyTracker = accuracyTracker;
+        this.alarmService = alarmService;
+        this.modbusProperties = modbusProperties;
+    }
+
+    @Override
+    public String name() {
+        return "embedded";
+    }
+
+    @Override
+    public Float predict(String sensorId, Float temperature, Float humidity, Float pressure) {
+        if (temperature == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        PredictionModelRuntime.LoadedModel loaded = modelRuntime.current();
+        String version = loaded != null ? loaded.version() : BUILTIN_VERSION;
+        SensorModel state = modelsBySensor.computeIfAbsent(sensorId, id -> new SensorModel());
+        Float predicted = null;
+        synchronized (state) {
+            if (state.lastSampleNanos != 0) {
+                double intervalMs = (start - state.lastSampleNanos) / 1e6;
+                state.sampleIntervalMs = state.sampleIntervalMs == 0 ? intervalMs : state.sampleIntervalMs * 0.9 + intervalMs * 0.1;
+            }
+            state.lastSampleNanos = start;
+            if (state.model == null) {
+                state.model = newModel(loaded);
+                state.version = version;
+            } else if (!version.equals(state.version) && !version.equals(state.candidateVersion)) {
+                state.candidate = newModel(loaded); // 新版本：影子预热，旧模型继续服务
+                state.candidateVersion = version;
+            }
+            if (state.candidate != null && state.candidate.isReady()) {
+                state.model = state.candidate;
+                state.version = state.candidateVersion;
+                state.candidate = null;
+                state.candidateVersion = null;
+                state.switchedType = null;
+                accuracyTracker.reset(sensorId, ForecastAccuracyTracker.ACTIVE);
+                swaps.incrementAndGet();
+            }
+
+            if (state.model.isReady()) {
+                double value = state.model.forecast();
+                if (Double.isFinite(value)) {
+                    predicted = (float) value;
+                } else {
+                    // 数值发散 (例如传感器跳变后的 RLS)：丢弃该传感器的模型，从本次采样重新预热
+                    System.err.println("传感器 " + sensorId + " 的预测模型输出异常，已重置。");
+                    state.model = newModel(loaded);
+                    state.version = version;
+                    state.candidate = null;
+                    state.candidateVersion = null;
+                    state.switchedType = null;
+                }
+            }
+            if (autoSwitch) {
+                updateChallengers(sensorId, state, temperature);
+            }
+            state.model.update(temperature);
+            if (state.candidate != null) {
+                state.candidate.update(temperature);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        predictCount.incrementAndGet();
+        predictNanos.addAndGet(elapsed);
+        predictMaxNanos.accumulate(elapsed);
+        return predicted;
+    }
+
+    @Override
+    public List<Float> predictTrend(String sensorId, BucketRing.Window history, int predictHorizonSeconds) {
+        if (history == null || history.size() == 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            SensorModel state = modelsBySensor.get(sensorId);
+            String switchedType = state != null ? state.switchedType : null;
+            ForecastModels.Model model = switchedType != null ? newBuiltinModel(switchedType) : newModel(modelRuntime.current());
+            int factor = resampleFactor(state);
+            double[] temperatures = history.temperature();
+            long[] bucketStarts = history.bucketStartMs();
+            long stepMs = TREND_STEP_SECONDS * 1000L;
+            double previous = Double.NaN;
+            long previousStart = 0;
+            for (int i = 0; i < history.size(); i++) {
+                double value = temperatures[i];
+                if (Double.isNaN(value)) {
+                    continue; // 桶内没有温度：与下一个有效桶之间一并插值
+                }
+                if (Double.isNaN(previous)) {
+                    model.update(value);
+                } else {
+                    // 窗口只含有数据的桶，按桶起点之差补齐中间没有采样的时段
+                    int steps = (int) Math.max(1, (bucketStarts[i] - previousStart) / stepMs) * factor;
+                    for (int s = 1; s <= steps; s++) {
+                        model.update(previous + (value - previous) * s / steps);
+                    }
+                }
+                previous = value;
+                previousStart = bucketStarts[i];
+            }
+            if (!model.isReady()) {
+                return null;
+            }
+            int horizon = Math.max(1, predictHorizonSeconds / TREND_STEP_SECONDS);
+            double[] samples = new double[horizon * factor];
+            model.forecast(samples, samples.length);
+            double[] forecast = new double[horizon];
+            for (int i = 0; i < horizon; i++) {
+                forecast[i] = samples[(i + 1) * factor - 1];
+            }
+            List<Float> result = new ArrayList<>(horizon);
+            for (double value : forecast) {
+                if (!Double.isFinite(value)) {
+                    return null;
+                }
+                result.add((float) value);
+            }
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            trendCount.incrementAndGet();
+            trendNanos.addAndGet(elapsed);
+            trendMaxNanos.accumulate(elapsed);
+        }
+    }
+
+    /**
+     * 推理延迟 (微秒) 和模型版本切换统计。
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long predicts = predictCount.get();
+        long trends = trendCount.get();
+        stats.put("predictCount", predicts);
+        stats.put("predictAvgMicros", predicts > 0 ? predictNanos.get() / predicts / 1000.0 : 0);
+        stats.put("predictMaxMicros", predictMaxNanos.get() / 1000.0);
+        stats.put("trendCount", trends);
+        stats.put("trendAvgMicros", trends > 0 ? trendNanos.get() / trends / 1000.0 : 0);
+        stats.put("trendMaxMicros", trendMaxNanos.get() / 1000.0);
+        stats.put("sensors", modelsBySensor.size());
+        stats.put("sensorsWarmingNewVersion", modelsBySensor.values().stream().filter(m -> m.candidate != null).count());
+        stats.put("sensorSwaps", swaps.get());
+        stats.put("autoSwitch", autoSwitch);
+        stats.put("autoSwitches", autoSwitches.get());
+        Map<String, String> switched = new LinkedHashMap<>();
+        modelsBySensor.forEach((sensorId, state) -> {
+            if (state.switchedType != null) {
+                switched.put(sensorId, state.switchedType);
+            }
+        });
+        stats.put("switchedSensors", switched);
+        return stats;
+    }
+
+    /**
+     * 候选模型先对本次采样给出预测并记录残差，再计入本次采样；每 switchCheckEvery 个样本检查一次是否切换。
+     * 已切换到的候选与 state.model 是同一实例，由调用方统一 update，这里跳过以免重复计入。
+     */
+    private void updateChallengers(String sensorId, SensorModel state, float temperature) {
+        if (state.challengers == null) {
+            state.challengers = new LinkedHashMap<>();
+            for (String type : CHALLENGER_TYPES) {
+                state.challengers.put(type, newBuiltinModel(type));
+            }
+        }
+        for (Map.Entry<String, ForecastModels.Model> entry : state.challengers.entrySet()) {
+            ForecastModels.Model challenger = entry.getValue();
+            if (challenger.isReady()) {
+                double value = challenger.forecast();
+                if (!Double.isFinite(value)) {
+                    challenger = newBuiltinModel(entry.getKey());
+                    entry.setValue(challenger);
+                    accuracyTracker.reset(sensorId, entry.getKey());
+                } else {
+                    accuracyTracker.record(sensorId, entry.getKey(), temperature - value);
+                }
+            }
+            if (challenger != state.model) {
+                challenger.update(temperature);
+            }
+        }
+
+        if (++state.samples % Math.max(1, switchCheckEvery) != 0) {
+            return;
+        }
+        float deviation = alarmService.getConfiguredDeviation(sensorId);
+        String better = accuracyTracker.betterModel(sensorId, state.challengers.keySet(), deviation);
+        if (better == null || state.challengers.get(better) == state.model) {
+            return;
+        }
+        System.out.println("传感器 " + sensorId + " 的预测精度下降，自动切换到候选模型 " + better +
+                " (原模型: " + (state.switchedType != null ? state.switchedType : state.version) + ")");
+        state.model = state.challengers.get(better);
+        state.switchedType = better;
+        accuracyTracker.reset(sensorId, ForecastAccuracyTracker.ACTIVE); // 当前预测的统计从切换后重新开始
+        autoSwitches.incrementAndGet();
+    }
+
+    /**
+     * 每个 5 秒桶对应的采样点数：优先用单点预测实测的采样间隔 (含云端下发的轮询间隔覆盖)，
+     * 还没有样本时用全局轮询间隔。
+     */
+    private int resampleFactor(SensorModel state) {
+        double intervalMs = state != null && state.sampleIntervalMs > 0 ? state.sampleIntervalMs : modbusProperties.getPollIntervalMs();
+        if (intervalMs <= 0) {
+            return 1;
+        }
+        long factor = Math.round(TREND_STEP_SECONDS * 1000.0 / intervalMs);
+        return (int) Math.max(1, Math.min(MAX_RESAMPLE_FACTOR, factor));
+    }
+
+    /** 丢弃某传感器的模型状态 (传感器下线/更换后调用)。 */
+    public void reset(String sensorId) {
+        modelsBySensor.remove(sensorId);
+    }
+
+    private ForecastModels.Model newModel(PredictionModelRuntime.LoadedModel loaded) {
+        if (loaded != null) {
+            return loaded.newModel();
+        }
+        return newBuiltinModel(modelType);
+    }
+
+    private ForecastModels.Model newBuiltinModel(String type) {
+        switch (type.trim().toUpperCase()) {
+            case ForecastModels.EWMA:
+                return new ForecastModels.Ewma(ewmaAlpha);
+            case ForecastModels.ARIMA:
+                return new ForecastModels.Arima(arimaP, arimaD, arimaQ, arimaForgetting);
+            case ForecastModels.HOLT_WINTERS:
+            default:
+                return new ForecastModels.HoltWinters(hwAlpha, hwBeta, hwGamma, hwSeasonLength);
+        }
+    }
+}
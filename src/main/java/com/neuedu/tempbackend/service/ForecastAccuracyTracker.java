@@ -0,0 +1,232 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.util.RollingErrorWindow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按传感器流式统计预测精度：残差 = 实际温度 - 同一行的预测温度 (预测在看到该采样之前给出)。
+ * <p>
+ * 每个传感器、每个模型维护若干个不同长度的 {@link RollingErrorWindow} (prediction.accuracy.windows，单位为样本数)，
+ * 每个样本 O(1) 更新。模型名 {@link #ACTIVE} 表示实际写入数据行的预测 (任意后端)，
+ * 嵌入式引擎的候选模型按类型名 (EWMA / HOLT_WINTERS / ARIMA) 统计，用于自动切换。
+ * <p>
+ * 决策 (放宽偏差阈值、切换模型) 统一使用第一个 (最短的) 窗口，样本数不足 minSamples 时不做任何调整。
+ */
+@Service
+public class ForecastAccuracyTracker {
+
+    public static final String ACTIVE = "active";
+
+    /** 单个传感器的所有窗口：模型名 -> 各长度的窗口。访问时以自身加锁。 */
+    private static final class SensorAccuracy {
+        final Map<String, RollingErrorWindow[]> windowsByModel = new LinkedHashMap<>();
+        volatile double activeRmse = Double.NaN; // 当前预测在决策窗口上的 RMSE，样本不足时为 NaN；报警判断时无锁读取
+        volatile float lastDeviation; // 最近一次查询 (偏差超出配置阈值时) 放宽后的阈值，0 表示未放宽
+    }
+
+    private final Map<String, SensorAccuracy> accuracyBySensor = new ConcurrentHashMap<>();
+    private final AtomicLong widenedChecks = new AtomicLong();
+
+    @Value("${prediction.accuracy.windows:600,6000}")
+    private int[] windowSizes;
+
+    @Value("${prediction.accuracy.histogram.binWidth:0.25}")
+    private double binWidth; // 残差直方图桶宽 (°C)
+
+    @Value("${prediction.accuracy.histogram.bins:16}")
+    private int bins;
+
+    @Value("${prediction.accuracy.minSamples:100}")
+    private int minSamples;
+
+    @Value("${prediction.accuracy.widenDeviation:true}")
+    private boolean widenDeviation;
+
+    @Value("${prediction.accuracy.rmseFactor:3.0}")
+    private double rmseFactor; // 正常残差的波动范围：rmseFactor * RMSE 以内的偏差不视为异常
+
+    @Value("${prediction.accuracy.maxWidenFactor:3.0}")
+    private double maxWidenFactor; // 放宽后的阈值最多为配置阈值的多少倍
+
+    @Value("${prediction.accuracy.switchMargin:0.2}")
+    private double switchMargin; // 候选模型 RMSE 至少低多少比例才切换
+
+    /** 记录一个样本的残差。actual 或 predicted 为 null 时忽略。 */
+    public void record(String sensorId, String model, Float actual, Float predicted) {
+        if (actual == null || predicted == null) {
+            return;
+        }
+        record(sensorId, model, actual - (double) predicted);
+    }
+
+    public void record(String sensorId, String model, double residual) {
+        if (!Double.isFinite(residual)) {
+            return;
+        }
+        SensorAccuracy accuracy = accuracyBySensor.computeIfAbsent(sensorId, id -> new SensorAccuracy());
+        synchronized (accuracy) {
+            RollingErrorWindow[] windows = accuracy.windowsByModel.computeIfAbsent(model, m -> newWindows());
+            for (RollingErrorWindow window : windows) {
+                window.add(residual);
+            }
+            if (ACTIVE.equals(model)) {
+                accuracy.activeRmse = windows[0].count() >= minSamples ? windows[0].rmse() : Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * 按当前模型精度放宽偏差阈值：模型本身的残差已经超出配置阈值时，把阈值放宽到 rmseFactor * RMSE，
+     * 但不超过 maxWidenFactor * base，避免一个差模型不断触发偏差报警。精度恢复后自动回到配置值。
+     * 只读取记录残差时算好的 RMSE，不加锁、不分配对象。
+     */
+    public float effectiveDeviation(String sensorId, float base) {
+        if (!widenDeviation) {
+            return base;
+        }
+        SensorAccuracy accuracy = accuracyBySensor.get(sensorId);
+        if (accuracy == null) {
+            return base;
+        }
+        double rmse = accuracy.activeRmse;
+        double needed = rmseFactor * rmse;
+        if (Double.isNaN(rmse) || needed <= base) {
+            accuracy.lastDeviation = 0;
+            return base;
+        }
+        float widened = (float) Math.min(base * maxWidenFactor, needed);
+        accuracy.lastDeviation = widened;
+        widenedChecks.incrementAndGet();
+        return widened;
+    }
+
+    /**
+     * 在候选模型中选出明显优于当前预测的一个：当前预测的 rmseFactor * RMSE 已超出 deviation (精度退化)，
+     * 且候选模型的 RMSE 比当前低 switchMargin 以上。没有合适的候选时返回 null。
+     */
+    public String betterModel(String sensorId, Collection<String> candidates, float deviation) {
+        SensorAccuracy accuracy = accuracyBySensor.get(sensorId);
+        if (accuracy == null) {
+            return null;
+        }
+        double activeRmse = accuracy.activeRmse;
+        if (Double.isNaN(activeRmse) || rmseFactor * activeRmse <= deviation) {
+            return null;
+        }
+        String best = null;
+        double bestRmse = activeRmse * (1 - switchMargin);
+        for (String candidate : candidates) {
+            double rmse = decisionRmse(accuracy, candidate);
+            if (!Double.isNaN(rmse) && rmse < bestRmse) {
+                best = candidate;
+                bestRmse = rmse;
+            }
+        }
+        return best;
+    }
+
+    /** 清空某模型的统计 (切换模型后当前预测的统计重新开始)。 */
+    public void reset(String sensorId, String model) {
+        SensorAccuracy accuracy = accuracyBySensor.get(sensorId);
+        if (accuracy != null) {
+            synchronized (accuracy) {
+                accuracy.windowsByModel.remove(model);
+                if (ACTIVE.equals(model)) {
+                    accuracy.activeRmse = Double.NaN;
+                }
+            }
+        }
+    }
+
+    /** 传感器被移除时丢弃其统计。 */
+    public void remove(String sensorId) {
+        accuracyBySensor.remove(sensorId);
+    }
+
+    /** 某传感器各模型、各窗口的精度统计。 */
+    public Map<String, Object> snapshot(String sensorId) {
+        SensorAccuracy accuracy = accuracyBySensor.get(sensorId);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sensorId", sensorId);
+        if (accuracy == null) {
+            return result;
+        }
+        result.put("widenedDeviation", accuracy.lastDeviation > 0 ? accuracy.lastDeviation : null);
+        Map<String, Object> models = new LinkedHashMap<>();
+        synchronized (accuracy) {
+            accuracy.windowsByModel.forEach((model, windows) -> {
+                Map<String, Object> byWindow = new LinkedHashMap<>();
+                for (RollingErrorWindow window : windows) {
+                    byWindow.put(String.valueOf(window.capacity()), describe(window));
+                }
+                models.put(model, byWindow);
+            });
+        }
+        result.put("models", models);
+        return result;
+    }
+
+    /** 所有传感器的当前预测精度 (只含最短窗口，不含直方图)。 */
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        accuracyBySensor.forEach((sensorId, accuracy) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            synchronized (accuracy) {
+                RollingErrorWindow[] windows = accuracy.windowsByModel.get(ACTIVE);
+                if (windows != null) {
+                    entry.put("samples", windows[0].count());
+                    entry.put("mae", round(windows[0].mae()));
+                    entry.put("rmse", round(windows[0].rmse()));
+                    entry.put("bias", round(windows[0].bias()));
+                }
+            }
+            entry.put("widenedDeviation", accuracy.lastDeviation > 0 ? accuracy.lastDeviation : null);
+            result.put(sensorId, entry);
+        });
+        result.put("widenedChecks", widenedChecks.get());
+        return result;
+    }
+
+    private double decisionRmse(SensorAccuracy accuracy, String model) {
+        synchronized (accuracy) {
+            RollingErrorWindow[] windows = accuracy.windowsByModel.get(model);
+            if (windows == null || windows[0].count() < minSamples) {
+                return Double.NaN;
+            }
+            return windows[0].rmse();
+        }
+    }
+
+    private RollingErrorWindow[] newWindows() {
+        int[] sizes = windowSizes != null && windowSizes.length > 0 ? windowSizes : new int[]{600};
+        RollingErrorWindow[] windows = new RollingErrorWindow[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            windows[i] = new RollingErrorWindow(sizes[i], binWidth, bins);
+        }
+        return windows;
+    }
+
+    private static Map<String, Object> describe(RollingErrorWindow window) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("samples", window.count());
+        stats.put("mae", round(window.mae()));
+        stats.put("rmse", round(window.rmse()));
+        stats.put("bias", round(window.bias()));
+        Map<String, Object> histogram = new LinkedHashMap<>();
+        histogram.put("edges", window.histogramEdges()); // counts[0] 为 < edges[0]，counts[last] 为 >= edges[last]
+        histogram.put("counts", window.histogram());
+        stats.put("histogram", histogram);
+        return stats;
+    }
+
+    private static Double round(double value) {
+        return Double.isNaN(value) ? null : Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,232 @@
+package com.neuedu.tempbackend.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.neuedu.tempbackend.model.SensorData;
+import com.neuedu.tempbackend.repository.SensorDataRepository;
+import com.neuedu.tempbackend.util.KeysetCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 将历史范围查询结果直接从数据库游标写到 HTTP 响应流。
+ * <p>
+ * 不再构造完整的 List&lt;SensorData&gt;：每读出一行就序列化、写出并从持久化上下文中 detach，
+ * 内存占用只与 fetch size 和输出缓冲有关，与范围大小无关。开头的 "[" 在查询执行前就 flush 出去，
+ * 客户端在查询完成前即可收到首字节。
+ * 不超过 query.cache.maxEntryBytes 的响应体会边写边复制一份放入 {@link QueryCache}，相同范围的再次查询直接写出缓存字节。
+ * 客户端也可以带 limit (和上一页返回的游标) 分页读取，每页是 (sensor_id, timestamp) 索引上的一次 seek + LIMIT。
+ */
+@Service
+public class HistoryStreamService {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private final SensorDataRepository sensorDataRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectWriter rowWriter;
+    private final TieredHistoryQueryPlanner historyQueryPlanner;
+    private final QueryCache queryCache;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${query.cache.maxEntryBytes:1048576}")
+    private int maxCachedBodyBytes;
+
+    @Value("${history.stream.flushEveryRows:200}")
+    private int flushEveryRows; // 每写出多少行 flush 一次，让客户端尽早拿到数据
+
+    public HistoryStreamService(SensorDataRepository sensorDataRepository,
+                                PlatformTransactionManager transactionManager,
+                                ObjectMapper objectMapper,
+                                TieredHistoryQueryPlanner historyQueryPlanner,
+                                QueryCache queryCache) {
+        this.sensorDataRepository = sensorDataRepository;
+        this.historyQueryPlanner = historyQueryPlanner;
+        this.queryCache = queryCache;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // 逐行写入同一个 JsonGenerator，不能每行都 flush 到底层连接
+        this.rowWriter = objectMapper.writerFor(SensorData.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * 按时间升序流式输出某传感器 [start, end] 内的全部数据 (所有存储级别)。
+     * @param ndjson true 输出每行一个 JSON 对象 (application/x-ndjson)，false 输出 JSON 数组
+     */
+    public void streamRange(String sensorId, LocalDateTime start, LocalDateTime end,
+                            OutputStream out, boolean ndjson) throws IOException {
+        String cacheKey = "range:" + sensorId + ":" + start + ":" + end + ":" + (ndjson ? "ndjson" : "json");
+        byte[] cached = queryCache.get(cacheKey);
+        if (cached != null) {
+            out.write(cached);
+            out.flush();
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        long version = queryCache.versionOf(sensorId);
+        CapturingOutputStream capture = new CapturingOutputStream(out, maxCachedBodyBytes);
+
+        JsonGenerator generator = openGenerator(capture, ndjson);
+        generator.flush();
+
+        long startNanos = System.nanoTime();
+        long rows;
+        try {
+            Long written = readOnlyTransaction.execute(status -> {
+                try (Stream<SensorData> stream = sensorDataRepository.streamBySensorIdAndTimestampBetween(sensorId, start, end)) {
+                    return writeRows(stream.iterator(), generator, ndjson);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            rows = written != null ? written : 0L;
+        } catch (UncheckedIOException e) {
+            // 多数情况是客户端提前断开，响应头已经发出，只能记录后放弃
+            System.err.println("[HistoryStream] Range stream for " + sensorId + " aborted: " + e.getCause().getMessage());
+            throw e.getCause();
+        }
+
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.flush();
+        byte[] body = capture.captured();
+        if (body != null) {
+            queryCache.put(cacheKey, body, body.length, cacheScope(sensorId, start, end, now), version);
+        }
+        System.out.println("[HistoryStream] Streamed " + rows + " rows for " + sensorId + " [" + start + ", " + end + "] in "
+                + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+    }
+
+    /**
+     * 范围查询的一页：游标之后 (不含)、不晚于 end 的最多 limit 条，按 (timestamp, id) 升序。
+     * @param after 上一页最后一条的游标，null 表示从 start 开始
+     */
+    public List<SensorData> findRangePage(String sensorId, LocalDateTime start, LocalDateTime end,
+                                          KeysetCursor after, int limit) {
+        if (after == null || after.timestamp().isBefore(start)) {
+            return sensorDataRepository.findRangePageAfter(sensorId, start, Long.MIN_VALUE, end, PageRequest.of(0, limit));
+        }
+        return sensorDataRepository.findRangePageAfter(sensorId, after.timestamp(), after.id(), end, PageRequest.of(0, limit));
+    }
+
+    /**
+     * 以与 streamRange 相同的格式写出已查询好的一页。
+     */
+    public void writePage(List<SensorData> rows, OutputStream out, boolean ndjson) throws IOException {
+        JsonGenerator generator = openGenerator(out, ndjson);
+        for (SensorData row : rows) {
+            rowWriter.writeValue(generator, row);
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+        }
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.flush();
+    }
+
+    private JsonGenerator openGenerator(OutputStream out, boolean ndjson) throws IOException {
+        JsonGenerator generator = rowWriter.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (ndjson) {
+            // 根级值之间默认用空格分隔，NDJSON 由每行末尾的换行分隔
+            generator.setRootValueSeparator(null);
+        } else {
+            generator.writeStartArray();
+        }
+        return generator;
+    }
+
+    private long writeRows(Iterator<SensorData> rows, JsonGenerator generator, boolean ndjson) throws IOException {
+        long count = 0;
+        while (rows.hasNext()) {
+            SensorData row = rows.next();
+            rowWriter.writeValue(generator, row);
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+            // 写完即 detach，持久化上下文不随行数增长
+            entityManager.detach(row);
+            if (++count % flushEveryRows == 0) {
+                generator.flush();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * end 在未来的范围会随新样本变化，按写入失效；完全过去的范围缓存到其中最早可能被压缩/清理的时间。
+     */
+    private QueryCache.Scope cacheScope(String sensorId, LocalDateTime start, LocalDateTime end, LocalDateTime now) {
+        if (end.isAfter(now)) {
+            return QueryCache.Scope.live(sensorId, QueryCache.ALL_TIERS);
+        }
+        LocalDateTime sealedUntil = null;
+        for (TieredHistoryQueryPlanner.Tier part : historyQueryPlanner.splitRange(start, end, now)) {
+            LocalDateTime until = historyQueryPlanner.stableUntil(part.storageLevel(), part.upperBound());
+            sealedUntil = sealedUntil == null || until.isBefore(sealedUntil) ? until : sealedUntil;
+        }
+        return QueryCache.Scope.sealed(sensorId, QueryCache.ALL_TIERS, sealedUntil != null ? sealedUntil : now);
+    }
+
+    /** 透传写出的同时复制一份，超过上限后放弃复制 (只影响缓存，不影响响应)。 */
+    private static final class CapturingOutputStream extends FilterOutputStream {
+        private final int limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream(1024);
+
+        CapturingOutputStream(OutputStream out, int limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkLimit();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkLimit();
+            }
+        }
+
+        private void checkLimit() {
+            if (copy.size() > limit) {
+                copy = null;
+            }
+        }
+
+        byte[] captured() {
+            return copy != null ? copy.toByteArray() : null;
+        }
+    }
+}
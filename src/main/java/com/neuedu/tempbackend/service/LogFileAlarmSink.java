@@ -0,0 +1,43 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 报警通知渠道：把报警事件按行追加到本地日志文件，供现场值班或离线排查使用 (断网时也可用)。
+ * 行格式：时间|类型|状态|设备|传感器|温度|阈值|预测值|消息
+ */
+@Component
+public class LogFileAlarmSink implements AlarmSink {
+
+    public static final String NAME = "logFile";
+
+    @Value("${alarm.dispatch.sinks.logFile.path:./logs/alarms.log}")
+    private String path;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void deliver(AlarmEvent event) throws IOException {
+        Path file = Paths.get(path);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        String line = String.join("|", String.valueOf(event.getTimestamp()), event.getType(),
+                String.valueOf(event.getEpisodeState()), event.getDeviceId(), event.getSensorId(),
+                String.valueOf(event.getValue()), String.valueOf(event.getThreshold()),
+                String.valueOf(event.getPredictedValue()), String.valueOf(event.getMessage())) + System.lineSeparator();
+        Files.write(file, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,125 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusRtuManager;
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.repository.AlarmEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 报警通知渠道：写 Modbus 线圈驱动现场的声光报警器或通知 PLC。
+ * <p>
+ * 线圈表示“是否存在进行中的报警”：OPENED 事件加入进行中集合，RESOLVED 移除，
+ * 每次投递都按集合是否为空写入线圈 (写操作幂等，重试或漏写一次后下一条事件会纠正)。
+ * 与传感器读取共用串口连接和锁。
+ * <p>
+ * 启动时从 alarm_event 中恢复尚未 RESOLVED 的事件，重启后第一条恢复事件不会把仍在报警的线圈清零。
+ * 报警规则的状态不跨重启保存，这些事件不会再收到 RESOLVED：仍在持续的越限会以新事件重新报警，
+ * 所以恢复的事件只保留 restoreGraceMs，之后不再参与线圈判断；保留期结束时由定时检查重新写入线圈，
+ * 重启后没有任何新报警时线圈也不会一直保持置 1。
+ */
+@Component
+public class ModbusCoilAlarmSink implements AlarmSink {
+
+    public static final String NAME = "modbusCoil";
+
+    private final ModbusRtuManager modbusRtuManager;
+    private final AlarmEventRepository alarmEventRepository;
+    private final Set<String> openEpisodes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> restoredEpisodes = new ConcurrentHashMap<>(); // 启动时恢复的事件 -> 恢复时间
+    private volatile boolean rewritePending; // 定时检查写线圈失败，下次检查重写
+
+    @Value("${alarm.dispatch.sinks.modbusCoil.enabled:false}")
+    private boolean enabled;
+
+    @Value("${alarm.dispatch.sinks.modbusCoil.connection:}")
+    private String connection;
+
+    @Value("${alarm.dispatch.sinks.modbusCoil.slaveId:1}")
+    private int slaveId;
+
+    @Value("${alarm.dispatch.sinks.modbusCoil.address:0}")
+    private int address;
+
+    @Value("${alarm.dispatch.sinks.modbusCoil.restoreGraceMs:300000}")
+    private long restoreGraceMs; // 恢复的事件保留多久，应大于各报警规则重新判定所需的时间
+
+    public ModbusCoilAlarmSink(ModbusRtuManager modbusRtuManager, AlarmEventRepository alarmEventRepository) {
+        this.modbusRtuManager = modbusRtuManager;
+        this.alarmEventRepository = alarmEventRepository;
+    }
+
+    @PostConstruct
+    public void restoreOpenEpisodes() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<String> open = alarmEventRepository.findOpenEpisodeIds();
+            long now = System.currentTimeMillis();
+            for (String episodeId : open) {
+                restoredEpisodes.put(episodeId, now);
+            }
+            if (!open.isEmpty()) {
+                System.out.println("报警线圈: 从报警记录恢复 " + open.size() + " 个未恢复的事件");
+            }
+        } catch (Exception e) {
+            System.err.println("报警线圈: 恢复未结束的报警事件失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public synchronized void deliver(AlarmEvent event) throws Exception {
+        String key = event.getEpisodeId() != null ? event.getEpisodeId() : event.getSensorId() + "|" + event.getType();
+        if (AlarmEvent.EPISODE_RESOLVED.equals(event.getEpisodeState())) {
+            openEpisodes.remove(key);
+            restoredEpisodes.remove(key);
+        } else {
+            openEpisodes.add(key);
+        }
+        expireRestored();
+        writeCoil();
+    }
+
+    /**
+     * 恢复的事件过了保留期后重新写入线圈 (与投递互斥，写入顺序与判断顺序一致)。
+     */
+    @Scheduled(fixedDelayString = "${alarm.dispatch.sinks.modbusCoil.restoreCheckMs:10000}")
+    public synchronized void expireRestoredEpisodes() {
+        if (!expireRestored() && !rewritePending) {
+            return;
+        }
+        try {
+            writeCoil();
+            rewritePending = false;
+        } catch (Exception e) {
+            rewritePending = true;
+            System.err.println("报警线圈: 恢复事件到期后写线圈失败，下次检查重试: " + e.getMessage());
+        }
+    }
+
+    /** 移除超过保留期的恢复事件，返回是否有事件被移除。 */
+    private boolean expireRestored() {
+        if (restoredEpisodes.isEmpty()) {
+            return false;
+        }
+        long cutoff = System.currentTimeMillis() - restoreGraceMs;
+        return restoredEpisodes.values().removeIf(restoredAt -> restoredAt < cutoff);
+    }
+
+    private void writeCoil() throws Exception {
+        modbusRtuManager.writeCoil(connection, slaveId, address, !openEpisodes.isEmpty() || !restoredEpisodes.isEmpty());
+    }
+}
@@ -0,0 +1,38 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.util.BucketRing;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 温度预测后端。嵌入式引擎 (默认) 和外部 Python 服务实现同一接口，由 prediction.backend 选择。
+ */
+public interface PredictionBackend {
+
+    /** 趋势预测结果的步长 (秒)，与 5 秒降采样的历史输入一致。 */
+    int TREND_STEP_SECONDS = 5;
+
+    String name();
+
+    /**
+     * 单点预测：返回对本次采样值的预测 (用于偏差报警)，并把本次采样计入该传感器的模型。
+     * @return 预测温度，无法预测 (未预热/调用失败) 时返回 null
+     */
+    Float predict(String sensorId, Float temperature, Float humidity, Float pressure);
+
+    /**
+     * 异步单点预测，语义同 {@link #predict}。默认在调用线程同步完成；外部服务后端会把
+     * 同一时间窗内各传感器的请求合并成一次批量调用。future 以 null 完成表示无法预测。
+     */
+    default CompletableFuture<Float> predictAsync(String sensorId, Float temperature, Float humidity, Float pressure) {
+        return CompletableFuture.completedFuture(predict(sensorId, temperature, humidity, pressure));
+    }
+
+    /**
+     * 趋势预测。
+     * @param history 历史窗口，每 {@link #TREND_STEP_SECONDS} 秒一个桶均值，按时间升序
+     * @return 未来每 {@link #TREND_STEP_SECONDS} 秒一个点的预测温度，失败时返回 null
+     */
+    List<Float> predictTrend(String sensorId, BucketRing.Window history, int predictHorizonSeconds);
+}
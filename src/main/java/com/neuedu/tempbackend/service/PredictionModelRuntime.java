@@ -0,0 +1,256 @@
+package com.neuedu.tempbackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.neuedu.tempbackend.model.EdgeConfig;
+import com.neuedu.tempbackend.util.ForecastModels;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 嵌入式预测引擎的模型制品：按云端下发的 {@link EdgeConfig.PredictionModelConfig} 加载版本化的系数文件。
+ * <p>
+ * 制品是一个 JSON 系数文件 (离线训练产出)，例如：
+ * <pre>
+ * {"version":"2024.06.1","type":"ARIMA","params":{"p":2,"d":1,"q":1},"coefficients":[0.0,0.61,-0.12,0.35]}
+ * </pre>
+ * url 可以是 http(s) 地址 (下载后镜像到 prediction.model.dir) 或本地路径；加载前校验 SHA-256。
+ * 校验和解析都通过后才用 AtomicReference 整体替换当前模型，轮询线程不会被阻塞，
+ * 各传感器在新模型预热完成前继续使用旧模型 (见 {@link EmbeddedPredictionBackend})。
+ * 没有制品时引擎使用 application.yml 中 prediction.embedded 的参数。
+ */
+@Service
+public class PredictionModelRuntime {
+
+    /** 已加载的模型：newModel() 为每个传感器创建一份独立状态。 */
+    public record LoadedModel(String version, String type, String checksum, String source,
+                              LocalDateTime loadedAt, long loadMs, Supplier<ForecastModels.Model> factory) {
+        public ForecastModels.Model newModel() {
+            return factory.get();
+        }
+    }
+
+    /** 系数文件格式。 */
+    public record ModelArtifact(String version, String type, Map<String, Double> params,
+                                double[] coefficients, Boolean adaptive) {}
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final AtomicReference<LoadedModel> current = new AtomicReference<>();
+
+    @Value("${prediction.model.dir:./models}")
+    private String modelDir; // 远程制品的本地镜像目录
+
+    @Value("${prediction.model.path:}")
+    private String bootstrapPath; // 启动时加载的本地制品 (可选)
+
+    @Value("${prediction.model.checksum:}")
+    private String bootstrapChecksum;
+
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private volatile String lastError;
+    private volatile String rejectedKey; // 校验和不符或内容不合法的 version|checksum，同一配置不重复下载
+
+    public PredictionModelRuntime(@Qualifier("modelArtifactRestTemplate") RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void loadBootstrap() {
+        if (bootstrapPath == null || bootstrapPath.isBlank()) {
+            return;
+        }
+        try {
+            activate(load(null, bootstrapPath.trim(), bootstrapChecksum));
+        } catch (Exception e) {
+            recordFailure("启动时加载预测模型 " + bootstrapPath + " 失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 应用云端下发的模型配置 (配置同步线程调用)。版本与当前一致时不做任何事。
+     * 校验和不符、内容无法解析或参数不合法的制品记为不可用，直到云端下发新的版本或校验和；
+     * 下载或读取失败 (网络、IO) 不记录，下次同步时重试。
+     */
+    public void apply(EdgeConfig.PredictionModelConfig config) {
+        if (config == null || config.getUrl() == null || config.getUrl().isBlank() || config.getVersion() == null) {
+            return;
+        }
+        LoadedModel active = current.get();
+        if (active != null && config.getVersion().equals(active.version())) {
+            return;
+        }
+        String key = config.getVersion() + "|" + config.getChecksum();
+        if (key.equals(rejectedKey)) {
+            return; // 已确认该制品不可用，等待云端下发新的版本或校验和
+        }
+        try {
+            if (config.getChecksum() == null || config.getChecksum().isBlank()) {
+                throw new IllegalArgumentException("checksum is required for model " + config.getVersion());
+            }
+            activate(load(config.getVersion(), config.getUrl().trim(), config.getChecksum()));
+        } catch (JsonProcessingException | IllegalArgumentException | IllegalStateException e) {
+            rejectedKey = key;
+            recordFailure("预测模型 " + config.getVersion() + " 不可用，继续使用当前模型: " + e.getMessage());
+        } catch (Exception e) {
+            recordFailure("加载预测模型 " + config.getVersion() + " 失败，继续使用当前模型，下次同步时重试: " + e.getMessage());
+        }
+    }
+
+    public LoadedModel current() {
+        return current.get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        LoadedModel model = current.get();
+        if (model != null) {
+            stats.put("version", model.version());
+            stats.put("type", model.type());
+            stats.put("checksum", model.checksum());
+            stats.put("source", model.source());
+            stats.put("loadedAt", model.loadedAt().toString());
+            stats.put("loadMs", model.loadMs());
+        } else {
+            stats.put("version", null); // 使用 application.yml 参数
+        }
+        stats.put("loads", loadCount.get());
+        stats.put("failures", loadFailures.get());
+        stats.put("lastError", lastError);
+        return stats;
+    }
+
+    private void activate(LoadedModel model) {
+        LoadedModel previous = current.getAndSet(model);
+        loadCount.incrementAndGet();
+        System.out.println("预测模型已切换: " + (previous != null ? previous.version() : "内置参数") + " -> " + model.version() +
+                " (" + model.type() + ", 加载耗时 " + model.loadMs() + "ms)");
+    }
+
+    private void recordFailure(String message) {
+        loadFailures.incrementAndGet();
+        lastError = message;
+        System.err.println(message);
+    }
+
+    private LoadedModel load(String version, String location, String expectedChecksum) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = fetch(version, location, expectedChecksum);
+        String checksum = verifyChecksum(bytes, expectedChecksum);
+        ModelArtifact artifact = objectMapper.readValue(bytes, ModelArtifact.class);
+        String resolvedVersion = version != null ? version : artifact.version();
+        Supplier<ForecastModels.Model> factory = factoryOf(artifact);
+        factory.get(); // 先构造一次，参数不合法时在切换前失败
+        long loadMs = (System.nanoTime() - start) / 1_000_000;
+        return new LoadedModel(resolvedVersion != null ? resolvedVersion : "sha256:" + checksum.substring(0, 12),
+                artifact.type().toUpperCase(), "sha256:" + checksum, location, LocalDateTime.now(), loadMs, factory);
+    }
+
+    /**
+     * 读取制品内容。远程制品先查本地镜像 (校验和一致则不再下载)，下载后先校验再原子写入镜像目录，
+     * 写入失败时删除临时文件。
+     */
+    private byte[] fetch(String version, String location, String expectedChecksum) throws IOException {
+        if (!location.startsWith("http://") && !location.startsWith("https://")) {
+            return Files.readAllBytes(Paths.get(location.startsWith("file:") ? location.substring("file:".length()) : location));
+        }
+        Path mirror = Paths.get(modelDir).resolve((version != null ? version : "model").replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+        if (expectedChecksum != null && !expectedChecksum.isBlank() && Files.exists(mirror)) {
+            byte[] cached = Files.readAllBytes(mirror);
+            if (sha256(cached).equalsIgnoreCase(normalizeChecksum(expectedChecksum))) {
+                return cached;
+            }
+        }
+        byte[] downloaded = restTemplate.getForObject(location, byte[].class);
+        if (downloaded == null || downloaded.length == 0) {
+            throw new IOException("empty model artifact from " + location);
+        }
+        verifyChecksum(downloaded, expectedChecksum); // 校验和不符的内容不写入镜像
+        Files.createDirectories(mirror.getParent());
+        Path temp = Files.createTempFile(mirror.getParent(), mirror.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, downloaded);
+            Files.move(temp, mirror, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return downloaded;
+    }
+
+    /**
+     * 计算内容的 SHA-256，给定了期望校验和时要求一致。
+     * @return 十六进制的 SHA-256
+     */
+    private static String verifyChecksum(byte[] bytes, String expectedChecksum) {
+        String checksum = sha256(bytes);
+        if (expectedChecksum != null && !expectedChecksum.isBlank() && !checksum.equalsIgnoreCase(normalizeChecksum(expectedChecksum))) {
+            throw new IllegalStateException("checksum mismatch: expected " + expectedChecksum + ", got sha256:" + checksum);
+        }
+        return checksum;
+    }
+
+    private static Supplier<ForecastModels.Model> factoryOf(ModelArtifact artifact) {
+        if (artifact.type() == null) {
+            throw new IllegalArgumentException("model type is missing");
+        }
+        Map<String, Double> params = artifact.params() != null ? artifact.params() : Map.of();
+        switch (artifact.type().trim().toUpperCase()) {
+            case ForecastModels.EWMA: {
+                double alpha = params.getOrDefault("alpha", 0.3);
+                return () -> new ForecastModels.Ewma(alpha);
+            }
+            case ForecastModels.HOLT_WINTERS: {
+                double alpha = params.getOrDefault("alpha", 0.5);
+                double beta = params.getOrDefault("beta", 0.1);
+                double gamma = params.getOrDefault("gamma", 0.1);
+                int seasonLength = params.getOrDefault("seasonLength", 0.0).intValue();
+                return () -> new ForecastModels.HoltWinters(alpha, beta, gamma, seasonLength);
+            }
+            case ForecastModels.ARIMA: {
+                int p = params.getOrDefault("p", 2.0).intValue();
+                int d = params.getOrDefault("d", 1.0).intValue();
+                int q = params.getOrDefault("q", 1.0).intValue();
+                double forgetting = params.getOrDefault("forgetting", 0.995);
+                double[] coefficients = artifact.coefficients();
+                boolean adaptive = artifact.adaptive() != null ? artifact.adaptive() : coefficients == null;
+                return () -> new ForecastModels.Arima(p, d, q, forgetting, coefficients, adaptive);
+            }
+            default:
+                throw new IllegalArgumentException("unsupported model type: " + artifact.type());
+        }
+    }
+
+    private static String normalizeChecksum(String checksum) {
+        String value = checksum.trim();
+        return value.regionMatches(true, 0, "sha256:", 0, 7) ? value.substring(7) : value;
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
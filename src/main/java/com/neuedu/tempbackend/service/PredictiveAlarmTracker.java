@@ -0,0 +1,159 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预测性报警的事件状态机 (每个传感器一个)：IDLE → OPEN → (UPDATED)* → RESOLVED → COOLDOWN → IDLE。
+ * <p>
+ * 趋势检查每轮把结果交给这里，只有状态变化才生成 {@link AlarmEvent} 交给调用方保存和上传：
+ * <ul>
+ *   <li>OPENED：空闲时首次预测到越限。</li>
+ *   <li>UPDATED：越限方向改变，或预测值比上次报告的恶化超过 updateDelta。</li>
+ *   <li>RESOLVED：连续 clearRuns 轮预测不再越限；之后进入冷却期，冷却期内的越限不再开启新事件。</li>
+ * </ul>
+ * 缓慢的越限过程因此只产生少量记录，而不是每 30 秒一条报警和一次上传。
+ * 状态只在趋势检查线程上修改。
+ */
+@Service
+public class PredictiveAlarmTracker {
+
+    private static final DateTimeFormatter EPISODE_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    /** 一次预测到的越限：最早越限点的预测值、被越过的阈值和预计发生时间。 */
+    public record Breach(float predicted, float threshold, boolean high, int secondsAhead, LocalDateTime expectedAt) {}
+
+    private enum Phase { IDLE, OPEN, COOLDOWN }
+
+    private static final class Episode {
+        Phase phase = Phase.IDLE;
+        String episodeId;
+        LocalDateTime openedAt;
+        boolean high;
+        float reportedPredicted; // 最近一次写入事件时的预测值
+        float threshold;
+        int clearRuns;
+        LocalDateTime cooldownUntil;
+    }
+
+    private final Map<String, Episode> episodes = new ConcurrentHashMap<>();
+
+    @Value("${edge.deviceId:jetson-001}")
+    private String deviceId;
+
+    @Value("${alarm.predictive.cooldownMs:120000}")
+    private long cooldownMs; // 事件恢复后多久内不再开启新事件
+
+    @Value("${alarm.predictive.clearRuns:2}")
+    private int clearRunsToResolve; // 连续多少轮不越限才判定恢复
+
+    @Value("${alarm.predictive.updateDelta:0.5}")
+    private float updateDelta; // 预测值恶化超过多少 (°C) 才记录 UPDATED
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong resolved = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong(); // 没有产生记录的越限观测 (事件进行中无明显变化或冷却期内)
+
+    /**
+     * 记录某传感器本轮的趋势预测结果。
+     * @param breach 预测到的越限，null 表示本轮预测不越限 (没有完成预测的传感器不要调用)
+     * @return 需要保存并上传的事件 (未保存)；没有状态变化时返回 null
+     */
+    public AlarmEvent observe(String sensorId, String sensorName, Breach breach, LocalDateTime now) {
+        Episode episode = episodes.computeIfAbsent(sensorId, id -> new Episode());
+        if (episode.phase == Phase.COOLDOWN && !now.isBefore(episode.cooldownUntil)) {
+            episode.phase = Phase.IDLE;
+        }
+
+        switch (episode.phase) {
+            case IDLE:
+                if (breach == null) {
+                    return null;
+                }
+                episode.phase = Phase.OPEN;
+                episode.episodeId = sensorId + "-" + now.format(EPISODE_TIME);
+                episode.openedAt = now;
+                episode.clearRuns = 0;
+                opened.incrementAndGet();
+                return transition(episode, sensorId, sensorName, breach, AlarmEvent.EPISODE_OPENED,
+                        String.format("【预测性报警】传感器 [%s (%s)] 预测 %d 秒后温度将超阈值: %.2f°C (阈值: %.2f°C)",
+                                sensorName, sensorId, breach.secondsAhead(), breach.predicted(), breach.threshold()));
+
+            case OPEN:
+                if (breach == null) {
+                    if (++episode.clearRuns < clearRunsToResolve) {
+                        return null;
+                    }
+                    episode.phase = Phase.COOLDOWN;
+                    episode.cooldownUntil = now.plus(Duration.ofMillis(cooldownMs));
+                    resolved.incrementAndGet();
+                    AlarmEvent event = new AlarmEvent(deviceId, sensorId, sensorName, now, AlarmEvent.TYPE_PREDICTED,
+                            null, episode.threshold, episode.reportedPredicted,
+                            String.format("【预测性报警恢复】传感器 [%s (%s)] 预测温度已回到阈值范围内，持续 %d 秒",
+                                    sensorName, sensorId, Duration.between(episode.openedAt, now).getSeconds()));
+                    event.setEpisodeId(episode.episodeId);
+                    event.setEpisodeState(AlarmEvent.EPISODE_RESOLVED);
+                    return event;
+                }
+                episode.clearRuns = 0;
+                boolean directionChanged = breach.high() != episode.high;
+                float worsening = breach.high() ? breach.predicted() - episode.reportedPredicted
+                        : episode.reportedPredicted - breach.predicted();
+                if (!directionChanged && worsening < updateDelta) {
+                    suppressed.incrementAndGet();
+                    return null;
+                }
+                updated.incrementAndGet();
+                return transition(episode, sensorId, sensorName, breach, AlarmEvent.EPISODE_UPDATED,
+                        String.format("【预测性报警更新】传感器 [%s (%s)] 预测 %d 秒后温度: %.2f°C (阈值: %.2f°C)",
+                                sensorName, sensorId, breach.secondsAhead(), breach.predicted(), breach.threshold()));
+
+            case COOLDOWN:
+            default:
+                if (breach != null) {
+                    suppressed.incrementAndGet();
+                }
+                return null;
+        }
+    }
+
+    private AlarmEvent transition(Episode episode, String sensorId, String sensorName, Breach breach,
+                                  String state, String message) {
+        episode.high = breach.high();
+        episode.reportedPredicted = breach.predicted();
+        episode.threshold = breach.threshold();
+        System.err.println(message);
+        // 报警时间是预测的越限发生时间
+        AlarmEvent event = new AlarmEvent(deviceId, sensorId, sensorName, breach.expectedAt(), AlarmEvent.TYPE_PREDICTED,
+                breach.predicted(), breach.threshold(), breach.predicted(), message);
+        event.setEpisodeId(episode.episodeId);
+        event.setEpisodeState(state);
+        return event;
+    }
+
+    /** 传感器被移除时丢弃其状态。 */
+    public void remove(String sensorId) {
+        episodes.remove(sensorId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long open = episodes.values().stream().filter(e -> e.phase == Phase.OPEN).count();
+        stats.put("openEpisodes", open);
+        stats.put("opened", opened.get());
+        stats.put("updated", updated.get());
+        stats.put("resolved", resolved.get());
+        stats.put("suppressed", suppressed.get());
+        return stats;
+    }
+}
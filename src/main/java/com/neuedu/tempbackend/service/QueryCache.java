@@ -0,0 +1,313 @@
+package com.neuedu.tempbackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.neuedu.tempbackend.util.KeysetCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 查询结果缓存：按字节计重的 LRU，缓存序列化后的响应体或聚合结果。
+ * <p>
+ * 每个条目带一个作用域 {@link Scope}：传感器 (null 表示所有传感器)、涉及的存储级别、窗口是否覆盖"现在"。
+ * <ul>
+ *   <li>覆盖现在的条目 (最近 N 条、end 在未来的范围查询)：只有对应传感器、对应存储级别的写入会使其失效。</li>
+ *   <li>已封闭的历史窗口：不受新样本影响，缓存到 sealedUntil (数据可能被压缩或清理的最早时间) 为止。</li>
+ * </ul>
+ * 每个传感器维护一个写入版本号，加载期间发生写入的结果不会被放入缓存，避免把旧数据存进去。
+ * 在事务中调用的失效操作推迟到提交之后执行，否则提交前的并发读取可能把旧数据重新放进缓存。
+ */
+@Service
+public class QueryCache {
+
+    /** 报警视图使用的伪存储级别：写入或清理报警事件 (alarm_event) 时失效。 */
+    public static final String ALARM_TIER = "ALARM";
+    /** 读取 sensor_data 全部存储级别的查询 (例如原始范围查询)。 */
+    public static final Set<String> ALL_TIERS = Set.of("REALTIME", "MINUTELY_COMPACTED", "HOURLY_COMPACTED");
+
+    private static final String ALL_SENSORS = "*";
+    private static final int ENTRY_OVERHEAD_BYTES = 160; // key、Entry 对象及索引的大致开销
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${query.cache.maxBytes:16777216}")
+    private long maxBytes;
+
+    @Value("${query.cache.maxEntryBytes:1048576}")
+    private long maxEntryBytes; // 单个条目上限，过大的结果不缓存
+
+    // access-order LinkedHashMap 即 LRU；所有结构都在 this 锁内修改
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Set<String>> keysBySensor = new HashMap<>();
+    private long currentBytes;
+
+    private final Map<String, AtomicLong> sensorVersions = new ConcurrentHashMap<>();
+    private final AtomicLong globalVersion = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder rejectedPuts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public QueryCache(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @param sensorId    null 表示涉及所有传感器
+     * @param tiers       结果依赖的存储级别
+     * @param coversNow   窗口是否包含"现在" (新样本会改变结果)
+     * @param sealedUntil 对已封闭窗口：缓存有效期上限；null 表示不限
+     */
+    public record Scope(String sensorId, Set<String> tiers, boolean coversNow, LocalDateTime sealedUntil) {
+
+        public static Scope live(String sensorId, Set<String> tiers) {
+            return new Scope(sensorId, tiers, true, null);
+        }
+
+        public static Scope sealed(String sensorId, Set<String> tiers, LocalDateTime sealedUntil) {
+            return new Scope(sensorId, tiers, false, sealedUntil);
+        }
+    }
+
+    private record Entry(String key, Object value, long weight, Scope scope) {}
+
+    /** 序列化后的一页结果及下一页游标 (没有更多数据时为 null)。 */
+    public record JsonPage(byte[] body, String nextCursor) {}
+
+    /** 加载前记录的版本号，放入缓存时用于检测加载期间是否有写入。 */
+    public long versionOf(String sensorId) {
+        if (sensorId == null) {
+            return globalVersion.get();
+        }
+        return sensorVersions.computeIfAbsent(sensorId, k -> new AtomicLong()).get();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                LocalDateTime sealedUntil = entry.scope().sealedUntil();
+                if (sealedUntil != null && !LocalDateTime.now().isBefore(sealedUntil)) {
+                    remove(entry);
+                    expirations.increment();
+                } else {
+                    hits.increment();
+                    return (T) entry.value();
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 放入缓存。version 为加载前 {@link #versionOf} 的返回值；加载期间版本号变化 (新写入或
+     * {@link #invalidateTier} 批量修改) 则放弃，已封闭窗口也不例外。
+     * 版本号在持锁后检查：失效方先递增版本号再持锁清理，因此不会有过期结果在清理之后放入。
+     */
+    public void put(String key, Object value, long weightBytes, Scope scope, long version) {
+        long weight = weightBytes + key.length() * 2L + ENTRY_OVERHEAD_BYTES;
+        if (weight > maxEntryBytes) {
+            rejectedPuts.increment();
+            return;
+        }
+        synchronized (this) {
+            if (versionOf(scope.sensorId()) != version) {
+                rejectedPuts.increment();
+                return;
+            }
+            Entry old = entries.get(key);
+            if (old != null) {
+                remove(old);
+            }
+            Entry entry = new Entry(key, value, weight, scope);
+            entries.put(key, entry);
+            keysBySensor.computeIfAbsent(scope.sensorId() != null ? scope.sensorId() : ALL_SENSORS, k -> new HashSet<>()).add(key);
+            currentBytes += weight;
+            puts.increment();
+            Iterator<Entry> it = entries.values().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                unindex(eldest);
+                evictions.increment();
+                evictedBytes.add(eldest.weight());
+            }
+        }
+    }
+
+    /**
+     * 读取缓存的一页 JSON 结果，未命中时调用 loader、序列化并计算下一页游标后缓存。
+     * @param key      null 表示不缓存 (例如深翻页，重复访问的概率很低)
+     * @param limit    页大小：结果满一页时才返回下一页游标
+     * @param cursorOf 由一页的最后一条生成游标
+     */
+    public <T> JsonPage getOrLoadPage(String key, Scope scope, int limit, Supplier<List<T>> loader,
+                                      Function<T, KeysetCursor> cursorOf) {
+        if (key != null) {
+            JsonPage cached = get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long version = versionOf(scope.sensorId());
+        List<T> rows = loader.get();
+        JsonPage page;
+        try {
+            String nextCursor = !rows.isEmpty() && rows.size() >= limit ? cursorOf.apply(rows.get(rows.size() - 1)).encode() : null;
+            page = new JsonPage(objectMapper.writeValueAsBytes(rows), nextCursor);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize cached query result", e);
+        }
+        if (key != null) {
+            put(key, page, page.body().length + (page.nextCursor() != null ? page.nextCursor().length() * 2L : 0L), scope, version);
+        }
+        return page;
+    }
+
+    /**
+     * 某传感器某存储级别有新数据写入 (或被压缩/删除)：
+     * 只失效该传感器 (以及所有传感器汇总) 中依赖该存储级别且覆盖现在的条目。
+     */
+    public void onWrite(String sensorId, String storageLevel) {
+        if (deferUntilCommit(() -> onWrite(sensorId, storageLevel))) {
+            return;
+        }
+        sensorVersions.computeIfAbsent(sensorId, k -> new AtomicLong()).incrementAndGet();
+        globalVersion.incrementAndGet();
+        synchronized (this) {
+            invalidateLive(sensorId, storageLevel);
+            invalidateLive(ALL_SENSORS, storageLevel);
+        }
+    }
+
+    /**
+     * 某存储级别被批量修改 (例如按时间清理)，不区分传感器：失效所有依赖它的条目，包括已封闭窗口。
+     */
+    public void invalidateTier(String storageLevel) {
+        if (deferUntilCommit(() -> invalidateTier(storageLevel))) {
+            return;
+        }
+        for (AtomicLong version : sensorVersions.values()) {
+            version.incrementAndGet();
+        }
+        globalVersion.incrementAndGet();
+        synchronized (this) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.scope().tiers().contains(storageLevel)) {
+                    it.remove();
+                    unindex(entry);
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    private boolean deferUntilCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+        return true;
+    }
+
+    private void invalidateLive(String indexKey, String storageLevel) {
+        Set<String> keys = keysBySensor.get(indexKey);
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        Iterator<String> it = keys.iterator();
+        while (it.hasNext()) {
+            Entry entry = entries.get(it.next());
+            if (entry != null && entry.scope().coversNow() && entry.scope().tiers().contains(storageLevel)) {
+                it.remove();
+                entries.remove(entry.key());
+                currentBytes -= entry.weight();
+                invalidations.increment();
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.key());
+        unindex(entry);
+    }
+
+    private void unindex(Entry entry) {
+        currentBytes -= entry.weight();
+        String indexKey = entry.scope().sensorId() != null ? entry.scope().sensorId() : ALL_SENSORS;
+        Set<String> keys = keysBySensor.get(indexKey);
+        if (keys != null) {
+            keys.remove(entry.key());
+        }
+    }
+
+    /** 定期清理已过期的封闭窗口条目，释放空间。 */
+    @Scheduled(fixedDelayString = "${query.cache.sweepIntervalMs:60000}")
+    public void sweepExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (this) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                LocalDateTime sealedUntil = entry.scope().sealedUntil();
+                if (sealedUntil != null && !now.isBefore(sealedUntil)) {
+                    it.remove();
+                    unindex(entry);
+                    expirations.increment();
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("bytes", currentBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("puts", puts.sum());
+        stats.put("rejectedPuts", rejectedPuts.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("evictedBytes", evictedBytes.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("expirations", expirations.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,285 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.util.BucketRing;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 外部 (Python) 预测服务后端，作为嵌入式引擎之外的可选后端保留。
+ * <p>
+ * 异步单点预测由一个合并线程按时间窗 (batch.windowMs) 收集各传感器的请求，一次 POST 到批量接口，
+ * 同一设备上 N 个传感器每个轮询周期只需一次往返。批量接口不存在 (404/405) 时逐条调用单点接口，
+ * batch.retryMinutes 后再尝试批量。合并线程在第一次异步预测时才启动，选用嵌入式引擎时不占线程。
+ */
+@Service
+public class RemotePredictionBackend implements PredictionBackend {
+
+    private final RestTemplate predictionRestTemplate; // 单点预测专用连接池 (短超时)
+    private final RestTemplate trendRestTemplate; // 趋势预测专用连接池
+
+    // Python预测服务的URL，默认为本地端口5000，路径/predict (单点预测)
+    @Value("${prediction.service.url:http://localhost:5000/predict}")
+    private String predictionServiceUrl;
+
+    // Python预测趋势服务的URL，默认为本地端口5000，路径/predict_trend
+    @Value("${prediction.service.trendUrl:http://localhost:5000/predict_trend}")
+    private String predictionServiceTrendUrl;
+
+    // 批量单点预测接口，为空时取 url + "_batch"；请求 {"items":[...]}，返回 {"predicted_temperatures":[...]} (与 items 一一对应)
+    @Value("${prediction.service.batchUrl:}")
+    private String predictionServiceBatchUrl;
+
+    @Value("${prediction.batch.windowMs:20}")
+    private long batchWindowMs; // 收到第一条请求后最多再等多久凑批
+
+    @Value("${prediction.batch.maxSize:64}")
+    private int batchMaxSize;
+
+    @Value("${prediction.batch.retryMinutes:10}")
+    private long batchRetryMinutes;
+
+    private final Executor predictionBatchExecutor;
+    private final LinkedBlockingQueue<PendingPrediction> pending = new LinkedBlockingQueue<>();
+    private final AtomicLong batchDisabledUntil = new AtomicLong();
+    private final AtomicBoolean batchLoopStarted = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    // 统计
+    private final AtomicLong batchCalls = new AtomicLong();
+    private final AtomicLong batchedRequests = new AtomicLong();
+
+    private record PendingPrediction(String sensorId, Float temperature, Float humidity, Float pressure,
+                                     CompletableFuture<Float> future) {}
+
+    public RemotePredictionBackend(@Qualifier("predictionRestTemplate") RestTemplate predictionRestTemplate,
+                                   @Qualifier("trendRestTemplate") RestTemplate trendRestTemplate,
+                                   @Qualifier("predictionBatchExecutor") Executor predictionBatchExecutor) {
+        this.predictionRestTemplate = predictionRestTemplate;
+        this.trendRestTemplate = trendRestTemplate;
+        this.predictionBatchExecutor = predictionBatchExecutor;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (predictionServiceBatchUrl == null || predictionServiceBatchUrl.isBlank()) {
+            predictionServiceBatchUrl = predictionServiceUrl + "_batch";
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        PendingPrediction request;
+        while ((request = pending.poll()) != null) {
+            request.future().complete(null);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "remote";
+    }
+
+    /**
+     * 调用外部（Python）预测服务，预测单个数据点的温度
+     * @param sensorId 传感器ID (Python 服务无状态，不使用)
+     * @param temperature 当前温度
+     * @param humidity 当前湿度 (可能为null)
+     * @param pressure 当前压力 (可能为null)
+     * @return 预测温度值，如果调用失败则返回null
+     */
+    @Override
+    public Float predict(String sensorId, Float temperature, Float humidity, Float pressure) {
+        if (temperature == null) {
+            return null; // 没有当前温度无法预测
+        }
+        try {
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("temperature", temperature);
+            requestBody.put("humidity", humidity); // 即使为null也发送
+            requestBody.put("pressure", pressure); // 即使为null也发送
+
+            // 调用Python预测服务
+            // 假设Python服务返回 {"predicted_temperature": 25.5}
+            Map<String, Object> response = predictionRestTemplate.postForObject(predictionServiceUrl, requestBody, Map.class);
+
+            if (response != null && response.containsKey("predicted_temperature")) {
+                // 将Number类型转换为Float
+                return ((Number) response.get("predicted_temperature")).floatValue();
+            }
+        } catch (Exception e) {
+            System.err.println("Error calling single point prediction service at " + predictionServiceUrl + ": " + e.getMessage());
+            // 实际项目中可以记录更详细日志或使用断路器模式
+        }
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<Float> predictAsync(String sensorId, Float temperature, Float humidity, Float pressure) {
+        if (temperature == null || !running) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!batchLoopStarted.get() && batchLoopStarted.compareAndSet(false, true)) {
+            predictionBatchExecutor.execute(this::batchLoop);
+        }
+        CompletableFuture<Float> future = new CompletableFuture<>();
+        pending.add(new PendingPrediction(sensorId, temperature, humidity, pressure, future));
+        return future;
+    }
+
+    /**
+     * 合并线程：阻塞等待第一条请求，再在时间窗内收集其余请求，一次发送。
+     * 发送期间到达的请求自然凑成下一批。
+     */
+    private void batchLoop() {
+        List<PendingPrediction> batch = new ArrayList<>(batchMaxSize);
+        while (running) {
+            try {
+                PendingPrediction first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+                while (batch.size() < batchMaxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingPrediction next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                sendBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("预测批量合并线程异常: " + e.getMessage());
+            } finally {
+                for (PendingPrediction request : batch) {
+                    request.future().complete(null); // 已完成的不受影响，异常路径上保证调用方不会一直等待
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendBatch(List<PendingPrediction> batch) {
+        if (System.currentTimeMillis() < batchDisabledUntil.get()) {
+            for (PendingPrediction request : batch) {
+                request.future().complete(predict(request.sensorId(), request.temperature(), request.humidity(), request.pressure()));
+            }
+            return;
+        }
+        List<Map<String, Object>> items = new ArrayList<>(batch.size());
+        for (PendingPrediction request : batch) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("sensorId", request.sensorId());
+            item.put("temperature", request.temperature());
+            item.put("humidity", request.humidity());
+            item.put("pressure", request.pressure());
+            items.add(item);
+        }
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("items", items);
+        try {
+            Map<String, Object> response = predictionRestTemplate.postForObject(predictionServiceBatchUrl, requestBody, Map.class);
+            batchCalls.incrementAndGet();
+            batchedRequests.addAndGet(batch.size());
+            List<?> values = response != null ? (List<?>) response.get("predicted_temperatures") : null;
+            for (int i = 0; i < batch.size(); i++) {
+                Object value = values != null && i < values.size() ? values.get(i) : null;
+                batch.get(i).future().complete(value instanceof Number ? ((Number) value).floatValue() : null);
+            }
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() != HttpStatus.NOT_FOUND && e.getStatusCode() != HttpStatus.METHOD_NOT_ALLOWED) {
+                System.err.println("Error calling batch prediction service at " + predictionServiceBatchUrl + ": " + e.getMessage());
+                return;
+            }
+            batchDisabledUntil.set(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(batchRetryMinutes));
+            System.err.println("预测服务不支持批量接口 (" + e.getRawStatusCode() + ")，改为逐条调用，" + batchRetryMinutes + " 分钟后重试。");
+            sendBatch(batch);
+        } catch (Exception e) {
+            System.err.println("Error calling batch prediction service at " + predictionServiceBatchUrl + ": " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getBatchStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("batchCalls", batchCalls.get());
+        stats.put("batchedRequests", batchedRequests.get());
+        stats.put("pending", pending.size());
+        stats.put("batchEndpointDisabled", System.currentTimeMillis() < batchDisabledUntil.get());
+        return stats;
+    }
+
+    /**
+     * 调用外部（Python）预测服务，进行时间序列的趋势预测。
+     * 假设Python服务需要一个包含历史数据点列表的JSON，并返回一个预测值列表。
+     * @param sensorId 传感器ID
+     * @param history 5 秒一个桶的历史窗口
+     * @param predictHorizonSeconds 预测未来多少秒
+     * @return 预测的温度序列 (List<Float>)，如果调用失败则返回null
+     */
+    @Override
+    public List<Float> predictTrend(String sensorId, BucketRing.Window history, int predictHorizonSeconds) {
+        if (history == null || history.size() == 0) {
+            return null;
+        }
+
+        try {
+            // 构造请求体，将历史数据转换为Python服务期望的格式
+            // 例如： [{"timestamp": "...", "temperature": "...", "humidity": "..."}, ...]
+            List<Map<String, Object>> historicalPoints = new ArrayList<>(history.size());
+            for (int i = 0; i < history.size(); i++) {
+                Map<String, Object> item = new HashMap<>();
+                item.put("timestamp", TieredHistoryQueryPlanner.fromEpochMs(history.bucketStartMs()[i]).toString()); // 假设Python服务能解析ISO格式时间字符串
+                item.put("temperature", toFloat(history.temperature()[i]));
+                if (!Double.isNaN(history.humidity()[i])) item.put("humidity", (float) history.humidity()[i]);
+                if (!Double.isNaN(history.pressure()[i])) item.put("pressure", (float) history.pressure()[i]);
+                historicalPoints.add(item);
+            }
+
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("sensorId", sensorId);
+            requestBody.put("historyData", historicalPoints);
+            requestBody.put("predictHorizonSeconds", predictHorizonSeconds);
+
+            // 假设Python服务返回 {"forecast_temperatures": [t1, t2, t3, ...]}
+            Map<String, Object> response = trendRestTemplate.postForObject(predictionServiceTrendUrl, requestBody, Map.class);
+
+            if (response != null && response.containsKey("forecast_temperatures")) {
+                // 将Number类型的List转换为Float的List
+                List<?> rawForecasts = (List<?>) response.get("forecast_temperatures");
+                return rawForecasts.stream()
+                        .map(o -> ((Number) o).floatValue())
+                        .collect(Collectors.toList());
+            }
+        } catch (Exception e) {
+            System.err.println("Error calling trend prediction service at " + predictionServiceTrendUrl + " for sensor " + sensorId + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static Float toFloat(double value) {
+        return Double.isNaN(value) ? null : (float) value;
+    }
+}
@@ -0,0 +1,468 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.util.TimeWindowSeries;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多传感器联合规则 (简单的 CEP)：按 modbus.groups 配置的分组，在采集流上增量维护组内各传感器的滑动窗口，
+ * 评估跨传感器的模式：
+ * <ul>
+ *   <li>GROUP_AVERAGE：组内各传感器窗口均值的平均超过 maxAverage (整个房间升温)。</li>
+ *   <li>GROUP_SPREAD：组内最高与最低窗口均值之差超过 maxSpread (房间内温度不均)。</li>
+ *   <li>SENSOR_DIVERGENCE：某个传感器的窗口均值偏离组内中位数超过 maxDivergence (疑似探头故障)，至少 3 个传感器才判断。</li>
+ *   <li>GROUP_RISE：窗口内变化率超过 riseRatePerMinute 的传感器数达到 minRisingSensors (例如门未关)。</li>
+ * </ul>
+ * 窗口只保留在内存中 ({@link TimeWindowSeries})，样本到达时 O(1) 更新；同一分组最多每 evaluateIntervalMs 评估一次，
+ * 窗口内没有样本的传感器 (离线) 不参与评估。在线传感器不足以判断某个条件时 (例如整组离线)，进行中的事件以 RESOLVED 结束，
+ * 整组都没有样本时由定时任务 (sweepIntervalMs) 完成这一步。每个条件形成报警事件 (episode)，只在报警和恢复时
+ * 经 {@link AlarmEventService} 记录并上传，与单传感器报警走同一条路径。
+ * <p>
+ * 分组和成员关系是不可变快照 (只包含当前拓扑中存在的传感器)，轮询线程无锁读取；采集拓扑变化后
+ * 由 {@link #rebuild} 整体替换，保留仍在组内的传感器的窗口和进行中的事件，被移出的成员或分组的事件以 RESOLVED 结束。
+ */
+@Service
+public class SensorGroupEventProcessor {
+
+    private static final DateTimeFormatter EPISODE_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final String GROUP_SENSOR_PREFIX = "group:"; // 组级事件的 sensorId
+
+    // 组级条件下标
+    private static final int AVERAGE = 0;
+    private static final int SPREAD = 1;
+    private static final int RISE = 2;
+    private static final String[] GROUP_TYPES = {
+            AlarmEvent.TYPE_GROUP_AVERAGE, AlarmEvent.TYPE_GROUP_SPREAD, AlarmEvent.TYPE_GROUP_RISE};
+    private static final String[] GROUP_LABELS = {"平均温度过高", "组内温差过大", "多个传感器同时升温"};
+
+    /** 一个条件的事件状态。 */
+    private static final class Episode {
+        boolean active;
+        String episodeId;
+        long openedAtMs;
+    }
+
+    /** 单个分组的状态。访问时以自身加锁。 */
+    private static final class GroupState {
+        final ModbusProperties.SensorGroupProperties config;
+        final String[] sensorIds;
+        final TimeWindowSeries[] windows;
+        final Episode[] groupEpisodes = {new Episode(), new Episode(), new Episode()};
+        final Episode[] divergence; // 按组内传感器
+        final double[] means; // 评估时的临时数组
+        final double[] sortedMeans;
+        long lastEvaluatedMs;
+        boolean retired; // 已被新快照取代：窗口和事件已交给新的分组状态，不再更新
+        // 最近一次评估结果 (状态接口用)
+        int liveSensors;
+        double average = Double.NaN;
+        double spread = Double.NaN;
+        int risingSensors;
+
+        GroupState(ModbusProperties.SensorGroupProperties config, String[] sensorIds, int capacity) {
+            this.config = config;
+            this.sensorIds = sensorIds;
+            this.windows = new TimeWindowSeries[sensorIds.length];
+            this.divergence = new Episode[sensorIds.length];
+            for (int i = 0; i < sensorIds.length; i++) {
+                windows[i] = new TimeWindowSeries(capacity);
+                divergence[i] = new Episode();
+            }
+            this.means = new double[sensorIds.length];
+            this.sortedMeans = new double[sensorIds.length];
+        }
+    }
+
+    /** 传感器在某个分组中的位置。 */
+    private record Membership(GroupState group, int index) {}
+
+    /** 分组和成员关系的不可变快照。 */
+    private record Groups(Map<String, GroupState> byName, Map<String, List<Membership>> bySensor) {}
+
+    private final ModbusProperties modbusProperties;
+    private final AlarmEventService alarmEventService;
+    private final SensorRegistry sensorRegistry;
+    private volatile Groups groups = new Groups(Map.of(), Map.of());
+
+    @Value("${edge.deviceId:jetson-001}")
+    private String deviceId;
+
+    @Value("${alarm.groups.maxBufferSize:36000}")
+    private int bufferSize; // 每个传感器窗口最多保留的样本数 (按需增长)，默认覆盖 1 小时 10Hz 采样
+
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong raised = new AtomicLong();
+    private final AtomicLong cleared = new AtomicLong();
+
+    public SensorGroupEventProcessor(ModbusProperties modbusProperties, AlarmEventService alarmEventService,
+                                     SensorRegistry sensorRegistry) {
+        this.modbusProperties = modbusProperties;
+        this.alarmEventService = alarmEventService;
+        this.sensorRegistry = sensorRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        rebuild(sensorRegistry.sensorIds());
+    }
+
+    /**
+     * 按 modbus.groups 和当前拓扑中的传感器重建分组快照 (启动时，以及采集拓扑变化后由 SensorTopologyReconciler 调用)。
+     * 不在拓扑中的传感器不计入分组，成员少于 2 个的分组不启用。
+     */
+    public synchronized void rebuild(Collection<String> sensorIds) {
+        Set<String> present = new HashSet<>(sensorIds);
+        Groups previous = groups;
+        Map<String, GroupState> byName = new LinkedHashMap<>();
+        Map<String, List<Membership>> bySensor = new HashMap<>();
+        if (modbusProperties.getGroups() != null) {
+            for (ModbusProperties.SensorGroupProperties config : modbusProperties.getGroups()) {
+                if (config.getName() == null || config.getSensorIds() == null) {
+                    System.err.println("传感器分组配置缺少 name 或 sensorIds，已忽略。");
+                    continue;
+                }
+                String[] members = config.getSensorIds().stream().distinct().filter(present::contains).toArray(String[]::new);
+                if (members.length < 2) {
+                    System.err.println("传感器分组 [" + config.getName() + "] 当前少于 2 个传感器，未启用。");
+                    continue;
+                }
+                GroupState group = new GroupState(config, members, bufferSize);
+                GroupState old = previous.byName().get(config.getName());
+                if (old != null) {
+                    carryOver(old, group);
+                }
+                byName.put(config.getName(), group);
+                for (int i = 0; i < members.length; i++) {
+                    bySensor.computeIfAbsent(members[i], id -> new ArrayList<>()).add(new Membership(group, i));
+                }
+                if (old == null || !Arrays.equals(old.sensorIds, members)) {
+                    System.out.println("传感器分组 [" + config.getName() + "] 已启用: " + Arrays.toString(members) +
+                            ", 窗口 " + config.getWindowSeconds() + " 秒");
+                }
+            }
+        }
+        groups = new Groups(Collections.unmodifiableMap(byName), Collections.unmodifiableMap(bySensor));
+
+        // 已不存在的分组：结束其进行中的事件
+        List<AlarmEvent> events = null;
+        LocalDateTime now = LocalDateTime.now();
+        long nowMs = TieredHistoryQueryPlanner.toEpochMs(now);
+        for (Map.Entry<String, GroupState> entry : previous.byName().entrySet()) {
+            if (!byName.containsKey(entry.getKey())) {
+                GroupState group = entry.getValue();
+                synchronized (group) {
+                    group.retired = true;
+                    events = expireAll(events, group, 0, nowMs, now, "分组已停用");
+                }
+            }
+        }
+        record(events);
+    }
+
+    /**
+     * 新快照沿用旧分组的状态：组级事件和评估时间原样保留，仍在组内的传感器保留窗口和偏离事件；
+     * 被移出的传感器的偏离事件以 RESOLVED 结束。
+     */
+    private void carryOver(GroupState old, GroupState group) {
+        List<AlarmEvent> events = null;
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (old) {
+            old.retired = true;
+            for (int i = 0; i < group.groupEpisodes.length; i++) {
+                group.groupEpisodes[i] = old.groupEpisodes[i];
+            }
+            group.lastEvaluatedMs = old.lastEvaluatedMs;
+            group.liveSensors = old.liveSensors;
+            group.average = old.average;
+            group.spread = old.spread;
+            group.risingSensors = old.risingSensors;
+            List<String> members = Arrays.asList(group.sensorIds);
+            for (int i = 0; i < old.sensorIds.length; i++) {
+                int index = members.indexOf(old.sensorIds[i]);
+                if (index >= 0) {
+                    group.windows[index] = old.windows[i];
+                    group.divergence[index] = old.divergence[i];
+                } else if (old.divergence[i].active) {
+                    events = expire(events, old, old.divergence[i], -1, i, TieredHistoryQueryPlanner.toEpochMs(now), now, "传感器已移出分组");
+                }
+            }
+        }
+        record(events);
+    }
+
+    /**
+     * 计入一个样本 (轮询线程在样本落库后调用)。不属于任何分组的传感器直接返回。
+     */
+    public void onSample(String sensorId, LocalDateTime timestamp, float temperature) {
+        List<Membership> memberships = groups.bySensor().get(sensorId);
+        if (memberships == null) {
+            return;
+        }
+        long nowMs = TieredHistoryQueryPlanner.toEpochMs(timestamp);
+        for (Membership membership : memberships) {
+            GroupState group = membership.group();
+            long windowMs = group.config.getWindowSeconds() * 1000L;
+            List<AlarmEvent> events = null;
+            synchronized (group) {
+                if (group.retired) {
+                    continue; // 读到的是重建前的快照
+                }
+                group.windows[membership.index()].add(nowMs, temperature, windowMs);
+                if (nowMs - group.lastEvaluatedMs >= group.config.getEvaluateIntervalMs()) {
+                    group.lastEvaluatedMs = nowMs;
+                    events = evaluate(group, nowMs, windowMs, timestamp);
+                }
+            }
+            record(events);
+        }
+    }
+
+    /**
+     * 整组都没有新样本时 onSample 不会触发评估：定时按当前时间评估一次空闲的分组，结束无法继续判断的事件。
+     */
+    @Scheduled(fixedDelayString = "${alarm.groups.sweepIntervalMs:30000}")
+    public void sweepIdleGroups() {
+        LocalDateTime now = LocalDateTime.now();
+        long nowMs = TieredHistoryQueryPlanner.toEpochMs(now);
+        for (GroupState group : groups.byName().values()) {
+            long windowMs = group.config.getWindowSeconds() * 1000L;
+            List<AlarmEvent> events = null;
+            synchronized (group) {
+                if (!group.retired && nowMs - group.lastEvaluatedMs >= Math.max(windowMs, group.config.getEvaluateIntervalMs())) {
+                    group.lastEvaluatedMs = nowMs;
+                    events = evaluate(group, nowMs, windowMs, now);
+                }
+            }
+            record(events);
+        }
+    }
+
+    private void record(List<AlarmEvent> events) {
+        if (events != null) {
+            alarmEventService.recordAll(events);
+        }
+    }
+
+    private List<AlarmEvent> evaluate(GroupState group, long nowMs, long windowMs, LocalDateTime timestamp) {
+        evaluations.incrementAndGet();
+        ModbusProperties.SensorGroupProperties config = group.config;
+        int live = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int rising = 0;
+        for (int i = 0; i < group.windows.length; i++) {
+            TimeWindowSeries window = group.windows[i];
+            window.expire(nowMs, windowMs);
+            if (window.size() == 0 || window.latestTime() < nowMs - windowMs) {
+                group.means[i] = Double.NaN; // 窗口内没有新样本：传感器离线，不参与评估
+                continue;
+            }
+            double mean = window.mean();
+            group.means[i] = mean;
+            group.sortedMeans[live++] = mean;
+            sum += mean;
+            min = Math.min(min, mean);
+            max = Math.max(max, mean);
+            if (config.getRiseRatePerMinute() != null) {
+                float rate = window.ratePerMinute(windowMs / 2);
+                if (!Float.isNaN(rate) && rate > config.getRiseRatePerMinute()) {
+                    rising++;
+                }
+            }
+        }
+        group.liveSensors = live;
+        group.average = live > 0 ? sum / live : Double.NaN;
+        group.spread = live > 1 ? max - min : Double.NaN;
+        group.risingSensors = rising;
+        if (live == 0) {
+            // 整组离线：结束所有进行中的事件，恢复在线后重新判断
+            return expireAll(null, group, 0, nowMs, timestamp, "组内没有在线传感器");
+        }
+
+        List<AlarmEvent> events = null;
+        float hysteresis = config.getHysteresis();
+        if (live < 2 && group.groupEpisodes[SPREAD].active) {
+            events = expire(events, group, group.groupEpisodes[SPREAD], SPREAD, -1, nowMs, timestamp, "在线传感器不足");
+        }
+        if (live < 3) {
+            events = expireAll(events, group, -1, nowMs, timestamp, "在线传感器不足");
+        }
+        if (config.getMaxAverage() != null) {
+            float limit = config.getMaxAverage();
+            events = step(events, group, group.groupEpisodes[AVERAGE], AVERAGE, -1,
+                    group.average > limit, group.average < limit - hysteresis, (float) group.average, limit, nowMs, timestamp);
+        }
+        if (config.getMaxSpread() != null && live > 1) {
+            float limit = config.getMaxSpread();
+            events = step(events, group, group.groupEpisodes[SPREAD], SPREAD, -1,
+                    group.spread > limit, group.spread < limit - hysteresis, (float) group.spread, limit, nowMs, timestamp);
+        }
+        if (config.getRiseRatePerMinute() != null) {
+            int minRising = Math.max(1, config.getMinRisingSensors());
+            events = step(events, group, group.groupEpisodes[RISE], RISE, -1,
+                    rising >= minRising, rising < minRising, rising, config.getRiseRatePerMinute(), nowMs, timestamp);
+        }
+        if (config.getMaxDivergence() != null && live >= 3) {
+            // 与组内中位数比较：单个故障探头不会把参照值拉偏
+            Arrays.sort(group.sortedMeans, 0, live);
+            double median = live % 2 == 1 ? group.sortedMeans[live / 2]
+                    : (group.sortedMeans[live / 2 - 1] + group.sortedMeans[live / 2]) / 2;
+            float limit = config.getMaxDivergence();
+            for (int i = 0; i < group.sensorIds.length; i++) {
+                if (Double.isNaN(group.means[i])) {
+                    if (group.divergence[i].active) {
+                        events = expire(events, group, group.divergence[i], -1, i, nowMs, timestamp, "传感器离线");
+                    }
+                    continue;
+                }
+                double divergence = Math.abs(group.means[i] - median);
+                events = step(events, group, group.divergence[i], -1, i,
+                        divergence > limit, divergence < limit - hysteresis, (float) group.means[i], limit, nowMs, timestamp);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * 结束进行中的事件。kinds 为 0 时包括组级事件和所有偏离事件，为 -1 时只处理偏离事件。
+     */
+    private List<AlarmEvent> expireAll(List<AlarmEvent> events, GroupState group, int kinds, long nowMs,
+                                       LocalDateTime timestamp, String reason) {
+        if (kinds == 0) {
+            for (int i = 0; i < group.groupEpisodes.length; i++) {
+                if (group.groupEpisodes[i].active) {
+                    events = expire(events, group, group.groupEpisodes[i], i, -1, nowMs, timestamp, reason);
+                }
+            }
+        }
+        for (int i = 0; i < group.sensorIds.length; i++) {
+            if (group.divergence[i].active) {
+                events = expire(events, group, group.divergence[i], -1, i, nowMs, timestamp, reason);
+            }
+        }
+        return events;
+    }
+
+    /** 条件无法继续判断 (离线、成员变化)：以 RESOLVED 结束事件，数值为空。 */
+    private List<AlarmEvent> expire(List<AlarmEvent> events, GroupState group, Episode episode, int kind, int sensorIndex,
+                                    long nowMs, LocalDateTime timestamp, String reason) {
+        if (!episode.active) {
+            return events;
+        }
+        String groupName = group.config.getName();
+        boolean divergence = kind < 0;
+        String sensorId = divergence ? group.sensorIds[sensorIndex] : GROUP_SENSOR_PREFIX + groupName;
+        String label = divergence ? "传感器 " + sensorId + " 偏离同组其他传感器" : GROUP_LABELS[kind];
+        episode.active = false;
+        cleared.incrementAndGet();
+        String message = String.format("【分组报警结束】分组 [%s] %s: %s，无法继续判断，持续 %d 秒", groupName, label, reason,
+                Math.max(0, nowMs - episode.openedAtMs) / 1000);
+        System.out.println(message);
+        AlarmEvent event = new AlarmEvent(deviceId, sensorId, groupName, timestamp,
+                divergence ? AlarmEvent.TYPE_SENSOR_DIVERGENCE : GROUP_TYPES[kind], null, null, null, message);
+        event.setEpisodeId(episode.episodeId);
+        event.setEpisodeState(AlarmEvent.EPISODE_RESOLVED);
+        if (events == null) {
+            events = new ArrayList<>(2);
+        }
+        events.add(event);
+        return events;
+    }
+
+    /**
+     * 推进一个条件的事件状态，报警或恢复时生成事件。
+     * @param kind        组级条件下标，-1 表示按传感器的偏离条件
+     * @param sensorIndex 偏离条件对应的组内传感器下标
+     */
+    private List<AlarmEvent> step(List<AlarmEvent> events, GroupState group, Episode episode, int kind, int sensorIndex,
+                                  boolean raise, boolean clear, float value, float threshold,
+                                  long nowMs, LocalDateTime timestamp) {
+        if (episode.active ? !clear : !raise) {
+            return events;
+        }
+        String groupName = group.config.getName();
+        boolean divergence = kind < 0;
+        String sensorId = divergence ? group.sensorIds[sensorIndex] : GROUP_SENSOR_PREFIX + groupName;
+        String type = divergence ? AlarmEvent.TYPE_SENSOR_DIVERGENCE : GROUP_TYPES[kind];
+        String label = divergence ? "传感器 " + sensorId + " 偏离同组其他传感器" : GROUP_LABELS[kind];
+        String message;
+        if (!episode.active) {
+            episode.active = true;
+            episode.openedAtMs = nowMs;
+            episode.episodeId = groupName + "-" + type + (divergence ? "-" + sensorId : "") + "-" + timestamp.format(EPISODE_TIME);
+            raised.incrementAndGet();
+            message = kind == RISE
+                    ? String.format("【分组报警】分组 [%s] %s: %d 个传感器升温超过 %.2f°C/分钟", groupName, label, (int) value, threshold)
+                    : String.format("【分组报警】分组 [%s] %s: %.2f°C (阈值: %.2f°C, 在线传感器 %d 个)", groupName, label,
+                    value, threshold, group.liveSensors);
+            System.err.println(message);
+        } else {
+            episode.active = false;
+            cleared.incrementAndGet();
+            message = String.format("【分组报警恢复】分组 [%s] %s已恢复，持续 %d 秒", groupName, label,
+                    Math.max(0, nowMs - episode.openedAtMs) / 1000);
+            System.out.println(message);
+        }
+        AlarmEvent event = new AlarmEvent(deviceId, sensorId, groupName, timestamp, type, value, threshold, null, message);
+        event.setEpisodeId(episode.episodeId);
+        event.setEpisodeState(episode.active ? AlarmEvent.EPISODE_OPENED : AlarmEvent.EPISODE_RESOLVED);
+        if (events == null) {
+            events = new ArrayList<>(2);
+        }
+        events.add(event);
+        return events;
+    }
+
+    /** 各分组最近一次评估的结果和进行中的事件。 */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Object> byGroup = new LinkedHashMap<>();
+        groups.byName().forEach((name, group) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            synchronized (group) {
+                entry.put("sensors", Arrays.asList(group.sensorIds));
+                entry.put("liveSensors", group.liveSensors);
+                entry.put("average", Double.isNaN(group.average) ? null : group.average);
+                entry.put("spread", Double.isNaN(group.spread) ? null : group.spread);
+                entry.put("risingSensors", group.risingSensors);
+                List<String> active = new ArrayList<>();
+                for (int i = 0; i < GROUP_TYPES.length; i++) {
+                    if (group.groupEpisodes[i].active) {
+                        active.add(GROUP_TYPES[i]);
+                    }
+                }
+                for (int i = 0; i < group.sensorIds.length; i++) {
+                    if (group.divergence[i].active) {
+                        active.add(AlarmEvent.TYPE_SENSOR_DIVERGENCE + ":" + group.sensorIds[i]);
+                    }
+                }
+                entry.put("activeEpisodes", active);
+            }
+            byGroup.put(name, entry);
+        });
+        stats.put("groups", byGroup);
+        stats.put("evaluations", evaluations.get());
+        stats.put("raised", raised.get());
+        stats.put("cleared", cleared.get());
+        return stats;
+    }
+}
@@ -0,0 +1,83 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 当前生效的采集拓扑：串口连接和传感器定义。
+ * <p>
+ * 启动时取 application.yml 的 modbus.serial.connections/sensors；云端通过 {@link com.neuedu.tempbackend.model.EdgeConfig}
+ * 声明连接和传感器后，由 {@link SensorTopologyReconciler} 整体替换快照。轮询、趋势检查、历史查询等都从这里读取传感器列表，
+ * 不再直接读 ModbusProperties。快照不可变，读取无锁。
+ */
+@Service
+public class SensorRegistry {
+
+    /** 不可变快照：按名称/ID 保持声明顺序。 */
+    public record Topology(Map<String, ModbusProperties.ConnectionProperties> connections,
+                           Map<String, ModbusProperties.SensorProperties> sensors, long version) {}
+
+    private final Topology baseline; // application.yml 中的定义
+    private volatile Topology current;
+
+    public SensorRegistry(ModbusProperties modbusProperties) {
+        Map<String, ModbusProperties.ConnectionProperties> connections = new LinkedHashMap<>();
+        Map<String, ModbusProperties.SensorProperties> sensors = new LinkedHashMap<>();
+        ModbusProperties.Serial serial = modbusProperties.getSerial();
+        if (serial != null && serial.getConnections() != null) {
+            for (ModbusProperties.ConnectionProperties connection : serial.getConnections()) {
+                if (connection.getName() != null) {
+                    connections.put(connection.getName(), connection);
+                }
+            }
+        }
+        if (serial != null && serial.getSensors() != null) {
+            for (ModbusProperties.SensorProperties sensor : serial.getSensors()) {
+                if (sensor.getSensorId() == null || sensor.getSensorId().isEmpty()) {
+                    System.err.println("Sensor configuration in application.yml missing sensorId, skipping.");
+                    continue;
+                }
+                sensors.put(sensor.getSensorId(), sensor);
+            }
+        }
+        this.baseline = new Topology(Collections.unmodifiableMap(connections), Collections.unmodifiableMap(sensors), 0);
+        this.current = baseline;
+    }
+
+    /** 当前所有传感器 (声明顺序)。 */
+    public List<ModbusProperties.SensorProperties> sensors() {
+        return new ArrayList<>(current.sensors().values());
+    }
+
+    public List<String> sensorIds() {
+        return new ArrayList<>(current.sensors().keySet());
+    }
+
+    public Optional<ModbusProperties.SensorProperties> find(String sensorId) {
+        return Optional.ofNullable(current.sensors().get(sensorId));
+    }
+
+    public boolean contains(String sensorId) {
+        return current.sensors().containsKey(sensorId);
+    }
+
+    public Topology current() {
+        return current;
+    }
+
+    public Topology baseline() {
+        return baseline;
+    }
+
+    /** 由对账器在所有变更成功后调用；回滚时用旧快照再调用一次。 */
+    void replace(Topology topology) {
+        this.current = topology;
+    }
+}
@@ -0,0 +1,299 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.config.ModbusRtuManager;
+import com.serotonin.modbus4j.ModbusMaster;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 采集拓扑的运行时对账：把云端声明的串口连接和传感器 (与 application.yml 中的定义合并) 应用到正在运行的采集上。
+ * <p>
+ * 一次对账按以下顺序执行，只触及发生变化的连接和传感器，其余传感器的轮询不受影响：
+ * <ol>
+ *   <li>校验：ID/名称不能为空或重复，每个传感器引用的连接必须存在，否则整体拒绝；</li>
+ *   <li>停止被移除或定义变化的传感器的轮询；</li>
+ *   <li>新增连接创建 ModbusMaster，定义变化的连接在该连接的锁内按新参数重建 ({@link ModbusRtuManager#reopenMaster})，
+ *       期间该连接上的轮询只会等待；</li>
+ *   <li>替换 {@link SensorRegistry} 快照并按新的传感器集合重建分组成员 ({@link SensorGroupEventProcessor#rebuild})，
+ *       按新定义开始轮询新增/变化的传感器 (重建轮询计划)；</li>
+ *   <li>提交：关闭被移除的连接，丢弃被移除传感器的报警、预测和精度状态。</li>
+ * </ol>
+ * 第 2~4 步任一步失败时按相反顺序撤销已做的变更 (恢复旧连接、旧快照和旧的轮询任务)，采集拓扑保持对账前的状态。
+ * 每次对账的耗时和结果见 {@link #getStats()}。
+ * <p>
+ * 合并总是以 application.yml 中的定义为基线：云端只能新增连接/传感器或覆盖同名/同ID的定义，
+ * 不能移除 yml 中定义的连接和传感器 (云端不再声明时恢复为 yml 中的定义)。要停用 yml 中的传感器须修改 application.yml。
+ */
+@Service
+public class SensorTopologyReconciler {
+
+    /** 一次对账的结果。 */
+    public record Result(boolean success, long version, List<String> connectionsOpened, List<String> connectionsReopened,
+                         List<String> connectionsClosed, List<String> sensorsAdded, List<String> sensorsChanged,
+                         List<String> sensorsRemoved, long durationMs, String error) {
+
+        public boolean isNoop() {
+            return connectionsOpened.isEmpty() && connectionsReopened.isEmpty() && connectionsClosed.isEmpty()
+                    && sensorsAdded.isEmpty() && sensorsChanged.isEmpty() && sensorsRemoved.isEmpty();
+        }
+
+        public String summary() {
+            if (!success) {
+                return "失败并已回滚: " + error;
+            }
+            if (isNoop()) {
+                return "无变化";
+            }
+            List<String> parts = new ArrayList<>();
+            if (!connectionsOpened.isEmpty()) parts.add("+连接" + connectionsOpened);
+            if (!connectionsReopened.isEmpty()) parts.add("~连接" + connectionsReopened);
+            if (!connectionsClosed.isEmpty()) parts.add("-连接" + connectionsClosed);
+            if (!sensorsAdded.isEmpty()) parts.add("+传感器" + sensorsAdded);
+            if (!sensorsChanged.isEmpty()) parts.add("~传感器" + sensorsChanged);
+            if (!sensorsRemoved.isEmpty()) parts.add("-传感器" + sensorsRemoved);
+            return String.join(", ", parts);
+        }
+    }
+
+    /** 可撤销的一步变更。 */
+    private interface Undo {
+        void run() throws Exception;
+    }
+
+    private final SensorRegistry sensorRegistry;
+    private final ModbusRtuManager modbusRtuManager;
+    private final TemperaturePollingService temperaturePollingService;
+    private final ThresholdAlarmTracker thresholdAlarmTracker;
+    private final PredictiveAlarmTracker predictiveAlarmTracker;
+    private final ForecastAccuracyTracker forecastAccuracyTracker;
+    private final TrendWindowBuffer trendWindowBuffer;
+    private final EmbeddedPredictionBackend embeddedPredictionBackend;
+    private final SensorGroupEventProcessor sensorGroupEventProcessor;
+
+    private final AtomicLong reconciles = new AtomicLong();
+    private final AtomicLong noops = new AtomicLong();
+    private final AtomicLong rollbacks = new AtomicLong();
+    private final AtomicLong maxDurationMs = new AtomicLong();
+    private volatile Result lastResult;
+
+    public SensorTopologyReconciler(SensorRegistry sensorRegistry, ModbusRtuManager modbusRtuManager,
+                                    TemperaturePollingService temperaturePollingService,
+                                    ThresholdAlarmTracker thresholdAlarmTracker, PredictiveAlarmTracker predictiveAlarmTracker,
+                                    ForecastAccuracyTracker forecastAccuracyTracker, TrendWindowBuffer trendWindowBuffer,
+                                    EmbeddedPredictionBackend embeddedPredictionBackend,
+                                    SensorGroupEventProcessor sensorGroupEventProcessor) {
+        this.sensorRegistry = sensorRegistry;
+        this.modbusRtuManager = modbusRtuManager;
+        this.temperaturePollingService = temperaturePollingService;
+        this.thresholdAlarmTracker = thresholdAlarmTracker;
+        this.predictiveAlarmTracker = predictiveAlarmTracker;
+        this.forecastAccuracyTracker = forecastAccuracyTracker;
+        this.trendWindowBuffer = trendWindowBuffer;
+        this.embeddedPredictionBackend = embeddedPredictionBackend;
+        this.sensorGroupEventProcessor = sensorGroupEventProcessor;
+    }
+
+    /**
+     * 把云端声明的连接和传感器与 application.yml 中的定义合并后应用 (yml 中的定义不会被移除)。
+     * @param cloudConnections 云端声明的连接，null 表示不声明 (只保留 yml 中的连接)
+     * @param cloudSensors     云端声明的传感器，null 表示不声明 (只保留 yml 中的传感器)
+     * @return 对账结果；失败时所有变更已回滚
+     */
+    public synchronized Result reconcile(List<ModbusProperties.ConnectionProperties> cloudConnections,
+                                         List<ModbusProperties.SensorProperties> cloudSensors) {
+        long start = System.nanoTime();
+        reconciles.incrementAndGet();
+        SensorRegistry.Topology current = sensorRegistry.current();
+        SensorRegistry.Topology baseline = sensorRegistry.baseline();
+
+        Map<String, ModbusProperties.ConnectionProperties> connections;
+        Map<String, ModbusProperties.SensorProperties> sensors;
+        try {
+            connections = merge(baseline.connections(), cloudConnections, ModbusProperties.ConnectionProperties::getName, "connection name");
+            sensors = merge(baseline.sensors(), cloudSensors, ModbusProperties.SensorProperties::getSensorId, "sensorId");
+            for (ModbusProperties.SensorProperties sensor : sensors.values()) {
+                if (sensor.getConnection() == null || !connections.containsKey(sensor.getConnection())) {
+                    throw new IllegalArgumentException("sensor " + sensor.getSensorId() + " refers to unknown connection " + sensor.getConnection());
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return finish(failure(current.version(), start, e.getMessage()), false);
+        }
+
+        List<String> connectionsOpened = new ArrayList<>();
+        List<String> connectionsReopened = new ArrayList<>();
+        List<String> connectionsClosed = new ArrayList<>();
+        diff(current.connections(), connections, connectionsOpened, connectionsReopened, connectionsClosed);
+        List<String> sensorsAdded = new ArrayList<>();
+        List<String> sensorsChanged = new ArrayList<>();
+        List<String> sensorsRemoved = new ArrayList<>();
+        diff(current.sensors(), sensors, sensorsAdded, sensorsChanged, sensorsRemoved);
+
+        if (connectionsOpened.isEmpty() && connectionsReopened.isEmpty() && connectionsClosed.isEmpty()
+                && sensorsAdded.isEmpty() && sensorsChanged.isEmpty() && sensorsRemoved.isEmpty()) {
+            noops.incrementAndGet();
+            return finish(new Result(true, current.version(), List.of(), List.of(), List.of(), List.of(), List.of(), List.of(),
+                    elapsedMs(start), null), false);
+        }
+
+        SensorRegistry.Topology next = new SensorRegistry.Topology(Collections.unmodifiableMap(connections),
+                Collections.unmodifiableMap(sensors), current.version() + 1);
+        Deque<Undo> undo = new ArrayDeque<>();
+        try {
+            // 1. 停止被移除/变化的传感器
+            for (String sensorId : concat(sensorsRemoved, sensorsChanged)) {
+                ModbusProperties.SensorProperties previous = current.sensors().get(sensorId);
+                if (temperaturePollingService.stopPolling(sensorId)) {
+                    undo.push(() -> temperaturePollingService.startPolling(previous));
+                }
+            }
+            // 2. 打开新增连接，重建变化的连接
+            for (String name : connectionsOpened) {
+                ModbusMaster master = modbusRtuManager.createMaster(connections.get(name));
+                modbusRtuManager.swapMaster(name, master);
+                undo.push(() -> modbusRtuManager.destroyMaster(name, modbusRtuManager.swapMaster(name, null)));
+            }
+            for (String name : connectionsReopened) {
+                ModbusProperties.ConnectionProperties previous = current.connections().get(name);
+                ModbusProperties.ConnectionProperties reopened = connections.get(name);
+                // 在连接锁内完成替换，该连接上未变化的传感器的轮询只会等待，不会读到已销毁或不存在的 master；
+                // 先登记撤销：重建失败时旧 master 可能已经销毁，需要按旧参数重新打开
+                undo.push(() -> modbusRtuManager.reopenMaster(name, reopened, previous));
+                modbusRtuManager.reopenMaster(name, previous, reopened);
+            }
+            // 3. 替换快照并重建分组成员，按新定义开始轮询
+            sensorRegistry.replace(next);
+            undo.push(() -> sensorRegistry.replace(current));
+            sensorGroupEventProcessor.rebuild(next.sensors().keySet());
+            undo.push(() -> sensorGroupEventProcessor.rebuild(current.sensors().keySet()));
+            for (String sensorId : concat(sensorsAdded, sensorsChanged)) {
+                temperaturePollingService.startPolling(sensors.get(sensorId));
+                undo.push(() -> temperaturePollingService.stopPolling(sensorId));
+            }
+        } catch (Exception e) {
+            rollback(undo);
+            return finish(failure(current.version(), start, e.getClass().getSimpleName() + ": " + e.getMessage()), true);
+        }
+
+        // 4. 提交：关闭被移除的连接 (引用它的传感器已停止)，丢弃被移除传感器的状态
+        for (String name : connectionsClosed) {
+            modbusRtuManager.destroyMaster(name, modbusRtuManager.swapMaster(name, null));
+        }
+        for (String sensorId : sensorsRemoved) {
+            thresholdAlarmTracker.remove(sensorId);
+            predictiveAlarmTracker.remove(sensorId);
+            forecastAccuracyTracker.remove(sensorId);
+            trendWindowBuffer.remove(sensorId);
+            embeddedPredictionBackend.reset(sensorId);
+        }
+        return finish(new Result(true, next.version(), connectionsOpened, connectionsReopened, connectionsClosed,
+                sensorsAdded, sensorsChanged, sensorsRemoved, elapsedMs(start), null), false);
+    }
+
+    private void rollback(Deque<Undo> undo) {
+        rollbacks.incrementAndGet();
+        while (!undo.isEmpty()) {
+            try {
+                undo.pop().run();
+            } catch (Exception e) {
+                System.err.println("采集拓扑回滚步骤失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private Result finish(Result result, boolean rolledBack) {
+        lastResult = result;
+        maxDurationMs.accumulateAndGet(result.durationMs(), Math::max);
+        if (!result.success()) {
+            System.err.println("采集拓扑对账" + (rolledBack ? "失败，已回滚" : "被拒绝") + " (" + result.durationMs() + "ms): " + result.error());
+        } else if (!result.isNoop()) {
+            System.out.println("采集拓扑对账完成 (" + result.durationMs() + "ms, 版本 " + result.version() + "): " + result.summary());
+        }
+        return result;
+    }
+
+    private static Result failure(long version, long start, String error) {
+        return new Result(false, version, List.of(), List.of(), List.of(), List.of(), List.of(), List.of(), elapsedMs(start), error);
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /** yml 中的定义加上云端声明 (同名/同ID以云端为准)；云端声明不能移除 yml 中的定义。 */
+    private static <T> Map<String, T> merge(Map<String, T> baseline, List<T> declared,
+                                            Function<T, String> key, String keyName) {
+        Map<String, T> merged = new LinkedHashMap<>(baseline);
+        if (declared == null) {
+            return merged;
+        }
+        List<String> seen = new ArrayList<>();
+        for (T item : declared) {
+            String id = item != null ? key.apply(item) : null;
+            if (id == null || id.isBlank()) {
+                throw new IllegalArgumentException("declared item without " + keyName);
+            }
+            if (seen.contains(id)) {
+                throw new IllegalArgumentException("duplicate " + keyName + " " + id);
+            }
+            seen.add(id);
+            merged.put(id, item);
+        }
+        return merged;
+    }
+
+    private static <T> void diff(Map<String, T> before, Map<String, T> after,
+                                 List<String> added, List<String> changed, List<String> removed) {
+        for (Map.Entry<String, T> entry : after.entrySet()) {
+            T old = before.get(entry.getKey());
+            if (old == null) {
+                added.add(entry.getKey());
+            } else if (!Objects.equals(old, entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String id : before.keySet()) {
+            if (!after.containsKey(id)) {
+                removed.add(id);
+            }
+        }
+    }
+
+    private static List<String> concat(List<String> a, List<String> b) {
+        List<String> all = new ArrayList<>(a);
+        all.addAll(b);
+        return all;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        SensorRegistry.Topology topology = sensorRegistry.current();
+        stats.put("version", topology.version());
+        stats.put("connections", new ArrayList<>(topology.connections().keySet()));
+        stats.put("sensors", new ArrayList<>(topology.sensors().keySet()));
+        stats.put("reconciles", reconciles.get());
+        stats.put("noops", noops.get());
+        stats.put("rollbacks", rollbacks.get());
+        stats.put("maxDurationMs", maxDurationMs.get());
+        Result last = lastResult;
+        if (last != null) {
+            Map<String, Object> lastStats = new LinkedHashMap<>();
+            lastStats.put("success", last.success());
+            lastStats.put("durationMs", last.durationMs());
+            lastStats.put("summary", last.summary());
+            stats.put("last", lastStats);
+        }
+        return stats;
+    }
+}
@@ -4,9 +4,10 @@ import com.neuedu.tempbackend.config.ModbusProperties;
 import com.neuedu.tempbackend.config.ModbusRtuManager;
 import com.neuedu.tempbackend.model.SensorData;
 import com.neuedu.tempbackend.repository.SensorDataRepository;
+import com.neuedu.tempbackend.util.KeysetCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
@@ -15,19 +16,20 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.annotation.PostConstruct;
 import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneOffset; // 导入 ZoneOffset
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
-import java.util.LinkedHashMap; // 导入 LinkedHashMap
-// import java.time.ZoneOffset; // 移除重复导入
 
 @Service
 public class TemperaturePollingService {
@@ -35,20 +37,33 @@ public class TemperaturePollingService {
     private final ModbusRtuManager manager;
     private final SensorDataRepository sensorDataRepository;
     private final PredictionService predictionService;
-    private final AlarmService alarmService;
-    private final CloudUploadService cloudUploadService;
+    private final ThresholdAlarmTracker thresholdAlarmTracker;
+    private final SensorGroupEventProcessor sensorGroupEventProcessor;
+    private final UploadLaneScheduler uploadLaneScheduler;
     private final ModbusProperties modbusProperties;
+    private final SensorRegistry sensorRegistry;
     private final ThreadPoolTaskScheduler taskScheduler;
+    private final TieredHistoryQueryPlanner historyQueryPlanner;
+    private final QueryCache queryCache;
+    private final TrendWindowBuffer trendWindowBuffer;
+    private final ForecastAccuracyTracker forecastAccuracyTracker;
+    private final Executor latePredictionExecutor;
 
     @Value("${edge.deviceId:jetson-001}") private String deviceId;
-    @Value("${cloud.upload.batchSize:50}") private int uploadBatchSize;
-    @Value("${cloud.upload.batchIntervalMs:60000}") private long uploadBatchIntervalMs;
 
     public record Sample(double value, Instant ts) {}
     private final Map<String, AtomicReference<Sample>> latestSensorDataMap = new ConcurrentHashMap<>();
     private final Map<String, AtomicReference<SensorData>> latestCompleteSensorDataMap = new ConcurrentHashMap<>();
 
     private final Map<String, ScheduledFuture<?>> scheduledPollingTasks = new ConcurrentHashMap<>();
+    private final Map<String, Long> pollIntervals = new ConcurrentHashMap<>(); // 各传感器当前调度使用的轮询间隔
+    private final Map<String, Long> intervalOverrides = new ConcurrentHashMap<>(); // 云端 sensorConfigs 下发的轮询间隔
+
+    @Value("${prediction.latencyBudgetMs:50}")
+    private long predictionLatencyBudgetMs; // 单点预测在轮询线程上最多等待多久，超时后样本先不带预测继续处理
+
+    private final AtomicLong latePredictions = new AtomicLong(); // 超出预算、落库后补写的预测数
+    private final AtomicLong droppedLatePredictions = new AtomicLong(); // 补写队列已满而放弃的预测数
 
     @Value("${data.retention.realtimeMinutes:20}")
     private int realtimeRetentionMinutes; // 秒级数据保留时长
@@ -64,80 +79,127 @@ public class TemperaturePollingService {
             ModbusRtuManager manager,
             SensorDataRepository sensorDataRepository,
             PredictionService predictionService,
-            AlarmService alarmService,
-            CloudUploadService cloudUploadService,
+            ThresholdAlarmTracker thresholdAlarmTracker,
+            SensorGroupEventProcessor sensorGroupEventProcessor,
+            UploadLaneScheduler uploadLaneScheduler,
             ModbusProperties modbusProperties,
-            ThreadPoolTaskScheduler taskScheduler) {
+            SensorRegistry sensorRegistry,
+            ThreadPoolTaskScheduler taskScheduler,
+            TieredHistoryQueryPlanner historyQueryPlanner,
+            QueryCache queryCache,
+            TrendWindowBuffer trendWindowBuffer,
+            ForecastAccuracyTracker forecastAccuracyTracker,
+            @Qualifier("latePredictionExecutor") Executor latePredictionExecutor) {
         this.manager = manager;
         this.sensorDataRepository = sensorDataRepository;
         this.predictionService = predictionService;
-        this.alarmService = alarmService;
-        this.cloudUploadService = cloudUploadService;
+        this.thresholdAlarmTracker = thresholdAlarmTracker;
+        this.sensorGroupEventProcessor = sensorGroupEventProcessor;
+        this.uploadLaneScheduler = uploadLaneScheduler;
         this.modbusProperties = modbusProperties;
+        this.sensorRegistry = sensorRegistry;
         this.taskScheduler = taskScheduler;
+        this.historyQueryPlanner = historyQueryPlanner;
+        this.queryCache = queryCache;
+        this.trendWindowBuffer = trendWindowBuffer;
+        this.forecastAccuracyTracker = forecastAccuracyTracker;
+        this.latePredictionExecutor = latePredictionExecutor;
     }
 
     @PostConstruct
     public void initPollingTasks() {
-        if (modbusProperties.getSerial() == null || modbusProperties.getSerial().getSensors() == null || modbusProperties.getSerial().getSensors().isEmpty()) {
+        List<ModbusProperties.SensorProperties> sensors = sensorRegistry.sensors();
+        if (sensors.isEmpty()) {
             System.out.println("No sensors configured for polling in application.yml.");
             return;
         }
+        for (ModbusProperties.SensorProperties sensorProp : sensors) {
+            startPolling(sensorProp);
+        }
+    }
 
-        for (ModbusProperties.SensorProperties sensorProp : modbusProperties.getSerial().getSensors()) {
-            String sensorId = sensorProp.getSensorId();
-            if (sensorId == null || sensorId.isEmpty()) {
-                System.err.println("Sensor configuration in application.yml missing sensorId, skipping.");
-                continue;
-            }
+    /**
+     * 按传感器定义开始轮询 (启动时，以及运行时新增/修改传感器后由 SensorTopologyReconciler 调用)。
+     * 间隔优先级：云端 sensorConfigs 下发的间隔 &gt; 传感器定义的 pollIntervalMs &gt; 全局 modbus.pollIntervalMs。
+     */
+    public synchronized void startPolling(ModbusProperties.SensorProperties sensorProp) {
+        String sensorId = sensorProp.getSensorId();
+        stopPolling(sensorId);
+        long interval = effectivePollInterval(sensorProp);
+
+        latestSensorDataMap.putIfAbsent(sensorId, new AtomicReference<>(new Sample(Double.NaN, Instant.EPOCH)));
+        latestCompleteSensorDataMap.putIfAbsent(sensorId, new AtomicReference<>(new SensorData()));
+
+        ScheduledFuture<?> task = taskScheduler.scheduleWithFixedDelay(
+                () -> pollAndProcessSingleSensor(sensorProp),
+                interval
+        );
+        scheduledPollingTasks.put(sensorId, task);
+        pollIntervals.put(sensorId, interval);
+        System.out.println("Scheduled polling for sensor " + sensorId + " (" + sensorProp.getSensorName() + ") with delay " + interval + "ms");
+    }
 
-            // 使用modbusProperties.getPollIntervalMs() 作为默认全局轮询间隔
-            long initialDelay = Optional.ofNullable(sensorProp.getPollIntervalMs())
-                    .orElse(modbusProperties.getPollIntervalMs()); // 确保这里获取的是 ModbusProperties 根级别的 pollIntervalMs
+    /**
+     * 停止某传感器的轮询，正在进行的一次轮询会执行完。
+     * @return 之前是否在轮询
+     */
+    public synchronized boolean stopPolling(String sensorId) {
+        ScheduledFuture<?> existingTask = scheduledPollingTasks.remove(sensorId);
+        pollIntervals.remove(sensorId);
+        if (existingTask == null) {
+            return false;
+        }
+        existingTask.cancel(false);
+        System.out.println("Canceled polling task for sensor " + sensorId);
+        return true;
+    }
 
-            latestSensorDataMap.put(sensorId, new AtomicReference<>(new Sample(Double.NaN, Instant.EPOCH)));
-            latestCompleteSensorDataMap.put(sensorId, new AtomicReference<>(new SensorData()));
+    public boolean isPolling(String sensorId) {
+        return scheduledPollingTasks.containsKey(sensorId);
+    }
 
-            ScheduledFuture<?> task = taskScheduler.scheduleWithFixedDelay(
-                    () -> pollAndProcessSingleSensor(sensorProp),
-                    initialDelay
-            );
-            scheduledPollingTasks.put(sensorId, task);
-            System.out.println("Scheduled initial polling for sensor " + sensorId + " (" + sensorProp.getSensorName() + ") with delay " + initialDelay + "ms");
+    private long effectivePollInterval(ModbusProperties.SensorProperties sensorProp) {
+        Long override = intervalOverrides.get(sensorProp.getSensorId());
+        if (override != null) {
+            return override;
         }
+        return Optional.ofNullable(sensorProp.getPollIntervalMs()).orElse(modbusProperties.getPollIntervalMs());
     }
 
-
     /**
      * 动态更新单个传感器的轮询间隔。
-     * 此方法由 ConfigSyncService 调用，以响应云端配置更新。
+     * 此方法由 ConfigSyncService 调用，以响应云端配置更新。间隔与当前调度一致时不取消/重建任务。
+     * 传感器尚未定义 (例如云端稍后才声明它) 时只记下间隔，开始轮询时使用。
      * @param sensorId 传感器ID
      * @param newPollIntervalMs 新的轮询间隔（毫秒）
+     * @return 是否重新调度了轮询任务
      */
-    public void updateSensorPollingInterval(String sensorId, long newPollIntervalMs) {
-        ScheduledFuture<?> existingTask = scheduledPollingTasks.get(sensorId);
-        if (existingTask != null) {
-            existingTask.cancel(false); // 取消现有任务
-            System.out.println("Canceled existing polling task for sensor " + sensorId);
-        }
+    public synchronized boolean updateSensorPollingInterval(String sensorId, long newPollIntervalMs) {
+        intervalOverrides.put(sensorId, newPollIntervalMs);
+        return reschedule(sensorId);
+    }
+
+    /**
+     * 云端不再指定某传感器的轮询间隔时，恢复传感器定义 (或全局) 的间隔。
+     * @return 是否重新调度了轮询任务
+     */
+    public synchronized boolean resetSensorPollingInterval(String sensorId) {
+        intervalOverrides.remove(sensorId);
+        return reschedule(sensorId);
+    }
 
-        // 查找对应的传感器配置（ModbusProperties中存储的是初始配置）
-        Optional<ModbusProperties.SensorProperties> sensorPropOpt = modbusProperties.getSerial().getSensors().stream()
-                .filter(s -> sensorId.equals(s.getSensorId()))
-                .findFirst();
-
-        if (sensorPropOpt.isPresent()) {
-            ModbusProperties.SensorProperties sensorProp = sensorPropOpt.get(); // 获取原始配置
-            // 重新调度新任务
-            ScheduledFuture<?> newTask = taskScheduler.scheduleWithFixedDelay(
-                    () -> pollAndProcessSingleSensor(sensorProp), // 仍使用原始配置，只是改变了调度频率
-                    newPollIntervalMs
-            );
-            scheduledPollingTasks.put(sensorId, newTask);
-            System.out.println("Updated polling for sensor " + sensorId + " to new delay " + newPollIntervalMs + "ms");
-        } else {
-            System.err.println("Could not find sensor configuration for ID: " + sensorId + " to update polling interval. Make sure it's in application.yml.");
+    private boolean reschedule(String sensorId) {
+        Optional<ModbusProperties.SensorProperties> sensorPropOpt = sensorRegistry.find(sensorId);
+        if (sensorPropOpt.isEmpty()) {
+            System.out.println("Sensor " + sensorId + " is not defined yet, polling interval will apply once it is added.");
+            return false;
+        }
+        Long currentInterval = pollIntervals.get(sensorId);
+        if (currentInterval != null && currentInterval == effectivePollInterval(sensorPropOpt.get())) {
+            return false;
         }
+        startPolling(sensorPropOpt.get()); // 仍使用传感器定义，只是改变了调度频率
+        return true;
     }
 
 
@@ -196,15 +258,18 @@ public class TemperaturePollingService {
             Float currentHumidity = humidityOpt.orElse(null);
             Float currentPressure = pressureOpt.orElse(null);
 
-            // 2. 调用预测服务 (单点预测)
+            // 2. 调用预测服务 (单点预测)，最多等待 latencyBudgetMs
             long predictStart = System.currentTimeMillis();
-            Float predictedTemperature = predictionService.predict(currentTemperature, currentHumidity, currentPressure);
+            CompletableFuture<Float> predictionFuture = predictionService.predictAsync(sensorId, currentTemperature, currentHumidity, currentPressure);
+            Float predictedTemperature = awaitPrediction(predictionFuture);
             long predictEnd = System.currentTimeMillis();
-            System.out.println("  预测服务耗时: " + (predictEnd - predictStart) + "ms, 预测温度: " + (predictedTemperature != null ? String.format("%.2f", predictedTemperature) + "°C" : "N/A"));
+            System.out.println("  预测服务耗时: " + (predictEnd - predictStart) + "ms, 预测温度: " + (predictedTemperature != null ? String.format("%.2f", predictedTemperature) + "°C" : (!predictionFuture.isDone() ? "超时，稍后补写" : "N/A")));
 
-            // 3. 调用报警服务
+            // 3. 有状态报警规则 (回差、持续时间、变化率)：只在报警/恢复时记录报警事件
             long alarmStart = System.currentTimeMillis();
-            boolean isAlarm = alarmService.checkAlarm(sensorId, currentTemperature, predictedTemperature);
+            LocalDateTime sampleTime = LocalDateTime.now();
+            AlarmRules.Kind alarmKind = thresholdAlarmTracker.observe(sensorId, sensorName, sampleTime, currentTemperature, predictedTemperature);
+            boolean isAlarm = alarmKind != AlarmRules.Kind.NONE;
             long alarmEnd = System.currentTimeMillis();
             System.out.println("  报警检查耗时: " + (alarmEnd - alarmStart) + "ms, 是否报警: " + isAlarm);
 
@@ -213,28 +278,36 @@ public class TemperaturePollingService {
             sensorData.setDeviceId(deviceId);
             sensorData.setSensorId(sensorId);
             sensorData.setSensorName(sensorName);
-            sensorData.setTimestamp(LocalDateTime.now());
+            sensorData.setTimestamp(sampleTime);
             sensorData.setTemperature(currentTemperature);
             sensorData.setHumidity(currentHumidity);
             sensorData.setPressure(currentPressure);
             sensorData.setPredictedTemperature(predictedTemperature);
             sensorData.setAlarmTriggered(isAlarm);
-            sensorData.setAlarmMessage(alarmService.getAlarmMessage(sensorId, sensorName, currentTemperature, predictedTemperature));
+            sensorData.setAlarmMessage(thresholdAlarmTracker.describe(alarmKind, sensorId, sensorName, currentTemperature, predictedTemperature));
             sensorData.setStorageLevel("REALTIME");
 
             // 5. 保存到本地数据库
             long dbSaveStart = System.currentTimeMillis();
             sensorData.setUploaded(false); // 明确设置为 false，等待上传
             sensorDataRepository.save(sensorData);
+            queryCache.onWrite(sensorId, "REALTIME");
+            trendWindowBuffer.record(sensorId, sensorData.getTimestamp(), currentTemperature, currentHumidity, currentPressure);
+            sensorGroupEventProcessor.onSample(sensorId, sampleTime, currentTemperature); // 分组联合规则
+            // 本样本的残差在报警检查之后计入，不影响本样本自己的偏差阈值
+            forecastAccuracyTracker.record(sensorId, ForecastAccuracyTracker.ACTIVE, currentTemperature, predictedTemperature);
+            if (predictedTemperature == null) {
+                attachLatePrediction(sensorData, predictionFuture); // 预算内没等到：结果到达后补写 (已以 null 完成的为空操作)
+            }
             long dbSaveEnd = System.currentTimeMillis();
             System.out.println("  本地数据库保存耗时: " + (dbSaveEnd - dbSaveStart) + "ms, ID: " + sensorData.getId());
 
-            // 6. 提交异步上传任务
+            // 6. 提交到上传优先级通道 (样本进入 REALTIME 通道，报警事件已在上面进入 ALARM 通道)
             long uploadSubmitStart = System.currentTimeMillis();
-            cloudUploadService.uploadData(sensorData); // 现在是异步调用
+            uploadLaneScheduler.submit(sensorData); // 只入内存队列，由分发线程组批上传
             long uploadSubmitEnd = System.currentTimeMillis();
-            System.out.println("  异步上传任务提交耗时: " + (uploadSubmitEnd - uploadSubmitStart) + "ms");
-            System.out.println("传感器 [" + sensorName + " (" + sensorId + ")] 最新数据已提交给异步上传通道。");
+            System.out.println("  上传通道提交耗时: " + (uploadSubmitEnd - uploadSubmitStart) + "ms");
+            System.out.println("传感器 [" + sensorName + " (" + sensorId + ")] 最新数据已提交给上传通道。");
 
             long overallEnd = System.currentTimeMillis();
             System.out.println("--- 传感器 [" + sensorName + " (" + sensorId + ")] 轮询处理总耗时 (不含异步上传实际执行): " + (overallEnd - overallStart) + "ms ---");
@@ -246,143 +319,97 @@ public class TemperaturePollingService {
     }
 
 
-    // 定时批量上传所有未上传的数据 (包括实时和聚合数据)
-    @Scheduled(fixedDelayString = "${cloud.upload.batchIntervalMs}")
-    public void scheduledUploadPendingDataToCloud() {
-        cloudUploadService.uploadPendingDataToCloudTask(uploadBatchSize);
+    /**
+     * 在延迟预算内等待预测结果；超时返回 null，由调用方在样本落库后补写。
+     */
+    private Float awaitPrediction(CompletableFuture<Float> predictionFuture) {
+        try {
+            return predictionFuture.get(predictionLatencyBudgetMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            System.err.println("预测调用失败: " + e.getMessage());
+            return null;
+        }
     }
 
-    // ==================== 预测所需历史数据获取方法 ====================
-
     /**
-     * 获取用于预测的降采样历史数据。
-     * 根据你的 ARIMA 模型输入要求，这里将原始数据降采样到 5 秒一个点。
-     * 只从 REALTIME 存储级别中获取数据。
-     * @param sensorId 传感器ID
-     * @param historyWindowMinutes 需要回溯的历史窗口（分钟）
-     * @return 降采样后的 SensorData 列表 (每个点代表 5 秒的平均值)
+     * 迟到的预测到达后补写到已落库的样本上。不会再触发偏差报警 (样本已按无预测处理)；
+     * 若样本在补写前已被上传，云端保留的是不带预测的版本。
+     * 补写在 latePredictionExecutor 上执行，不占用完成预测的线程 (外部后端的批量合并线程)；
+     * 只通过 UPDATE 写库，不修改已交给上传通道的实体。
      */
-    public List<SensorData> get5SecondAggregatedHistoryForPrediction(String sensorId, int historyWindowMinutes) {
-        LocalDateTime endTime = LocalDateTime.now();
-        // 稍微多取一点数据以确保边界对齐，并且确保即使是最近的 5 秒窗口也有数据
-        LocalDateTime startTime = endTime.minusMinutes(historyWindowMinutes).minusSeconds(5);
-
-        // 只从 REALTIME 存储级别中获取原始数据
-        List<SensorData> rawData = sensorDataRepository.findBySensorIdAndTimestampBetweenAndStorageLevelOrderByTimestampAsc(
-                sensorId, startTime, endTime, "REALTIME");
-
-        List<SensorData> aggregatedData = new ArrayList<>();
-
-        // 对原始数据进行 5 秒平均降采样
-        // 使用 LinkedHashMap 保持分组后键的插入顺序，确保时间序列的顺序
-        Map<LocalDateTime, List<SensorData>> groupedBy5Seconds = rawData.stream()
-                .collect(Collectors.groupingBy(data -> {
-                    long epochSecond = data.getTimestamp().toEpochSecond(ZoneOffset.UTC); // 使用 UTC 时区，确保一致性
-                    long roundedSecond = (epochSecond / 5) * 5; // 截断到最近的 5 秒边界
-                    return LocalDateTime.ofEpochSecond(roundedSecond, 0, ZoneOffset.UTC); // 重新转换为 LocalDateTime
-                }, LinkedHashMap::new, Collectors.toList()));
-
-        groupedBy5Seconds.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey()) // 再次确保时间顺序
-                .forEach(entry -> {
-                    LocalDateTime timeWindow = entry.getKey();
-                    List<SensorData> windowData = entry.getValue();
-
-                    if (!windowData.isEmpty()) {
-                        double avgTemp = windowData.stream()
-                                .filter(d -> d.getTemperature() != null)
-                                .mapToDouble(SensorData::getTemperature)
-                                .average().orElse(Double.NaN);
-                        double avgHumidity = windowData.stream()
-                                .filter(d -> d.getHumidity() != null)
-                                .mapToDouble(SensorData::getHumidity)
-                                .average().orElse(Double.NaN);
-                        double avgPressure = windowData.stream()
-                                .filter(d -> d.getPressure() != null)
-                                .mapToDouble(SensorData::getPressure)
-                                .average().orElse(Double.NaN);
-
-                        SensorData aggregated = new SensorData();
-                        aggregated.setSensorId(sensorId);
-                        aggregated.setTimestamp(timeWindow);
-                        aggregated.setTemperature(Double.isNaN(avgTemp) ? null : (float) avgTemp);
-                        aggregated.setHumidity(Double.isNaN(avgHumidity) ? null : (float) avgHumidity);
-                        aggregated.setPressure(Double.isNaN(avgPressure) ? null : (float) avgPressure);
-                        // 对于预测输入，其他字段如 deviceId, sensorName, predictedTemperature, alarmTriggered 等不需要填充
-                        aggregated.setStorageLevel("TEMP_5SEC_AGG"); // 临时标志，不存储到 DB
-                        aggregatedData.add(aggregated);
-                    }
-                });
-        return aggregatedData;
+    private void attachLatePrediction(SensorData sensorData, CompletableFuture<Float> predictionFuture) {
+        Long id = sensorData.getId();
+        String sensorId = sensorData.getSensorId();
+        Float temperature = sensorData.getTemperature();
+        predictionFuture.thenAcceptAsync(predicted -> {
+            if (predicted == null || id == null) {
+                return;
+            }
+            sensorDataRepository.updatePredictedTemperature(id, predicted);
+            queryCache.onWrite(sensorId, "REALTIME");
+            forecastAccuracyTracker.record(sensorId, ForecastAccuracyTracker.ACTIVE, temperature, predicted);
+            latePredictions.incrementAndGet();
+        }, latePredictionExecutor).exceptionally(e -> {
+            if (e instanceof RejectedExecutionException || e.getCause() instanceof RejectedExecutionException) {
+                droppedLatePredictions.incrementAndGet(); // 补写队列已满，样本保持不带预测
+                return null;
+            }
+            System.err.println("补写迟到的预测失败 (ID: " + id + "): " + e.getMessage());
+            return null;
+        });
+    }
+
+    public long getLatePredictionCount() {
+        return latePredictions.get();
+    }
+
+    public long getDroppedLatePredictionCount() {
+        return droppedLatePredictions.get();
     }
 
     // ==================== 公共查询方法 (已调整以利用 storageLevel) ====================
 
     /**
      * 获取所有传感器的最近N条历史数据，智能地从不同存储级别中组合数据。
+     * 由分层查询规划器对各已配置传感器做 k 路归并，只读取需要的条数。
      * @param count 要获取的数据条数
-     * @return 组合后的SensorData列表
+     * @param before 翻页游标 (上一页最后一条)，null 表示从最新开始
+     * @return 组合后的SensorData列表 (按时间倒序)
      */
+    public List<SensorData> getRecentSensorDataForAll(int count, KeysetCursor before) {
+        return historyQueryPlanner.findRecentForAll(sensorRegistry.sensorIds(), count, before);
+    }
+
     public List<SensorData> getRecentSensorDataForAll(int count) {
-        LocalDateTime now = LocalDateTime.now();
-        List<SensorData> result = new ArrayList<>();
-
-        // 查询最近 realtimeRetentionMinutes 分钟的 REALTIME 数据 (最精细)
-        // 确保时间范围覆盖到配置文件中的保留时长
-        result.addAll(sensorDataRepository.findByTimestampBetweenAndStorageLevelOrderByTimestampAsc(
-                now.minusMinutes(realtimeRetentionMinutes), now, "REALTIME"));
-
-        // 查询 minutelyRetentionHours 小时内的 MINUTELY_COMPACTED 数据
-        result.addAll(sensorDataRepository.findByTimestampBetweenAndStorageLevelOrderByTimestampAsc(
-                now.minusHours(minutelyRetentionHours), now.minusMinutes(realtimeRetentionMinutes), "MINUTELY_COMPACTED")); // 排除 REALTIME 已经覆盖的时间
-
-        // 查询 hourlyRetentionDays 天内的 HOURLY_COMPACTED 数据
-        result.addAll(sensorDataRepository.findByTimestampBetweenAndStorageLevelOrderByTimestampAsc(
-                now.minusDays(hourlyRetentionDays), now.minusHours(minutelyRetentionHours), "HOURLY_COMPACTED")); // 排除 MINUTELY_COMPACTED 已经覆盖的时间
-
-        // 合并所有结果，按时间降序排列，取最新 count 条
-        return result.stream()
-                .sorted(Comparator.comparing(SensorData::getTimestamp).reversed())
-                .distinct() // 简单的去重
-                .limit(count)
-                .collect(Collectors.toList());
+        return getRecentSensorDataForAll(count, null);
     }
 
     /**
      * 获取某个传感器的最近N条历史数据，智能地从不同存储级别中组合数据。
+     * 从最新的存储级别开始按 keyset + LIMIT 逐页读取，凑够 count 条即停止。
      * @param sensorId 传感器ID
      * @param count 要获取的数据条数
-     * @return 组合后的SensorData列表
+     * @param before 翻页游标 (上一页最后一条)，null 表示从最新开始
+     * @return 组合后的SensorData列表 (按时间倒序)
      */
+    public List<SensorData> getRecentSensorDataBySensorId(String sensorId, int count, KeysetCursor before) {
+        return historyQueryPlanner.findRecent(sensorId, count, before);
+    }
+
     public List<SensorData> getRecentSensorDataBySensorId(String sensorId, int count) {
-        LocalDateTime now = LocalDateTime.now();
-        List<SensorData> result = new ArrayList<>();
-
-        // 查询最近 realtimeRetentionMinutes 分钟的 REALTIME 数据
-        result.addAll(sensorDataRepository.findBySensorIdAndTimestampBetweenAndStorageLevelOrderByTimestampAsc(
-                sensorId, now.minusMinutes(realtimeRetentionMinutes), now, "REALTIME"));
-
-        // 查询 minutelyRetentionHours 小时内的 MINUTELY_COMPACTED 数据
-        result.addAll(sensorDataRepository.findBySensorIdAndTimestampBetweenAndStorageLevelOrderByTimestampAsc(
-                sensorId, now.minusHours(minutelyRetentionHours), now.minusMinutes(realtimeRetentionMinutes), "MINUTELY_COMPACTED"));
-
-        // 查询 hourlyRetentionDays 天内的 HOURLY_COMPACTED 数据
-        result.addAll(sensorDataRepository.findBySensorIdAndTimestampBetweenAndStorageLevelOrderByTimestampAsc(
-                sensorId, now.minusDays(hourlyRetentionDays), now.minusHours(minutelyRetentionHours), "HOURLY_COMPACTED"));
-
-        // 合并所有结果，按时间降序排列，取最新 count 条
-        return result.stream()
-                .sorted(Comparator.comparing(SensorData::getTimestamp).reversed())
-                .distinct() // 简单的去重
-                .limit(count)
-                .collect(Collectors.toList());
+        return getRecentSensorDataBySensorId(sensorId, count, null);
     }
 
     public SensorData getLatestCompleteSensorData(String sensorId) {
         return latestCompleteSensorDataMap.getOrDefault(sensorId, new AtomicReference<>(new SensorData())).get();
     }
     public List<ModbusProperties.SensorProperties> getAllConfiguredSensors() {
-        return modbusProperties.getSerial().getSensors();
+        return sensorRegistry.sensors();
     }
     public long getDefaultPollIntervalMs() { return modbusProperties.getPollIntervalMs(); }
 }
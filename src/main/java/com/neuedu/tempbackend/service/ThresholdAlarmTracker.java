@@ -0,0 +1,280 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.util.TimeWindowSeries;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 实时样本的有状态报警规则 (每个传感器一组状态)，替代逐样本的 checkAlarm 布尔判断：
+ * <ul>
+ *   <li>回差：超上限后要降到 upper - hysteresis 以下才恢复 (下限、偏差同理)，在阈值附近抖动的读数不会反复报警/恢复。</li>
+ *   <li>持续时间：条件连续成立 minDurationMs 后才报警，例如 "高于 8°C 持续 5 分钟"；中途不成立则重新计时。</li>
+ *   <li>变化率：滑动窗口 (rateWindowMs) 内首尾样本的温度变化折算成 °C/分钟，超过 maxRatePerMinute 报警，
+ *       降到其 80% 以下恢复。窗口样本存在按需扩容的环形缓冲 ({@link TimeWindowSeries}) 中，每个样本摊还 O(1)。</li>
+ * </ul>
+ * 每个条件独立形成报警事件 (episode)：只在报警 (OPENED) 和恢复 (RESOLVED) 时写一条 {@link AlarmEvent}，
+ * 报警持续期间的样本只在数据行上标记报警，不再逐条记录和上传。规则来自 {@link AlarmService} 的当前规则快照。
+ */
+@Service
+public class ThresholdAlarmTracker {
+
+    private static final DateTimeFormatter EPISODE_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final float RATE_CLEAR_RATIO = 0.8f; // 变化率降到上限的多少比例以下才恢复
+
+    // 条件下标，同时是报警优先级 (下标小的优先)
+    private static final int HIGH = 0;
+    private static final int LOW = 1;
+    private static final int DEVIATION = 2;
+    private static final int RATE = 3;
+    private static final AlarmRules.Kind[] KINDS = {
+            AlarmRules.Kind.HIGH_TEMPERATURE, AlarmRules.Kind.LOW_TEMPERATURE,
+            AlarmRules.Kind.DEVIATION, AlarmRules.Kind.RATE_OF_CHANGE};
+
+    /** 单个条件的状态：报警中，或从 pendingSinceMs 起条件成立但未满持续时间。 */
+    private static final class Condition {
+        boolean active;
+        long pendingSinceMs = -1;
+        String episodeId;
+        long openedAtMs;
+    }
+
+    /** 单个传感器的状态。访问时以自身加锁。 */
+    private static final class SensorState {
+        final Condition[] conditions = {new Condition(), new Condition(), new Condition(), new Condition()};
+        final TimeWindowSeries rateWindow; // 变化率窗口
+        float lastRate = Float.NaN; // 最近一次计算的变化率 (°C/分钟)
+
+        SensorState(int capacity) {
+            rateWindow = new TimeWindowSeries(capacity);
+        }
+    }
+
+    private final AlarmService alarmService;
+    private final AlarmEventService alarmEventService;
+    private final Map<String, SensorState> states = new ConcurrentHashMap<>();
+
+    @Value("${edge.deviceId:jetson-001}")
+    private String deviceId;
+
+    @Value("${alarm.rules.rateOfChange.maxBufferSize:36000}")
+    private int rateBufferSize; // 变化率窗口最多保留的样本数 (按需增长)，默认覆盖 1 小时 10Hz 采样
+
+    private final AtomicLong raised = new AtomicLong();
+    private final AtomicLong cleared = new AtomicLong();
+    private final AtomicLong pendingSamples = new AtomicLong(); // 条件成立但未满持续时间的样本数
+
+    public ThresholdAlarmTracker(AlarmService alarmService, AlarmEventService alarmEventService) {
+        this.alarmService = alarmService;
+        this.alarmEventService = alarmEventService;
+    }
+
+    /**
+     * 计入一个样本，状态变化 (报警/恢复) 时记录报警事件。
+     * @param predictedTemperature 预测温度，null 时偏差条件保持原状态
+     * @return 该传感器当前处于报警中的最高优先级条件，没有报警时为 NONE
+     */
+    public AlarmRules.Kind observe(String sensorId, String sensorName, LocalDateTime timestamp,
+                                   float actualTemperature, Float predictedTemperature) {
+        AlarmRules.SensorRule rule = alarmService.ruleFor(sensorId);
+        long nowMs = TieredHistoryQueryPlanner.toEpochMs(timestamp);
+        SensorState state = states.computeIfAbsent(sensorId, id -> new SensorState(rateBufferSize));
+        List<AlarmEvent> events = null;
+        synchronized (state) {
+            float upper = rule.getUpper();
+            float lower = rule.getLower();
+            float hysteresis = rule.getHysteresis();
+            events = step(events, state, HIGH, actualTemperature > upper, actualTemperature < upper - hysteresis,
+                    rule, sensorId, sensorName, timestamp, nowMs, actualTemperature, predictedTemperature);
+            events = step(events, state, LOW, actualTemperature < lower, actualTemperature > lower + hysteresis,
+                    rule, sensorId, sensorName, timestamp, nowMs, actualTemperature, predictedTemperature);
+
+            if (predictedTemperature != null) {
+                float deviation = Math.abs(actualTemperature - predictedTemperature);
+                // 放宽只会提高阈值，未超过配置阈值时不必查询
+                float threshold = deviation > rule.getDeviation()
+                        ? alarmService.effectiveDeviation(sensorId, rule.getDeviation()) : rule.getDeviation();
+                events = step(events, state, DEVIATION, deviation > threshold, deviation < threshold - hysteresis,
+                        rule, sensorId, sensorName, timestamp, nowMs, actualTemperature, predictedTemperature);
+            }
+
+            float maxRate = rule.getMaxRatePerMinute();
+            if (maxRate > 0) {
+                state.rateWindow.add(nowMs, actualTemperature, rule.getRateWindowMs());
+                float rate = state.lastRate = state.rateWindow.ratePerMinute(rule.getRateWindowMs() / 2); // 覆盖不到半个窗口时不判断
+                if (!Float.isNaN(rate)) {
+                    float absRate = Math.abs(rate);
+                    events = step(events, state, RATE, absRate > maxRate, absRate < maxRate * RATE_CLEAR_RATIO,
+                            rule, sensorId, sensorName, timestamp, nowMs, actualTemperature, predictedTemperature);
+                }
+            } else if (state.conditions[RATE].active || state.conditions[RATE].pendingSinceMs >= 0) {
+                // 规则已关闭变化率检查：结束进行中的事件
+                events = step(events, state, RATE, false, true,
+                        rule, sensorId, sensorName, timestamp, nowMs, actualTemperature, predictedTemperature);
+            }
+        }
+        if (events != null) {
+            alarmEventService.recordAll(events);
+        }
+        return activeKind(state);
+    }
+
+    /**
+     * 报警中样本的数据行报警信息；变化率报警带上当前变化率。kind 为 NONE 时返回常量 "No Alarm"。
+     */
+    public String describe(AlarmRules.Kind kind, String sensorId, String sensorName,
+                           float actualTemperature, Float predictedTemperature) {
+        if (kind != AlarmRules.Kind.RATE_OF_CHANGE) {
+            return alarmService.formatMessage(kind, sensorId, sensorName, actualTemperature, predictedTemperature);
+        }
+        SensorState state = states.get(sensorId);
+        return rateMessage(sensorId, sensorName, actualTemperature, state != null ? state.lastRate : Float.NaN,
+                alarmService.ruleFor(sensorId).getMaxRatePerMinute());
+    }
+
+    private List<AlarmEvent> step(List<AlarmEvent> events, SensorState state, int index, boolean raise, boolean clear,
+                                  AlarmRules.SensorRule rule, String sensorId, String sensorName, LocalDateTime timestamp,
+                                  long nowMs, float actualTemperature, Float predictedTemperature) {
+        Condition condition = state.conditions[index];
+        AlarmEvent event = null;
+        if (!condition.active) {
+            if (!raise) {
+                condition.pendingSinceMs = -1;
+                return events;
+            }
+            if (condition.pendingSinceMs < 0) {
+                condition.pendingSinceMs = nowMs;
+            }
+            if (nowMs - condition.pendingSinceMs < rule.getMinDurationMs()) {
+                pendingSamples.incrementAndGet();
+                return events;
+            }
+            condition.active = true;
+            condition.openedAtMs = condition.pendingSinceMs;
+            condition.pendingSinceMs = -1;
+            condition.episodeId = sensorId + "-" + KINDS[index].name() + "-" + timestamp.format(EPISODE_TIME);
+            raised.incrementAndGet();
+            event = index == RATE
+                    ? rateEvent(sensorId, sensorName, timestamp, actualTemperature, state.lastRate, rule.getMaxRatePerMinute())
+                    : alarmService.buildAlarmEvent(KINDS[index], deviceId, sensorId, sensorName, timestamp,
+                            actualTemperature, predictedTemperature);
+            event.setEpisodeState(AlarmEvent.EPISODE_OPENED);
+            System.err.println(event.getMessage());
+        } else {
+            if (!clear) {
+                return events;
+            }
+            condition.active = false;
+            cleared.incrementAndGet();
+            long durationSeconds = Math.max(0, nowMs - condition.openedAtMs) / 1000;
+            String message = String.format("【报警恢复】传感器 [%s (%s)] %s已恢复: 当前 %.2f°C，持续 %d 秒",
+                    sensorName, sensorId, label(index), actualTemperature, durationSeconds);
+            event = new AlarmEvent(deviceId, sensorId, sensorName, timestamp, typeOf(index), actualTemperature,
+                    thresholdOf(index, rule), predictedTemperature, message);
+            event.setEpisodeState(AlarmEvent.EPISODE_RESOLVED);
+            System.out.println(message);
+        }
+        event.setEpisodeId(condition.episodeId);
+        if (events == null) {
+            events = new ArrayList<>(2);
+        }
+        events.add(event);
+        return events;
+    }
+
+    private static AlarmRules.Kind activeKind(SensorState state) {
+        for (int i = 0; i < KINDS.length; i++) {
+            if (state.conditions[i].active) { // 未加锁读取：只影响本样本数据行的标记
+                return KINDS[i];
+            }
+        }
+        return AlarmRules.Kind.NONE;
+    }
+
+    private AlarmEvent rateEvent(String sensorId, String sensorName, LocalDateTime timestamp,
+                                 float actualTemperature, float rate, float maxRate) {
+        return new AlarmEvent(deviceId, sensorId, sensorName, timestamp, AlarmEvent.TYPE_RATE_OF_CHANGE, rate, maxRate, null,
+                rateMessage(sensorId, sensorName, actualTemperature, rate, maxRate));
+    }
+
+    private static String rateMessage(String sensorId, String sensorName, float actualTemperature, float rate, float maxRate) {
+        return String.format("传感器 [%s (%s)] 温度变化过快: 当前 %.2f°C, 变化率 %.2f°C/分钟 (阈值: %.2f°C/分钟)",
+                sensorName, sensorId, actualTemperature, rate, maxRate);
+    }
+
+    private static String typeOf(int index) {
+        switch (index) {
+            case HIGH:
+                return AlarmEvent.TYPE_HIGH_TEMPERATURE;
+            case LOW:
+                return AlarmEvent.TYPE_LOW_TEMPERATURE;
+            case DEVIATION:
+                return AlarmEvent.TYPE_DEVIATION;
+            default:
+                return AlarmEvent.TYPE_RATE_OF_CHANGE;
+        }
+    }
+
+    private static String label(int index) {
+        switch (index) {
+            case HIGH:
+                return "温度过高";
+            case LOW:
+                return "温度过低";
+            case DEVIATION:
+                return "温度异常波动";
+            default:
+                return "温度变化过快";
+        }
+    }
+
+    private static float thresholdOf(int index, AlarmRules.SensorRule rule) {
+        switch (index) {
+            case HIGH:
+                return rule.getUpper();
+            case LOW:
+                return rule.getLower();
+            case DEVIATION:
+                return rule.getDeviation();
+            default:
+                return rule.getMaxRatePerMinute();
+        }
+    }
+
+    /** 传感器被移除时丢弃其状态。 */
+    public void remove(String sensorId) {
+        states.remove(sensorId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, List<String>> active = new LinkedHashMap<>();
+        states.forEach((sensorId, state) -> {
+            List<String> kinds = new ArrayList<>();
+            synchronized (state) {
+                for (int i = 0; i < KINDS.length; i++) {
+                    if (state.conditions[i].active) {
+                        kinds.add(KINDS[i].name());
+                    }
+                }
+            }
+            if (!kinds.isEmpty()) {
+                active.put(sensorId, kinds);
+            }
+        });
+        stats.put("activeEpisodes", active);
+        stats.put("raised", raised.get());
+        stats.put("cleared", cleared.get());
+        stats.put("pendingSamples", pendingSamples.get());
+        return stats;
+    }
+}
@@ -0,0 +1,347 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.model.SensorData;
+import com.neuedu.tempbackend.repository.SensorDataRepository;
+import com.neuedu.tempbackend.util.KeysetCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * 分层历史查询规划器。
+ * <p>
+ * 数据按存储级别分为三层，每层只负责自己的时间窗口 (与保留策略一致)：
+ * <pre>
+ *   REALTIME           [now - realtimeMinutes, now]
+ *   MINUTELY_COMPACTED [now - minutelyHours,   now - realtimeMinutes]
+ *   HOURLY_COMPACTED   [now - hourlyDays,      now - minutelyHours]
+ * </pre>
+ * 查询"最近 N 条"时从最新的一层开始，用 (timestamp, id) keyset 分页 + LIMIT 逐页向旧数据推进，
+ * 凑够 N 条立即停止，不再把整个保留窗口读进内存后排序。
+ * 多传感器查询为每个传感器打开一个惰性游标，用小顶堆做 k 路归并。
+ * 翻页时从客户端传回的 {@link KeysetCursor} 位置继续，直接跳过更新的层。
+ */
+@Service
+public class TieredHistoryQueryPlanner {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MIN_PAGE_SIZE = 16;
+
+    // 同一时间戳内按 id 倒序，保证 keyset 位置唯一
+    private static final Comparator<SensorData> NEWEST_FIRST =
+            Comparator.comparing(SensorData::getTimestamp, Comparator.reverseOrder())
+                    .thenComparing(SensorData::getId, Comparator.reverseOrder());
+
+    private final SensorDataRepository sensorDataRepository;
+    private final ModbusProperties modbusProperties;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /** 允许按列扫描的数值字段 (拼入 JPQL 前的白名单)。 */
+    public static final Set<String> NUMERIC_FIELDS = Set.of("temperature", "humidity", "pressure");
+
+    @FunctionalInterface
+    public interface ValueSink {
+        void accept(long epochMs, double value);
+    }
+
+    @Value("${data.retention.realtimeMinutes:20}")
+    private int realtimeRetentionMinutes;
+
+    @Value("${data.retention.minutelyHours:24}")
+    private int minutelyRetentionHours;
+
+    @Value("${data.retention.hourlyDays:7}")
+    private int hourlyRetentionDays;
+
+    public TieredHistoryQueryPlanner(SensorDataRepository sensorDataRepository, ModbusProperties modbusProperties) {
+        this.sensorDataRepository = sensorDataRepository;
+        this.modbusProperties = modbusProperties;
+    }
+
+    /** 一个存储级别及其负责的时间窗口 [lowerBound, upperBound]。 */
+    public record Tier(String storageLevel, LocalDateTime lowerBound, LocalDateTime upperBound) {}
+
+    /**
+     * 以 now 为基准生成按时间从新到旧排列的分层窗口。
+     */
+    public List<Tier> planTiers(LocalDateTime now) {
+        LocalDateTime realtimeStart = now.minusMinutes(realtimeRetentionMinutes);
+        LocalDateTime minutelyStart = now.minusHours(minutelyRetentionHours);
+        LocalDateTime hourlyStart = now.minusDays(hourlyRetentionDays);
+        List<Tier> tiers = new ArrayList<>(3);
+        tiers.add(new Tier("REALTIME", realtimeStart, now));
+        tiers.add(new Tier("MINUTELY_COMPACTED", minutelyStart, realtimeStart));
+        tiers.add(new Tier("HOURLY_COMPACTED", hourlyStart, minutelyStart));
+        return tiers;
+    }
+
+    /**
+     * 将 [start, end] 按分层窗口切分，返回与之相交的各段 (按时间从旧到新，边界已裁剪到查询范围)。
+     * 最新一层的上界取 end 本身，now 之后写入的数据同样属于它。
+     */
+    public List<Tier> splitRange(LocalDateTime start, LocalDateTime end, LocalDateTime now) {
+        List<Tier> tiers = planTiers(now);
+        List<Tier> segments = new ArrayList<>(tiers.size());
+        for (int i = tiers.size() - 1; i >= 0; i--) {
+            Tier tier = tiers.get(i);
+            LocalDateTime from = start.isAfter(tier.lowerBound()) ? start : tier.lowerBound();
+            LocalDateTime to = (i == 0 || end.isBefore(tier.upperBound())) ? end : tier.upperBound();
+            if (to.isAfter(from)) {
+                segments.add(new Tier(tier.storageLevel(), from, to));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * 某存储级别的标称采样间隔 (毫秒)：REALTIME 为全局轮询间隔，压缩级别为聚合单位。
+     */
+    public long nominalSpacingMs(String storageLevel) {
+        switch (storageLevel) {
+            case "MINUTELY_COMPACTED": return 60_000L;
+            case "HOURLY_COMPACTED": return 3_600_000L;
+            default: return Math.max(1L, modbusProperties.getPollIntervalMs());
+        }
+    }
+
+    /**
+     * 比 storageLevel 更粗的存储级别 (由细到粗)。
+     */
+    public List<String> coarserLevels(String storageLevel) {
+        List<String> levels = List.of("REALTIME", "MINUTELY_COMPACTED", "HOURLY_COMPACTED");
+        int index = levels.indexOf(storageLevel);
+        return index < 0 ? List.of() : levels.subList(index + 1, levels.size());
+    }
+
+    /**
+     * 某存储级别的数据在时间点 t 之后多久会被压缩或清理 (即以 t 为上界的查询结果何时可能变化)。
+     */
+    public LocalDateTime stableUntil(String storageLevel, LocalDateTime t) {
+        switch (storageLevel) {
+            case "REALTIME": return t.plusMinutes(realtimeRetentionMinutes);
+            case "MINUTELY_COMPACTED": return t.plusHours(minutelyRetentionHours);
+            default: return t.plusDays(hourlyRetentionDays);
+        }
+    }
+
+    /**
+     * 以前向游标按时间升序扫描某一段的 (timestamp, field) 投影，跳过空值，不创建实体。
+     * 必须在事务内调用。
+     * @param inclusiveEnd 上界是否包含 (相邻两段共享边界时，只有最后一段包含)
+     * @return 扫描的行数
+     */
+    public long scanField(String sensorId, String field, String storageLevel, LocalDateTime from, LocalDateTime to,
+                          boolean inclusiveEnd, ValueSink sink) {
+        if (!NUMERIC_FIELDS.contains(field)) {
+            throw new IllegalArgumentException("Unsupported field: " + field);
+        }
+        String jpql = "SELECT sd.timestamp, sd." + field + " FROM SensorData sd"
+                + " WHERE sd.sensorId = :sensorId AND sd.storageLevel = :storageLevel"
+                + " AND sd.timestamp >= :from AND sd.timestamp " + (inclusiveEnd ? "<=" : "<") + " :to"
+                + " AND sd." + field + " IS NOT NULL ORDER BY sd.timestamp ASC";
+        long count = 0;
+        try (Stream<Object[]> stream = entityManager.createQuery(jpql, Object[].class)
+                .setParameter("sensorId", sensorId)
+                .setParameter("storageLevel", storageLevel)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setHint(org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, Integer.parseInt(SensorDataRepository.STREAM_FETCH_SIZE))
+                .setHint(org.hibernate.jpa.QueryHints.HINT_READONLY, true)
+                .getResultStream()) {
+            Iterator<Object[]> it = stream.iterator();
+            while (it.hasNext()) {
+                Object[] row = it.next();
+                sink.accept(toEpochMs((LocalDateTime) row[0]), ((Number) row[1]).doubleValue());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // 本地时间按 UTC 换算为毫秒，仅用于分桶和排序，与 CompactSensorBatchCodec 的约定一致
+    public static long toEpochMs(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static LocalDateTime fromEpochMs(long epochMs) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMs, 1000L), (int) Math.floorMod(epochMs, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * 单个传感器最近 count 条数据 (按时间倒序)。
+     */
+    public List<SensorData> findRecent(String sensorId, int count) {
+        return findRecent(sensorId, count, null);
+    }
+
+    /**
+     * 单个传感器在 before 位置之前 (更旧) 的 count 条数据，before 为 null 时从最新开始。
+     */
+    public List<SensorData> findRecent(String sensorId, int count, KeysetCursor before) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        // 已知需要的条数，第一页直接按剩余条数下推 LIMIT
+        HistoryCursor cursor = openCursor(sensorId, LocalDateTime.now(), count, before);
+        List<SensorData> result = new ArrayList<>(Math.min(count, MAX_PAGE_SIZE));
+        while (result.size() < count && cursor.hasNext()) {
+            result.add(cursor.next());
+        }
+        return result;
+    }
+
+    /**
+     * 多个传感器合并后最近 count 条数据 (按时间倒序)。
+     * 每个传感器一个惰性游标，堆顶始终是所有游标中最新的一条，只取 count 次。
+     */
+    public List<SensorData> findRecentForAll(Collection<String> sensorIds, int count) {
+        return findRecentForAll(sensorIds, count, null);
+    }
+
+    /**
+     * 多个传感器合并后在 before 位置之前的 count 条数据 (id 全局唯一，(timestamp, id) 在所有传感器间是全序)。
+     */
+    public List<SensorData> findRecentForAll(Collection<String> sensorIds, int count, KeysetCursor before) {
+        List<SensorData> result = new ArrayList<>();
+        if (count <= 0 || sensorIds == null || sensorIds.isEmpty()) {
+            return result;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LinkedHashSet<String> distinctIds = new LinkedHashSet<>(sensorIds);
+        // 数据在各传感器间大致均匀分布，首页取平均份额，后续按需翻倍
+        int initialPage = Math.max(MIN_PAGE_SIZE, count / distinctIds.size() + 1);
+
+        PriorityQueue<HistoryCursor> heap = new PriorityQueue<>(distinctIds.size(),
+                (a, b) -> NEWEST_FIRST.compare(a.peek(), b.peek()));
+        for (String sensorId : distinctIds) {
+            HistoryCursor cursor = openCursor(sensorId, now, initialPage, before);
+            if (cursor.hasNext()) {
+                heap.add(cursor);
+            }
+        }
+        while (result.size() < count && !heap.isEmpty()) {
+            HistoryCursor cursor = heap.poll();
+            result.add(cursor.next());
+            if (cursor.hasNext()) {
+                heap.add(cursor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 打开一个从 now 开始向旧数据推进的游标。
+     */
+    public HistoryCursor openCursor(String sensorId, LocalDateTime now, int initialPageSize) {
+        return openCursor(sensorId, now, initialPageSize, null);
+    }
+
+    /**
+     * 打开一个从 before 位置 (不含) 开始向旧数据推进的游标；before 为 null 时从 now 开始。
+     */
+    public HistoryCursor openCursor(String sensorId, LocalDateTime now, int initialPageSize, KeysetCursor before) {
+        if (before == null) {
+            return new HistoryCursor(sensorId, planTiers(now), now, Long.MAX_VALUE, initialPageSize);
+        }
+        return new HistoryCursor(sensorId, planTiers(now), before.timestamp(), before.id(), initialPageSize);
+    }
+
+    /**
+     * 单个传感器的惰性游标：按层、按页向旧数据推进，只有缓冲区读空时才发下一条 LIMIT 查询。
+     */
+    public class HistoryCursor {
+        private final String sensorId;
+        private final List<Tier> tiers;
+        private int tierIndex;
+        private LocalDateTime beforeTs;
+        private long beforeId;
+        private int pageSize;
+        private List<SensorData> buffer = List.of();
+        private int bufferPos;
+        private boolean tierExhausted;
+
+        HistoryCursor(String sensorId, List<Tier> tiers, LocalDateTime beforeTs, long beforeId, int pageSize) {
+            this.sensorId = sensorId;
+            this.tiers = tiers;
+            this.beforeTs = beforeTs;
+            this.beforeId = beforeId;
+            this.pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+            // 起始位置落在哪一层就从哪一层开始，更新的层直接跳过
+            while (tierIndex < tiers.size() - 1 && beforeTs.isBefore(tiers.get(tierIndex).lowerBound())) {
+                tierIndex++;
+            }
+        }
+
+        public boolean hasNext() {
+            while (bufferPos >= buffer.size()) {
+                if (!fetchNextPage()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public SensorData peek() {
+            return hasNext() ? buffer.get(bufferPos) : null;
+        }
+
+        public SensorData next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.get(bufferPos++);
+        }
+
+        private boolean fetchNextPage() {
+            while (tierIndex < tiers.size()) {
+                Tier tier = tiers.get(tierIndex);
+                if (!tierExhausted) {
+                    // 进入新层时，keyset 起点不能晚于该层上界
+                    LocalDateTime ts = beforeTs.isAfter(tier.upperBound()) ? tier.upperBound() : beforeTs;
+                    long id = beforeTs.isAfter(tier.upperBound()) ? Long.MAX_VALUE : beforeId;
+                    List<SensorData> page = sensorDataRepository.findTierPageBefore(
+                            sensorId, tier.storageLevel(), tier.lowerBound(), ts, id, PageRequest.of(0, pageSize));
+                    if (page.size() < pageSize) {
+                        tierExhausted = true;
+                    }
+                    // 后续页逐步放大，减少深翻页时的查询次数
+                    pageSize = Math.min(pageSize * 2, MAX_PAGE_SIZE);
+                    if (!page.isEmpty()) {
+                        SensorData last = page.get(page.size() - 1);
+                        beforeTs = last.getTimestamp();
+                        beforeId = last.getId();
+                        buffer = page;
+                        bufferPos = 0;
+                        return true;
+                    }
+                }
+                tierIndex++;
+                tierExhausted = false;
+                if (tierIndex < tiers.size()) {
+                    // 下一层从其上界开始
+                    beforeTs = tiers.get(tierIndex).upperBound();
+                    beforeId = Long.MAX_VALUE;
+                }
+            }
+            return false;
+        }
+    }
+}
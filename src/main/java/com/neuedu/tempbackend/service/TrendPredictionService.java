@@ -1,18 +1,29 @@
 package com.neuedu.tempbackend.service;
 
 import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.model.AlarmEvent;
 import com.neuedu.tempbackend.model.EdgeConfig;
-import com.neuedu.tempbackend.model.SensorData;
-import com.neuedu.tempbackend.repository.SensorDataRepository;
+import com.neuedu.tempbackend.util.BucketRing;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 负责执行未来趋势预测和预警。
@@ -21,94 +32,178 @@ import java.util.Optional;
 public class TrendPredictionService {
 
     @Autowired
-    private TemperaturePollingService temperaturePollingService; // 用于获取历史数据
+    private TrendWindowBuffer trendWindowBuffer; // 5 秒桶的历史窗口 (内存)
     @Autowired
-    private PredictionService predictionService; // 调用 Python 预测模型
+    private PredictionService predictionService; // 预测引擎 (嵌入式或 Python 服务)
     @Autowired
     private AlarmService alarmService; // 判断预警阈值
     @Autowired
-    private SensorDataRepository sensorDataRepository; // 保存预测性报警
+    private AlarmEventService alarmEventService; // 记录并上传预测性报警事件
     @Autowired
-    private CloudUploadService cloudUploadService; // 上传预测性报警
+    private PredictiveAlarmTracker predictiveAlarmTracker; // 预测性报警的事件状态机 (去重)
     @Autowired
-    private ModbusProperties modbusProperties; // 获取所有传感器配置
-
-    @Value("${edge.deviceId:jetson-001}")
-    private String deviceId;
-
-    @Value("${prediction.trend.historyMinutes:10}") // 预测模型需要过去多长时间的数据 (分钟)
-    private int trendPredictionHistoryMinutes;
+    private SensorRegistry sensorRegistry; // 获取当前所有传感器 (含运行时新增的)
 
     @Value("${prediction.trend.horizonSeconds:60}") // 预测未来多长时间 (秒)
     private int trendPredictionHorizonSeconds;
 
+    @Value("${prediction.trend.runDeadlineMs:25000}") // 单轮检查的截止时间，应小于 checkIntervalMs
+    private long runDeadlineMs;
+
+    @Autowired
+    @Qualifier("trendPredictionExecutor")
+    private ThreadPoolTaskExecutor trendPredictionExecutor;
+
+    private final AtomicBoolean running = new AtomicBoolean(false); // 防止 fixedRate 的两轮重叠
+    private final AtomicLong completedRuns = new AtomicLong();
+    private final AtomicLong skippedRuns = new AtomicLong();
+    private final AtomicLong totalMissed = new AtomicLong();
+    private final AtomicLong lastRunDurationMs = new AtomicLong();
+    private final AtomicInteger lastRunSensors = new AtomicInteger();
+    private final AtomicInteger lastRunMissed = new AtomicInteger();
+    private final AtomicInteger lastRunAlarms = new AtomicInteger();
+
 
     /**
      * 定时任务：检查未来温度预警。
-     * 例如每 30 秒运行一次。
+     * 例如每 30 秒运行一次。各传感器的预测并行执行 (并发数 prediction.trend.parallelism)，
+     * 本轮在 runDeadlineMs 内没有完成的传感器记为未完成并放弃其结果；上一轮未结束时跳过本轮。
+     * 各传感器的结果交给 PredictiveAlarmTracker，只有事件状态变化 (开启/更新/恢复) 才生成报警，
+     * 本轮产生的报警最后一次性批量保存。
      */
-    @Transactional
     @Scheduled(fixedRateString = "${prediction.trend.checkIntervalMs:30000}")
     public void checkFutureTemperatureAlerts() {
-        System.out.println("开始执行未来温度趋势预测和预警检查...");
-
-        for (ModbusProperties.SensorProperties sensorProp : modbusProperties.getSerial().getSensors()) {
-            String sensorId = sensorProp.getSensorId();
-            String sensorName = sensorProp.getSensorName();
-
-            // 1. 获取用于预测的历史数据 (5秒降采样)
-            List<SensorData> history = temperaturePollingService.get5SecondAggregatedHistoryForPrediction(
-                    sensorId, trendPredictionHistoryMinutes);
+        if (!running.compareAndSet(false, true)) {
+            skippedRuns.incrementAndGet();
+            System.err.println("上一轮趋势预测检查尚未结束，跳过本轮。");
+            return;
+        }
+        long runStart = System.currentTimeMillis();
+        try {
+            System.out.println("开始执行未来温度趋势预测和预警检查...");
+            List<ModbusProperties.SensorProperties> sensors = sensorRegistry.sensors();
+            List<CompletableFuture<Evaluation>> futures = new ArrayList<>(sensors.size());
+            int missed = 0;
+            for (ModbusProperties.SensorProperties sensorProp : sensors) {
+                try {
+                    futures.add(CompletableFuture.supplyAsync(() -> evaluateSensor(sensorProp), trendPredictionExecutor));
+                } catch (TaskRejectedException e) {
+                    missed++;
+                }
+            }
 
-            // 确保历史数据量足够
-            if (history == null || history.size() < (trendPredictionHistoryMinutes * 60 / 5) * 0.8) { // 例如，至少有 80% 的数据点
-                System.out.println("传感器 " + sensorId + " 历史数据不足 (" + (history != null ? history.size() : 0) + "点)，无法进行趋势预测。");
-                continue;
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                        .get(Math.max(1, runDeadlineMs - (System.currentTimeMillis() - runStart)), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 超过本轮截止时间：已完成的照常处理，其余记为未完成
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // 单个传感器的异常在下面逐个处理
             }
 
-            // 2. 调用 Python 预测服务，获取未来趋势预测
-            List<Float> futureTemperatures = predictionService.predictTrend(
-                    sensorId, history, trendPredictionHorizonSeconds);
-
-            if (futureTemperatures != null && !futureTemperatures.isEmpty()) {
-                EdgeConfig.AlarmThresholdsConfig thresholds = alarmService.getEffectiveThresholds(sensorId);
-                Float upper = thresholds.getUpper();
-                Float lower = thresholds.getLower();
-
-                // 3. 遍历预测结果，检查是否超阈值
-                for (int i = 0; i < futureTemperatures.size(); i++) {
-                    Float predictedTemp = futureTemperatures.get(i);
-                    // 假设 Python 返回的是 5 秒间隔的数据点
-                    LocalDateTime predictedOccurrenceTime = LocalDateTime.now().plusSeconds((i + 1) * 5); // 预测的是未来 (i+1)*5 秒后的温度
-
-                    if (predictedTemp != null && (predictedTemp > upper || predictedTemp < lower)) {
-                        String message = String.format("【预测性报警】传感器 [%s (%s)] 预测 %d 秒后温度将超阈值: %.2f°C (阈值: %.2f°C ~ %.2f°C)",
-                                sensorName, sensorId, (i + 1) * 5, predictedTemp, lower, upper);
-                        System.err.println(message);
-
-                        // 4. 创建 SensorData 记录用于上传预测性报警
-                        SensorData predictionAlarm = new SensorData();
-                        predictionAlarm.setDeviceId(deviceId);
-                        predictionAlarm.setSensorId(sensorId);
-                        predictionAlarm.setSensorName(sensorName);
-                        predictionAlarm.setTimestamp(predictedOccurrenceTime); // 报警时间是预测发生的时间
-                        predictionAlarm.setTemperature(predictedTemp); // 将预测的超阈值温度填入 temperature 字段
-                        predictionAlarm.setPredictedTemperature(predictedTemp); // predictedTemperature 也填入预测值
-                        predictionAlarm.setAlarmTriggered(true); // 标记为报警
-                        predictionAlarm.setAlarmMessage(message);
-                        predictionAlarm.setStorageLevel("PREDICTED_ALARM"); // 特殊的存储级别，方便识别
-                        predictionAlarm.setUploaded(false); // 默认未上传
-
-                        sensorDataRepository.save(predictionAlarm);
-                        // 立即上传 (高优先级)
-                        cloudUploadService.uploadData(predictionAlarm);
-
-                        // 发现第一个未来超阈值点就预警，避免多次重复报警
-                        // 如果需要同时预警所有超阈值的点，则删除 break
-                        break;
+            List<AlarmEvent> alarms = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            for (CompletableFuture<Evaluation> future : futures) {
+                if (!future.isDone()) {
+                    missed++;
+                    future.cancel(false); // 尚未开始的不再执行；正在执行的结果被丢弃
+                    continue;
+                }
+                try {
+                    Evaluation evaluation = future.getNow(null);
+                    if (evaluation == null) {
+                        continue; // 历史不足或预测失败：不改变事件状态
                     }
+                    AlarmEvent alarm = predictiveAlarmTracker.observe(evaluation.sensorId(), evaluation.sensorName(),
+                            evaluation.breach(), now);
+                    if (alarm != null) {
+                        alarms.add(alarm);
+                    }
+                } catch (Exception e) {
+                    System.err.println("趋势预测失败: " + e.getMessage());
                 }
             }
+
+            // 4. 本轮的预测性报警批量保存，由 AlarmEventService 提交到 ALARM 通道上传
+            alarmEventService.recordAll(alarms);
+
+            long duration = System.currentTimeMillis() - runStart;
+            lastRunDurationMs.set(duration);
+            lastRunSensors.set(sensors.size());
+            lastRunMissed.set(missed);
+            lastRunAlarms.set(alarms.size());
+            totalMissed.addAndGet(missed);
+            completedRuns.incrementAndGet();
+            System.out.println("趋势预测检查完成: " + sensors.size() + " 个传感器, 报警 " + alarms.size() +
+                    ", 未在截止时间内完成 " + missed + ", 耗时 " + duration + "ms");
+        } finally {
+            running.set(false);
         }
     }
+
+    /** 单个传感器本轮的预测结果，breach 为 null 表示预测不越限。 */
+    private record Evaluation(String sensorId, String sensorName, PredictiveAlarmTracker.Breach breach) {}
+
+    /**
+     * 单个传感器的趋势预测，在 trendPredictionExecutor 上执行。
+     * @return 预测结果 (第一个超阈值点)；历史不足或预测失败时返回 null
+     */
+    private Evaluation evaluateSensor(ModbusProperties.SensorProperties sensorProp) {
+        String sensorId = sensorProp.getSensorId();
+        String sensorName = sensorProp.getSensorName();
+
+        // 1. 获取用于预测的历史窗口 (5秒一个桶，内存中增量维护，不查库)
+        BucketRing.Window history = trendWindowBuffer.window(sensorId);
+
+        // 确保历史数据量足够
+        if (history.size() < trendWindowBuffer.capacity() * 0.8) { // 例如，至少有 80% 的数据点
+            System.out.println("传感器 " + sensorId + " 历史数据不足 (" + history.size() + "点)，无法进行趋势预测。");
+            return null;
+        }
+
+        // 2. 调用预测引擎，获取未来趋势预测
+        List<Float> futureTemperatures = predictionService.predictTrend(
+                sensorId, history, trendPredictionHorizonSeconds);
+        if (futureTemperatures == null || futureTemperatures.isEmpty()) {
+            return null;
+        }
+
+        EdgeConfig.AlarmThresholdsConfig thresholds = alarmService.getEffectiveThresholds(sensorId);
+        Float upper = thresholds.getUpper();
+        Float lower = thresholds.getLower();
+
+        // 3. 遍历预测结果，找到第一个超阈值点 (是否报警由事件状态机决定)
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < futureTemperatures.size(); i++) {
+            Float predictedTemp = futureTemperatures.get(i);
+            if (predictedTemp != null && (predictedTemp > upper || predictedTemp < lower)) {
+                // 预测结果是 5 秒间隔的数据点，第 i 个是未来 (i+1)*5 秒后的温度
+                int secondsAhead = (i + 1) * PredictionBackend.TREND_STEP_SECONDS;
+                boolean high = predictedTemp > upper;
+                return new Evaluation(sensorId, sensorName, new PredictiveAlarmTracker.Breach(
+                        predictedTemp, high ? upper : lower, high, secondsAhead, now.plusSeconds(secondsAhead)));
+            }
+        }
+        return new Evaluation(sensorId, sensorName, null);
+    }
+
+    /**
+     * 趋势检查的运行统计：最近一轮耗时、传感器数、未在截止时间内完成数、报警数，以及累计跳过的轮次。
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("completedRuns", completedRuns.get());
+        stats.put("skippedRuns", skippedRuns.get());
+        stats.put("lastRunDurationMs", lastRunDurationMs.get());
+        stats.put("lastRunSensors", lastRunSensors.get());
+        stats.put("lastRunMissedDeadline", lastRunMissed.get());
+        stats.put("lastRunAlarms", lastRunAlarms.get());
+        stats.put("totalMissedDeadline", totalMissed.get());
+        stats.put("runDeadlineMs", runDeadlineMs);
+        stats.put("episodes", predictiveAlarmTracker.getStats());
+        return stats;
+    }
 }
@@ -0,0 +1,82 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.SensorData;
+import com.neuedu.tempbackend.repository.SensorDataRepository;
+import com.neuedu.tempbackend.util.BucketRing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 趋势预测的输入窗口：每个传感器一个 5 秒桶的环形缓冲，由轮询在采样落库后增量更新。
+ * <p>
+ * 趋势检查直接拷出窗口内各桶均值 (基本类型数组)，不再每 30 秒从 H2 重读 10 分钟原始数据再分组。
+ * 进程重启后第一次访问某传感器时，用库中的 REALTIME 数据预热一次窗口。
+ */
+@Service
+public class TrendWindowBuffer {
+
+    private static final long BUCKET_MS = PredictionBackend.TREND_STEP_SECONDS * 1000L;
+
+    private final SensorDataRepository sensorDataRepository;
+    private final Map<String, BucketRing> ringsBySensor = new ConcurrentHashMap<>();
+
+    @Value("${prediction.trend.historyMinutes:10}")
+    private int historyMinutes;
+
+    public TrendWindowBuffer(SensorDataRepository sensorDataRepository) {
+        this.sensorDataRepository = sensorDataRepository;
+    }
+
+    /**
+     * 计入一条刚采集的数据 (轮询线程调用)。
+     */
+    public void record(String sensorId, LocalDateTime timestamp, Float temperature, Float humidity, Float pressure) {
+        long timeMs = TieredHistoryQueryPlanner.toEpochMs(timestamp);
+        // 预热只读取本条之前的数据，避免刚落库的这一条被计入两次
+        ringFor(sensorId, timestamp.minusNanos(1)).add(timeMs, temperature, humidity, pressure);
+    }
+
+    /**
+     * 最近 historyMinutes 分钟内有数据的 5 秒桶，按时间升序。
+     */
+    public BucketRing.Window window(String sensorId) {
+        LocalDateTime now = LocalDateTime.now();
+        long nowMs = TieredHistoryQueryPlanner.toEpochMs(now);
+        return ringFor(sensorId, now).snapshot(nowMs - historyMinutes * 60_000L, nowMs);
+    }
+
+    /** 窗口满时的桶数，用于判断历史数据是否足够。 */
+    public int capacity() {
+        return (int) (historyMinutes * 60_000L / BUCKET_MS);
+    }
+
+    public void remove(String sensorId) {
+        ringsBySensor.remove(sensorId);
+    }
+
+    private BucketRing ringFor(String sensorId, LocalDateTime seedUntil) {
+        BucketRing ring = ringsBySensor.get(sensorId);
+        if (ring != null) {
+            return ring;
+        }
+        return ringsBySensor.computeIfAbsent(sensorId, id -> seed(id, seedUntil));
+    }
+
+    private BucketRing seed(String sensorId, LocalDateTime seedUntil) {
+        BucketRing ring = new BucketRing(BUCKET_MS, capacity() + 1); // 多一个桶容纳正在写入的当前桶
+        List<SensorData> rows = sensorDataRepository.findBySensorIdAndTimestampBetweenAndStorageLevelOrderByTimestampAsc(
+                sensorId, seedUntil.minusMinutes(historyMinutes), seedUntil, "REALTIME");
+        for (SensorData row : rows) {
+            ring.add(TieredHistoryQueryPlanner.toEpochMs(row.getTimestamp()), row.getTemperature(), row.getHumidity(), row.getPressure());
+        }
+        if (!rows.isEmpty()) {
+            System.out.println("传感器 " + sensorId + " 的趋势窗口已用 " + rows.size() + " 条库存数据预热。");
+        }
+        return ring;
+    }
+}
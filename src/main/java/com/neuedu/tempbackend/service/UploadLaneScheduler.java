@@ -0,0 +1,580 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.model.SensorData;
+import com.neuedu.tempbackend.repository.AlarmEventRepository;
+import com.neuedu.tempbackend.repository.SensorDataRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * 云端上传的优先级通道调度器。
+ * <p>
+ * 三条通道按优先级排列：ALARM (报警事件，见 {@link AlarmEvent}) &gt; REALTIME (最新实时数据) &gt; COMPACTED (分钟/小时聚合历史)。
+ * 单个分发线程负责组批发送：
+ * <ul>
+ *     <li>报警批次单独发送，不受退避和带宽预算限制，积压追赶期间报警最多等待一个在途批次；</li>
+ *     <li>实时数据新样本插到通道头部，积压补货追加到尾部，保证“最新优先”；</li>
+ *     <li>批大小按观测到的 RTT 和错误做 AIMD 调整，带宽预算用令牌桶控制 (cloud.upload.bandwidthBytesPerSec)。</li>
+ * </ul>
+ * 通道只是内存中的发送队列，数据本身已落库 (isUploaded=false)；通道满时丢弃的条目会在下一次补货时重新入队。
+ * 报警通道只承载报警事件日志 (alarm_event)，原始样本无论是否报警都走实时/历史通道。
+ * <p>
+ * 断网恢复后积压超过 catchUp.enterBacklog 时进入追赶模式：持续补货、多批并行发送、放宽批大小上限，
+ * 并跳过早于实时保留期的 REALTIME 原始行 (它们即将被稀疏化删除，由分钟级聚合代替上传)。
+ * 积压降到 catchUp.exitBacklog 以下后恢复正常节奏。
+ */
+@Service
+public class UploadLaneScheduler {
+
+    public enum Lane { ALARM, REALTIME, COMPACTED }
+
+    private final CloudUploadService cloudUploadService;
+    private final SensorDataRepository sensorDataRepository;
+    private final AlarmEventRepository alarmEventRepository;
+    private final Executor uploadLaneExecutor;
+    private final Executor uploadCatchUpExecutor;
+
+    @Value("${cloud.upload.batchSize:50}") private int initialBatchSize;
+    @Value("${cloud.upload.minBatchSize:10}") private int minBatchSize;
+    @Value("${cloud.upload.maxBatchSize:500}") private int maxBatchSize;
+    @Value("${cloud.upload.targetRttMs:2000}") private long targetRttMs; // RTT 超过该值即缩小批次
+    @Value("${cloud.upload.lingerMs:1000}") private long lingerMs; // 非报警通道凑批的最长等待
+    @Value("${cloud.upload.bandwidthBytesPerSec:0}") private long bandwidthBytesPerSec; // 0 表示不限速
+    @Value("${cloud.upload.lanes.alarmCapacity:1000}") private int alarmCapacity;
+    @Value("${cloud.upload.lanes.realtimeCapacity:5000}") private int realtimeCapacity;
+    @Value("${cloud.upload.lanes.compactedCapacity:5000}") private int compactedCapacity;
+    @Value("${cloud.upload.catchUp.enterBacklog:2000}") private long catchUpEnterBacklog; // 未上传行数超过该值进入追赶模式
+    @Value("${cloud.upload.catchUp.exitBacklog:200}") private long catchUpExitBacklog; // 低于该值恢复正常节奏
+    @Value("${cloud.upload.catchUp.parallelism:3}") private int catchUpParallelism; // 追赶模式下并行发送的批次数
+    @Value("${cloud.upload.catchUp.maxBatchSize:2000}") private int catchUpMaxBatchSize; // 追赶模式下的批大小上限
+    @Value("${data.retention.realtimeMinutes:20}") private int realtimeRetentionMinutes;
+
+    // REALTIME / COMPACTED 通道 (SensorData)
+    private final Map<Lane, LinkedBlockingDeque<SensorData>> lanes = new EnumMap<>(Lane.class);
+    private LinkedBlockingDeque<AlarmEvent> alarmLane;
+    // 已在通道中或正在发送的数据ID，防止补货时重复入队 (样本与报警事件ID各自独立)
+    private final Set<Long> queuedIds = ConcurrentHashMap.newKeySet();
+    private final Set<Long> queuedAlarmIds = ConcurrentHashMap.newKeySet();
+    private final Object signal = new Object();
+    private boolean signalled; // 受 signal 保护：等待前检查，避免入队发生在检查之后、wait 之前时丢失唤醒
+    private volatile boolean running;
+
+    // 以下状态只由分发线程修改，volatile 便于状态接口读取
+    private volatile int currentBatchSize;
+    private volatile double ewmaRttMs = -1;
+    private volatile long backoffMs;
+    private long nextAttemptAt;
+    private long nextAlarmAttemptAt;
+    private long lingerDeadline;
+    private double tokens;
+    private long lastRefillNanos;
+
+    // 追赶模式状态
+    private volatile boolean catchUp;
+    private volatile long backlog = -1;
+    private volatile long backlogAtCatchUpStart;
+    private volatile LocalDateTime catchUpSince;
+    private volatile double drainRowsPerSec = Double.NaN; // 积压净下降速率 (EWMA)
+    private volatile boolean catchUpExited; // 退出追赶模式后由分发线程把批大小收回到正常上限
+    private long lastBacklogCheckAt;
+    // 追赶模式下并行批次的完成结果，由发送线程入队、分发线程处理
+    private record Completion(List<SensorData> batch, CloudUploadService.BatchResult result) {}
+    private final Queue<Completion> completions = new ConcurrentLinkedQueue<>();
+    private int inFlightBatches; // 只由分发线程修改
+
+    private final Map<Lane, AtomicLong> sentRows = new EnumMap<>(Lane.class);
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong sentBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    @Autowired
+    public UploadLaneScheduler(CloudUploadService cloudUploadService,
+                               SensorDataRepository sensorDataRepository,
+                               AlarmEventRepository alarmEventRepository,
+                               @Qualifier("uploadLaneExecutor") Executor uploadLaneExecutor,
+                               @Qualifier("uploadCatchUpExecutor") Executor uploadCatchUpExecutor) {
+        this.cloudUploadService = cloudUploadService;
+        this.sensorDataRepository = sensorDataRepository;
+        this.alarmEventRepository = alarmEventRepository;
+        this.uploadLaneExecutor = uploadLaneExecutor;
+        this.uploadCatchUpExecutor = uploadCatchUpExecutor;
+    }
+
+    @PostConstruct
+    public void start() {
+        alarmLane = new LinkedBlockingDeque<>(alarmCapacity);
+        lanes.put(Lane.REALTIME, new LinkedBlockingDeque<>(realtimeCapacity));
+        lanes.put(Lane.COMPACTED, new LinkedBlockingDeque<>(compactedCapacity));
+        for (Lane lane : Lane.values()) {
+            sentRows.put(lane, new AtomicLong());
+        }
+        currentBatchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+        tokens = bandwidthBytesPerSec;
+        lastRefillNanos = System.nanoTime();
+        running = true;
+        uploadLaneExecutor.execute(this::dispatchLoop);
+        System.out.println("UploadLaneScheduler started. batchSize=" + currentBatchSize + ", bandwidth=" +
+                (bandwidthBytesPerSec > 0 ? bandwidthBytesPerSec + " B/s" : "unlimited"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        wakeUp();
+    }
+
+    /**
+     * 提交一条刚落库的数据到对应优先级通道。只入内存队列，立即返回。
+     * @param data 已保存 (带ID) 的 SensorData
+     * @return 是否入队成功 (失败时数据仍在库中，等待补货)
+     */
+    public boolean submit(SensorData data) {
+        if (data == null) {
+            return false;
+        }
+        Lane lane = laneOf(data);
+        if (lane == Lane.REALTIME) {
+            // 新样本优先：通道满时挤掉最旧的一条 (它仍在库中，之后由补货重新入队)
+            LinkedBlockingDeque<SensorData> queue = lanes.get(lane);
+            if (queue.remainingCapacity() == 0) {
+                SensorData evicted = queue.pollLast();
+                if (evicted != null && evicted.getId() != null) {
+                    queuedIds.remove(evicted.getId());
+                }
+            }
+            return enqueue(lane, data, true);
+        }
+        return enqueue(lane, data, false);
+    }
+
+    /**
+     * 提交一条刚落库的报警事件到 ALARM 通道。
+     * @return 是否入队成功 (失败时事件仍在库中，等待补货)
+     */
+    public boolean submit(AlarmEvent event) {
+        if (event == null) {
+            return false;
+        }
+        return enqueueAlarm(event);
+    }
+
+    /**
+     * 从本地库中为各通道补充未上传数据 (断网恢复、通道溢出后的兜底)。
+     * 报警最新优先；实时数据最新优先；聚合历史随后。
+     */
+    @Scheduled(fixedDelayString = "${cloud.upload.batchIntervalMs:60000}")
+    public void refillFromStore() {
+        int alarms = 0;
+        int freeAlarms = alarmLane.remainingCapacity();
+        if (freeAlarms > 0) {
+            for (AlarmEvent event : alarmEventRepository.findByIsUploadedFalseOrderByTimestampDesc(PageRequest.of(0, freeAlarms))) {
+                if (enqueueAlarm(event)) {
+                    alarms++;
+                }
+            }
+        }
+        int realtime;
+        if (catchUp) {
+            // 早于实时保留期的原始行很快会被聚合并删除，追赶时只补保留期内的，旧数据以分钟级聚合上传
+            LocalDateTime cutoff = LocalDateTime.now().minusMinutes(realtimeRetentionMinutes);
+            realtime = refill(Lane.REALTIME, limit ->
+                    sensorDataRepository.findByIsUploadedFalseAndStorageLevelAndTimestampAfterOrderByTimestampDesc("REALTIME", cutoff, PageRequest.of(0, limit)));
+        } else {
+            realtime = refill(Lane.REALTIME, limit ->
+                    sensorDataRepository.findByIsUploadedFalseAndStorageLevelOrderByTimestampDesc("REALTIME", PageRequest.of(0, limit)));
+        }
+        int compacted = refill(Lane.COMPACTED, limit ->
+                sensorDataRepository.findByIsUploadedFalseAndStorageLevelOrderByTimestampDesc("MINUTELY_COMPACTED", PageRequest.of(0, limit)));
+        compacted += refill(Lane.COMPACTED, limit ->
+                sensorDataRepository.findByIsUploadedFalseAndStorageLevelOrderByTimestampDesc("HOURLY_COMPACTED", PageRequest.of(0, limit)));
+        if (alarms + realtime + compacted > 0) {
+            System.out.println("上传通道补货: ALARM +" + alarms + ", REALTIME +" + realtime + ", COMPACTED +" + compacted);
+        }
+    }
+
+    /**
+     * 检查本地积压，切换追赶/正常模式，并计算积压下降速率和预计完成时间。
+     * 追赶模式下每次检查都会补货，使通道始终有数据可发。
+     */
+    @Scheduled(fixedDelayString = "${cloud.upload.catchUp.checkIntervalMs:5000}")
+    public void evaluateBacklog() {
+        long now = System.currentTimeMillis();
+        long current = sensorDataRepository.countByIsUploadedFalse();
+        long previous = backlog;
+        if (previous >= 0 && lastBacklogCheckAt > 0 && now > lastBacklogCheckAt) {
+            double rate = (previous - current) * 1000.0 / (now - lastBacklogCheckAt);
+            drainRowsPerSec = Double.isNaN(drainRowsPerSec) ? rate : drainRowsPerSec * 0.7 + rate * 0.3;
+        }
+        backlog = current;
+        lastBacklogCheckAt = now;
+
+        if (!catchUp && current > catchUpEnterBacklog) {
+            catchUp = true;
+            backlogAtCatchUpStart = current;
+            catchUpSince = LocalDateTime.now();
+            drainRowsPerSec = Double.NaN;
+            System.out.println("上传进入追赶模式，积压 " + current + " 条，并行度 " + catchUpParallelism + "，批大小上限 " + catchUpMaxBatchSize);
+        } else if (catchUp && current < catchUpExitBacklog) {
+            catchUp = false;
+            catchUpExited = true;
+            wakeUp();
+            System.out.println("上传追赶完成，剩余积压 " + current + " 条，耗时 "
+                    + Duration.between(catchUpSince, LocalDateTime.now()).getSeconds() + " 秒，恢复正常节奏。");
+        }
+        if (catchUp) {
+            refillFromStore();
+            wakeUp();
+        }
+    }
+
+    private int refill(Lane lane, IntFunction<List<SensorData>> loader) {
+        int free = lanes.get(lane).remainingCapacity();
+        if (free <= 0) {
+            return 0;
+        }
+        int added = 0;
+        for (SensorData data : loader.apply(free)) {
+            if (enqueue(lane, data, false)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private boolean enqueue(Lane lane, SensorData data, boolean atHead) {
+        Long id = data.getId();
+        if (id != null && !queuedIds.add(id)) {
+            return false; // 已在通道中或正在发送
+        }
+        LinkedBlockingDeque<SensorData> queue = lanes.get(lane);
+        boolean offered = atHead ? queue.offerFirst(data) : queue.offerLast(data);
+        if (!offered) {
+            if (id != null) {
+                queuedIds.remove(id);
+            }
+            return false;
+        }
+        wakeUp();
+        return true;
+    }
+
+    private boolean enqueueAlarm(AlarmEvent event) {
+        Long id = event.getId();
+        if (id != null && !queuedAlarmIds.add(id)) {
+            return false;
+        }
+        if (!alarmLane.offerLast(event)) {
+            if (id != null) {
+                queuedAlarmIds.remove(id);
+            }
+            return false;
+        }
+        wakeUp();
+        return true;
+    }
+
+    // 样本按存储级别分通道；报警事件单独走 ALARM 通道
+    static Lane laneOf(SensorData data) {
+        if ("REALTIME".equals(data.getStorageLevel())) {
+            return Lane.REALTIME;
+        }
+        return Lane.COMPACTED;
+    }
+
+    // ==================== 分发线程 ====================
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                drainCompletions();
+                if (catchUpExited) {
+                    catchUpExited = false;
+                    currentBatchSize = Math.min(currentBatchSize, maxBatchSize);
+                }
+                long now = System.currentTimeMillis();
+
+                // 1. 报警通道：只受短退避约束，不占用带宽预算
+                if (!alarmLane.isEmpty() && now >= nextAlarmAttemptAt) {
+                    List<AlarmEvent> alarmBatch = new ArrayList<>();
+                    alarmLane.drainTo(alarmBatch, currentBatchSize);
+                    sendAlarms(alarmBatch);
+                    continue;
+                }
+
+                // 并行批次仍在途时不再组新批，只等待完成结果或报警
+                if (inFlightBatches > 0) {
+                    await(alarmLane.isEmpty() ? 1000 : Math.max(1, nextAlarmAttemptAt - now));
+                    continue;
+                }
+
+                // 2. 非报警通道：错误退避
+                if (now < nextAttemptAt) {
+                    await(nextAttemptAt - now);
+                    continue;
+                }
+                int pending = lanes.get(Lane.REALTIME).size() + lanes.get(Lane.COMPACTED).size();
+                if (pending == 0) {
+                    lingerDeadline = 0;
+                    await(alarmLane.isEmpty() ? 1000 : Math.max(1, nextAlarmAttemptAt - now));
+                    continue;
+                }
+                // 3. 凑批：不足一个批次时最多等待 lingerMs (追赶模式不等待)
+                if (!catchUp && pending < currentBatchSize) {
+                    if (lingerDeadline == 0) {
+                        lingerDeadline = now + lingerMs;
+                    }
+                    if (now < lingerDeadline) {
+                        await(lingerDeadline - now);
+                        continue;
+                    }
+                }
+                lingerDeadline = 0;
+                // 4. 带宽预算：令牌为负 (上一批透支) 时等待回补，期间可被报警唤醒
+                long budgetWaitMs = bandwidthWaitMs();
+                if (budgetWaitMs > 0) {
+                    await(budgetWaitMs);
+                    continue;
+                }
+
+                int parallelism = catchUp ? Math.max(1, catchUpParallelism) : 1;
+                List<List<SensorData>> batches = new ArrayList<>(parallelism);
+                for (int i = 0; i < parallelism; i++) {
+                    List<SensorData> batch = new ArrayList<>(currentBatchSize);
+                    lanes.get(Lane.REALTIME).drainTo(batch, currentBatchSize);
+                    if (batch.size() < currentBatchSize) {
+                        lanes.get(Lane.COMPACTED).drainTo(batch, currentBatchSize - batch.size());
+                    }
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    batches.add(batch);
+                }
+                if (batches.size() == 1) {
+                    send(batches.get(0));
+                } else if (!batches.isEmpty()) {
+                    sendParallel(batches);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                System.err.println("UploadLaneScheduler dispatch error: " + e.getMessage());
+            }
+        }
+        System.out.println("UploadLaneScheduler dispatcher stopped.");
+    }
+
+    private void send(List<SensorData> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        handleResult(batch, cloudUploadService.sendBatch(batch));
+    }
+
+    private void sendAlarms(List<AlarmEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        CloudUploadService.BatchResult result = cloudUploadService.sendAlarmBatch(batch);
+        if (result.success()) {
+            sentRows.get(Lane.ALARM).addAndGet(batch.size());
+            for (AlarmEvent event : batch) {
+                if (event.getId() != null) {
+                    queuedAlarmIds.remove(event.getId());
+                }
+            }
+            sentBytes.addAndGet(result.bytes());
+            sentBatches.incrementAndGet();
+            onSuccess(result.rttMs());
+        } else {
+            failedBatches.incrementAndGet();
+            onFailure(System.currentTimeMillis());
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                AlarmEvent event = batch.get(i);
+                if (!alarmLane.offerFirst(event) && event.getId() != null) {
+                    queuedAlarmIds.remove(event.getId());
+                }
+            }
+        }
+    }
+
+    // 追赶模式：多批并行发送，不等待它们完成；结果经 completions 回到分发线程串行处理，自适应状态无需加锁，
+    // 报警在此期间照常发送
+    private void sendParallel(List<List<SensorData>> batches) {
+        for (List<SensorData> batch : batches) {
+            inFlightBatches++;
+            try {
+                CompletableFuture.supplyAsync(() -> cloudUploadService.sendBatch(batch), uploadCatchUpExecutor)
+                        .whenComplete((result, error) -> {
+                            if (error != null) {
+                                System.err.println("Catch-up batch failed: " + error.getMessage());
+                                result = new CloudUploadService.BatchResult(false, 0, 0);
+                            }
+                            completions.add(new Completion(batch, result));
+                            wakeUp();
+                        });
+            } catch (Exception e) {
+                System.err.println("Catch-up batch rejected: " + e.getMessage());
+                completions.add(new Completion(batch, new CloudUploadService.BatchResult(false, 0, 0)));
+            }
+        }
+    }
+
+    private void drainCompletions() {
+        Completion completion;
+        while ((completion = completions.poll()) != null) {
+            inFlightBatches--;
+            handleResult(completion.batch(), completion.result());
+        }
+    }
+
+    private void handleResult(List<SensorData> batch, CloudUploadService.BatchResult result) {
+        long now = System.currentTimeMillis();
+        if (result.success()) {
+            for (SensorData data : batch) {
+                sentRows.get(laneOf(data)).incrementAndGet();
+                if (data.getId() != null) {
+                    queuedIds.remove(data.getId());
+                }
+            }
+            sentBytes.addAndGet(result.bytes());
+            sentBatches.incrementAndGet();
+            consumeTokens(result.bytes());
+            onSuccess(result.rttMs());
+        } else {
+            failedBatches.incrementAndGet();
+            onFailure(now);
+            // 放回各自通道头部，退避后重试；放不下的留在库中等待补货
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                SensorData data = batch.get(i);
+                if (!lanes.get(laneOf(data)).offerFirst(data) && data.getId() != null) {
+                    queuedIds.remove(data.getId());
+                }
+            }
+        }
+    }
+
+    // AIMD：RTT 在目标内时加性增长，超出目标乘性收缩，失败时减半并指数退避
+    private void onSuccess(long rttMs) {
+        ewmaRttMs = ewmaRttMs < 0 ? rttMs : ewmaRttMs * 0.8 + rttMs * 0.2;
+        if (ewmaRttMs <= targetRttMs) {
+            int cap = catchUp ? Math.max(maxBatchSize, catchUpMaxBatchSize) : maxBatchSize;
+            currentBatchSize = Math.min(cap, currentBatchSize + Math.max(1, currentBatchSize / 10));
+        } else {
+            currentBatchSize = Math.max(minBatchSize, currentBatchSize * 3 / 4);
+        }
+        backoffMs = 0;
+        nextAttemptAt = 0;
+        nextAlarmAttemptAt = 0;
+    }
+
+    private void onFailure(long now) {
+        currentBatchSize = Math.max(minBatchSize, currentBatchSize / 2);
+        backoffMs = backoffMs == 0 ? 1000 : Math.min(60_000, backoffMs * 2);
+        nextAttemptAt = now + backoffMs;
+        nextAlarmAttemptAt = now + Math.min(backoffMs, 2000); // 报警重试间隔不超过 2 秒
+    }
+
+    private void refillTokens() {
+        long nowNanos = System.nanoTime();
+        double elapsedSec = (nowNanos - lastRefillNanos) / 1_000_000_000.0;
+        lastRefillNanos = nowNanos;
+        // 最多积攒 2 秒的突发量
+        tokens = Math.min(bandwidthBytesPerSec * 2.0, tokens + elapsedSec * bandwidthBytesPerSec);
+    }
+
+    private long bandwidthWaitMs() {
+        if (bandwidthBytesPerSec <= 0) {
+            return 0;
+        }
+        refillTokens();
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1000.0 / bandwidthBytesPerSec);
+    }
+
+    private void consumeTokens(long bytes) {
+        if (bandwidthBytesPerSec > 0) {
+            refillTokens();
+            tokens -= bytes; // 允许透支，下一批等待回补
+        }
+    }
+
+    /**
+     * 等待新数据或超时。上一次等待之后到来的唤醒不会丢失：直接返回，由分发循环重新检查各通道。
+     */
+    private void await(long millis) throws InterruptedException {
+        synchronized (signal) {
+            if (!signalled) {
+                signal.wait(Math.max(1, millis));
+            }
+            signalled = false;
+        }
+    }
+
+    private void wakeUp() {
+        synchronized (signal) {
+            signalled = true;
+            signal.notifyAll();
+        }
+    }
+
+    /**
+     * 当前通道与自适应状态，用于监控接口。
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        Map<String, Object> laneDepths = new LinkedHashMap<>();
+        Map<String, Object> laneSent = new LinkedHashMap<>();
+        for (Lane lane : Lane.values()) {
+            laneDepths.put(lane.name(), lane == Lane.ALARM ? alarmLane.size() : lanes.get(lane).size());
+            laneSent.put(lane.name(), sentRows.get(lane).get());
+        }
+        status.put("laneDepths", laneDepths);
+        status.put("sentRows", laneSent);
+        status.put("sentBytes", sentBytes.get());
+        status.put("sentBatches", sentBatches.get());
+        status.put("failedBatches", failedBatches.get());
+        status.put("batchSize", currentBatchSize);
+        status.put("ewmaRttMs", Math.round(ewmaRttMs));
+        status.put("backoffMs", backoffMs);
+        status.put("bandwidthBytesPerSec", bandwidthBytesPerSec);
+
+        long currentBacklog = backlog;
+        double rate = drainRowsPerSec;
+        status.put("mode", catchUp ? "CATCH_UP" : "NORMAL");
+        status.put("backlog", currentBacklog);
+        if (catchUp) {
+            status.put("catchUpSince", catchUpSince);
+            status.put("backlogAtCatchUpStart", backlogAtCatchUpStart);
+            long drained = Math.max(0, backlogAtCatchUpStart - currentBacklog);
+            status.put("progressPercent", backlogAtCatchUpStart > 0 ? Math.round(drained * 1000.0 / backlogAtCatchUpStart) / 10.0 : 100.0);
+        }
+        status.put("drainRowsPerSec", Double.isNaN(rate) ? null : Math.round(rate * 10) / 10.0);
+        // 只有积压在净下降时才给出预计完成时间
+        status.put("etaSeconds", !Double.isNaN(rate) && rate > 0 && currentBacklog > 0 ? Math.round(currentBacklog / rate) : null);
+        return status;
+    }
+}
@@ -0,0 +1,37 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * 报警通知渠道：以 JSON POST 报警事件到 Webhook (例如企业微信/钉钉的转发服务或现场的报警网关)。
+ * 非 2xx 响应或连接失败会抛出异常，由 {@link AlarmDispatchBus} 重试。
+ * 本地联调时可指向 /api/alarms/webhook-stub (需开启 alarm.dispatch.webhookStub.enabled)。
+ */
+@Component
+public class WebhookAlarmSink implements AlarmSink {
+
+    public static final String NAME = "webhook";
+
+    private final RestTemplate restTemplate;
+
+    @Value("${alarm.dispatch.sinks.webhook.url:http://localhost:8081/api/alarms/webhook-stub}")
+    private String url;
+
+    public WebhookAlarmSink(@Qualifier("alarmWebhookRestTemplate") RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void deliver(AlarmEvent event) {
+        restTemplate.postForEntity(url, event, Void.class);
+    }
+}
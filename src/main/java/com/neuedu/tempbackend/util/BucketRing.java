@@ -0,0 +1,107 @@
+package com.neuedu.tempbackend.util;
+
+import java.util.Arrays;
+
+/**
+ * 固定桶宽的环形时间窗口 (单个传感器)，采样写入时按桶累加，读取时按时间升序拷出各桶均值。
+ * <p>
+ * 槽位按 桶序号 % 容量 复用，写入新桶时覆盖最旧的槽位，不需要移动数据；
+ * 读写都只涉及基本类型数组，内存与窗口长度成正比，与采样频率无关。
+ * 温度/湿度/压力分别计数，某个量在桶内没有数据时该桶的均值为 NaN。
+ */
+public final class BucketRing {
+
+    /** 一次读取的结果：size 个非空桶，按时间升序。 */
+    public record Window(long[] bucketStartMs, double[] temperature, double[] humidity, double[] pressure, int size) {}
+
+    private final long bucketMs;
+    private final int capacity;
+    private final long[] bucketIndex; // 槽位当前存放的桶序号，-1 表示空
+    private final double[] temperatureSum;
+    private final double[] humiditySum;
+    private final double[] pressureSum;
+    private final int[] temperatureCount;
+    private final int[] humidityCount;
+    private final int[] pressureCount;
+    private long latestBucket = -1;
+
+    /**
+     * @param bucketMs 桶宽 (毫秒)
+     * @param capacity 桶数，即窗口长度 / 桶宽
+     */
+    public BucketRing(long bucketMs, int capacity) {
+        this.bucketMs = bucketMs;
+        this.capacity = Math.max(1, capacity);
+        this.bucketIndex = new long[this.capacity];
+        this.temperatureSum = new double[this.capacity];
+        this.humiditySum = new double[this.capacity];
+        this.pressureSum = new double[this.capacity];
+        this.temperatureCount = new int[this.capacity];
+        this.humidityCount = new int[this.capacity];
+        this.pressureCount = new int[this.capacity];
+        Arrays.fill(bucketIndex, -1);
+    }
+
+    /**
+     * 计入一个采样点；早于窗口的点直接丢弃。各量可为 null。
+     */
+    public synchronized void add(long timeMs, Float temperature, Float humidity, Float pressure) {
+        long bucket = Math.floorDiv(timeMs, bucketMs);
+        if (latestBucket >= 0 && bucket <= latestBucket - capacity) {
+            return;
+        }
+        int slot = (int) Math.floorMod(bucket, (long) capacity);
+        if (bucketIndex[slot] != bucket) {
+            bucketIndex[slot] = bucket;
+            temperatureSum[slot] = humiditySum[slot] = pressureSum[slot] = 0;
+            temperatureCount[slot] = humidityCount[slot] = pressureCount[slot] = 0;
+        }
+        if (temperature != null) {
+            temperatureSum[slot] += temperature;
+            temperatureCount[slot]++;
+        }
+        if (humidity != null) {
+            humiditySum[slot] += humidity;
+            humidityCount[slot]++;
+        }
+        if (pressure != null) {
+            pressureSum[slot] += pressure;
+            pressureCount[slot]++;
+        }
+        latestBucket = Math.max(latestBucket, bucket);
+    }
+
+    /**
+     * 拷出 [fromMs, toMs] 内有数据的桶 (桶起点落在范围内)，按时间升序。
+     */
+    public synchronized Window snapshot(long fromMs, long toMs) {
+        long firstBucket = Math.max(Math.floorDiv(fromMs, bucketMs), Math.floorDiv(toMs, bucketMs) - capacity + 1);
+        long lastBucket = Math.floorDiv(toMs, bucketMs);
+        int maxSize = (int) Math.max(0, Math.min(capacity, lastBucket - firstBucket + 1));
+        long[] starts = new long[maxSize];
+        double[] temperature = new double[maxSize];
+        double[] humidity = new double[maxSize];
+        double[] pressure = new double[maxSize];
+        int size = 0;
+        for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+            int slot = (int) Math.floorMod(bucket, (long) capacity);
+            if (bucketIndex[slot] != bucket) {
+                continue; // 该时段没有采样 (或槽位已被更新的桶覆盖)
+            }
+            starts[size] = bucket * bucketMs;
+            temperature[size] = average(temperatureSum[slot], temperatureCount[slot]);
+            humidity[size] = average(humiditySum[slot], humidityCount[slot]);
+            pressure[size] = average(pressureSum[slot], pressureCount[slot]);
+            size++;
+        }
+        return new Window(starts, temperature, humidity, pressure, size);
+    }
+
+    public synchronized boolean isEmpty() {
+        return latestBucket < 0;
+    }
+
+    private static double average(double sum, int count) {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+}
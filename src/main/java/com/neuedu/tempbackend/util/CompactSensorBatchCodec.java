@@ -0,0 +1,339 @@
+package com.neuedu.tempbackend.util;
+
+import com.neuedu.tempbackend.model.SensorData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 批量上传用的紧凑二进制编码 (application/x-sensor-batch, gzip 压缩)。
+ * <p>
+ * 同一批次内按 (deviceId, sensorId, sensorName, storageLevel) 分组为若干 series，
+ * 元数据每个 series 只写一次；每个 series 内部按列存储：
+ * <pre>
+ * magic "SDB" + version(1)
+ * varint seriesCount
+ * 每个 series:
+ *   str deviceId, str sensorId, str sensorName, str storageLevel
+ *   varint n
+ *   id 列        : 首值 zigzag varint，其余为相邻差值 zigzag varint
+ *   timestamp 列 : UTC epoch 毫秒，首值 + 相邻差值 zigzag varint
+ *   4 个 float 列 (temperature, humidity, pressure, predictedTemperature):
+ *       byte 模式 (0=全空, 1=全有值, 2=按位图) [+ 位图]，有值的按 varint(bits ^ 上一个 bits) 写入
+ *   alarm 位图，随后仅为报警行写 alarmMessage
+ * </pre>
+ * 编码器直接写入传入的输出流 (通常就是 HTTP 请求体)，不会在内存中拼出完整 payload。
+ */
+public final class CompactSensorBatchCodec {
+
+    public static final String MEDIA_TYPE = "application/x-sensor-batch";
+    public static final String CONTENT_ENCODING = "gzip";
+
+    private static final byte[] MAGIC = {'S', 'D', 'B'};
+    private static final int VERSION = 1;
+
+    private static final int COLUMN_ALL_NULL = 0;
+    private static final int COLUMN_ALL_PRESENT = 1;
+    private static final int COLUMN_BITMAP = 2;
+
+    private CompactSensorBatchCodec() {
+    }
+
+    /**
+     * 将一批数据以 gzip 压缩的紧凑格式写入 out。方法结束时会 finish gzip 流，但不会关闭 out。
+     */
+    public static void encode(List<SensorData> batch, OutputStream out) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out, 8192) {
+            {
+                // 列式编码后的数据熵已经很低，最快压缩级别即可拿到绝大部分收益
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+        // 逐字节写 DeflaterOutputStream 每次都会触发 deflate，必须先经过缓冲
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(gzip, 8192));
+        encodeRaw(batch, dos);
+        dos.flush();
+        gzip.finish();
+    }
+
+    /**
+     * 读取 encode 产生的字节流，还原为 SensorData 列表 (用于测试及云端参考实现)。
+     */
+    public static List<SensorData> decode(InputStream in) throws IOException {
+        return decodeRaw(new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 8192), 8192)));
+    }
+
+    static void encodeRaw(List<SensorData> batch, DataOutputStream out) throws IOException {
+        // 按 series 分组 (只保存引用，不复制实体)
+        Map<SeriesKey, List<SensorData>> series = new LinkedHashMap<>();
+        for (SensorData data : batch) {
+            SeriesKey key = new SeriesKey(data.getDeviceId(), data.getSensorId(), data.getSensorName(), data.getStorageLevel());
+            series.computeIfAbsent(key, k -> new ArrayList<>()).add(data);
+        }
+
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        writeVarint(out, series.size());
+
+        for (Map.Entry<SeriesKey, List<SensorData>> entry : series.entrySet()) {
+            SeriesKey key = entry.getKey();
+            List<SensorData> rows = entry.getValue();
+            int n = rows.size();
+
+            writeString(out, key.deviceId());
+            writeString(out, key.sensorId());
+            writeString(out, key.sensorName());
+            writeString(out, key.storageLevel());
+            writeVarint(out, n);
+
+            long prev = 0;
+            for (SensorData row : rows) {
+                long id = row.getId() != null ? row.getId() : -1L;
+                writeVarLong(out, zigzag(id - prev));
+                prev = id;
+            }
+
+            prev = 0;
+            for (SensorData row : rows) {
+                long ts = row.getTimestamp() != null ? row.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+                writeVarLong(out, zigzag(ts - prev));
+                prev = ts;
+            }
+
+            writeFloatColumn(out, rows, 0);
+            writeFloatColumn(out, rows, 1);
+            writeFloatColumn(out, rows, 2);
+            writeFloatColumn(out, rows, 3);
+
+            byte[] alarmBits = new byte[(n + 7) >>> 3];
+            for (int i = 0; i < n; i++) {
+                if (Boolean.TRUE.equals(rows.get(i).getAlarmTriggered())) {
+                    alarmBits[i >>> 3] |= (byte) (1 << (i & 7));
+                }
+            }
+            out.write(alarmBits);
+            for (int i = 0; i < n; i++) {
+                if ((alarmBits[i >>> 3] & (1 << (i & 7))) != 0) {
+                    writeString(out, rows.get(i).getAlarmMessage());
+                }
+            }
+        }
+    }
+
+    static List<SensorData> decodeRaw(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a compact sensor batch (bad magic)");
+            }
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compact sensor batch version: " + version);
+        }
+
+        List<SensorData> result = new ArrayList<>();
+        int seriesCount = readVarint(in);
+        for (int s = 0; s < seriesCount; s++) {
+            String deviceId = readString(in);
+            String sensorId = readString(in);
+            String sensorName = readString(in);
+            String storageLevel = readString(in);
+            int n = readVarint(in);
+
+            SensorData[] rows = new SensorData[n];
+            long prev = 0;
+            for (int i = 0; i < n; i++) {
+                SensorData row = new SensorData();
+                row.setDeviceId(deviceId);
+                row.setSensorId(sensorId);
+                row.setSensorName(sensorName);
+                row.setStorageLevel(storageLevel);
+                prev += unzigzag(readVarLong(in));
+                row.setId(prev == -1L ? null : prev);
+                rows[i] = row;
+            }
+            prev = 0;
+            for (int i = 0; i < n; i++) {
+                prev += unzigzag(readVarLong(in));
+                rows[i].setTimestamp(LocalDateTime.ofEpochSecond(Math.floorDiv(prev, 1000L), (int) Math.floorMod(prev, 1000L) * 1_000_000, ZoneOffset.UTC));
+            }
+
+            readFloatColumn(in, rows, 0);
+            readFloatColumn(in, rows, 1);
+            readFloatColumn(in, rows, 2);
+            readFloatColumn(in, rows, 3);
+
+            byte[] alarmBits = new byte[(n + 7) >>> 3];
+            in.readFully(alarmBits);
+            for (int i = 0; i < n; i++) {
+                boolean alarm = (alarmBits[i >>> 3] & (1 << (i & 7))) != 0;
+                rows[i].setAlarmTriggered(alarm);
+                rows[i].setAlarmMessage(alarm ? readString(in) : "No Alarm");
+            }
+            for (SensorData row : rows) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    // ==================== 列编码 ====================
+
+    private static Float column(SensorData row, int column) {
+        switch (column) {
+            case 0: return row.getTemperature();
+            case 1: return row.getHumidity();
+            case 2: return row.getPressure();
+            default: return row.getPredictedTemperature();
+        }
+    }
+
+    private static void setColumn(SensorData row, int column, Float value) {
+        switch (column) {
+            case 0: row.setTemperature(value); break;
+            case 1: row.setHumidity(value); break;
+            case 2: row.setPressure(value); break;
+            default: row.setPredictedTemperature(value); break;
+        }
+    }
+
+    private static void writeFloatColumn(DataOutputStream out, List<SensorData> rows, int column) throws IOException {
+        int n = rows.size();
+        int present = 0;
+        for (SensorData row : rows) {
+            if (column(row, column) != null) present++;
+        }
+        if (present == 0) {
+            out.writeByte(COLUMN_ALL_NULL);
+            return;
+        }
+        if (present == n) {
+            out.writeByte(COLUMN_ALL_PRESENT);
+        } else {
+            out.writeByte(COLUMN_BITMAP);
+            byte[] bits = new byte[(n + 7) >>> 3];
+            for (int i = 0; i < n; i++) {
+                if (column(rows.get(i), column) != null) {
+                    bits[i >>> 3] |= (byte) (1 << (i & 7));
+                }
+            }
+            out.write(bits);
+        }
+        // 相邻读数的 float 位模式高位基本一致，异或后高位为 0，varint 写出更短
+        int prevBits = 0;
+        for (SensorData row : rows) {
+            Float value = column(row, column);
+            if (value != null) {
+                int bits = Float.floatToIntBits(value);
+                writeVarint(out, bits ^ prevBits);
+                prevBits = bits;
+            }
+        }
+    }
+
+    private static void readFloatColumn(DataInputStream in, SensorData[] rows, int column) throws IOException {
+        int mode = in.readUnsignedByte();
+        if (mode == COLUMN_ALL_NULL) {
+            return;
+        }
+        byte[] bits = null;
+        if (mode == COLUMN_BITMAP) {
+            bits = new byte[(rows.length + 7) >>> 3];
+            in.readFully(bits);
+        } else if (mode != COLUMN_ALL_PRESENT) {
+            throw new IOException("Unknown float column mode: " + mode);
+        }
+        int prevBits = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (bits == null || (bits[i >>> 3] & (1 << (i & 7))) != 0) {
+                prevBits ^= readVarint(in);
+                setColumn(rows[i], column, Float.intBitsToFloat(prevBits));
+            }
+        }
+    }
+
+    // ==================== 基础类型 ====================
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    // 字符串：varint(长度 + 1)，0 表示 null
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = readVarint(in);
+        if (len == 0) return null;
+        byte[] bytes = new byte[len - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record SeriesKey(String deviceId, String sensorId, String sensorName, String storageLevel) {
+        SeriesKey {
+            Objects.requireNonNull(sensorId, "sensorId");
+        }
+    }
+}
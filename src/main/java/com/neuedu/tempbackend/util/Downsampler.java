@@ -0,0 +1,250 @@
+package com.neuedu.tempbackend.util;
+
+import java.util.Arrays;
+
+/**
+ * 图表用降采样算法，按时间升序逐点输入，结果通过 PointSink 逐点输出。
+ * <p>
+ * 两种算法都只按时间等宽分桶，不需要预先知道总点数，也不保存全部输入：
+ * <ul>
+ *   <li>LTTB (Largest-Triangle-Three-Buckets)：每桶保留与"上一个选中点"和"下一桶均值"围成三角形面积最大的点，
+ *       只需缓存当前桶和下一桶 (一桶前瞻)；首尾两点总是保留。</li>
+ *   <li>MIN_MAX：每桶保留最小值和最大值两个点 (按时间顺序输出)，峰值不会被抹平。</li>
+ * </ul>
+ * 时间统一用 long 毫秒，桶内数据存放在可复用的基本类型数组中。
+ */
+public final class Downsampler {
+
+    @FunctionalInterface
+    public interface PointSink {
+        void accept(long timeMs, double value);
+    }
+
+    /** 逐点输入、结束时 finish() 输出剩余点。 */
+    public interface Accumulator {
+        void add(long timeMs, double value);
+
+        void finish();
+    }
+
+    private Downsampler() {
+    }
+
+    /**
+     * @param startMs   时间范围起点 (用于分桶)
+     * @param endMs     时间范围终点
+     * @param maxPoints 最多输出的点数 (>= 3)
+     */
+    public static Accumulator lttb(long startMs, long endMs, int maxPoints, PointSink sink) {
+        return new Lttb(startMs, endMs, Math.max(3, maxPoints), sink);
+    }
+
+    /**
+     * @param maxPoints 最多输出的点数，每桶最多 2 个点
+     */
+    public static Accumulator minMax(long startMs, long endMs, int maxPoints, PointSink sink) {
+        return new MinMax(startMs, endMs, Math.max(2, maxPoints), sink);
+    }
+
+    private static long bucketWidth(long startMs, long endMs, int buckets) {
+        long span = Math.max(1L, endMs - startMs);
+        return Math.max(1L, (span + buckets - 1) / buckets);
+    }
+
+    // ==================== LTTB ====================
+
+    private static final class Bucket {
+        long index;
+        long[] times = new long[64];
+        double[] values = new double[64];
+        int size;
+        double sumTime; // 相对 startMs 的时间和，避免大数相加丢精度
+        double sumValue;
+
+        Bucket reset(long index) {
+            this.index = index;
+            this.size = 0;
+            this.sumTime = 0;
+            this.sumValue = 0;
+            return this;
+        }
+
+        void add(long timeMs, double value, long originMs) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = timeMs;
+            values[size] = value;
+            size++;
+            sumTime += timeMs - originMs;
+            sumValue += value;
+        }
+    }
+
+    private static final class Lttb implements Accumulator {
+        private final long startMs;
+        private final long width;
+        private final long bucketCount;
+        private final PointSink sink;
+
+        private Bucket current;
+        private Bucket next;
+        private Bucket spare = new Bucket();
+
+        private boolean started;
+        private long selectedTime; // 上一个选中点 A
+        private double selectedValue;
+
+        // 延迟一个点进入分桶：结束时它就是必须保留的最后一个点
+        private boolean hasHeld;
+        private long heldTime;
+        private double heldValue;
+
+        Lttb(long startMs, long endMs, int maxPoints, PointSink sink) {
+            this.startMs = startMs;
+            this.bucketCount = maxPoints - 2;
+            this.width = bucketWidth(startMs, endMs, maxPoints - 2);
+            this.sink = sink;
+        }
+
+        @Override
+        public void add(long timeMs, double value) {
+            if (!started) {
+                started = true;
+                selectedTime = timeMs;
+                selectedValue = value;
+                sink.accept(timeMs, value);
+                return;
+            }
+            if (hasHeld) {
+                bucketize(heldTime, heldValue);
+            }
+            hasHeld = true;
+            heldTime = timeMs;
+            heldValue = value;
+        }
+
+        private void bucketize(long timeMs, double value) {
+            long index = Math.min(bucketCount - 1, Math.max(0L, (timeMs - startMs) / width));
+            if (current == null) {
+                current = take().reset(index);
+            } else if (index != current.index && (next == null || index != next.index)) {
+                if (next == null) {
+                    next = take().reset(index);
+                } else {
+                    // 出现了更后面的桶：当前桶的右邻 (next) 已经完整，可以选点
+                    select(current, next.sumTime / next.size + startMs, next.sumValue / next.size);
+                    spare = current;
+                    current = next;
+                    next = take().reset(index);
+                }
+            }
+            Bucket target = index == current.index ? current : next;
+            target.add(timeMs, value, startMs);
+        }
+
+        private Bucket take() {
+            Bucket bucket = spare != null ? spare : new Bucket();
+            spare = null;
+            return bucket;
+        }
+
+        private void select(Bucket bucket, double nextTime, double nextValue) {
+            double ax = selectedTime - startMs;
+            double ay = selectedValue;
+            double cx = nextTime - startMs;
+            double maxArea = -1;
+            int chosen = 0;
+            for (int i = 0; i < bucket.size; i++) {
+                double bx = bucket.times[i] - startMs;
+                double area = Math.abs((ax - cx) * (bucket.values[i] - ay) - (ax - bx) * (nextValue - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            selectedTime = bucket.times[chosen];
+            selectedValue = bucket.values[chosen];
+            sink.accept(selectedTime, selectedValue);
+        }
+
+        @Override
+        public void finish() {
+            if (current != null) {
+                if (next != null) {
+                    select(current, next.sumTime / next.size + startMs, next.sumValue / next.size);
+                    select(next, heldTime, heldValue);
+                } else {
+                    select(current, heldTime, heldValue);
+                }
+            }
+            if (hasHeld) {
+                sink.accept(heldTime, heldValue);
+            }
+        }
+    }
+
+    // ==================== MIN / MAX ====================
+
+    private static final class MinMax implements Accumulator {
+        private final long startMs;
+        private final long width;
+        private final long bucketCount;
+        private final PointSink sink;
+
+        private long index = -1;
+        private long minTime;
+        private double minValue;
+        private long maxTime;
+        private double maxValue;
+
+        MinMax(long startMs, long endMs, int maxPoints, PointSink sink) {
+            this.startMs = startMs;
+            this.bucketCount = Math.max(1, maxPoints / 2);
+            this.width = bucketWidth(startMs, endMs, (int) bucketCount);
+            this.sink = sink;
+        }
+
+        @Override
+        public void add(long timeMs, double value) {
+            long bucket = Math.min(bucketCount - 1, Math.max(0L, (timeMs - startMs) / width));
+            if (bucket != index) {
+                flush();
+                index = bucket;
+                minTime = maxTime = timeMs;
+                minValue = maxValue = value;
+                return;
+            }
+            if (value < minValue) {
+                minValue = value;
+                minTime = timeMs;
+            }
+            if (value > maxValue) {
+                maxValue = value;
+                maxTime = timeMs;
+            }
+        }
+
+        private void flush() {
+            if (index < 0) {
+                return;
+            }
+            if (minTime == maxTime) {
+                sink.accept(minTime, minValue);
+            } else if (minTime < maxTime) {
+                sink.accept(minTime, minValue);
+                sink.accept(maxTime, maxValue);
+            } else {
+                sink.accept(maxTime, maxValue);
+                sink.accept(minTime, minValue);
+            }
+        }
+
+        @Override
+        public void finish() {
+            flush();
+            index = -1;
+        }
+    }
+}
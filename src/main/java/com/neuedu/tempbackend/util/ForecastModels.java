@@ -0,0 +1,344 @@
+package com.neuedu.tempbackend.util;
+
+import java.util.Arrays;
+
+/**
+ * 嵌入式单变量预测模型，按时间顺序逐点输入 (等间隔采样)。
+ * <p>
+ * 所有模型的状态都是固定大小的基本类型数组，update() 的开销与已输入的样本数无关：
+ * <ul>
+ *   <li>EWMA：指数加权平均，预测值为当前水平。</li>
+ *   <li>HOLT_WINTERS：加法 Holt-Winters (水平 + 趋势 + 季节)；seasonLength &lt;= 1 时退化为 Holt 线性趋势。</li>
+ *   <li>ARIMA(p,d,q)：d 阶差分后用带遗忘因子的递推最小二乘 (RLS) 在线估计 AR/MA 系数，
+ *       MA 部分用一步预测残差近似 (Hannan-Rissanen 思路)，每点 O((1+p+q)^2)。
+ *       也可以用离线训练好的系数初始化并冻结 (adaptive=false)，此时每点只做差分和残差更新。</li>
+ * </ul>
+ * 模型不是线程安全的，调用方按传感器加锁。
+ */
+public final class ForecastModels {
+
+    public static final String EWMA = "EWMA";
+    public static final String HOLT_WINTERS = "HOLT_WINTERS";
+    public static final String ARIMA = "ARIMA";
+
+    public interface Model {
+        void update(double value);
+
+        /** 预热完成、可以给出预测。 */
+        boolean isReady();
+
+        /** 下一个采样点的预测值。 */
+        double forecast();
+
+        /** 未来 1..horizon 个采样点的预测值，写入 out[0..horizon-1]。 */
+        void forecast(double[] out, int horizon);
+    }
+
+    private ForecastModels() {
+    }
+
+    // ==================== EWMA ====================
+
+    public static final class Ewma implements Model {
+        private final double alpha;
+        private double level;
+        private boolean initialized;
+
+        public Ewma(double alpha) {
+            this.alpha = alpha;
+        }
+
+        @Override
+        public void update(double value) {
+            if (!initialized) {
+                level = value;
+                initialized = true;
+            } else {
+                level += alpha * (value - level);
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return initialized;
+        }
+
+        @Override
+        public double forecast() {
+            return level;
+        }
+
+        @Override
+        public void forecast(double[] out, int horizon) {
+            for (int i = 0; i < horizon; i++) {
+                out[i] = level;
+            }
+        }
+    }
+
+    // ==================== Holt-Winters (加法) ====================
+
+    public static final class HoltWinters implements Model {
+        private final double alpha;
+        private final double beta;
+        private final double gamma;
+        private final int seasonLength; // 0 表示无季节项
+        private final double[] seasonal;
+        private double level;
+        private double trend;
+        private int position; // 下一个样本对应的季节下标
+        private long count;
+
+        public HoltWinters(double alpha, double beta, double gamma, int seasonLength) {
+            this.alpha = alpha;
+            this.beta = beta;
+            this.gamma = gamma;
+            this.seasonLength = seasonLength > 1 ? seasonLength : 0;
+            this.seasonal = new double[Math.max(1, this.seasonLength)];
+        }
+
+        @Override
+        public void update(double value) {
+            count++;
+            if (seasonLength == 0) {
+                updateNonSeasonal(value);
+                return;
+            }
+            if (count <= seasonLength) {
+                // 第一个周期：先记下原始值，周期结束时用周期均值初始化水平和季节项
+                seasonal[(int) (count - 1)] = value;
+                if (count == seasonLength) {
+                    double sum = 0;
+                    for (double v : seasonal) {
+                        sum += v;
+                    }
+                    level = sum / seasonLength;
+                    trend = 0;
+                    for (int i = 0; i < seasonLength; i++) {
+                        seasonal[i] -= level;
+                    }
+                }
+                return;
+            }
+            double season = seasonal[position];
+            double previousLevel = level;
+            level = alpha * (value - season) + (1 - alpha) * (level + trend);
+            trend = beta * (level - previousLevel) + (1 - beta) * trend;
+            seasonal[position] = gamma * (value - level) + (1 - gamma) * season;
+            position = (position + 1) % seasonLength;
+        }
+
+        private void updateNonSeasonal(double value) {
+            if (count == 1) {
+                level = value;
+                trend = 0;
+                return;
+            }
+            if (count == 2) {
+                trend = value - level;
+                level = value;
+                return;
+            }
+            double previousLevel = level;
+            level = alpha * value + (1 - alpha) * (level + trend);
+            trend = beta * (level - previousLevel) + (1 - beta) * trend;
+        }
+
+        @Override
+        public boolean isReady() {
+            return seasonLength == 0 ? count >= 2 : count >= seasonLength;
+        }
+
+        @Override
+        public double forecast() {
+            return forecastAt(1);
+        }
+
+        @Override
+        public void forecast(double[] out, int horizon) {
+            for (int i = 0; i < horizon; i++) {
+                out[i] = forecastAt(i + 1);
+            }
+        }
+
+        private double forecastAt(int steps) {
+            double season = seasonLength == 0 ? 0 : seasonal[(position + steps - 1) % seasonLength];
+            return level + steps * trend + season;
+        }
+    }
+
+    // ==================== ARIMA(p,d,q)，RLS 在线估计 ====================
+
+    public static final class Arima implements Model {
+        private final int p;
+        private final int d;
+        private final int q;
+        private final int n; // 回归量维数：截距 + p 个 AR 滞后 + q 个残差滞后
+        private final double lambda; // 遗忘因子，越小越快适应新工况
+        private final boolean adaptive; // false 时系数固定，不做 RLS 更新
+        private final int warmup;
+
+        private final double[] lastLevels; // lastLevels[k]：第 k 阶差分序列的最新值 (k=0 为原始值)
+        private final double[] pastW; // 差分后序列的最近 p 个值，pastW[0] 最新
+        private final double[] pastE; // 最近 q 个一步预测残差，pastE[0] 最新
+        private final double[] theta; // 系数 [c, phi_1..phi_p, theta_1..theta_q]
+        private final double[][] cov; // RLS 协方差矩阵 P
+        private final double[] z; // 复用的回归量
+        private final double[] pz; // 复用的 P·z
+        private long count;
+
+        public Arima(int p, int d, int q, double lambda) {
+            this(p, d, q, lambda, null, true);
+        }
+
+        /**
+         * @param initialTheta 初始系数 [c, phi_1..phi_p, theta_1..theta_q]，null 表示从 0 开始估计
+         * @param adaptive     是否继续用 RLS 在线更新系数
+         */
+        public Arima(int p, int d, int q, double lambda, double[] initialTheta, boolean adaptive) {
+            this.p = Math.max(0, p);
+            this.d = Math.max(0, d);
+            this.q = Math.max(0, q);
+            this.n = 1 + this.p + this.q;
+            this.lambda = lambda;
+            this.adaptive = adaptive || initialTheta == null;
+            // 系数已知时只需填满滞后项；在线估计还要留出收敛的样本
+            this.warmup = this.d + Math.max(this.p, this.q) + (this.adaptive ? 2 * n : 0);
+            this.lastLevels = new double[Math.max(1, this.d)];
+            this.pastW = new double[Math.max(1, this.p)];
+            this.pastE = new double[Math.max(1, this.q)];
+            this.theta = new double[n];
+            if (initialTheta != null) {
+                if (initialTheta.length != n) {
+                    throw new IllegalArgumentException("ARIMA(" + p + "," + d + "," + q + ") needs " + n + " coefficients, got " + initialTheta.length);
+                }
+                System.arraycopy(initialTheta, 0, theta, 0, n);
+            }
+            this.cov = new double[n][n];
+            this.z = new double[n];
+            this.pz = new double[n];
+            resetCovariance();
+        }
+
+        private void resetCovariance() {
+            for (int i = 0; i < n; i++) {
+                Arrays.fill(cov[i], 0);
+                cov[i][i] = 1e4;
+            }
+        }
+
+        @Override
+        public void update(double value) {
+            count++;
+            // 逐阶差分；前 d 个样本只用来建立差分基准
+            double w = value;
+            for (int k = 0; k < d; k++) {
+                double diff = w - lastLevels[k];
+                lastLevels[k] = w;
+                w = diff;
+                if (count <= k + 1) {
+                    return;
+                }
+            }
+
+            fillRegressor();
+            double predicted = dot(theta, z);
+            double error = w - predicted;
+            if (!adaptive) {
+                shift(pastW, w, p);
+                shift(pastE, error, q);
+                return;
+            }
+
+            // RLS：k = P z / (lambda + z' P z)；theta += k e；P = (P - k z' P) / lambda
+            double denominator = lambda;
+            for (int i = 0; i < n; i++) {
+                double s = 0;
+                for (int j = 0; j < n; j++) {
+                    s += cov[i][j] * z[j];
+                }
+                pz[i] = s;
+                denominator += z[i] * s;
+            }
+            for (int i = 0; i < n; i++) {
+                theta[i] += pz[i] / denominator * error;
+            }
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    cov[i][j] = (cov[i][j] - pz[i] * pz[j] / denominator) / lambda;
+                }
+            }
+            if (!Double.isFinite(cov[0][0]) || cov[0][0] > 1e8) {
+                resetCovariance(); // 长时间常值输入时 P 会随 1/lambda 发散，重置后继续估计
+            }
+
+            shift(pastW, w, p);
+            shift(pastE, error, q);
+        }
+
+        private void fillRegressor() {
+            z[0] = 1;
+            for (int i = 0; i < p; i++) {
+                z[1 + i] = pastW[i];
+            }
+            for (int j = 0; j < q; j++) {
+                z[1 + p + j] = pastE[j];
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return count >= warmup;
+        }
+
+        @Override
+        public double forecast() {
+            double[] out = new double[1];
+            forecast(out, 1);
+            return out[0];
+        }
+
+        @Override
+        public void forecast(double[] out, int horizon) {
+            double[] w = new double[p + horizon]; // w[0..p-1] 为历史 (最旧在前)，其后为预测
+            for (int i = 0; i < p; i++) {
+                w[p - 1 - i] = pastW[i];
+            }
+            double[] levels = lastLevels.clone();
+            for (int step = 0; step < horizon; step++) {
+                double next = theta[0];
+                for (int i = 0; i < p; i++) {
+                    next += theta[1 + i] * w[p + step - 1 - i];
+                }
+                // 未来残差期望为 0，只有已知的历史残差参与
+                for (int j = step; j < q; j++) {
+                    next += theta[1 + p + j] * pastE[j - step];
+                }
+                w[p + step] = next;
+                // 逐阶积分还原到原始尺度
+                double v = next;
+                for (int k = d - 1; k >= 0; k--) {
+                    v = levels[k] + v;
+                    levels[k] = v;
+                }
+                out[step] = v;
+            }
+        }
+
+        private static void shift(double[] ring, double value, int size) {
+            if (size == 0) {
+                return;
+            }
+            System.arraycopy(ring, 0, ring, 1, size - 1);
+            ring[0] = value;
+        }
+
+        private static double dot(double[] a, double[] b) {
+            double s = 0;
+            for (int i = 0; i < a.length; i++) {
+                s += a[i] * b[i];
+            }
+            return s;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.neuedu.tempbackend.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * 历史/报警/范围查询的分页游标：一页最后一行的 (timestamp, id)。
+ * <p>
+ * 对客户端是不透明的 base64url 字符串；下一页用它在 (…, timestamp) 复合索引上定位后 LIMIT，
+ * 翻多深都只读一页，新数据写入也不会让已翻过的位置偏移。
+ * 时间戳按秒 + 纳秒编码，避免毫秒截断导致同一毫秒内的行被跳过或重复。
+ */
+public record KeysetCursor(LocalDateTime timestamp, long id) {
+
+    /** 响应头：下一页的游标，没有更多数据时不返回。 */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String VERSION = "v1";
+
+    public String encode() {
+        String raw = VERSION + ":" + timestamp.toEpochSecond(ZoneOffset.UTC) + ":" + timestamp.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param text 客户端传回的游标，null 或空串表示第一页
+     * @return null 表示第一页
+     * @throws IllegalArgumentException 游标格式不合法
+     */
+    public static KeysetCursor decode(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(text.trim()), StandardCharsets.US_ASCII);
+            String[] parts = raw.split(":");
+            if (parts.length != 4 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            LocalDateTime timestamp = LocalDateTime.ofEpochSecond(Long.parseLong(parts[1]), Integer.parseInt(parts[2]), ZoneOffset.UTC);
+            return new KeysetCursor(timestamp, Long.parseLong(parts[3]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.neuedu.tempbackend.util;
+
+import java.util.Arrays;
+
+/**
+ * 最近 N 个预测残差 (实际值 - 预测值) 的滚动统计：MAE、RMSE、偏差 (均值) 和残差直方图。
+ * <p>
+ * 残差存在环形数组里，加入新值时减去被挤出的旧值，每次 O(1)；
+ * 每写满一圈按数组重新求和一次，消除浮点累加误差。直方图两端各有一个溢出桶。
+ * 不是线程安全的，调用方加锁。
+ */
+public final class RollingErrorWindow {
+
+    private final double[] residuals;
+    private final double binWidth;
+    private final int bins; // 不含两端溢出桶
+    private final long[] histogram;
+    private int size;
+    private int next;
+    private int sinceRecompute;
+    private double sum;
+    private double sumAbs;
+    private double sumSq;
+
+    /**
+     * @param capacity 窗口长度 (样本数)
+     * @param binWidth 直方图桶宽
+     * @param bins     直方图桶数，覆盖 [-bins/2*binWidth, bins/2*binWidth)
+     */
+    public RollingErrorWindow(int capacity, double binWidth, int bins) {
+        this.residuals = new double[Math.max(1, capacity)];
+        this.binWidth = binWidth;
+        this.bins = Math.max(2, bins);
+        this.histogram = new long[this.bins + 2];
+    }
+
+    public void add(double residual) {
+        if (size == residuals.length) {
+            double old = residuals[next];
+            sum -= old;
+            sumAbs -= Math.abs(old);
+            sumSq -= old * old;
+            histogram[binOf(old)]--;
+        } else {
+            size++;
+        }
+        residuals[next] = residual;
+        sum += residual;
+        sumAbs += Math.abs(residual);
+        sumSq += residual * residual;
+        histogram[binOf(residual)]++;
+        next = (next + 1) % residuals.length;
+        if (++sinceRecompute >= residuals.length) {
+            recompute();
+        }
+    }
+
+    public void clear() {
+        size = next = sinceRecompute = 0;
+        sum = sumAbs = sumSq = 0;
+        Arrays.fill(histogram, 0);
+    }
+
+    public int count() {
+        return size;
+    }
+
+    public int capacity() {
+        return residuals.length;
+    }
+
+    public double mae() {
+        return size > 0 ? sumAbs / size : Double.NaN;
+    }
+
+    public double rmse() {
+        return size > 0 ? Math.sqrt(Math.max(0, sumSq) / size) : Double.NaN;
+    }
+
+    /** 残差均值：正数表示模型系统性偏低 (实际值高于预测)。 */
+    public double bias() {
+        return size > 0 ? sum / size : Double.NaN;
+    }
+
+    /** 直方图计数 (拷贝)：[0] 为下溢桶，[bins+1] 为上溢桶。 */
+    public long[] histogram() {
+        return histogram.clone();
+    }
+
+    /** 直方图内部桶的下边界，长度 bins + 1。 */
+    public double[] histogramEdges() {
+        double[] edges = new double[bins + 1];
+        double start = -bins / 2.0 * binWidth;
+        for (int i = 0; i <= bins; i++) {
+            edges[i] = start + i * binWidth;
+        }
+        return edges;
+    }
+
+    private int binOf(double residual) {
+        double position = residual / binWidth + bins / 2.0;
+        if (position < 0) {
+            return 0;
+        }
+        if (position >= bins) {
+            return bins + 1;
+        }
+        return 1 + (int) position;
+    }
+
+    private void recompute() {
+        sum = sumAbs = sumSq = 0;
+        for (int i = 0; i < size; i++) {
+            double r = residuals[i];
+            sum += r;
+            sumAbs += Math.abs(r);
+            sumSq += r * r;
+        }
+        sinceRecompute = 0;
+    }
+}
@@ -0,0 +1,116 @@
+package com.neuedu.tempbackend.util;
+
+/**
+ * 按时间滑动的样本窗口：保留最近 windowMs 内的 (时间, 值)，维护窗口内的和，
+ * 给出均值和首尾之间的变化率。样本存在环形数组里，加入样本时从队头淘汰过期样本，每个样本摊还 O(1)。
+ * 数组满而队头样本仍在窗口内时按倍数扩容，窗口长度与采样频率不必预先配置；
+ * 只有达到 maxCapacity 后才丢弃最旧的样本。
+ * 不是线程安全的，调用方加锁。
+ */
+public final class TimeWindowSeries {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int maxCapacity;
+    private long[] times;
+    private float[] values;
+    private int head; // 最旧样本
+    private int size;
+    private double sum;
+
+    /**
+     * @param maxCapacity 最多保留的样本数，防止窗口配置过长或采样过密时无限增长
+     */
+    public TimeWindowSeries(int maxCapacity) {
+        this.maxCapacity = Math.max(2, maxCapacity);
+        this.times = new long[Math.min(INITIAL_CAPACITY, this.maxCapacity)];
+        this.values = new float[times.length];
+    }
+
+    /** 加入一个样本 (时间须不早于上一个样本)，并淘汰早于 timeMs - windowMs 的样本。 */
+    public void add(long timeMs, float value, long windowMs) {
+        expire(timeMs, windowMs);
+        if (size == times.length) {
+            if (times.length < maxCapacity) {
+                grow();
+            } else {
+                evictHead();
+            }
+        }
+        int tail = (head + size) % times.length;
+        times[tail] = timeMs;
+        values[tail] = value;
+        size++;
+        sum += value;
+        expire(timeMs, windowMs);
+    }
+
+    /** 淘汰早于 nowMs - windowMs 的样本 (至少保留最新一个)。 */
+    public void expire(long nowMs, long windowMs) {
+        while (size > 1 && times[head] < nowMs - windowMs) {
+            evictHead();
+        }
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min(maxCapacity, times.length * 2L);
+        long[] newTimes = new long[capacity];
+        float[] newValues = new float[capacity];
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % times.length;
+            newTimes[i] = times[index];
+            newValues[i] = values[index];
+        }
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+
+    /** 当前数组容量 (随窗口内样本数增长)。 */
+    public int capacity() {
+        return times.length;
+    }
+
+    private void evictHead() {
+        sum -= values[head];
+        head = (head + 1) % times.length;
+        size--;
+        if (size == 0) {
+            sum = 0; // 清空时顺便消除累加误差
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double mean() {
+        return size > 0 ? sum / size : Double.NaN;
+    }
+
+    public long oldestTime() {
+        return size > 0 ? times[head] : Long.MIN_VALUE;
+    }
+
+    public long latestTime() {
+        return size > 0 ? times[(head + size - 1) % times.length] : Long.MIN_VALUE;
+    }
+
+    public float latest() {
+        return size > 0 ? values[(head + size - 1) % times.length] : Float.NaN;
+    }
+
+    /**
+     * 窗口首尾样本之间的变化率 (每分钟)；窗口跨度不足 minSpanMs 时返回 NaN。
+     */
+    public float ratePerMinute(long minSpanMs) {
+        if (size < 2) {
+            return Float.NaN;
+        }
+        long spanMs = latestTime() - times[head];
+        if (spanMs <= 0 || spanMs < minSpanMs) {
+            return Float.NaN;
+        }
+        return (latest() - values[head]) * 60_000f / spanMs;
+    }
+}
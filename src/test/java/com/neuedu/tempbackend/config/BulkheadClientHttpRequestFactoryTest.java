@@ -0,0 +1,46 @@
+package com.neuedu.tempbackend.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkheadClientHttpRequestFactoryTest {
+
+    private static final URI URL = URI.create("http://cloud.example/api");
+
+    private final ClientHttpRequestFactory delegate = (uri, method) -> {
+        MockClientHttpRequest request = new MockClientHttpRequest(method, uri);
+        request.setResponse(new MockClientHttpResponse("body".getBytes(), HttpStatus.OK));
+        return request;
+    };
+
+    @Test
+    void permitIsHeldUntilResponseIsClosed() throws IOException {
+        HttpEndpointMetrics.EndpointStats stats = new HttpEndpointMetrics.EndpointStats();
+        BulkheadClientHttpRequestFactory factory = new BulkheadClientHttpRequestFactory("upload", delegate, 1, 0, stats);
+
+        ClientHttpResponse first = factory.createRequest(URL, HttpMethod.POST).execute();
+        assertEquals(1, stats.snapshot().get("inFlight"));
+        // 响应体未读完前连接仍被占用，第二个请求被舱壁拒绝
+        assertThrows(IOException.class, () -> factory.createRequest(URL, HttpMethod.POST).execute());
+        assertEquals(1L, stats.snapshot().get("rejected"));
+
+        first.close();
+        first.close(); // 重复关闭不会多释放许可
+        assertEquals(0, stats.snapshot().get("inFlight"));
+        assertEquals(1L, stats.snapshot().get("calls"));
+
+        factory.createRequest(URL, HttpMethod.POST).execute().close();
+        assertEquals(2L, stats.snapshot().get("calls"));
+    }
+}
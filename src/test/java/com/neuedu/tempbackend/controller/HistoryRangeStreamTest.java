@@ -0,0 +1,89 @@
+package com.neuedu.tempbackend.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.neuedu.tempbackend.config.HttpEndpointMetrics;
+import com.neuedu.tempbackend.config.ModbusRtuManager;
+import com.neuedu.tempbackend.service.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class HistoryRangeStreamTest {
+
+    private final HistoryStreamService historyStreamService = mock(HistoryStreamService.class);
+    private final ThreadPoolTaskExecutor historyStreamExecutor = new ThreadPoolTaskExecutor();
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        historyStreamExecutor.setCorePoolSize(1);
+        historyStreamExecutor.setThreadNamePrefix("HistoryStream-");
+        historyStreamExecutor.initialize();
+        TemperatureController controller = new TemperatureController(mock(TemperaturePollingService.class),
+                mock(ModbusRtuManager.class), mock(UploadLaneScheduler.class), mock(HttpEndpointMetrics.class),
+                historyStreamService, mock(DownsamplingService.class), mock(AggregationService.class),
+                mock(QueryCache.class), mock(AlarmEventService.class), mock(PredictionService.class),
+                mock(TrendPredictionService.class), mock(ForecastAccuracyTracker.class), mock(ThresholdAlarmTracker.class),
+                mock(SensorGroupEventProcessor.class), mock(AlarmDispatchBus.class), mock(ConfigSyncService.class),
+                mock(SensorTopologyReconciler.class), historyStreamExecutor, new ObjectMapper());
+        ReflectionTestUtils.setField(controller, "historyStreamTimeoutMs", 5000L);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        historyStreamExecutor.shutdown();
+    }
+
+    @Test
+    void rangeIsStreamedOnHistoryStreamExecutor() throws Exception {
+        AtomicReference<String> writerThread = new AtomicReference<>();
+        doAnswer(invocation -> {
+            writerThread.set(Thread.currentThread().getName());
+            OutputStream out = invocation.getArgument(3);
+            out.write("[]".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(historyStreamService).streamRange(eq("s1"), any(), any(), any(), anyBoolean());
+
+        MvcResult started = mockMvc.perform(get("/api/sensors/s1/history/range")
+                        .param("start", "2024-01-01T00:00:00").param("end", "2024-01-02T00:00:00"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[]"));
+        assertTrue(writerThread.get().startsWith("HistoryStream-"), writerThread.get());
+    }
+
+    @Test
+    void invalidCursorIsRejectedWithoutStartingAsync() throws Exception {
+        mockMvc.perform(get("/api/sensors/s1/history/range")
+                        .param("start", "2024-01-01T00:00:00").param("end", "2024-01-02T00:00:00")
+                        .param("cursor", "not-a-cursor"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").exists());
+    }
+}
@@ -0,0 +1,67 @@
+package com.neuedu.tempbackend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AggregationServiceTest {
+
+    @Test
+    void parseBucketAcceptsShorthandAndIso() {
+        assertEquals(Duration.ofSeconds(30), AggregationService.parseBucket("30s"));
+        assertEquals(Duration.ofMinutes(15), AggregationService.parseBucket(" 15M "));
+        assertEquals(Duration.ofHours(1), AggregationService.parseBucket("1h"));
+        assertEquals(Duration.ofDays(1), AggregationService.parseBucket("1d"));
+        assertEquals(Duration.ofMinutes(15), AggregationService.parseBucket("PT15M"));
+    }
+
+    @Test
+    void parseBucketRejectsGarbage() {
+        for (String text : List.of("", "s", "15x", "abc", "PTX")) {
+            assertThrows(IllegalArgumentException.class, () -> AggregationService.parseBucket(text), text);
+        }
+    }
+
+    @Test
+    void accumulatorEmitsOneBucketPerWindow() {
+        AggregationService.BucketAccumulator acc =
+                new AggregationService.BucketAccumulator(60_000, List.of("avg", "min", "max", "count"), false);
+        // 第一分钟 1..4，第二分钟为空，第三分钟 10
+        for (int i = 1; i <= 4; i++) {
+            acc.add(i * 10_000L, i);
+        }
+        acc.add(125_000, 10);
+        acc.finish();
+
+        assertEquals(2, acc.buckets.size());
+        AggregationService.Bucket first = acc.buckets.get(0);
+        assertEquals(4L, first.count());
+        assertEquals(2.5, first.avg());
+        assertEquals(1.0, first.min());
+        assertEquals(4.0, first.max());
+        assertNull(first.p95());
+        assertEquals(10.0, acc.buckets.get(1).avg());
+    }
+
+    @Test
+    void accumulatorComputesNearestRankP95AndOmitsUnrequestedMetrics() {
+        AggregationService.BucketAccumulator acc = new AggregationService.BucketAccumulator(60_000, List.of("p95"), true);
+        for (int i = 100; i >= 1; i--) { // 乱序值，超过初始数组容量时扩容
+            acc.add(1000, i);
+        }
+        for (int i = 1; i <= 300; i++) {
+            acc.add(60_000 + i, i);
+        }
+        acc.finish();
+
+        assertEquals(95.0, acc.buckets.get(0).p95());
+        assertEquals(285.0, acc.buckets.get(1).p95());
+        assertNull(acc.buckets.get(0).avg());
+        assertNull(acc.buckets.get(0).count());
+    }
+}
@@ -0,0 +1,182 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.AlarmDispatchProperties;
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AlarmDispatchBusTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+    private AlarmDispatchBus bus;
+
+    /** 记录投递的事件和调用时间，可按需失败或阻塞。 */
+    private static class RecordingSink implements AlarmSink {
+        final String name;
+        final List<String> delivered = new CopyOnWriteArrayList<>();
+        final List<Long> callMs = new CopyOnWriteArrayList<>();
+        volatile int failuresLeft;
+        volatile CountDownLatch blockUntil;
+        final CountDownLatch started = new CountDownLatch(1);
+
+        RecordingSink(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public void deliver(AlarmEvent event) throws Exception {
+            callMs.add(System.currentTimeMillis());
+            started.countDown();
+            if (blockUntil != null) {
+                blockUntil.await(10, TimeUnit.SECONDS);
+            }
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new IllegalStateException("sink unavailable");
+            }
+            delivered.add(event.getEpisodeId());
+        }
+    }
+
+    private static AlarmDispatchProperties.SinkProperties config(int queueCapacity, int maxAttempts, long backoffMs,
+                                                                 double ratePerSecond, int burst) {
+        AlarmDispatchProperties.SinkProperties config = new AlarmDispatchProperties.SinkProperties();
+        config.setEnabled(true);
+        config.setQueueCapacity(queueCapacity);
+        config.setMaxAttempts(maxAttempts);
+        config.setInitialBackoffMs(backoffMs);
+        config.setMaxBackoffMs(1000);
+        config.setRatePerSecond(ratePerSecond);
+        config.setBurst(burst);
+        return config;
+    }
+
+    private void start(Map<RecordingSink, AlarmDispatchProperties.SinkProperties> sinks) {
+        AlarmDispatchProperties properties = new AlarmDispatchProperties();
+        sinks.forEach((sink, config) -> properties.getSinks().put(sink.name(), config));
+        bus = new AlarmDispatchBus(List.copyOf(sinks.keySet()), properties, executor);
+        ReflectionTestUtils.setField(bus, "maxSinks", 4);
+        bus.start();
+    }
+
+    private static AlarmEvent event(String episodeId) {
+        AlarmEvent event = new AlarmEvent();
+        event.setEpisodeId(episodeId);
+        event.setType("HIGH_TEMPERATURE");
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stats(String sink) {
+        return (Map<String, Object>) bus.getStats().get(sink);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseSlow.countDown();
+        if (bus != null) {
+            bus.stop();
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    void slowSinkDoesNotDelayOtherSinksAndDropsWhenFull() throws Exception {
+        RecordingSink slow = new RecordingSink("slow");
+        slow.blockUntil = releaseSlow;
+        RecordingSink fast = new RecordingSink("fast");
+        start(Map.of(slow, config(1, 1, 0, 0, 1), fast, config(16, 1, 0, 0, 1)));
+
+        bus.publish(event("e1"));
+        assertTrue(slow.started.await(5, TimeUnit.SECONDS)); // slow 卡在 e1 上
+        bus.publish(event("e2")); // 进入 slow 的队列 (容量 1)
+        bus.publish(event("e3")); // slow 队列已满：丢弃
+
+        await(() -> fast.delivered.size() == 3);
+        assertEquals(List.of("e1", "e2", "e3"), fast.delivered);
+        assertEquals(0L, stats("fast").get("dropped"));
+        assertEquals(1L, stats("slow").get("dropped"));
+        assertEquals(2L, stats("slow").get("enqueued"));
+
+        releaseSlow.countDown();
+        await(() -> slow.delivered.size() == 2);
+        assertEquals(List.of("e1", "e2"), slow.delivered);
+    }
+
+    @Test
+    void failingSinkRetriesWithBackoffThenGivesUp() throws Exception {
+        RecordingSink failing = new RecordingSink("failing");
+        failing.failuresLeft = Integer.MAX_VALUE;
+        start(Map.of(failing, config(16, 3, 100, 0, 1)));
+
+        bus.publish(event("e1"));
+        await(() -> Long.valueOf(1).equals(stats("failing").get("failed")));
+
+        List<Long> calls = failing.callMs;
+        assertEquals(3, calls.size());
+        assertTrue(calls.get(1) - calls.get(0) >= 90, "first retry after initialBackoffMs");
+        assertTrue(calls.get(2) - calls.get(1) >= 190, "backoff doubles");
+        assertEquals(2L, stats("failing").get("retries"));
+        assertEquals(0L, stats("failing").get("delivered"));
+        assertNotNull(stats("failing").get("lastError"));
+    }
+
+    @Test
+    void retryKeepsOrderWithinSink() throws Exception {
+        RecordingSink flaky = new RecordingSink("flaky");
+        flaky.failuresLeft = 2;
+        start(Map.of(flaky, config(16, 5, 20, 0, 1)));
+
+        bus.publish(event("opened"));
+        bus.publish(event("resolved"));
+        await(() -> flaky.delivered.size() == 2);
+
+        assertEquals(List.of("opened", "resolved"), flaky.delivered); // 重试期间后续事件排队等待
+        assertEquals(2L, stats("flaky").get("retries"));
+        assertEquals(0L, stats("flaky").get("failed"));
+    }
+
+    @Test
+    void tokenBucketLimitsDeliveryRate() throws Exception {
+        RecordingSink limited = new RecordingSink("limited");
+        start(Map.of(limited, config(16, 1, 0, 10, 2))); // 每秒 10 个，突发 2 个
+
+        for (int i = 0; i < 5; i++) {
+            bus.publish(event("e" + i));
+        }
+        await(() -> limited.delivered.size() == 5);
+
+        List<Long> calls = limited.callMs;
+        assertTrue(calls.get(1) - calls.get(0) < 50, "burst is delivered immediately");
+        assertTrue(calls.get(4) - calls.get(0) >= 250, "remaining events are spaced at ~100ms, took " + (calls.get(4) - calls.get(0)));
+        assertTrue((Long) stats("limited").get("rateLimitedMs") > 0);
+    }
+}
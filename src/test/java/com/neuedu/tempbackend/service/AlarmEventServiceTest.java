@@ -0,0 +1,139 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.repository.AlarmEventRepository;
+import com.neuedu.tempbackend.util.KeysetCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class AlarmEventServiceTest {
+
+    private AlarmEventRepository alarmEventRepository;
+    private UploadLaneScheduler uploadLaneScheduler;
+    private QueryCache queryCache;
+    private AlarmDispatchBus alarmDispatchBus;
+    private AlarmEventService service;
+
+    private static AlarmEvent event(long id, String sensorId) {
+        AlarmEvent event = new AlarmEvent();
+        event.setId(id);
+        event.setSensorId(sensorId);
+        event.setType(AlarmEvent.TYPE_HIGH_TEMPERATURE);
+        return event;
+    }
+
+    @BeforeEach
+    void setUp() {
+        alarmEventRepository = mock(AlarmEventRepository.class);
+        uploadLaneScheduler = mock(UploadLaneScheduler.class);
+        queryCache = mock(QueryCache.class);
+        alarmDispatchBus = mock(AlarmDispatchBus.class);
+        service = new AlarmEventService(alarmEventRepository, uploadLaneScheduler, queryCache, alarmDispatchBus);
+        ReflectionTestUtils.setField(service, "retentionDays", 30);
+    }
+
+    @Test
+    void recordAllSavesOnceThenInvalidatesSubmitsAndPublishesEach() {
+        List<AlarmEvent> saved = List.of(event(1, "s1"), event(2, "s2"));
+        when(alarmEventRepository.saveAll(anyList())).thenReturn(saved);
+
+        List<AlarmEvent> result = service.recordAll(List.of(new AlarmEvent(), new AlarmEvent()));
+
+        assertSame(saved, result);
+        verify(alarmEventRepository).saveAll(anyList()); // 一次批量保存
+        verify(alarmEventRepository, never()).save(any());
+        // 提交和通知使用保存后 (带ID) 的事件；失效缓存先于上传和通知
+        InOrder order = inOrder(queryCache, uploadLaneScheduler, alarmDispatchBus);
+        for (AlarmEvent event : saved) {
+            order.verify(queryCache).onWrite(event.getSensorId(), QueryCache.ALARM_TIER);
+            order.verify(uploadLaneScheduler).submit(event);
+            order.verify(alarmDispatchBus).publish(event);
+        }
+    }
+
+    @Test
+    void recordAllIgnoresEmptyInput() {
+        assertTrue(service.recordAll(null).isEmpty());
+        assertTrue(service.recordAll(List.of()).isEmpty());
+        verifyNoInteractions(alarmEventRepository, queryCache, uploadLaneScheduler, alarmDispatchBus);
+    }
+
+    @Test
+    void findRecentUsesKeysetPageAfterFirstPage() {
+        List<AlarmEvent> first = List.of(event(9, "s1"));
+        List<AlarmEvent> next = List.of(event(7, "s1"));
+        LocalDateTime ts = LocalDateTime.of(2024, 1, 1, 8, 0);
+        when(alarmEventRepository.findBySensorIdOrderByTimestampDescIdDesc("s1", PageRequest.of(0, 20))).thenReturn(first);
+        when(alarmEventRepository.findSensorPageBefore("s1", ts, 9L, PageRequest.of(0, 20))).thenReturn(next);
+
+        assertSame(first, service.findRecent("s1", 20, null));
+        assertSame(next, service.findRecent("s1", 20, new KeysetCursor(ts, 9L)));
+        // 游标翻页总是第 0 页，不用 OFFSET
+        verify(alarmEventRepository).findBySensorIdOrderByTimestampDescIdDesc("s1", PageRequest.of(0, 20));
+        verify(alarmEventRepository).findSensorPageBefore("s1", ts, 9L, PageRequest.of(0, 20));
+        verifyNoMoreInteractions(alarmEventRepository);
+    }
+
+    @Test
+    void findRecentForAllUsesKeysetPageAfterFirstPage() {
+        List<AlarmEvent> first = List.of(event(9, "s1"));
+        List<AlarmEvent> next = List.of(event(8, "s2"));
+        LocalDateTime ts = LocalDateTime.of(2024, 1, 1, 8, 0);
+        when(alarmEventRepository.findAllByOrderByTimestampDescIdDesc(PageRequest.of(0, 5))).thenReturn(first);
+        when(alarmEventRepository.findPageBefore(ts, 9L, PageRequest.of(0, 5))).thenReturn(next);
+
+        assertSame(first, service.findRecentForAll(5, null));
+        assertSame(next, service.findRecentForAll(5, new KeysetCursor(ts, 9L)));
+        verify(alarmEventRepository).findAllByOrderByTimestampDescIdDesc(PageRequest.of(0, 5));
+        verify(alarmEventRepository).findPageBefore(ts, 9L, PageRequest.of(0, 5));
+        verifyNoMoreInteractions(alarmEventRepository);
+    }
+
+    @Test
+    void purgeDeletesOnlyUploadedEventsAndInvalidatesCache() {
+        when(alarmEventRepository.deleteUploadedBefore(any())).thenReturn(3);
+        when(alarmEventRepository.countByTimestampBeforeAndIsUploadedFalse(any())).thenReturn(2L);
+
+        service.purgeExpired();
+
+        ArgumentCaptor<LocalDateTime> threshold = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(alarmEventRepository).deleteUploadedBefore(threshold.capture());
+        long ageDays = Duration.between(threshold.getValue(), LocalDateTime.now()).toDays();
+        assertEquals(30, ageDays);
+        verify(alarmEventRepository).countByTimestampBeforeAndIsUploadedFalse(threshold.getValue());
+        // 未上传的过期事件只统计告警，不删除
+        verifyNoMoreInteractions(alarmEventRepository);
+        verify(queryCache).invalidateTier(QueryCache.ALARM_TIER);
+    }
+
+    @Test
+    void purgeWithNothingDeletedKeepsCache() {
+        when(alarmEventRepository.deleteUploadedBefore(any())).thenReturn(0);
+
+        service.purgeExpired();
+
+        verify(queryCache, never()).invalidateTier(anyString());
+    }
+}
@@ -0,0 +1,121 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.EdgeConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class AlarmServiceTest {
+
+    private ForecastAccuracyTracker forecastAccuracyTracker;
+    private AlarmService service;
+
+    private static EdgeConfig.AlarmThresholdsConfig thresholds(Float upper, Float lower, Float deviation) {
+        EdgeConfig.AlarmThresholdsConfig config = new EdgeConfig.AlarmThresholdsConfig();
+        config.setUpper(upper);
+        config.setLower(lower);
+        config.setDeviation(deviation);
+        return config;
+    }
+
+    private long rulesVersion() {
+        return ((AlarmRules) ReflectionTestUtils.getField(service, "rules")).getVersion();
+    }
+
+    @BeforeEach
+    void setUp() {
+        forecastAccuracyTracker = mock(ForecastAccuracyTracker.class);
+        service = new AlarmService(forecastAccuracyTracker);
+        // application.yml 默认值
+        ReflectionTestUtils.setField(service, "appDefaultUpperThreshold", 30f);
+        ReflectionTestUtils.setField(service, "appDefaultLowerThreshold", 10f);
+        ReflectionTestUtils.setField(service, "appDefaultDeviationThreshold", 2f);
+        ReflectionTestUtils.setField(service, "appDefaultHysteresis", 0.5f);
+        ReflectionTestUtils.setField(service, "appDefaultMinDurationMs", 1000L);
+        ReflectionTestUtils.setField(service, "appDefaultMaxRatePerMinute", 0f);
+        ReflectionTestUtils.setField(service, "appDefaultRateWindowSeconds", 60);
+        service.init();
+    }
+
+    @Test
+    void compileAppliesSensorOverGlobalOverYml() {
+        AlarmRules.SensorRule yml = new AlarmRules.SensorRule(30f, 10f, 2f, 0.5f, 1000L, 0f, 60000L);
+        EdgeConfig.AlarmThresholdsConfig global = thresholds(25f, null, null); // 只覆盖上限
+        global.setMinDurationMs(5000L);
+        EdgeConfig.AlarmThresholdsConfig specific = thresholds(null, 2f, null); // 只覆盖下限
+        specific.setRateWindowSeconds(30);
+
+        AlarmRules rules = AlarmRules.compile(yml, global, Map.of("s1", specific), 7);
+
+        AlarmRules.SensorRule s1 = rules.ruleFor("s1");
+        assertEquals(25f, s1.upper); // 全局
+        assertEquals(2f, s1.lower); // 传感器特定
+        assertEquals(2f, s1.deviation); // yml
+        assertEquals(5000L, s1.minDurationMs); // 全局
+        assertEquals(30000L, s1.rateWindowMs); // 传感器特定 (秒换算为毫秒)
+        assertEquals(0.5f, s1.hysteresis); // yml
+
+        // 没有特定阈值的传感器使用全局规则，且与快照的 defaults 为同一实例
+        assertSame(rules.defaults(), rules.ruleFor("s2"));
+        assertEquals(25f, rules.ruleFor("s2").upper);
+        assertEquals(10f, rules.ruleFor("s2").lower);
+        assertEquals(7L, rules.getVersion());
+    }
+
+    @Test
+    void applyThresholdsSwapsSnapshotAndBumpsVersion() {
+        long version = rulesVersion();
+        AlarmRules.SensorRule before = service.ruleFor("s1");
+
+        Map<String, EdgeConfig.AlarmThresholdsConfig> specific = new HashMap<>();
+        specific.put("s1", thresholds(8f, null, null));
+        specific.put("s2", null); // 空阈值被忽略
+        service.applyThresholds(thresholds(null, 0f, null), specific);
+
+        assertEquals(version + 1, rulesVersion()); // 一次应用只编译一次
+        AlarmRules.SensorRule after = service.ruleFor("s1");
+        assertNotSame(before, after);
+        assertEquals(8f, after.upper);
+        assertEquals(0f, after.lower);
+        assertEquals(30f, before.upper); // 旧快照不受影响
+        assertEquals(10f, before.lower);
+        assertSame(service.ruleFor("s2"), service.ruleFor("s3"));
+
+        // 未再出现的传感器清除特定阈值
+        service.applyThresholds(null, Map.of());
+        assertEquals(version + 2, rulesVersion());
+        assertEquals(30f, service.ruleFor("s1").upper);
+    }
+
+    @Test
+    void applyThresholdsAcceptsNullSpecificThresholds() {
+        service.updateSensorSpecificThresholds("s1", thresholds(8f, null, null));
+        long version = rulesVersion();
+
+        service.applyThresholds(thresholds(20f, null, null), null);
+
+        assertEquals(version + 1, rulesVersion());
+        assertEquals(20f, service.ruleFor("s1").upper); // 特定阈值已清除，回退到全局
+    }
+
+    @Test
+    void noAlarmReturnsConstantWithoutFormatting() {
+        assertEquals(AlarmRules.Kind.NONE, service.evaluate("s1", 20f, 21f));
+        assertSame(AlarmService.NO_ALARM, service.formatMessage(AlarmRules.Kind.NONE, "s1", "冷库一", 20f, 21f));
+        assertSame(AlarmService.NO_ALARM, service.getAlarmMessage("s1", "冷库一", 20f, 21f));
+        verifyNoInteractions(forecastAccuracyTracker); // 偏差未超过配置阈值：不查询放宽后的阈值
+
+        assertEquals(AlarmRules.Kind.HIGH_TEMPERATURE, service.evaluate("s1", 31f, null));
+        assertEquals("传感器 [冷库一 (s1)] 温度过高: 31.00°C (阈值: 30.00°C)",
+                service.formatMessage(AlarmRules.Kind.HIGH_TEMPERATURE, "s1", "冷库一", 31f, null));
+    }
+}
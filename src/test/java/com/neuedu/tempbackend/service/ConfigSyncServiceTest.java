@@ -0,0 +1,186 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.EdgeConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConfigSyncServiceTest {
+
+    private RestTemplate restTemplate;
+    private RestTemplate watchRestTemplate;
+    private ConfigSyncService service;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = mock(RestTemplate.class);
+        watchRestTemplate = mock(RestTemplate.class);
+        service = new ConfigSyncService(restTemplate, mock(AlarmService.class), mock(TemperaturePollingService.class),
+                mock(PredictionModelRuntime.class), watchRestTemplate, Runnable::run, mock(SensorTopologyReconciler.class));
+        ReflectionTestUtils.setField(service, "deviceId", "jetson-001");
+        ReflectionTestUtils.setField(service, "cloudConfigUrl", "http://cloud/api/device/{deviceId}/config");
+        ReflectionTestUtils.setField(service, "watchUrl", "");
+        ReflectionTestUtils.setField(service, "watchWaitSeconds", 30);
+        ReflectionTestUtils.setField(service, "watchReconnectBaseMs", 1L);
+        ReflectionTestUtils.setField(service, "watchReconnectMaxMs", 60000L);
+        ReflectionTestUtils.setField(service, "watchUnsupportedRetryMs", 600000L);
+        ReflectionTestUtils.setField(service, "watchSafetyPullMs", 600000L);
+        ReflectionTestUtils.setField(service, "watchRunning", true);
+    }
+
+    private static ResponseEntity<EdgeConfig> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+    }
+
+    private static ResponseEntity<EdgeConfig> config(String etag) {
+        EdgeConfig config = new EdgeConfig();
+        config.setLastUpdated(LocalDateTime.of(2024, 1, 1, 8, 0));
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (etag != null) {
+            builder.eTag(etag);
+        }
+        return builder.body(config);
+    }
+
+    /** 订阅请求依次返回给定的响应，最后一个响应返回时停止订阅循环。 */
+    @SafeVarargs
+    private void watchResponses(ResponseEntity<EdgeConfig>... responses) {
+        AtomicInteger calls = new AtomicInteger();
+        when(watchRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(EdgeConfig.class)))
+                .thenAnswer(invocation -> {
+                    int i = calls.getAndIncrement();
+                    if (i >= responses.length - 1) {
+                        service.stop();
+                    }
+                    return responses[Math.min(i, responses.length - 1)];
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> watchStats() {
+        return (Map<String, Object>) service.getStats().get("watch");
+    }
+
+    @Test
+    void watchTimeoutAndEventAreHandled() {
+        watchResponses(notModified(), config("\"v1\""), notModified());
+
+        ReflectionTestUtils.invokeMethod(service, "watchLoop");
+
+        Map<String, Object> watch = watchStats();
+        assertEquals(2L, watch.get("timeouts"));
+        assertEquals(1L, watch.get("events"));
+        assertEquals(0L, watch.get("failures"));
+        assertNotNull(service.getCurrentConfig());
+        assertEquals("\"v1\"", service.getStats().get("etag"));
+
+        // 收到推送后，下一次订阅请求带上新的 ETag
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<HttpEntity<?>> requests = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(watchRestTemplate, times(3)).exchange(anyString(), eq(HttpMethod.GET), requests.capture(), eq(EdgeConfig.class));
+        List<HttpEntity<?>> sent = requests.getAllValues();
+        assertTrue(sent.get(0).getHeaders().getIfNoneMatch().isEmpty());
+        assertEquals(List.of("\"v1\""), sent.get(2).getHeaders().getIfNoneMatch());
+    }
+
+    @Test
+    void immediateResponsesAreSpacedOut() {
+        ReflectionTestUtils.setField(service, "watchReconnectBaseMs", 200L);
+        // 云端忽略 waitSeconds 且不返回 ETag：每次请求都立即拿到完整配置
+        watchResponses(config(null), config(null), config(null));
+
+        long start = System.currentTimeMillis();
+        ReflectionTestUtils.invokeMethod(service, "watchLoop");
+        long elapsedMs = System.currentTimeMillis() - start;
+
+        assertTrue(elapsedMs >= 350, "watch requests should be spaced by reconnectBaseMs, took " + elapsedMs + "ms");
+        Map<String, Object> watch = watchStats();
+        assertEquals(2L, watch.get("throttled"));
+        assertEquals(0L, watch.get("reconnects")); // 推迟不算重连
+    }
+
+    @Test
+    void reconnectDelayGrowsWithJitterUpToMax() {
+        ReflectionTestUtils.setField(service, "watchReconnectBaseMs", 1000L);
+        ReflectionTestUtils.setField(service, "watchReconnectMaxMs", 8000L);
+
+        Set<Long> firstDelays = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            long first = ReflectionTestUtils.invokeMethod(service, "reconnectDelayMs", 1);
+            long third = ReflectionTestUtils.invokeMethod(service, "reconnectDelayMs", 3);
+            long capped = ReflectionTestUtils.invokeMethod(service, "reconnectDelayMs", 40);
+            assertTrue(first >= 500 && first < 1500, "first delay " + first);
+            assertTrue(third >= 2000 && third < 6000, "third delay " + third);
+            assertTrue(capped >= 4000 && capped < 12000, "capped delay " + capped);
+            firstDelays.add(first);
+        }
+        assertTrue(firstDelays.size() > 1, "delays should be jittered");
+    }
+
+    @Test
+    void unsupportedWatchFallsBackToPulling() {
+        when(watchRestTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(EdgeConfig.class)))
+                .thenAnswer(invocation -> {
+                    service.stop();
+                    throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+                });
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(EdgeConfig.class)))
+                .thenReturn(notModified());
+
+        ReflectionTestUtils.invokeMethod(service, "watchLoop");
+
+        Map<String, Object> watch = watchStats();
+        assertEquals(false, watch.get("supported"));
+        assertEquals(false, watch.get("connected"));
+        assertEquals(1L, watch.get("failures"));
+
+        service.syncConfigFromCloud(); // 订阅不可用，定时拉取照常执行
+        verify(restTemplate).exchange(eq("http://cloud/api/device/jetson-001/config"), eq(HttpMethod.GET),
+                any(HttpEntity.class), eq(EdgeConfig.class));
+        assertEquals(0L, watchStats().get("pullsSkipped"));
+    }
+
+    @Test
+    void pullIsSkippedWhileWatchIsConnected() {
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(EdgeConfig.class)))
+                .thenReturn(notModified());
+        ReflectionTestUtils.setField(service, "watchConnected", true);
+        ReflectionTestUtils.setField(service, "lastSyncAt", LocalDateTime.now());
+
+        service.syncConfigFromCloud();
+        verify(restTemplate, never()).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), eq(EdgeConfig.class));
+        assertEquals(1L, watchStats().get("pullsSkipped"));
+
+        // 超过 safetyPullMs 未拉取时兜底拉取一次
+        ReflectionTestUtils.setField(service, "lastSyncAt", LocalDateTime.now().minusMinutes(11));
+        service.syncConfigFromCloud();
+        verify(restTemplate).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(EdgeConfig.class));
+        assertEquals(1L, service.getStats().get("notModified"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.model.EdgeConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EdgeConfigDiffTest {
+
+    private static EdgeConfig.AlarmThresholdsConfig thresholds(float upper, float lower) {
+        EdgeConfig.AlarmThresholdsConfig config = new EdgeConfig.AlarmThresholdsConfig();
+        config.setUpper(upper);
+        config.setLower(lower);
+        return config;
+    }
+
+    private static EdgeConfig.SensorRuntimeConfig sensor(String sensorId, EdgeConfig.AlarmThresholdsConfig thresholds, Long pollIntervalMs) {
+        EdgeConfig.SensorRuntimeConfig config = new EdgeConfig.SensorRuntimeConfig();
+        config.setSensorId(sensorId);
+        config.setAlarmThresholds(thresholds);
+        config.setPollIntervalMs(pollIntervalMs);
+        return config;
+    }
+
+    private static EdgeConfig.PredictionModelConfig model(String version) {
+        EdgeConfig.PredictionModelConfig config = new EdgeConfig.PredictionModelConfig();
+        config.setVersion(version);
+        config.setUrl("http://cloud/models/" + version + ".json");
+        config.setChecksum("sha256:" + version);
+        return config;
+    }
+
+    private static EdgeConfig config(EdgeConfig.SensorRuntimeConfig... sensors) {
+        EdgeConfig config = new EdgeConfig();
+        config.setAlarmThresholds(thresholds(30f, 0f));
+        config.setSensorConfigs(new ArrayList<>(List.of(sensors)));
+        return config;
+    }
+
+    @Test
+    void identicalConfigsHaveNoDiff() {
+        EdgeConfig previous = config(sensor("s1", thresholds(25f, 2f), 1000L));
+        EdgeConfig next = config(sensor("s1", thresholds(25f, 2f), 1000L));
+        EdgeConfigDiff diff = EdgeConfigDiff.between(previous, next);
+        assertTrue(diff.isEmpty());
+        assertEquals("无变化", diff.summary());
+    }
+
+    @Test
+    void firstConfigMarksEverythingChanged() {
+        EdgeConfig next = config(sensor("s1", thresholds(25f, 2f), 1000L));
+        next.setPredictionModel(model("v1"));
+        EdgeConfigDiff diff = EdgeConfigDiff.between(null, next);
+        assertTrue(diff.globalThresholdsChanged());
+        assertEquals(Set.of("s1"), diff.thresholdSensors());
+        assertEquals(Map.of("s1", 1000L), diff.pollIntervals());
+        assertTrue(diff.predictionModelChanged());
+        assertFalse(diff.topologyChanged());
+    }
+
+    @Test
+    void onlyChangedSensorsAreReported() {
+        EdgeConfig previous = config(sensor("s1", thresholds(25f, 2f), 1000L), sensor("s2", thresholds(8f, 0f), 2000L));
+        EdgeConfig next = config(sensor("s1", thresholds(25f, 2f), 1000L), sensor("s2", thresholds(9f, 0f), 2000L));
+        EdgeConfigDiff diff = EdgeConfigDiff.between(previous, next);
+        assertFalse(diff.globalThresholdsChanged());
+        assertEquals(Set.of("s2"), diff.thresholdSensors());
+        assertTrue(diff.pollIntervals().isEmpty()); // 轮询间隔未变，不会重新调度
+        assertEquals("传感器阈值[s2]", diff.summary());
+    }
+
+    @Test
+    void removedSensorClearsThresholdAndRestoresInterval() {
+        EdgeConfig previous = config(sensor("s1", thresholds(25f, 2f), 1000L), sensor("s2", thresholds(8f, 0f), 2000L));
+        EdgeConfig next = config(sensor("s1", thresholds(25f, 2f), 1000L));
+        EdgeConfigDiff diff = EdgeConfigDiff.between(previous, next);
+        assertEquals(Set.of("s2"), diff.thresholdSensors());
+        assertTrue(diff.pollIntervals().containsKey("s2"));
+        assertNull(diff.pollIntervals().get("s2")); // null：恢复 application.yml 的间隔
+    }
+
+    @Test
+    void modelAndTopologyChangesAreDetected() {
+        EdgeConfig previous = config();
+        previous.setPredictionModel(model("v1"));
+        EdgeConfig next = config();
+        next.setPredictionModel(model("v2"));
+        ModbusProperties.SensorProperties cloudSensor = new ModbusProperties.SensorProperties();
+        cloudSensor.setSensorId("cloud-01");
+        cloudSensor.setConnection("rs485-a");
+        cloudSensor.setSlaveId(5);
+        next.setSensors(List.of(cloudSensor));
+
+        EdgeConfigDiff diff = EdgeConfigDiff.between(previous, next);
+        assertTrue(diff.predictionModelChanged());
+        assertTrue(diff.topologyChanged());
+        assertFalse(diff.thresholdsChanged());
+        assertEquals("采集拓扑, 预测模型", diff.summary());
+    }
+}
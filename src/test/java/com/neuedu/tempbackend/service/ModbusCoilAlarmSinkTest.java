@@ -0,0 +1,94 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusRtuManager;
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.repository.AlarmEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class ModbusCoilAlarmSinkTest {
+
+    private ModbusRtuManager modbusRtuManager;
+    private ModbusCoilAlarmSink sink;
+
+    @BeforeEach
+    void setUp() {
+        modbusRtuManager = mock(ModbusRtuManager.class);
+        AlarmEventRepository repository = mock(AlarmEventRepository.class);
+        when(repository.findOpenEpisodeIds()).thenReturn(List.of("s1-HIGH_TEMPERATURE-20240101080000"));
+        sink = new ModbusCoilAlarmSink(modbusRtuManager, repository);
+        ReflectionTestUtils.setField(sink, "enabled", true);
+        ReflectionTestUtils.setField(sink, "connection", "temp-only");
+        ReflectionTestUtils.setField(sink, "restoreGraceMs", 300_000L);
+    }
+
+    private static AlarmEvent event(String episodeId, String state) {
+        AlarmEvent event = new AlarmEvent();
+        event.setSensorId("s2");
+        event.setEpisodeId(episodeId);
+        event.setEpisodeState(state);
+        return event;
+    }
+
+    @Test
+    void restoredEpisodeKeepsCoilOnUntilResolved() throws Exception {
+        sink.restoreOpenEpisodes();
+        sink.deliver(event("s2-LOW", AlarmEvent.EPISODE_OPENED));
+        sink.deliver(event("s2-LOW", AlarmEvent.EPISODE_RESOLVED)); // 重启前的事件仍未恢复
+        sink.deliver(event("s1-HIGH_TEMPERATURE-20240101080000", AlarmEvent.EPISODE_RESOLVED));
+
+        var order = inOrder(modbusRtuManager);
+        order.verify(modbusRtuManager, times(2)).writeCoil(eq("temp-only"), anyInt(), anyInt(), eq(true));
+        order.verify(modbusRtuManager).writeCoil(eq("temp-only"), anyInt(), anyInt(), eq(false));
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    void restoredEpisodesExpireAfterGrace() throws Exception {
+        ReflectionTestUtils.setField(sink, "restoreGraceMs", -1L);
+        sink.restoreOpenEpisodes();
+        sink.deliver(event("s2-LOW", AlarmEvent.EPISODE_OPENED));
+        sink.deliver(event("s2-LOW", AlarmEvent.EPISODE_RESOLVED));
+
+        var order = inOrder(modbusRtuManager);
+        order.verify(modbusRtuManager).writeCoil(eq("temp-only"), anyInt(), anyInt(), eq(true));
+        order.verify(modbusRtuManager).writeCoil(eq("temp-only"), anyInt(), anyInt(), eq(false)); // 恢复的事件已过保留期
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    void scheduledCheckReleasesCoilWithoutNewEvents() throws Exception {
+        ReflectionTestUtils.setField(sink, "restoreGraceMs", -1L);
+        sink.restoreOpenEpisodes();
+        doThrow(new IllegalStateException("bus busy")).doNothing()
+                .when(modbusRtuManager).writeCoil(eq("temp-only"), anyInt(), anyInt(), eq(false));
+
+        sink.expireRestoredEpisodes(); // 重启后没有新报警：保留期结束时写线圈，第一次失败
+        sink.expireRestoredEpisodes(); // 下次检查重写
+        sink.expireRestoredEpisodes(); // 已写成功，不再重复写
+
+        verify(modbusRtuManager, times(2)).writeCoil(eq("temp-only"), anyInt(), anyInt(), eq(false));
+        verifyNoMoreInteractions(modbusRtuManager);
+    }
+
+    @Test
+    void scheduledCheckKeepsCoilDuringGrace() throws Exception {
+        sink.restoreOpenEpisodes();
+        sink.expireRestoredEpisodes();
+        verifyNoInteractions(modbusRtuManager);
+    }
+}
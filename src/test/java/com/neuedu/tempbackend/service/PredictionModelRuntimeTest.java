@@ -0,0 +1,153 @@
+package com.neuedu.tempbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.neuedu.tempbackend.model.EdgeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PredictionModelRuntimeTest {
+
+    private static final String ARTIFACT = "{\"version\":\"v2\",\"type\":\"EWMA\",\"params\":{\"alpha\":0.4}}";
+
+    @TempDir
+    Path dir;
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private static EdgeConfig.PredictionModelConfig config(String version, Path path, String checksum) {
+        EdgeConfig.PredictionModelConfig config = new EdgeConfig.PredictionModelConfig();
+        config.setVersion(version);
+        config.setUrl(path.toString());
+        config.setChecksum(checksum);
+        return config;
+    }
+
+    /** 从给定地址下载固定内容，镜像目录为 dir/models。 */
+    private PredictionModelRuntime remoteRuntime(byte[] downloaded) {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        when(restTemplate.getForObject(anyString(), eq(byte[].class))).thenReturn(downloaded);
+        PredictionModelRuntime runtime = new PredictionModelRuntime(restTemplate, new ObjectMapper());
+        ReflectionTestUtils.setField(runtime, "modelDir", dir.resolve("models").toString());
+        return runtime;
+    }
+
+    private static EdgeConfig.PredictionModelConfig remoteConfig(String version, String checksum) {
+        EdgeConfig.PredictionModelConfig config = new EdgeConfig.PredictionModelConfig();
+        config.setVersion(version);
+        config.setUrl("http://cloud/models/" + version + ".json");
+        config.setChecksum(checksum);
+        return config;
+    }
+
+    private static long filesIn(Path path) throws Exception {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void downloadedArtifactIsMirroredAfterChecksumMatches() throws Exception {
+        byte[] bytes = ARTIFACT.getBytes(StandardCharsets.UTF_8);
+        PredictionModelRuntime runtime = remoteRuntime(bytes);
+
+        runtime.apply(remoteConfig("v2", sha256(bytes)));
+
+        assertEquals("v2", runtime.current().version());
+        assertTrue(Files.exists(dir.resolve("models").resolve("v2.json")));
+        assertEquals(1, filesIn(dir.resolve("models"))); // 没有残留的临时文件
+    }
+
+    @Test
+    void checksumMismatchDoesNotWriteMirror() throws Exception {
+        PredictionModelRuntime runtime = remoteRuntime(ARTIFACT.getBytes(StandardCharsets.UTF_8));
+
+        runtime.apply(remoteConfig("v2", sha256("other".getBytes(StandardCharsets.UTF_8))));
+
+        assertNull(runtime.current());
+        assertEquals(0, filesIn(dir.resolve("models"))); // 下次启动不会读到被篡改的镜像
+    }
+
+    @Test
+    void failedMirrorWriteRemovesTempFile() throws Exception {
+        byte[] bytes = ARTIFACT.getBytes(StandardCharsets.UTF_8);
+        PredictionModelRuntime runtime = remoteRuntime(bytes);
+        // 镜像路径被非空目录占用：替换失败
+        Path blocked = Files.createDirectories(dir.resolve("models").resolve("v2.json"));
+        Files.write(blocked.resolve("keep"), bytes);
+
+        runtime.apply(remoteConfig("v2", sha256(bytes)));
+
+        assertNull(runtime.current());
+        assertEquals(1, filesIn(dir.resolve("models")));
+        assertFalse(Files.isRegularFile(dir.resolve("models").resolve("v2.json")));
+    }
+
+    @Test
+    void ioFailureIsRetriedOnNextApply() throws Exception {
+        PredictionModelRuntime runtime = new PredictionModelRuntime(new RestTemplate(), new ObjectMapper());
+        byte[] bytes = ARTIFACT.getBytes(StandardCharsets.UTF_8);
+        Path artifact = dir.resolve("model.json");
+        EdgeConfig.PredictionModelConfig config = config("v2", artifact, sha256(bytes));
+
+        runtime.apply(config); // 文件还不存在：读取失败，不拉黑
+        assertNull(runtime.current());
+
+        Files.write(artifact, bytes);
+        runtime.apply(config);
+        assertEquals("v2", runtime.current().version());
+        assertEquals("EWMA", runtime.current().type());
+    }
+
+    @Test
+    void checksumMismatchIsNotRetried() throws Exception {
+        PredictionModelRuntime runtime = new PredictionModelRuntime(new RestTemplate(), new ObjectMapper());
+        byte[] bytes = ARTIFACT.getBytes(StandardCharsets.UTF_8);
+        Path artifact = dir.resolve("model.json");
+        Files.write(artifact, bytes);
+        EdgeConfig.PredictionModelConfig config = config("v2", artifact, sha256("other".getBytes(StandardCharsets.UTF_8)));
+
+        runtime.apply(config);
+        assertNull(runtime.current());
+        assertEquals(1L, runtime.getStats().get("failures"));
+
+        runtime.apply(config); // 同一 version|checksum 已记为不可用，不再读取
+        assertEquals(1L, runtime.getStats().get("failures"));
+    }
+
+    @Test
+    void invalidArtifactIsNotRetried() throws Exception {
+        PredictionModelRuntime runtime = new PredictionModelRuntime(new RestTemplate(), new ObjectMapper());
+        byte[] bytes = "{\"type\":\"LSTM\"}".getBytes(StandardCharsets.UTF_8);
+        Path artifact = dir.resolve("model.json");
+        Files.write(artifact, bytes);
+        EdgeConfig.PredictionModelConfig config = config("v3", artifact, sha256(bytes));
+
+        runtime.apply(config);
+        runtime.apply(config);
+        assertNull(runtime.current());
+        assertEquals(1L, runtime.getStats().get("failures"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PredictiveAlarmTrackerTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 8, 0, 0);
+
+    private PredictiveAlarmTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new PredictiveAlarmTracker();
+        ReflectionTestUtils.setField(tracker, "deviceId", "jetson-001");
+        ReflectionTestUtils.setField(tracker, "cooldownMs", 120_000L);
+        ReflectionTestUtils.setField(tracker, "clearRunsToResolve", 2);
+        ReflectionTestUtils.setField(tracker, "updateDelta", 0.5f);
+    }
+
+    private static PredictiveAlarmTracker.Breach high(float predicted, LocalDateTime now) {
+        return new PredictiveAlarmTracker.Breach(predicted, 8f, true, 60, now.plusSeconds(60));
+    }
+
+    @Test
+    void openUpdateResolveLifecycle() {
+        AlarmEvent opened = tracker.observe("s1", "冷藏库", high(8.5f, T0), T0);
+        assertNotNull(opened);
+        assertEquals(AlarmEvent.EPISODE_OPENED, opened.getEpisodeState());
+        String episodeId = opened.getEpisodeId();
+
+        // 恶化不足 updateDelta：不产生记录
+        assertNull(tracker.observe("s1", "冷藏库", high(8.8f, T0.plusSeconds(30)), T0.plusSeconds(30)));
+
+        AlarmEvent updated = tracker.observe("s1", "冷藏库", high(9.1f, T0.plusSeconds(60)), T0.plusSeconds(60));
+        assertNotNull(updated);
+        assertEquals(AlarmEvent.EPISODE_UPDATED, updated.getEpisodeState());
+        assertEquals(episodeId, updated.getEpisodeId());
+
+        // 需要连续 clearRuns 轮不越限才恢复
+        assertNull(tracker.observe("s1", "冷藏库", null, T0.plusSeconds(90)));
+        AlarmEvent resolved = tracker.observe("s1", "冷藏库", null, T0.plusSeconds(120));
+        assertNotNull(resolved);
+        assertEquals(AlarmEvent.EPISODE_RESOLVED, resolved.getEpisodeState());
+        assertEquals(episodeId, resolved.getEpisodeId());
+        assertEquals(1L, tracker.getStats().get("resolved"));
+    }
+
+    @Test
+    void breachBetweenClearRunsKeepsEpisodeOpen() {
+        tracker.observe("s1", "冷藏库", high(8.5f, T0), T0);
+        assertNull(tracker.observe("s1", "冷藏库", null, T0.plusSeconds(30)));
+        assertNull(tracker.observe("s1", "冷藏库", high(8.5f, T0.plusSeconds(60)), T0.plusSeconds(60)));
+        assertNull(tracker.observe("s1", "冷藏库", null, T0.plusSeconds(90))); // 计数已清零
+        assertEquals(1L, tracker.getStats().get("openEpisodes"));
+    }
+
+    @Test
+    void directionChangeIsReported() {
+        tracker.observe("s1", "冷藏库", high(8.5f, T0), T0);
+        PredictiveAlarmTracker.Breach low = new PredictiveAlarmTracker.Breach(1.5f, 2f, false, 60, T0.plusSeconds(90));
+        AlarmEvent event = tracker.observe("s1", "冷藏库", low, T0.plusSeconds(30));
+        assertNotNull(event);
+        assertEquals(AlarmEvent.EPISODE_UPDATED, event.getEpisodeState());
+    }
+
+    @Test
+    void cooldownSuppressesNewEpisode() {
+        tracker.observe("s1", "冷藏库", high(8.5f, T0), T0);
+        tracker.observe("s1", "冷藏库", null, T0.plusSeconds(30));
+        tracker.observe("s1", "冷藏库", null, T0.plusSeconds(60)); // 恢复，冷却到 T0+180s
+
+        assertNull(tracker.observe("s1", "冷藏库", high(9f, T0.plusSeconds(90)), T0.plusSeconds(90)));
+        AlarmEvent reopened = tracker.observe("s1", "冷藏库", high(9f, T0.plusSeconds(180)), T0.plusSeconds(180));
+        assertNotNull(reopened);
+        assertEquals(AlarmEvent.EPISODE_OPENED, reopened.getEpisodeState());
+        assertEquals(1L, tracker.getStats().get("suppressed"));
+    }
+}
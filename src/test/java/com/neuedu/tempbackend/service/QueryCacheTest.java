@@ -0,0 +1,117 @@
+package com.neuedu.tempbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.neuedu.tempbackend.util.KeysetCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QueryCacheTest {
+
+    private static final Set<String> REALTIME = Set.of("REALTIME");
+    private QueryCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new QueryCache(new ObjectMapper());
+        ReflectionTestUtils.setField(cache, "maxBytes", 3_000L);
+        ReflectionTestUtils.setField(cache, "maxEntryBytes", 2_000L);
+    }
+
+    private void put(String key, String sensorId, QueryCache.Scope scope) {
+        cache.put(key, key, 500, scope, cache.versionOf(sensorId));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByWeight() {
+        // 每条约 500 + 160 + key 字节，3000 字节最多放 4 条
+        for (int i = 0; i < 4; i++) {
+            put("k" + i, "s1", QueryCache.Scope.live("s1", REALTIME));
+        }
+        assertNotNull(cache.get("k0")); // k0 变为最近使用
+        put("k4", "s1", QueryCache.Scope.live("s1", REALTIME));
+
+        assertNull(cache.get("k1"));
+        assertNotNull(cache.get("k0"));
+        assertNotNull(cache.get("k4"));
+        assertEquals(1L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    void rejectsOversizedEntries() {
+        cache.put("big", "x", 5_000, QueryCache.Scope.live("s1", REALTIME), cache.versionOf("s1"));
+        assertNull(cache.get("big"));
+        assertEquals(1L, cache.getStats().get("rejectedPuts"));
+    }
+
+    @Test
+    void writeInvalidatesOnlyMatchingLiveEntries() {
+        put("s1-live", "s1", QueryCache.Scope.live("s1", REALTIME));
+        put("s1-hourly", "s1", QueryCache.Scope.live("s1", Set.of("HOURLY_COMPACTED")));
+        put("s2-live", "s2", QueryCache.Scope.live("s2", REALTIME));
+        put("all-live", null, QueryCache.Scope.live(null, REALTIME));
+        put("s1-sealed", "s1", QueryCache.Scope.sealed("s1", REALTIME, LocalDateTime.now().plusHours(1)));
+
+        cache.onWrite("s1", "REALTIME");
+
+        assertNull(cache.get("s1-live"));
+        assertNull(cache.get("all-live"));
+        assertNotNull(cache.get("s1-hourly"));
+        assertNotNull(cache.get("s2-live"));
+        assertNotNull(cache.get("s1-sealed"));
+    }
+
+    @Test
+    void resultLoadedDuringWriteIsNotCached() {
+        long version = cache.versionOf("s1");
+        cache.onWrite("s1", "REALTIME"); // 加载期间发生写入
+        cache.put("stale", "v", 100, QueryCache.Scope.live("s1", REALTIME), version);
+        assertNull(cache.get("stale"));
+    }
+
+    @Test
+    void sealedResultLoadedDuringTierInvalidationIsNotCached() {
+        long version = cache.versionOf("s1");
+        cache.invalidateTier("HOURLY_COMPACTED"); // 加载期间该级别被批量清理
+        cache.put("stale", "v", 100, QueryCache.Scope.sealed("s1", Set.of("HOURLY_COMPACTED"), null), version);
+        assertNull(cache.get("stale"));
+        assertEquals(1L, cache.getStats().get("rejectedPuts"));
+
+        put("fresh", "s1", QueryCache.Scope.sealed("s1", Set.of("HOURLY_COMPACTED"), null));
+        assertNotNull(cache.get("fresh"));
+    }
+
+    @Test
+    void sealedEntriesExpireAndTierInvalidationDropsThem() {
+        put("expired", "s1", QueryCache.Scope.sealed("s1", REALTIME, LocalDateTime.now().minusSeconds(1)));
+        put("sealed", "s1", QueryCache.Scope.sealed("s1", Set.of("HOURLY_COMPACTED"), LocalDateTime.now().plusHours(1)));
+
+        assertNull(cache.get("expired"));
+        assertNotNull(cache.get("sealed"));
+        cache.invalidateTier("HOURLY_COMPACTED");
+        assertNull(cache.get("sealed"));
+    }
+
+    @Test
+    void pageLoaderRunsOnceAndReturnsCursorForFullPage() {
+        int[] loads = new int[1];
+        QueryCache.Scope scope = QueryCache.Scope.live("s1", REALTIME);
+        for (int i = 0; i < 2; i++) {
+            QueryCache.JsonPage page = cache.getOrLoadPage("page", scope, 2, () -> {
+                loads[0]++;
+                return List.of(1, 2);
+            }, n -> new KeysetCursor(LocalDateTime.of(2024, 1, 1, 0, 0), n.longValue()));
+            assertEquals("[1,2]", new String(page.body()));
+            assertNotNull(page.nextCursor());
+        }
+        assertEquals(1, loads[0]);
+    }
+}
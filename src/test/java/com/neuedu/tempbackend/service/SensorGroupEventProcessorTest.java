@@ -0,0 +1,118 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SensorGroupEventProcessorTest {
+
+    // 早于当前时间，定时检查时各窗口都已过期
+    private static final LocalDateTime T0 = LocalDateTime.now().minusHours(1);
+
+    private final List<AlarmEvent> recorded = new ArrayList<>();
+    private SensorGroupEventProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        ModbusProperties.SensorGroupProperties group = new ModbusProperties.SensorGroupProperties();
+        group.setName("cold-room");
+        group.setSensorIds(List.of("a", "b", "c"));
+        group.setWindowSeconds(10);
+        group.setEvaluateIntervalMs(0);
+        group.setMaxAverage(8f);
+        group.setMaxDivergence(2f);
+        ModbusProperties modbusProperties = new ModbusProperties();
+        modbusProperties.setGroups(List.of(group));
+
+        AlarmEventService alarmEventService = mock(AlarmEventService.class);
+        when(alarmEventService.recordAll(any())).thenAnswer(invocation -> {
+            List<AlarmEvent> events = invocation.getArgument(0);
+            recorded.addAll(events);
+            return events;
+        });
+        processor = new SensorGroupEventProcessor(modbusProperties, alarmEventService, mock(SensorRegistry.class));
+        ReflectionTestUtils.setField(processor, "deviceId", "jetson-001");
+        ReflectionTestUtils.setField(processor, "bufferSize", 1000);
+        processor.rebuild(List.of("a", "b", "c"));
+    }
+
+    private void sample(long offsetMs, float a, float b, float c) {
+        processor.onSample("a", T0.plusNanos(offsetMs * 1_000_000), a);
+        processor.onSample("b", T0.plusNanos(offsetMs * 1_000_000), b);
+        processor.onSample("c", T0.plusNanos(offsetMs * 1_000_000), c);
+    }
+
+    private List<String> states(String type) {
+        List<String> states = new ArrayList<>();
+        for (AlarmEvent event : recorded) {
+            if (event.getType().equals(type)) {
+                states.add(event.getEpisodeState());
+            }
+        }
+        return states;
+    }
+
+    @Test
+    void groupAverageOpensAndResolvesWithHysteresis() {
+        sample(0, 9f, 9f, 9f);
+        assertEquals(List.of(AlarmEvent.EPISODE_OPENED), states(AlarmEvent.TYPE_GROUP_AVERAGE));
+        sample(20_000, 7.8f, 7.8f, 7.8f); // 未低于 8 - 0.3
+        assertEquals(1, states(AlarmEvent.TYPE_GROUP_AVERAGE).size());
+        sample(40_000, 7f, 7f, 7f);
+        assertEquals(List.of(AlarmEvent.EPISODE_OPENED, AlarmEvent.EPISODE_RESOLVED), states(AlarmEvent.TYPE_GROUP_AVERAGE));
+    }
+
+    @Test
+    void divergenceComparesAgainstMedian() {
+        sample(0, 4f, 4.5f, 9f);
+        List<AlarmEvent> divergence = recorded.stream()
+                .filter(e -> AlarmEvent.TYPE_SENSOR_DIVERGENCE.equals(e.getType())).toList();
+        assertEquals(1, divergence.size());
+        assertEquals("c", divergence.get(0).getSensorId());
+    }
+
+    @Test
+    void idleGroupEpisodesAreEndedBySweep() {
+        sample(0, 9f, 9f, 9f);
+        processor.sweepIdleGroups(); // 整组一小时没有样本
+        assertEquals(List.of(AlarmEvent.EPISODE_OPENED, AlarmEvent.EPISODE_RESOLVED), states(AlarmEvent.TYPE_GROUP_AVERAGE));
+        AlarmEvent resolved = recorded.get(recorded.size() - 1);
+        assertNull(resolved.getValue());
+        assertEquals(recorded.get(0).getEpisodeId(), resolved.getEpisodeId());
+    }
+
+    @Test
+    void rebuildKeepsStateOfRemainingMembersAndEndsRemovedOnes() {
+        sample(0, 9f, 9f, 15f); // 平均超限 + c 偏离
+        assertEquals(List.of(AlarmEvent.EPISODE_OPENED), states(AlarmEvent.TYPE_GROUP_AVERAGE));
+        assertEquals(List.of(AlarmEvent.EPISODE_OPENED), states(AlarmEvent.TYPE_SENSOR_DIVERGENCE));
+
+        processor.rebuild(List.of("a", "b")); // c 被移除
+        assertEquals(List.of(AlarmEvent.EPISODE_OPENED, AlarmEvent.EPISODE_RESOLVED), states(AlarmEvent.TYPE_SENSOR_DIVERGENCE));
+        assertEquals(1, states(AlarmEvent.TYPE_GROUP_AVERAGE).size()); // 组级事件沿用
+
+        processor.onSample("c", T0.plusSeconds(1), 20f); // 已不在组内
+        processor.onSample("a", T0.plusSeconds(1), 9f);
+        assertEquals(1, states(AlarmEvent.TYPE_GROUP_AVERAGE).size());
+
+        processor.rebuild(List.of("a")); // 不足 2 个传感器，分组停用
+        assertEquals(List.of(AlarmEvent.EPISODE_OPENED, AlarmEvent.EPISODE_RESOLVED), states(AlarmEvent.TYPE_GROUP_AVERAGE));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> groups = (Map<String, Object>) processor.getStats().get("groups");
+        assertTrue(groups.isEmpty());
+    }
+}
@@ -0,0 +1,180 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.config.ModbusRtuManager;
+import com.serotonin.modbus4j.ModbusMaster;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SensorTopologyReconcilerTest {
+
+    private SensorRegistry sensorRegistry;
+    private ModbusRtuManager modbusRtuManager;
+    private TemperaturePollingService temperaturePollingService;
+    private ThresholdAlarmTracker thresholdAlarmTracker;
+    private SensorGroupEventProcessor sensorGroupEventProcessor;
+    private SensorTopologyReconciler reconciler;
+
+    private static ModbusProperties.ConnectionProperties connection(String name, String port) {
+        ModbusProperties.ConnectionProperties connection = new ModbusProperties.ConnectionProperties();
+        connection.setName(name);
+        connection.setPort(port);
+        connection.setBaudRate(9600);
+        return connection;
+    }
+
+    private static ModbusProperties.SensorProperties sensor(String sensorId, String connection, int slaveId) {
+        ModbusProperties.SensorProperties sensor = new ModbusProperties.SensorProperties();
+        sensor.setSensorId(sensorId);
+        sensor.setSensorName(sensorId);
+        sensor.setConnection(connection);
+        sensor.setSlaveId(slaveId);
+        return sensor;
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // application.yml：一个连接，两个传感器
+        ModbusProperties.Serial serial = new ModbusProperties.Serial();
+        serial.setConnections(List.of(connection("rs485-a", "/dev/ttyUSB0")));
+        serial.setSensors(List.of(sensor("a", "rs485-a", 1), sensor("b", "rs485-a", 2)));
+        ModbusProperties modbusProperties = new ModbusProperties();
+        modbusProperties.setSerial(serial);
+        sensorRegistry = new SensorRegistry(modbusProperties);
+
+        modbusRtuManager = mock(ModbusRtuManager.class);
+        when(modbusRtuManager.createMaster(any())).thenAnswer(invocation -> mock(ModbusMaster.class));
+        temperaturePollingService = mock(TemperaturePollingService.class);
+        when(temperaturePollingService.stopPolling(any())).thenReturn(true);
+        thresholdAlarmTracker = mock(ThresholdAlarmTracker.class);
+        sensorGroupEventProcessor = mock(SensorGroupEventProcessor.class);
+        reconciler = new SensorTopologyReconciler(sensorRegistry, modbusRtuManager, temperaturePollingService,
+                thresholdAlarmTracker, mock(PredictiveAlarmTracker.class), mock(ForecastAccuracyTracker.class),
+                mock(TrendWindowBuffer.class), mock(EmbeddedPredictionBackend.class), sensorGroupEventProcessor);
+    }
+
+    @Test
+    void cloudSensorsAreMergedWithYmlDefinitions() throws Exception {
+        SensorTopologyReconciler.Result result = reconciler.reconcile(
+                List.of(connection("rs485-b", "/dev/ttyUSB1")), List.of(sensor("x", "rs485-b", 7)));
+
+        assertTrue(result.success());
+        assertEquals(List.of("rs485-b"), result.connectionsOpened());
+        assertEquals(List.of("x"), result.sensorsAdded());
+        assertTrue(result.sensorsRemoved().isEmpty());
+        assertEquals(List.of("a", "b", "x"), sensorRegistry.sensorIds());
+        assertEquals(1, sensorRegistry.current().version());
+        verify(modbusRtuManager).createMaster(argThat(c -> "rs485-b".equals(c.getName())));
+        verify(temperaturePollingService).startPolling(argThat(s -> "x".equals(s.getSensorId())));
+        verify(sensorGroupEventProcessor).rebuild(Set.of("a", "b", "x"));
+    }
+
+    @Test
+    void omittingSensorsRemovesOnlyCloudDeclaredOnes() {
+        reconciler.reconcile(List.of(connection("rs485-b", "/dev/ttyUSB1")), List.of(sensor("x", "rs485-b", 7)));
+
+        // 云端不再声明任何传感器：只移除云端新增的，yml 中的 a、b 保留
+        SensorTopologyReconciler.Result result = reconciler.reconcile(null, List.of());
+        assertTrue(result.success());
+        assertEquals(List.of("x"), result.sensorsRemoved());
+        assertEquals(List.of("rs485-b"), result.connectionsClosed());
+        assertEquals(List.of("a", "b"), sensorRegistry.sensorIds());
+        verify(thresholdAlarmTracker).remove("x");
+        verify(thresholdAlarmTracker, never()).remove("a");
+    }
+
+    @Test
+    void cloudDefinitionOverridesYmlSensorWithSameId() {
+        SensorTopologyReconciler.Result result = reconciler.reconcile(null, List.of(sensor("a", "rs485-a", 9)));
+
+        assertTrue(result.success());
+        assertEquals(List.of("a"), result.sensorsChanged());
+        assertEquals(9, sensorRegistry.find("a").orElseThrow().getSlaveId());
+        verify(temperaturePollingService).stopPolling("a");
+        verify(temperaturePollingService).startPolling(argThat(s -> "a".equals(s.getSensorId()) && s.getSlaveId() == 9));
+
+        // 云端撤回覆盖后恢复 yml 中的定义
+        result = reconciler.reconcile(null, null);
+        assertEquals(List.of("a"), result.sensorsChanged());
+        assertEquals(1, sensorRegistry.find("a").orElseThrow().getSlaveId());
+    }
+
+    @Test
+    void identicalDeclarationIsNoop() {
+        SensorTopologyReconciler.Result result = reconciler.reconcile(null, List.of(sensor("b", "rs485-a", 2)));
+
+        assertTrue(result.success());
+        assertTrue(result.isNoop());
+        assertEquals(0, sensorRegistry.current().version());
+        verify(sensorGroupEventProcessor, never()).rebuild(any());
+    }
+
+    @Test
+    void invalidDeclarationsAreRejectedWithoutChanges() {
+        SensorTopologyReconciler.Result unknown = reconciler.reconcile(null, List.of(sensor("x", "rs485-z", 1)));
+        SensorTopologyReconciler.Result duplicate = reconciler.reconcile(null, List.of(sensor("x", "rs485-a", 3), sensor("x", "rs485-a", 4)));
+
+        assertFalse(unknown.success());
+        assertFalse(duplicate.success());
+        assertEquals(List.of("a", "b"), sensorRegistry.sensorIds());
+        verify(temperaturePollingService, never()).stopPolling(any());
+        verify(sensorGroupEventProcessor, never()).rebuild(any());
+    }
+
+    @Test
+    void changedConnectionIsReopenedInPlace() throws Exception {
+        ModbusProperties.ConnectionProperties moved = connection("rs485-a", "/dev/ttyUSB3");
+        SensorTopologyReconciler.Result result = reconciler.reconcile(List.of(moved), null);
+
+        assertTrue(result.success());
+        assertEquals(List.of("rs485-a"), result.connectionsReopened());
+        assertTrue(result.sensorsChanged().isEmpty()); // 连接上的传感器不停止轮询
+        verify(modbusRtuManager).reopenMaster(eq("rs485-a"), argThat(c -> "/dev/ttyUSB0".equals(c.getPort())), eq(moved));
+        verify(modbusRtuManager, never()).swapMaster(eq("rs485-a"), any());
+        verify(temperaturePollingService, never()).stopPolling(any());
+    }
+
+    @Test
+    void failedReopenRestoresPreviousConnection() throws Exception {
+        ModbusProperties.ConnectionProperties moved = connection("rs485-a", "/dev/ttyUSB3");
+        doThrow(new IllegalStateException("port busy")).when(modbusRtuManager).reopenMaster(eq("rs485-a"), any(), eq(moved));
+
+        SensorTopologyReconciler.Result result = reconciler.reconcile(List.of(moved), null);
+
+        assertFalse(result.success());
+        verify(modbusRtuManager).reopenMaster(eq("rs485-a"), eq(moved), argThat(c -> "/dev/ttyUSB0".equals(c.getPort())));
+        assertEquals(0, sensorRegistry.current().version());
+    }
+
+    @Test
+    void failedStartRollsBackSnapshotAndGroups() {
+        doThrow(new IllegalStateException("scheduler stopped")).when(temperaturePollingService)
+                .startPolling(argThat(s -> s != null && "x".equals(s.getSensorId())));
+
+        SensorTopologyReconciler.Result result = reconciler.reconcile(null, List.of(sensor("x", "rs485-a", 5)));
+
+        assertFalse(result.success());
+        assertEquals(List.of("a", "b"), sensorRegistry.sensorIds());
+        assertEquals(0, sensorRegistry.current().version());
+        InOrder order = inOrder(sensorGroupEventProcessor);
+        order.verify(sensorGroupEventProcessor).rebuild(Set.of("a", "b", "x"));
+        order.verify(sensorGroupEventProcessor).rebuild(Set.of("a", "b")); // 撤销：按旧的传感器集合重建分组
+    }
+}
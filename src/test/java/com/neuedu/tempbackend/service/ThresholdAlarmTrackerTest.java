@@ -0,0 +1,103 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ThresholdAlarmTrackerTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 8, 0, 0);
+
+    private AlarmService alarmService;
+    private final List<AlarmEvent> recorded = new ArrayList<>();
+    private ThresholdAlarmTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        alarmService = mock(AlarmService.class);
+        AlarmEventService alarmEventService = mock(AlarmEventService.class);
+        when(alarmEventService.recordAll(any())).thenAnswer(invocation -> {
+            List<AlarmEvent> events = invocation.getArgument(0);
+            recorded.addAll(events);
+            return events;
+        });
+        when(alarmService.buildAlarmEvent(any(AlarmRules.Kind.class), anyString(), anyString(), anyString(), any(),
+                anyFloat(), any())).thenAnswer(invocation -> {
+            AlarmEvent event = new AlarmEvent();
+            event.setType(invocation.getArgument(0, AlarmRules.Kind.class).name());
+            event.setMessage("报警");
+            return event;
+        });
+        when(alarmService.effectiveDeviation(anyString(), anyFloat())).thenAnswer(invocation -> invocation.getArgument(1));
+        tracker = new ThresholdAlarmTracker(alarmService, alarmEventService);
+        ReflectionTestUtils.setField(tracker, "deviceId", "jetson-001");
+        ReflectionTestUtils.setField(tracker, "rateBufferSize", 36_000);
+    }
+
+    private void rule(long minDurationMs, float maxRatePerMinute, long rateWindowMs) {
+        when(alarmService.ruleFor("s1")).thenReturn(
+                new AlarmRules.SensorRule(8f, 2f, 3f, 0.5f, minDurationMs, maxRatePerMinute, rateWindowMs));
+    }
+
+    private AlarmRules.Kind observe(long offsetMs, float temperature) {
+        return tracker.observe("s1", "冷藏库", T0.plusNanos(offsetMs * 1_000_000), temperature, null);
+    }
+
+    @Test
+    void hysteresisPreventsFlapping() {
+        rule(0, 0, 60_000);
+        assertEquals(AlarmRules.Kind.HIGH_TEMPERATURE, observe(0, 8.2f));
+        assertEquals(AlarmRules.Kind.HIGH_TEMPERATURE, observe(1000, 7.8f)); // 未降到 7.5 以下
+        assertEquals(AlarmRules.Kind.HIGH_TEMPERATURE, observe(2000, 8.3f));
+        assertEquals(AlarmRules.Kind.NONE, observe(3000, 7.4f));
+
+        assertEquals(2, recorded.size());
+        assertEquals(AlarmEvent.EPISODE_OPENED, recorded.get(0).getEpisodeState());
+        assertEquals(AlarmEvent.EPISODE_RESOLVED, recorded.get(1).getEpisodeState());
+        assertEquals(recorded.get(0).getEpisodeId(), recorded.get(1).getEpisodeId());
+    }
+
+    @Test
+    void minDurationRestartsWhenConditionBreaks() {
+        rule(5000, 0, 60_000);
+        assertEquals(AlarmRules.Kind.NONE, observe(0, 9f));
+        assertEquals(AlarmRules.Kind.NONE, observe(3000, 9f));
+        assertEquals(AlarmRules.Kind.NONE, observe(4000, 7f)); // 中断，重新计时
+        assertEquals(AlarmRules.Kind.NONE, observe(6000, 9f));
+        assertEquals(AlarmRules.Kind.NONE, observe(10_000, 9f));
+        assertEquals(AlarmRules.Kind.HIGH_TEMPERATURE, observe(11_000, 9f));
+        assertEquals(1, recorded.size());
+    }
+
+    @Test
+    void rateOfChangeCoversWholeWindowAtTenHertz() {
+        rule(0, 1f, 60_000);
+        // 10Hz 采样，60 秒内从 4°C 线性升到 5.5°C：1.5°C/分钟
+        AlarmRules.Kind kind = AlarmRules.Kind.NONE;
+        for (int i = 0; i <= 600; i++) {
+            kind = observe(i * 100L, 4f + 1.5f * i / 600);
+        }
+        assertEquals(AlarmRules.Kind.RATE_OF_CHANGE, kind);
+        assertEquals(1, recorded.size());
+        assertEquals(1.5f, recorded.get(0).getValue(), 0.05f); // 变化率事件记录的是 °C/分钟
+
+        // 温度持平后变化率逐渐降到阈值的 80% 以下，报警恢复
+        for (int i = 601; i <= 1200; i++) {
+            kind = observe(i * 100L, 5.5f);
+        }
+        assertEquals(AlarmRules.Kind.NONE, kind);
+        assertEquals(AlarmEvent.EPISODE_RESOLVED, recorded.get(recorded.size() - 1).getEpisodeState());
+    }
+}
@@ -0,0 +1,127 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.model.SensorData;
+import com.neuedu.tempbackend.repository.SensorDataRepository;
+import com.neuedu.tempbackend.util.KeysetCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TieredHistoryQueryPlannerTest {
+
+    private final List<SensorData> rows = new ArrayList<>();
+    private TieredHistoryQueryPlanner planner;
+    private long nextId = 1;
+
+    @BeforeEach
+    void setUp() {
+        SensorDataRepository repository = mock(SensorDataRepository.class);
+        // 内存版 findTierPageBefore：与 JPQL 相同的过滤和排序
+        when(repository.findTierPageBefore(anyString(), anyString(), any(), any(), anyLong(), any())).thenAnswer(invocation -> {
+            String sensorId = invocation.getArgument(0);
+            String level = invocation.getArgument(1);
+            LocalDateTime lower = invocation.getArgument(2);
+            LocalDateTime beforeTs = invocation.getArgument(3);
+            long beforeId = invocation.getArgument(4);
+            Pageable page = invocation.getArgument(5);
+            return rows.stream()
+                    .filter(r -> r.getSensorId().equals(sensorId) && r.getStorageLevel().equals(level))
+                    .filter(r -> !r.getTimestamp().isBefore(lower))
+                    .filter(r -> r.getTimestamp().isBefore(beforeTs) || (r.getTimestamp().equals(beforeTs) && r.getId() < beforeId))
+                    .sorted(Comparator.comparing(SensorData::getTimestamp).thenComparing(SensorData::getId).reversed())
+                    .limit(page.getPageSize())
+                    .toList();
+        });
+        planner = new TieredHistoryQueryPlanner(repository, new ModbusProperties());
+        ReflectionTestUtils.setField(planner, "realtimeRetentionMinutes", 20);
+        ReflectionTestUtils.setField(planner, "minutelyRetentionHours", 24);
+        ReflectionTestUtils.setField(planner, "hourlyRetentionDays", 7);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (String sensorId : List.of("s1", "s2")) {
+            for (int i = 1; i <= 10; i++) {
+                add(sensorId, "REALTIME", now.minusMinutes(i).minusSeconds(sensorId.equals("s2") ? 30 : 0));
+            }
+            for (int i = 1; i <= 5; i++) {
+                add(sensorId, "MINUTELY_COMPACTED", now.minusHours(i));
+            }
+            for (int i = 2; i <= 4; i++) {
+                add(sensorId, "HOURLY_COMPACTED", now.minusDays(i));
+            }
+        }
+    }
+
+    private void add(String sensorId, String level, LocalDateTime timestamp) {
+        SensorData data = new SensorData("jetson-001", sensorId, sensorId, timestamp, 4.0f, null, null, null,
+                false, "No Alarm", false, level);
+        data.setId(nextId++);
+        rows.add(data);
+    }
+
+    private static void assertNewestFirst(List<SensorData> result) {
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(!result.get(i).getTimestamp().isAfter(result.get(i - 1).getTimestamp()), "result must be newest first");
+        }
+    }
+
+    @Test
+    void recentWalksFromNewestTierToOlderOnes() {
+        List<SensorData> result = planner.findRecent("s1", 14);
+        assertEquals(14, result.size());
+        assertNewestFirst(result);
+        assertEquals("REALTIME", result.get(9).getStorageLevel());
+        assertEquals("MINUTELY_COMPACTED", result.get(10).getStorageLevel());
+        assertEquals(18, planner.findRecent("s1", 100).size());
+    }
+
+    @Test
+    void cursorPagingCoversEveryRowOnce() {
+        List<SensorData> all = new ArrayList<>();
+        KeysetCursor cursor = null;
+        while (true) {
+            List<SensorData> page = planner.findRecent("s1", 4, cursor);
+            all.addAll(page);
+            if (page.size() < 4) {
+                break;
+            }
+            SensorData last = page.get(page.size() - 1);
+            cursor = new KeysetCursor(last.getTimestamp(), last.getId());
+        }
+        assertEquals(18, all.size());
+        assertEquals(18, all.stream().map(SensorData::getId).distinct().count());
+        assertNewestFirst(all);
+    }
+
+    @Test
+    void mergesSensorsNewestFirst() {
+        List<SensorData> result = planner.findRecentForAll(List.of("s1", "s2"), 20);
+        assertEquals(20, result.size());
+        assertNewestFirst(result);
+        assertEquals("s1", result.get(0).getSensorId());
+        assertEquals("s2", result.get(1).getSensorId());
+    }
+
+    @Test
+    void splitRangeClipsTiersToQueryWindow() {
+        LocalDateTime now = LocalDateTime.of(2024, 1, 10, 12, 0);
+        List<TieredHistoryQueryPlanner.Tier> parts = planner.splitRange(now.minusHours(2), now.plusMinutes(5), now);
+        assertEquals(2, parts.size());
+        assertEquals(new TieredHistoryQueryPlanner.Tier("MINUTELY_COMPACTED", now.minusHours(2), now.minusMinutes(20)), parts.get(0));
+        assertEquals(new TieredHistoryQueryPlanner.Tier("REALTIME", now.minusMinutes(20), now.plusMinutes(5)), parts.get(1));
+    }
+}
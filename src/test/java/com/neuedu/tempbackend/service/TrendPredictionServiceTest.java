@@ -0,0 +1,148 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.config.ModbusProperties;
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.model.EdgeConfig;
+import com.neuedu.tempbackend.util.BucketRing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TrendPredictionServiceTest {
+
+    private static final int WINDOW = 10;
+
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+
+    private TrendPredictionService service;
+    private ThreadPoolTaskExecutor executor;
+    private SensorRegistry sensorRegistry;
+    private PredictiveAlarmTracker predictiveAlarmTracker;
+    private AlarmEventService alarmEventService;
+
+    private static ModbusProperties.SensorProperties sensor(String sensorId) {
+        ModbusProperties.SensorProperties sensor = new ModbusProperties.SensorProperties();
+        sensor.setSensorId(sensorId);
+        sensor.setSensorName(sensorId);
+        return sensor;
+    }
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(16);
+        executor.initialize();
+
+        TrendWindowBuffer trendWindowBuffer = mock(TrendWindowBuffer.class);
+        when(trendWindowBuffer.capacity()).thenReturn(WINDOW);
+        when(trendWindowBuffer.window(anyString())).thenReturn(new BucketRing.Window(new long[WINDOW],
+                new double[WINDOW], new double[WINDOW], new double[WINDOW], WINDOW));
+
+        // hot 预测越上限，ok 不越限，slow 一直阻塞到测试放行
+        PredictionService predictionService = mock(PredictionService.class);
+        when(predictionService.predictTrend(eq("hot"), any(), anyInt())).thenReturn(List.of(7f, 9f));
+        when(predictionService.predictTrend(eq("ok"), any(), anyInt())).thenReturn(List.of(5f, 5f));
+        when(predictionService.predictTrend(eq("slow"), any(), anyInt())).thenAnswer(invocation -> {
+            slowStarted.countDown();
+            releaseSlow.await(10, TimeUnit.SECONDS);
+            return List.of(9f);
+        });
+
+        EdgeConfig.AlarmThresholdsConfig thresholds = new EdgeConfig.AlarmThresholdsConfig();
+        thresholds.setUpper(8f);
+        thresholds.setLower(0f);
+        AlarmService alarmService = mock(AlarmService.class);
+        when(alarmService.getEffectiveThresholds(anyString())).thenReturn(thresholds);
+
+        predictiveAlarmTracker = mock(PredictiveAlarmTracker.class);
+        when(predictiveAlarmTracker.observe(anyString(), anyString(), notNull(), any())).thenReturn(new AlarmEvent());
+        alarmEventService = mock(AlarmEventService.class);
+        sensorRegistry = mock(SensorRegistry.class);
+
+        service = new TrendPredictionService();
+        ReflectionTestUtils.setField(service, "trendWindowBuffer", trendWindowBuffer);
+        ReflectionTestUtils.setField(service, "predictionService", predictionService);
+        ReflectionTestUtils.setField(service, "alarmService", alarmService);
+        ReflectionTestUtils.setField(service, "alarmEventService", alarmEventService);
+        ReflectionTestUtils.setField(service, "predictiveAlarmTracker", predictiveAlarmTracker);
+        ReflectionTestUtils.setField(service, "sensorRegistry", sensorRegistry);
+        ReflectionTestUtils.setField(service, "trendPredictionExecutor", executor);
+        ReflectionTestUtils.setField(service, "trendPredictionHorizonSeconds", 10);
+        ReflectionTestUtils.setField(service, "runDeadlineMs", 300L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseSlow.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void sensorsMissingTheDeadlineAreDropped() {
+        when(sensorRegistry.sensors()).thenReturn(List.of(sensor("hot"), sensor("ok"), sensor("slow")));
+
+        long start = System.currentTimeMillis();
+        service.checkFutureTemperatureAlerts();
+        long elapsedMs = System.currentTimeMillis() - start;
+
+        assertTrue(elapsedMs < 2000, "run should stop waiting at the deadline, took " + elapsedMs + "ms");
+        Map<String, Object> stats = service.getStats();
+        assertEquals(1L, stats.get("completedRuns"));
+        assertEquals(3, stats.get("lastRunSensors"));
+        assertEquals(1, stats.get("lastRunMissedDeadline"));
+        assertEquals(1L, stats.get("totalMissedDeadline"));
+        assertEquals(1, stats.get("lastRunAlarms"));
+        assertEquals(false, stats.get("running"));
+
+        verify(predictiveAlarmTracker).observe(eq("hot"), eq("hot"), argThat(b -> b != null && b.high() && b.predicted() == 9f), any());
+        verify(predictiveAlarmTracker).observe(eq("ok"), eq("ok"), isNull(), any());
+        verify(predictiveAlarmTracker, never()).observe(eq("slow"), anyString(), any(), any()); // 超时的结果被丢弃
+        verify(alarmEventService).recordAll(argThat(alarms -> alarms.size() == 1));
+    }
+
+    @Test
+    void overlappingRunIsSkipped() throws Exception {
+        ReflectionTestUtils.setField(service, "runDeadlineMs", 10000L);
+        when(sensorRegistry.sensors()).thenReturn(List.of(sensor("slow")));
+
+        Thread first = new Thread(service::checkFutureTemperatureAlerts);
+        first.start();
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+
+        service.checkFutureTemperatureAlerts(); // 上一轮还在等待 slow：直接跳过
+        assertEquals(1L, service.getStats().get("skippedRuns"));
+        assertEquals(true, service.getStats().get("running"));
+
+        releaseSlow.countDown();
+        first.join(5000);
+        Map<String, Object> stats = service.getStats();
+        assertEquals(1L, stats.get("completedRuns"));
+        assertEquals(0, stats.get("lastRunMissedDeadline"));
+        assertEquals(1, stats.get("lastRunAlarms"));
+        verify(sensorRegistry).sensors(); // 被跳过的一轮没有开始
+    }
+}
@@ -0,0 +1,155 @@
+package com.neuedu.tempbackend.service;
+
+import com.neuedu.tempbackend.model.AlarmEvent;
+import com.neuedu.tempbackend.model.SensorData;
+import com.neuedu.tempbackend.repository.AlarmEventRepository;
+import com.neuedu.tempbackend.repository.SensorDataRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadLaneSchedulerTest {
+
+    private final CloudUploadService cloudUploadService = mock(CloudUploadService.class);
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+    private final ExecutorService catchUp = Executors.newFixedThreadPool(3);
+    private UploadLaneScheduler scheduler;
+    private Runnable dispatchLoop;
+
+    private UploadLaneScheduler newScheduler(int batchSize, long lingerMs) {
+        UploadLaneScheduler s = new UploadLaneScheduler(cloudUploadService, mock(SensorDataRepository.class),
+                mock(AlarmEventRepository.class), r -> dispatchLoop = r, catchUp);
+        ReflectionTestUtils.setField(s, "initialBatchSize", batchSize);
+        ReflectionTestUtils.setField(s, "minBatchSize", 5);
+        ReflectionTestUtils.setField(s, "maxBatchSize", 500);
+        ReflectionTestUtils.setField(s, "targetRttMs", 2000L);
+        ReflectionTestUtils.setField(s, "lingerMs", lingerMs);
+        ReflectionTestUtils.setField(s, "alarmCapacity", 100);
+        ReflectionTestUtils.setField(s, "realtimeCapacity", 1000);
+        ReflectionTestUtils.setField(s, "compactedCapacity", 1000);
+        ReflectionTestUtils.setField(s, "catchUpParallelism", 3);
+        ReflectionTestUtils.setField(s, "catchUpMaxBatchSize", 2000);
+        return s;
+    }
+
+    // 先把样本放进通道再启动分发线程，批次划分不受提交时序影响
+    private void startDispatching() {
+        dispatcher.execute(dispatchLoop);
+    }
+
+    private static SensorData sample(long id, String storageLevel) {
+        SensorData data = new SensorData("jetson-001", "s1", "冷藏库", LocalDateTime.now(), 4.0f, null, null, null,
+                false, "No Alarm", false, storageLevel);
+        data.setId(id);
+        return data;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+        dispatcher.shutdownNow();
+        catchUp.shutdownNow();
+    }
+
+    @Test
+    void lanesFollowStorageLevel() {
+        assertEquals(UploadLaneScheduler.Lane.REALTIME, UploadLaneScheduler.laneOf(sample(1, "REALTIME")));
+        assertEquals(UploadLaneScheduler.Lane.COMPACTED, UploadLaneScheduler.laneOf(sample(2, "MINUTELY_COMPACTED")));
+        assertEquals(UploadLaneScheduler.Lane.COMPACTED, UploadLaneScheduler.laneOf(sample(3, "HOURLY_COMPACTED")));
+    }
+
+    @Test
+    void alarmIsSentWithoutWaitingForLinger() {
+        when(cloudUploadService.sendAlarmBatch(anyList())).thenReturn(new CloudUploadService.BatchResult(true, 100, 5));
+        scheduler = newScheduler(50, 60_000);
+        scheduler.start();
+        scheduler.submit(sample(1, "REALTIME")); // 不足一批，分发线程进入 60 秒凑批等待
+        startDispatching();
+
+        AlarmEvent event = new AlarmEvent();
+        event.setId(7L);
+        scheduler.submit(event);
+
+        verify(cloudUploadService, timeout(1000)).sendAlarmBatch(anyList());
+        verify(cloudUploadService, never()).sendBatch(any());
+    }
+
+    @Test
+    void batchSizeGrowsOnSuccessAndHalvesOnFailure() throws InterruptedException {
+        List<Integer> sentSizes = new CopyOnWriteArrayList<>();
+        when(cloudUploadService.sendBatch(anyList())).thenAnswer(invocation -> {
+            List<SensorData> batch = invocation.getArgument(0);
+            sentSizes.add(batch.size());
+            return new CloudUploadService.BatchResult(sentSizes.size() > 1, batch.size() * 10L, 10);
+        });
+        scheduler = newScheduler(20, 0);
+        scheduler.start();
+        for (long id = 1; id <= 20; id++) {
+            scheduler.submit(sample(id, "REALTIME"));
+        }
+        startDispatching();
+
+        // 第一批 20 条失败 -> 批大小减半为 10，退避 1 秒后分两批重发，每次成功加性增长 1
+        verify(cloudUploadService, timeout(3000).times(3)).sendBatch(anyList());
+        assertEquals(List.of(20, 10, 10), sentSizes);
+        awaitBatchSize(12);
+    }
+
+    private void awaitBatchSize(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!Integer.valueOf(expected).equals(scheduler.getStatus().get("batchSize")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, scheduler.getStatus().get("batchSize"));
+    }
+
+    @Test
+    void alarmDoesNotWaitForParallelCatchUpBatches() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(3);
+        when(cloudUploadService.sendBatch(anyList())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new CloudUploadService.BatchResult(true, 100, 10);
+        });
+        when(cloudUploadService.sendAlarmBatch(anyList())).thenReturn(new CloudUploadService.BatchResult(true, 100, 5));
+        scheduler = newScheduler(10, 0);
+        ReflectionTestUtils.setField(scheduler, "catchUp", true);
+        scheduler.start();
+        for (long id = 1; id <= 30; id++) {
+            scheduler.submit(sample(id, "MINUTELY_COMPACTED"));
+        }
+        startDispatching();
+        assertTrue(started.await(2, TimeUnit.SECONDS), "three catch-up batches should be in flight");
+
+        AlarmEvent event = new AlarmEvent();
+        event.setId(9L);
+        scheduler.submit(event);
+        try {
+            verify(cloudUploadService, timeout(1000)).sendAlarmBatch(anyList());
+        } finally {
+            release.countDown();
+        }
+        awaitBatchSize(14); // 报警批次和三个追赶批次的成功结果各加性增长 1
+    }
+}
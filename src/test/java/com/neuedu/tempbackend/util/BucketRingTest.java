@@ -0,0 +1,77 @@
+package com.neuedu.tempbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BucketRingTest {
+
+    @Test
+    void averagesSamplesPerBucket() {
+        BucketRing ring = new BucketRing(5000, 4);
+        assertTrue(ring.isEmpty());
+        ring.add(1000, 10f, 50f, null);
+        ring.add(4000, 12f, null, null);
+        ring.add(6000, 20f, null, 1000f);
+        assertFalse(ring.isEmpty());
+
+        BucketRing.Window window = ring.snapshot(0, 9999);
+        assertEquals(2, window.size());
+        assertEquals(0, window.bucketStartMs()[0]);
+        assertEquals(5000, window.bucketStartMs()[1]);
+        assertEquals(11, window.temperature()[0], 1e-9);
+        assertEquals(50, window.humidity()[0], 1e-9);
+        assertTrue(Double.isNaN(window.pressure()[0])); // 桶内没有压力数据
+        assertEquals(20, window.temperature()[1], 1e-9);
+        assertTrue(Double.isNaN(window.humidity()[1]));
+        assertEquals(1000, window.pressure()[1], 1e-9);
+    }
+
+    @Test
+    void skipsEmptyBucketsAndHonoursRange() {
+        BucketRing ring = new BucketRing(1000, 10);
+        ring.add(500, 1f, null, null);
+        ring.add(3500, 4f, null, null);
+        ring.add(5500, 6f, null, null);
+
+        BucketRing.Window all = ring.snapshot(0, 9999);
+        assertEquals(3, all.size());
+        assertArrayEquals(new long[]{0, 3000, 5000}, Arrays.copyOf(all.bucketStartMs(), all.size()));
+
+        BucketRing.Window tail = ring.snapshot(3000, 9999);
+        assertEquals(2, tail.size());
+        assertEquals(4, tail.temperature()[0], 1e-9);
+    }
+
+    @Test
+    void overwritesOldestSlotAndDropsStaleSamples() {
+        BucketRing ring = new BucketRing(1000, 3);
+        for (int i = 0; i < 5; i++) {
+            ring.add(i * 1000L, (float) i, null, null);
+        }
+        BucketRing.Window window = ring.snapshot(0, 4999);
+        assertEquals(3, window.size()); // 只保留最近 3 个桶
+        assertEquals(2, window.temperature()[0], 1e-9);
+        assertEquals(4, window.temperature()[2], 1e-9);
+
+        ring.add(1000, 99f, null, null); // 早于窗口，丢弃
+        window = ring.snapshot(0, 4999);
+        assertEquals(3, window.size());
+        assertEquals(2, window.temperature()[0], 1e-9);
+    }
+
+    @Test
+    void reusedSlotStartsFromZero() {
+        BucketRing ring = new BucketRing(1000, 2);
+        ring.add(0, 10f, null, null);
+        ring.add(2000, 30f, null, null); // 与桶 0 同一槽位
+        BucketRing.Window window = ring.snapshot(2000, 2999);
+        assertEquals(1, window.size());
+        assertEquals(30, window.temperature()[0], 1e-9);
+    }
+}
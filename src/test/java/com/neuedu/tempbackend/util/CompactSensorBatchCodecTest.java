@@ -0,0 +1,105 @@
+package com.neuedu.tempbackend.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.neuedu.tempbackend.model.SensorData;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactSensorBatchCodecTest {
+
+    private static List<SensorData> sampleBatch(int perSensor) {
+        List<SensorData> batch = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0, 0);
+        long id = 1000;
+        for (int s = 0; s < 3; s++) {
+            for (int i = 0; i < perSensor; i++) {
+                float temp = (float) (4.0 + s + Math.sin(i / 50.0));
+                boolean alarm = i % 97 == 0;
+                SensorData data = new SensorData("jetson-001", "cold-room-0" + s, "冷藏库" + s + "号",
+                        start.plusNanos(i * 100_000_000L), temp, s == 2 ? 55.5f : null, null, temp + 0.01f,
+                        alarm, alarm ? "传感器 [冷藏库" + s + "号 (cold-room-0" + s + ")] 温度过高" : "No Alarm", false, "REALTIME");
+                data.setId(id++);
+                batch.add(data);
+            }
+        }
+        return batch;
+    }
+
+    @Test
+    void roundTripPreservesRows() throws Exception {
+        List<SensorData> batch = sampleBatch(200);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactSensorBatchCodec.encode(batch, out);
+
+        List<SensorData> decoded = CompactSensorBatchCodec.decode(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(batch.size(), decoded.size());
+        for (int i = 0; i < batch.size(); i++) {
+            SensorData expected = batch.get(i);
+            SensorData actual = decoded.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getSensorId(), actual.getSensorId());
+            assertEquals(expected.getSensorName(), actual.getSensorName());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getTemperature(), actual.getTemperature());
+            assertEquals(expected.getHumidity(), actual.getHumidity());
+            assertEquals(expected.getPressure(), actual.getPressure());
+            assertEquals(expected.getPredictedTemperature(), actual.getPredictedTemperature());
+            assertEquals(expected.getAlarmTriggered(), actual.getAlarmTriggered());
+            assertEquals(expected.getAlarmMessage(), actual.getAlarmMessage());
+        }
+    }
+
+    /**
+     * 与当前 JSON 上传格式对比每条样本的字节数。
+     */
+    @Test
+    void compactEncodingIsMuchSmallerThanJson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        List<SensorData> batch = sampleBatch(1000);
+
+        byte[] json = objectMapper.writeValueAsBytes(batch);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactSensorBatchCodec.encode(batch, out);
+
+        double jsonPerSample = (double) json.length / batch.size();
+        double compactPerSample = (double) out.size() / batch.size();
+        assertTrue(compactPerSample * 10 < jsonPerSample,
+                "compact encoding should be at least 10x smaller than JSON, was " + compactPerSample + " vs " + jsonPerSample + " B/sample");
+        assertEquals(batch.size(), CompactSensorBatchCodec.decode(new ByteArrayInputStream(out.toByteArray())).size());
+    }
+
+    /**
+     * 与当前 JSON 上传格式对比编码耗时：预热后各取多轮中的最短耗时，紧凑编码 (含 gzip) 不应明显慢于 Jackson。
+     */
+    @Test
+    void compactEncodeTimeStaysWithinFactorOfJson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        List<SensorData> batch = sampleBatch(1000);
+        for (int i = 0; i < 20; i++) { // 预热
+            objectMapper.writeValueAsBytes(batch);
+            CompactSensorBatchCodec.encode(batch, new ByteArrayOutputStream());
+        }
+
+        long jsonNanos = Long.MAX_VALUE;
+        long compactNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 15; i++) {
+            long start = System.nanoTime();
+            objectMapper.writeValueAsBytes(batch);
+            jsonNanos = Math.min(jsonNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            CompactSensorBatchCodec.encode(batch, new ByteArrayOutputStream());
+            compactNanos = Math.min(compactNanos, System.nanoTime() - start);
+        }
+        assertTrue(compactNanos < jsonNanos * 3,
+                "compact encode should stay within 3x of JSON, was " + compactNanos / 1000 + " us vs " + jsonNanos / 1000 + " us");
+    }
+}
@@ -0,0 +1,69 @@
+package com.neuedu.tempbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownsamplerTest {
+
+    private record Point(long timeMs, double value) {}
+
+    private static List<Point> run(Downsampler.Accumulator accumulator, int points, List<Point> out) {
+        for (int i = 0; i < points; i++) {
+            double value = i == 500 ? 100.0 : Math.sin(i / 20.0); // 第 500 个点是尖峰
+            accumulator.add(i * 1000L, value);
+        }
+        accumulator.finish();
+        return out;
+    }
+
+    private static void assertAscending(List<Point> points) {
+        for (int i = 1; i < points.size(); i++) {
+            assertTrue(points.get(i).timeMs() > points.get(i - 1).timeMs(), "points must stay in time order");
+        }
+    }
+
+    @Test
+    void lttbKeepsEndpointsAndSpikeWithinBudget() {
+        List<Point> out = new ArrayList<>();
+        run(Downsampler.lttb(0, 999_000, 50, (t, v) -> out.add(new Point(t, v))), 1000, out);
+
+        assertTrue(out.size() <= 50, "got " + out.size());
+        assertEquals(new Point(0, 0.0), out.get(0));
+        assertEquals(999_000, out.get(out.size() - 1).timeMs());
+        assertTrue(out.contains(new Point(500_000, 100.0)), "spike must survive");
+        assertAscending(out);
+    }
+
+    @Test
+    void lttbPassesThroughShortSeries() {
+        List<Point> out = new ArrayList<>();
+        run(Downsampler.lttb(0, 2000, 50, (t, v) -> out.add(new Point(t, v))), 3, out);
+        assertEquals(3, out.size());
+        assertAscending(out);
+    }
+
+    @Test
+    void minMaxKeepsExtremesOfEachBucket() {
+        List<Point> out = new ArrayList<>();
+        run(Downsampler.minMax(0, 999_000, 20, (t, v) -> out.add(new Point(t, v))), 1000, out);
+
+        assertTrue(out.size() <= 20, "got " + out.size());
+        assertTrue(out.contains(new Point(500_000, 100.0)), "spike must survive");
+        double min = out.stream().mapToDouble(Point::value).min().orElseThrow();
+        assertEquals(-1.0, min, 0.01);
+        assertAscending(out);
+    }
+
+    @Test
+    void emptyInputProducesNothing() {
+        List<Point> out = new ArrayList<>();
+        Downsampler.lttb(0, 1000, 10, (t, v) -> out.add(new Point(t, v))).finish();
+        Downsampler.minMax(0, 1000, 10, (t, v) -> out.add(new Point(t, v))).finish();
+        assertTrue(out.isEmpty());
+    }
+}
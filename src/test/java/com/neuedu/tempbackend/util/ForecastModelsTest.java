@@ -0,0 +1,106 @@
+package com.neuedu.tempbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ForecastModelsTest {
+
+    @Test
+    void ewmaTracksLevel() {
+        ForecastModels.Ewma ewma = new ForecastModels.Ewma(0.5);
+        assertFalse(ewma.isReady());
+        ewma.update(10);
+        assertTrue(ewma.isReady());
+        assertEquals(10, ewma.forecast(), 1e-9);
+        ewma.update(20);
+        assertEquals(15, ewma.forecast(), 1e-9);
+
+        double[] out = new double[3];
+        ewma.forecast(out, 3);
+        assertArrayEquals(new double[]{15, 15, 15}, out, 1e-9); // 水平模型：各步预测相同
+    }
+
+    @Test
+    void holtLinearTrendExtrapolates() {
+        ForecastModels.HoltWinters holt = new ForecastModels.HoltWinters(0.5, 0.1, 0.1, 0);
+        holt.update(1);
+        assertFalse(holt.isReady());
+        for (int i = 2; i <= 20; i++) {
+            holt.update(i);
+        }
+        assertTrue(holt.isReady());
+        double[] out = new double[3];
+        holt.forecast(out, 3);
+        assertArrayEquals(new double[]{21, 22, 23}, out, 1e-9);
+    }
+
+    @Test
+    void holtWintersRepeatsSeason() {
+        double[] season = {0, 2, 0, -2};
+        ForecastModels.HoltWinters hw = new ForecastModels.HoltWinters(0.3, 0.1, 0.3, season.length);
+        for (int i = 0; i < 3; i++) {
+            hw.update(10 + season[i]);
+        }
+        assertFalse(hw.isReady()); // 第一个周期未满
+        for (int i = 3; i < 40; i++) {
+            hw.update(10 + season[i % season.length]);
+        }
+        assertTrue(hw.isReady());
+        double[] out = new double[8];
+        hw.forecast(out, 8);
+        for (int i = 0; i < out.length; i++) {
+            assertEquals(10 + season[(40 + i) % season.length], out[i], 1e-6);
+        }
+    }
+
+    @Test
+    void arimaFrozenCoefficientsIntegrateDifferences() {
+        // ARIMA(1,1,0)，c=1，phi=0：差分恒为 1，积分后逐步加 1
+        ForecastModels.Arima arima = new ForecastModels.Arima(1, 1, 0, 0.995, new double[]{1.0, 0.0}, false);
+        arima.update(5);
+        assertFalse(arima.isReady());
+        arima.update(6);
+        assertTrue(arima.isReady());
+        double[] out = new double[3];
+        arima.forecast(out, 3);
+        assertArrayEquals(new double[]{7, 8, 9}, out, 1e-9);
+    }
+
+    @Test
+    void arimaSecondOrderDifferencingFollowsQuadratic() {
+        // d=2：二阶差分恒为 2 (x = t^2)，c=2 时外推仍落在抛物线上
+        ForecastModels.Arima arima = new ForecastModels.Arima(0, 2, 0, 0.995, new double[]{2.0}, false);
+        for (int t = 0; t < 5; t++) {
+            arima.update(t * t);
+        }
+        assertTrue(arima.isReady());
+        double[] out = new double[3];
+        arima.forecast(out, 3);
+        assertArrayEquals(new double[]{25, 36, 49}, out, 1e-9);
+    }
+
+    @Test
+    void arimaAdaptiveLearnsLinearTrend() {
+        ForecastModels.Arima arima = new ForecastModels.Arima(2, 1, 1, 0.995);
+        for (int t = 0; t < 200; t++) {
+            arima.update(20 + 0.5 * t);
+        }
+        assertTrue(arima.isReady());
+        double[] out = new double[5];
+        arima.forecast(out, 5);
+        for (int i = 0; i < out.length; i++) {
+            assertEquals(20 + 0.5 * (200 + i), out[i], 1e-3);
+        }
+    }
+
+    @Test
+    void arimaRejectsWrongCoefficientCount() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ForecastModels.Arima(2, 1, 1, 0.995, new double[]{0.0, 0.5}, false));
+    }
+}
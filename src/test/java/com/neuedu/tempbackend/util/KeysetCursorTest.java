@@ -0,0 +1,40 @@
+package com.neuedu.tempbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeysetCursorTest {
+
+    @Test
+    void roundTripKeepsNanosecondsAndId() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2024, 3, 1, 8, 15, 30, 123_456_789), 987_654_321L);
+        String encoded = cursor.encode();
+        assertFalse(encoded.contains("=") || encoded.contains("+") || encoded.contains("/"), "must be url-safe: " + encoded);
+        assertEquals(cursor, KeysetCursor.decode(encoded));
+    }
+
+    @Test
+    void blankMeansFirstPage() {
+        assertNull(KeysetCursor.decode(null));
+        assertNull(KeysetCursor.decode("  "));
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        String wrongVersion = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("v0:1700000000:0:5".getBytes(StandardCharsets.US_ASCII));
+        String missingPart = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("v1:1700000000:5".getBytes(StandardCharsets.US_ASCII));
+        for (String text : new String[]{"not base64!", wrongVersion, missingPart}) {
+            assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(text), text);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.neuedu.tempbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingErrorWindowTest {
+
+    @Test
+    void emptyWindowHasNoStatistics() {
+        RollingErrorWindow window = new RollingErrorWindow(4, 0.5, 4);
+        assertEquals(0, window.count());
+        assertTrue(Double.isNaN(window.mae()));
+        assertTrue(Double.isNaN(window.rmse()));
+        assertTrue(Double.isNaN(window.bias()));
+    }
+
+    @Test
+    void statisticsCoverOnlyTheLatestResiduals() {
+        RollingErrorWindow window = new RollingErrorWindow(3, 0.5, 4);
+        window.add(1);
+        window.add(-1);
+        assertEquals(1, window.mae(), 1e-12);
+        assertEquals(0, window.bias(), 1e-12);
+
+        window.add(2);
+        window.add(3); // 挤出 1
+        assertEquals(3, window.count());
+        assertEquals(2, window.mae(), 1e-12);
+        assertEquals(4.0 / 3, window.bias(), 1e-12);
+        assertEquals(Math.sqrt((1 + 4 + 9) / 3.0), window.rmse(), 1e-12);
+    }
+
+    @Test
+    void recomputeKeepsSumsConsistentOverManyLaps() {
+        RollingErrorWindow window = new RollingErrorWindow(10, 0.1, 20);
+        for (int i = 0; i < 10_000; i++) {
+            window.add(0.1 * ((i % 7) - 3));
+        }
+        double expectedSum = 0;
+        double expectedAbs = 0;
+        for (int i = 10_000 - 10; i < 10_000; i++) {
+            double r = 0.1 * ((i % 7) - 3);
+            expectedSum += r;
+            expectedAbs += Math.abs(r);
+        }
+        assertEquals(expectedSum / 10, window.bias(), 1e-9);
+        assertEquals(expectedAbs / 10, window.mae(), 1e-9);
+    }
+
+    @Test
+    void histogramHasOverflowBins() {
+        RollingErrorWindow window = new RollingErrorWindow(8, 1.0, 4); // 内部桶 [-2,-1) [-1,0) [0,1) [1,2)
+        window.add(-5);
+        window.add(-1.5);
+        window.add(-0.5);
+        window.add(0.5);
+        window.add(1.5);
+        window.add(2);
+        assertArrayEquals(new long[]{1, 1, 1, 1, 1, 1}, window.histogram());
+        assertArrayEquals(new double[]{-2, -1, 0, 1, 2}, window.histogramEdges(), 1e-12);
+
+        RollingErrorWindow small = new RollingErrorWindow(1, 1.0, 4);
+        small.add(0.5);
+        small.add(-0.5); // 挤出的残差从直方图中减掉
+        assertArrayEquals(new long[]{0, 0, 1, 0, 0, 0}, small.histogram());
+
+        small.clear();
+        assertEquals(0, small.count());
+        assertArrayEquals(new long[6], small.histogram());
+    }
+}
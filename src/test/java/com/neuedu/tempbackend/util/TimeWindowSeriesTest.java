@@ -0,0 +1,64 @@
+package com.neuedu.tempbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeWindowSeriesTest {
+
+    @Test
+    void expiresSamplesOutsideWindow() {
+        TimeWindowSeries series = new TimeWindowSeries(100);
+        series.add(0, 1f, 10_000);
+        series.add(5_000, 3f, 10_000);
+        series.add(12_000, 5f, 10_000); // 淘汰 t=0
+        assertEquals(2, series.size());
+        assertEquals(4, series.mean(), 1e-9);
+        assertEquals(5_000, series.oldestTime());
+        assertEquals(12_000, series.latestTime());
+        assertEquals(5f, series.latest());
+
+        series.expire(100_000, 10_000); // 至少保留最新一个
+        assertEquals(1, series.size());
+        assertEquals(5, series.mean(), 1e-9);
+    }
+
+    @Test
+    void ratePerMinuteUsesWindowEnds() {
+        TimeWindowSeries series = new TimeWindowSeries(100);
+        series.add(0, 10f, 60_000);
+        assertTrue(Float.isNaN(series.ratePerMinute(0)));
+        series.add(15_000, 11f, 60_000);
+        series.add(30_000, 12f, 60_000);
+        assertEquals(4f, series.ratePerMinute(0), 1e-5); // 30 秒升 2°C
+        assertTrue(Float.isNaN(series.ratePerMinute(45_000))); // 跨度不足
+    }
+
+    @Test
+    void growsToCoverWindowAtHighRate() {
+        TimeWindowSeries series = new TimeWindowSeries(10_000);
+        int initial = series.capacity();
+        // 10Hz 采样、60 秒窗口：600 个样本都应保留
+        for (int i = 0; i < 600; i++) {
+            series.add(i * 100L, i, 60_000);
+        }
+        assertEquals(600, series.size());
+        assertTrue(series.capacity() > initial);
+        assertEquals(0, series.oldestTime());
+        assertEquals(299.5, series.mean(), 1e-6);
+        assertEquals(599f * 60_000 / 59_900, series.ratePerMinute(0), 1e-3);
+    }
+
+    @Test
+    void dropsOldestAtMaxCapacity() {
+        TimeWindowSeries series = new TimeWindowSeries(4);
+        for (int i = 0; i < 10; i++) {
+            series.add(i * 100L, i, 60_000);
+        }
+        assertEquals(4, series.size());
+        assertEquals(4, series.capacity());
+        assertEquals(600, series.oldestTime());
+        assertEquals(7.5, series.mean(), 1e-9);
+    }
+}